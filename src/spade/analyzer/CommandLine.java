@@ -221,10 +221,20 @@ public class CommandLine extends AbstractAnalyzer{
 			queryOutputWriter.flush();
 		}
 
+		private void writePageToClient(final spade.core.Graph page) throws Exception{
+			queryOutputWriter.writeObject(page);
+			queryOutputWriter.flush();
+			queryOutputWriter.reset(); // Don't keep references to the pages already sent
+		}
+
 		@Override
 		public Query executeQuery(Query query) throws Exception{
 			if(query != null){
-				query = quickGrailExecutor.execute(query);
+				if(canSendGraphPages(query)){
+					query = quickGrailExecutor.execute(query, this::writePageToClient);
+				}else{
+					query = quickGrailExecutor.execute(query);
+				}
 			}
 			return query;
 		}
@@ -321,6 +331,7 @@ public class CommandLine extends AbstractAnalyzer{
 					tab + "list [all | constraint | graph | env]",
 					tab + "reset workspace",
 					tab + "native '<Query to execute on the storage in single quotes>'",
+					tab + "explain <Query to show the execution plan of, without executing it>",
 					tab + "export > <Path of the file to write the output of next command to>",
 					tab + "help [all | control | constraint | graph]",
 					tab + "exit"
@@ -21,6 +21,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
@@ -44,10 +45,12 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.mutable.MutableBoolean;
 
 import jline.ConsoleReader;
+import spade.core.AbstractStorage;
 import spade.core.Graph;
 import spade.core.Query;
 import spade.core.Settings;
 import spade.query.quickgrail.core.EnvironmentVariableManager;
+import spade.query.quickgrail.core.StreamedGraph;
 import spade.query.quickgrail.instruction.SaveGraph;
 import spade.query.quickgrail.utility.ResultTable;
 import spade.utility.FileUtility;
@@ -494,11 +497,31 @@ public class CommandLine{
 
 			final String queryNonce = null; // Keep the nonce null to indicate that the query is local
 			Query spadeQuery = new Query(localHostName, localHostName, line, queryNonce);
+			spadeQuery.setGraphPagesAccepted(true);
 
 			clientOutputWriter.writeObject(spadeQuery);
 			clientOutputWriter.flush();
 
-			final Object resultObject = clientInputReader.readObject();
+			// A graph result might be sent as pages before the query
+			AbstractStorage graphPagesWriter = null;
+			Object resultObject;
+			try{
+				while((resultObject = clientInputReader.readObject()) instanceof spade.core.Graph){
+					if(graphPagesWriter == null){
+						graphPagesWriter = createGraphPagesWriter();
+					}
+					Graph.writeGraphToStorage(graphPagesWriter, (spade.core.Graph)resultObject);
+				}
+				if(graphPagesWriter == null && resultObject instanceof Query
+						&& ((Query)resultObject).getResult() instanceof StreamedGraph){
+					graphPagesWriter = createGraphPagesWriter(); // Empty graph
+				}
+			}finally{
+				if(graphPagesWriter != null){
+					graphPagesWriter.shutdown();
+				}
+			}
+
 			if(resultObject == null){ // EOF
 				throw new Exception("Connection closed by the server!");
 			}else{
@@ -524,6 +547,12 @@ public class CommandLine{
 									writeToUser(graph);
 									return "Output exported to STDOUT";
 								}
+							}else if(spadeResult instanceof StreamedGraph){
+								if(RESULT_EXPORT_PATH != null){
+									return "Output exported to file: " + RESULT_EXPORT_PATH;
+								}else{
+									return "Output exported to STDOUT";
+								}
 							}else if(spadeResult instanceof ResultTable){
 								return ((ResultTable)spadeResult).toString();
 							}else{
@@ -555,6 +584,19 @@ public class CommandLine{
 		}
 	}
 
+	// Same destination and format as for a graph result which is not sent in pages
+	private final static AbstractStorage createGraphPagesWriter() throws Exception{
+		if(RESULT_EXPORT_PATH != null){
+			final SaveGraph.Format format = RESULT_EXPORT_PATH.toLowerCase().endsWith(".json")
+					? SaveGraph.Format.kJson : SaveGraph.Format.kDot;
+			return Graph.createExportStorage(format, new BufferedWriter(new FileWriter(RESULT_EXPORT_PATH)), true);
+		}else{
+			boolean closeSystemOut = false;
+			return Graph.createExportStorage(SaveGraph.Format.kJson,
+					new BufferedWriter(new OutputStreamWriter(System.out)), closeSystemOut);
+		}
+	}
+
 	private final static void writeToUser(final Graph graph){
 		if(graph != null){
 			try{
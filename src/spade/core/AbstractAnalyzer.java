@@ -255,6 +255,22 @@ public abstract class AbstractAnalyzer{
 			}
 		}
 
+		/**
+		 * A graph result can be sent in pages (before the query) only if the client accepts pages, the query is local
+		 * (signature is over the whole graph), and there are no transformers to apply to the whole graph.
+		 */
+		protected final boolean canSendGraphPages(final Query spadeQuery){
+			if(spadeQuery == null || !spadeQuery.areGraphPagesAccepted() || spadeQuery.queryNonce != null){
+				return false;
+			}
+			if(useTransformer){
+				synchronized(Kernel.transformers){
+					return Kernel.transformers.isEmpty();
+				}
+			}
+			return true;
+		}
+
 		private void handleSPADEQueryError(final Query spadeQuery){
 			if(spadeQuery.getError() != null){
 				// Check if exception is serializable
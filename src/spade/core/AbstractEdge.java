@@ -20,6 +20,7 @@
 package spade.core;
 
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -58,6 +59,12 @@ public abstract class AbstractEdge implements Serializable{
      * If null then big hash computed using the annotations map.
      */
     private final String bigHashCode;
+
+    /**
+     * Big hash computed using the annotations map and the endpoints. Null if not computed yet or if the annotations 
+     * have changed since it was computed.
+     */
+    private transient ComputedBigHashCode computedBigHashCode;
     
     /**
      * Create a vertex without a fixed big hash.
@@ -99,7 +106,7 @@ public abstract class AbstractEdge implements Serializable{
     }
 
 	public final Set<String> getAnnotationKeys(){
-		return annotations.keySet();
+		return Collections.unmodifiableSet(annotations.keySet());
 	}
 
     /**
@@ -114,6 +121,7 @@ public abstract class AbstractEdge implements Serializable{
 				value = "";
 			}
 			annotations.put(key, value);
+			computedBigHashCode = null;
 		}
 	}
 
@@ -138,7 +146,11 @@ public abstract class AbstractEdge implements Serializable{
      * existed.
      */
     public final String removeAnnotation(String key){
-        return annotations.remove(key);
+        final String value = annotations.remove(key);
+        if(value != null){
+        	computedBigHashCode = null;
+        }
+        return value;
     }
 
     /**
@@ -232,19 +244,46 @@ public abstract class AbstractEdge implements Serializable{
     /**
      * Computes hash of annotations in the edge and hashes of the endpoints according to the default set in spade.core.HashHelper.
      * If the hash was fixed then that is used.
+     * 
+     * The computed hash is cached until the annotations are updated or the hash of any of the endpoints changes.
      */
 	public final String bigHashCode(){
 		if(bigHashCode == null){
-			final String data = 
-					((childVertex == null) ? "(null)" : childVertex.bigHashCode()) + ","
-					+ annotations.toString() + ","
-					+ ((parentVertex == null) ? "(null)" : parentVertex.bigHashCode());
-			return HashHelper.defaultInstance.hashToHexString(data);
+			// Endpoint hashes must be computed before using the streaming digest
+			final String childHash = (childVertex == null) ? "(null)" : childVertex.bigHashCode();
+			final String parentHash = (parentVertex == null) ? "(null)" : parentVertex.bigHashCode();
+			ComputedBigHashCode computed = computedBigHashCode;
+			if(computed == null || !computed.isComputedFrom(childHash, parentHash)){
+				final String hash = HashHelper.defaultInstance.getStreamingDigest()
+						.update(childHash).update(",")
+						.updateAnnotations(annotations).update(",")
+						.update(parentHash)
+						.digestToHexString();
+				computed = new ComputedBigHashCode(childHash, parentHash, hash);
+				computedBigHashCode = computed;
+			}
+			return computed.hash;
 		}else{
 			return bigHashCode;
 		}
 	}
 
+	private static final class ComputedBigHashCode{
+		private final String childHash;
+		private final String parentHash;
+		private final String hash;
+
+		private ComputedBigHashCode(final String childHash, final String parentHash, final String hash){
+			this.childHash = childHash;
+			this.parentHash = parentHash;
+			this.hash = hash;
+		}
+
+		private boolean isComputedFrom(final String childHash, final String parentHash){
+			return this.childHash.equals(childHash) && this.parentHash.equals(parentHash);
+		}
+	}
+
 	public final byte[] bigHashCodeBytes(){
 		return HashHelper.defaultInstance.convertHashHexStringToHashByteArray(bigHashCode());
     }
@@ -259,6 +298,9 @@ public abstract class AbstractEdge implements Serializable{
 		return bigHashCode().equals(other.bigHashCode());
 	}
 
+    /**
+     * Uses the cached big hash. The string hash code of the big hash is cached by the string itself.
+     */
     @Override
 	public int hashCode(){
     	final int prime = 31;
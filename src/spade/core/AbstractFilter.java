@@ -19,6 +19,8 @@
  */
 package spade.core;
 
+import java.util.List;
+
 /**
  * This is the base class for filters.
  *
@@ -78,6 +80,16 @@ public abstract class AbstractFilter {
         nextFilter.putEdge(edge);
     }
 
+    /**
+     * This method is called by the filters to send a batch of elements to the next filter.
+     *
+     * @param vertices The vertices to be sent to the next filter.
+     * @param edges The edges to be sent to the next filter.
+     */
+    public final void putInNextFilter(List<AbstractVertex> vertices, List<AbstractEdge> edges) {
+        nextFilter.putBatch(vertices, edges);
+    }
+
     /**
      * This method is called when the filter receives a vertex.
      *
@@ -91,6 +103,25 @@ public abstract class AbstractFilter {
      * @param incomingEdge The edge received by this filter.
      */
     public abstract void putEdge(AbstractEdge incomingEdge);
+
+    /**
+     * This method is called when the filter receives a batch of elements. All the vertices in the batch
+     * were received before all the edges in the batch. The lists must not be modified.
+     *
+     * The default implementation passes the vertices and then the edges one at a time to putVertex and putEdge.
+     * Filters which can handle the whole batch at once should override this.
+     *
+     * @param vertices The vertices received by this filter.
+     * @param edges The edges received by this filter.
+     */
+    public void putBatch(List<AbstractVertex> vertices, List<AbstractEdge> edges) {
+        for (AbstractVertex vertex : vertices) {
+            putVertex(vertex);
+        }
+        for (AbstractEdge edge : edges) {
+            putEdge(edge);
+        }
+    }
     
     public final void incrementStorageVertexCount(AbstractStorage storage){
     	storage.vertexCount++;
@@ -99,4 +130,12 @@ public abstract class AbstractFilter {
     public final void incrementStorageEdgeCount(AbstractStorage storage){
     	storage.edgeCount++;
     }
+    
+    public final void incrementStorageVertexCount(AbstractStorage storage, long count){
+    	storage.vertexCount += count;
+    }
+    
+    public final void incrementStorageEdgeCount(AbstractStorage storage, long count){
+    	storage.edgeCount += count;
+    }
 }
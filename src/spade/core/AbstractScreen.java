@@ -300,5 +300,19 @@ public abstract class AbstractScreen{
 	public abstract boolean initialize(final String arguments);
 	public abstract boolean blockVertex(final AbstractVertex vertex);
 	public abstract boolean blockEdge(final AbstractEdge edge);
+
+	/**
+	 * Removes the vertices and then the edges which are blocked by this screen from the given lists.
+	 * 
+	 * Same result as calling blockVertex and blockEdge in order for each element. Screens which can check the whole 
+	 * batch at once should override this.
+	 * 
+	 * @param vertices Modifiable list of vertices
+	 * @param edges Modifiable list of edges
+	 */
+	public void blockBatch(final List<AbstractVertex> vertices, final List<AbstractEdge> edges){
+		vertices.removeIf(this::blockVertex);
+		edges.removeIf(this::blockEdge);
+	}
 	public abstract boolean shutdown();
 }
@@ -129,6 +129,62 @@ public abstract class AbstractStorage
 		}
 	}
 
+	/**
+	 * Same as calling putVertex for each vertex in order but the screens and the storage get the whole list at once.
+	 * 
+	 * @param vertices The vertices to store. The list is not modified
+	 * @return Number of vertices stored
+	 */
+	public final int putVertices(final List<AbstractVertex> vertices){
+		final List<AbstractVertex> screened = new ArrayList<AbstractVertex>(vertices.size());
+		for(final AbstractVertex vertex : vertices){
+			if(vertex != null){
+				screened.add(vertex);
+			}
+		}
+		final List<AbstractEdge> noEdges = new ArrayList<AbstractEdge>(0);
+		synchronized(screensLock){
+			for(final AbstractScreen screen : screens){
+				if(screened.isEmpty()){
+					break;
+				}
+				screen.blockBatch(screened, noEdges);
+			}
+		}
+		if(screened.isEmpty()){
+			return 0;
+		}
+		return storeVertices(screened);
+	}
+
+	/**
+	 * Same as calling putEdge for each edge in order but the screens and the storage get the whole list at once.
+	 * 
+	 * @param edges The edges to store. The list is not modified
+	 * @return Number of edges stored
+	 */
+	public final int putEdges(final List<AbstractEdge> edges){
+		final List<AbstractEdge> screened = new ArrayList<AbstractEdge>(edges.size());
+		for(final AbstractEdge edge : edges){
+			if(edge != null){
+				screened.add(edge);
+			}
+		}
+		final List<AbstractVertex> noVertices = new ArrayList<AbstractVertex>(0);
+		synchronized(screensLock){
+			for(final AbstractScreen screen : screens){
+				if(screened.isEmpty()){
+					break;
+				}
+				screen.blockBatch(noVertices, screened);
+			}
+		}
+		if(screened.isEmpty()){
+			return 0;
+		}
+		return storeEdges(screened);
+	}
+
 	////////////////
 
     public static final String PRIMARY_KEY = "hash";
@@ -321,6 +377,44 @@ public abstract class AbstractStorage
      */
     public abstract boolean storeVertex(AbstractVertex incomingVertex);
 
+    /**
+     * This function inserts the given vertices (in order) into the underlying storage(s).
+     * Storages which buffer the vertices internally should override this to avoid the per vertex overhead.
+     * @param incomingVertices vertices to insert into the storage. The list must not be modified
+     * @return returns the number of vertices inserted successfully
+     */
+    public int storeVertices(List<AbstractVertex> incomingVertices)
+    {
+        int stored = 0;
+        for(AbstractVertex incomingVertex : incomingVertices)
+        {
+            if(storeVertex(incomingVertex))
+            {
+                stored++;
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * This function inserts the given edges (in order) into the underlying storage(s).
+     * Storages which buffer the edges internally should override this to avoid the per edge overhead.
+     * @param incomingEdges edges to insert into the storage. The list must not be modified
+     * @return returns the number of edges inserted successfully
+     */
+    public int storeEdges(List<AbstractEdge> incomingEdges)
+    {
+        int stored = 0;
+        for(AbstractEdge incomingEdge : incomingEdges)
+        {
+            if(storeEdge(incomingEdge))
+            {
+                stored++;
+            }
+        }
+        return stored;
+    }
+
     public abstract Object executeQuery(String query);
     
     public QueryInstructionExecutor getQueryInstructionExecutor(){
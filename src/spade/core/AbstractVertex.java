@@ -20,6 +20,7 @@
 package spade.core;
 
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
@@ -52,6 +53,12 @@ public abstract class AbstractVertex implements Serializable{
      */
     private final String bigHashCode;
 
+    /**
+     * Big hash computed using the annotations map. Null if not computed yet or if the annotations have changed
+     * since it was computed.
+     */
+    private transient String annotationsBigHashCode;
+
     /**
      * Create a vertex without a fixed big hash.
      */
@@ -105,7 +112,7 @@ public abstract class AbstractVertex implements Serializable{
 	}
 
 	public final Set<String> getAnnotationKeys(){
-		return annotations.keySet();
+		return Collections.unmodifiableSet(annotations.keySet());
 	}
 
     /**
@@ -120,6 +127,7 @@ public abstract class AbstractVertex implements Serializable{
 				value = "";
 			}
 			annotations.put(key, value);
+			annotationsBigHashCode = null;
 		}
 	}
 
@@ -144,7 +152,11 @@ public abstract class AbstractVertex implements Serializable{
      * existed.
      */
     public final String removeAnnotation(String key) {
-        return annotations.remove(key);
+        final String value = annotations.remove(key);
+        if(value != null){
+        	annotationsBigHashCode = null;
+        }
+        return value;
     }
 
     /**
@@ -205,11 +217,17 @@ public abstract class AbstractVertex implements Serializable{
     /**
      * Computes hash of annotations in the vertex according to the default set in spade.core.HashHelper.
      * If the hash was fixed then that is used.
+     * 
+     * The computed hash is cached until the annotations are updated.
      */
 	public final String bigHashCode(){
 		if(bigHashCode == null){
-			final String data = annotations.toString();
-			return HashHelper.defaultInstance.hashToHexString(data);
+			String hash = annotationsBigHashCode;
+			if(hash == null){
+				hash = HashHelper.defaultInstance.hashToHexString(annotations);
+				annotationsBigHashCode = hash;
+			}
+			return hash;
 		}else{
 			return bigHashCode;
 		}
@@ -219,6 +237,9 @@ public abstract class AbstractVertex implements Serializable{
 		return HashHelper.defaultInstance.convertHashHexStringToHashByteArray(bigHashCode());
     }
 
+    /**
+     * Uses the cached big hash. The string hash code of the big hash is cached by the string itself.
+     */
     @Override
 	public final int hashCode(){
 		final int prime = 31;
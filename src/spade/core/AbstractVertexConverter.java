@@ -0,0 +1,108 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.core;
+
+import java.lang.reflect.Constructor;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import spade.utility.BinaryConverter;
+
+/**
+ * Class of the vertex, the fixed big hash (if a reference vertex), and the annotations in key order.
+ *
+ * Equal vertices of the same class with the same annotations are converted to equal bytes.
+ * The vertex class must have a public constructor without arguments and a public constructor with the big hash.
+ */
+public class AbstractVertexConverter extends BinaryConverter<AbstractVertex>{
+
+	private final ConcurrentHashMap<String, Constructor<? extends AbstractVertex>>
+			constructors = new ConcurrentHashMap<String, Constructor<? extends AbstractVertex>>(),
+			referenceConstructors = new ConcurrentHashMap<String, Constructor<? extends AbstractVertex>>();
+
+	public AbstractVertexConverter(){
+		super("spade.core.Vertex",
+				"spade.vertex.opm.Process", "spade.vertex.opm.Artifact", "spade.vertex.opm.Agent",
+				"spade.vertex.prov.Activity", "spade.vertex.prov.Entity", "spade.vertex.prov.Agent",
+				"spade.vertex.cdm.Subject", "spade.vertex.cdm.Object", "spade.vertex.cdm.Principal", "spade.vertex.cdm.Event",
+				AbstractVertex.typeKey, AbstractVertex.idKey,
+				"Process", "Artifact", "Agent", "Activity", "Entity", "Subject", "Object", "Principal", "Event",
+				"source", "subtype", "syscall", "/proc", "beep", "netfilter",
+				"file", "directory", "link", "memory", "named pipe", "network socket", "unix socket", "unknown",
+				"unnamed pipe", "unix socket pair", "network socket pair", "block device", "character device",
+				"pid", "ppid", "name", "cwd", "command line", "start time", "seen time", "exe", "ns pid", "unit",
+				"iteration", "count", "uid", "euid", "gid", "egid", "suid", "fsuid", "sgid", "fsgid",
+				"path", "root path", "inode", "version", "epoch", "permissions", "fd", "tgid", "memory address", "size",
+				"local address", "local port", "remote address", "remote port", "protocol",
+				"mount namespace", "user namespace", "net namespace", "pid namespace", "ipc namespace",
+				"children pid namespace", "/");
+	}
+
+	@Override
+	protected void write(final AbstractVertex vertex, final Output out) throws Exception{
+		writeString(out, vertex.getClass().getName());
+		final boolean isReferenceVertex = vertex.isReferenceVertex();
+		out.writeBoolean(isReferenceVertex);
+		if(isReferenceVertex){
+			writeString(out, vertex.bigHashCode());
+		}
+		final Set<String> keys = vertex.getAnnotationKeys();
+		out.writeVarLong(keys.size());
+		for(final String key : keys){
+			writeString(out, key);
+			writeString(out, vertex.getAnnotation(key));
+		}
+	}
+
+	@Override
+	protected AbstractVertex read(final Input in) throws Exception{
+		final String className = readString(in);
+		final AbstractVertex vertex;
+		if(in.readBoolean()){
+			final String bigHashCode = readString(in);
+			vertex = getConstructor(className, true).newInstance(bigHashCode);
+		}else{
+			vertex = getConstructor(className, false).newInstance();
+		}
+		boolean hasType = false;
+		final int count = in.readCount();
+		for(int i = 0; i < count; i++){
+			final String key = readString(in);
+			final String value = readString(in);
+			vertex.addAnnotation(key, value);
+			hasType = hasType || AbstractVertex.typeKey.equals(key);
+		}
+		if(!hasType){
+			vertex.removeAnnotation(AbstractVertex.typeKey); // Added by the constructor
+		}
+		return vertex;
+	}
+
+	private Constructor<? extends AbstractVertex> getConstructor(final String className, final boolean reference) throws Exception{
+		final ConcurrentHashMap<String, Constructor<? extends AbstractVertex>> map = reference ? referenceConstructors : constructors;
+		Constructor<? extends AbstractVertex> constructor = map.get(className);
+		if(constructor == null){
+			final Class<? extends AbstractVertex> vertexClass = Class.forName(className).asSubclass(AbstractVertex.class);
+			constructor = reference ? vertexClass.getConstructor(String.class) : vertexClass.getConstructor();
+			map.put(className, constructor);
+		}
+		return constructor;
+	}
+}
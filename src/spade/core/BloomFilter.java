@@ -54,16 +54,17 @@ public class BloomFilter<E> implements Serializable {
     static final Charset charset = Charset.forName("UTF-8"); // encoding used for storing hash values as strings
 
     static final String hashName = "MD5"; // MD5 gives good enough accuracy in most circumstances. Change to SHA1 if it's needed
-    static final MessageDigest digestFunction;
-    static { // The digest method is reused between instances
-        MessageDigest tmp;
-        try {
-            tmp = java.security.MessageDigest.getInstance(hashName);
-        } catch (NoSuchAlgorithmException e) {
-            tmp = null;
+    // The digest method is reused between instances. One per thread so that threads do not wait on each other
+    static final ThreadLocal<MessageDigest> digestFunction = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return java.security.MessageDigest.getInstance(hashName);
+            } catch (NoSuchAlgorithmException e) {
+                return null;
+            }
         }
-        digestFunction = tmp;
-    }
+    };
 
     /**
       * Constructs an empty Bloom filter. The total length of the Bloom filter will be
@@ -166,15 +167,14 @@ public class BloomFilter<E> implements Serializable {
     public static int[] createHashes(byte[] data, int hashes) {
         int[] result = new int[hashes];
 
+        final MessageDigest digestFunction = BloomFilter.digestFunction.get();
         int k = 0;
         byte salt = 0;
         while (k < hashes) {
             byte[] digest;
-            synchronized (digestFunction) {
-                digestFunction.update(salt);
-                salt++;
-                digest = digestFunction.digest(data);                
-            }
+            digestFunction.update(salt);
+            salt++;
+            digest = digestFunction.digest(data);
         
             for (int i = 0; i < digest.length/4 && k < hashes; i++) {
                 int h = 0;
@@ -19,6 +19,7 @@
  */
 package spade.core;
 
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
@@ -35,12 +36,26 @@ public class Buffer {
 
     private final Queue<Object> queue;
 
+    /**
+     * Called after an element is added or the buffer is shutdown. Set by the consumer of the buffer.
+     */
+    private volatile Runnable consumerSignal;
+
     /**
      * Empty constructor for this class.
      *
      */
     public Buffer() {
-        queue = new ConcurrentLinkedQueue<>();
+        this(new ConcurrentLinkedQueue<>());
+    }
+
+    /**
+     * For subclasses which keep the elements themselves and override all the methods which use the queue.
+     *
+     * @param queue The queue to keep the elements in. NULL if not used.
+     */
+    protected Buffer(Queue<Object> queue) {
+        this.queue = queue;
     }
 
     /**
@@ -53,7 +68,9 @@ public class Buffer {
         if (incomingVertex == null) {
             return false;
         } else {
-            return queue.add(incomingVertex);
+            final boolean added = queue.add(incomingVertex);
+            signalConsumer();
+            return added;
         }
     }
 
@@ -69,7 +86,25 @@ public class Buffer {
                 || (incomingEdge.getParentVertex() == null)) {
             return false;
         } else {
-            return queue.add(incomingEdge);
+            final boolean added = queue.add(incomingEdge);
+            signalConsumer();
+            return added;
+        }
+    }
+
+    /**
+     * This method is used by the consumer of the buffer to get notified of new elements.
+     *
+     * @param consumerSignal The function to call after an element is added.
+     */
+    final void setConsumerSignal(final Runnable consumerSignal) {
+        this.consumerSignal = consumerSignal;
+    }
+
+    protected final void signalConsumer() {
+        final Runnable signal = consumerSignal;
+        if (signal != null) {
+            signal.run();
         }
     }
 
@@ -82,6 +117,23 @@ public class Buffer {
         return queue.poll();
     }
 
+    /**
+     * This method is used to extract provenance elements from the buffer in a batch.
+     *
+     * @param list The list to add the elements to.
+     * @param max The maximum number of elements to extract.
+     * @return The number of elements added to the list.
+     */
+    public int drainTo(List<Object> list, int max) {
+        int drained = 0;
+        Object bufferElement;
+        while (drained < max && (bufferElement = getBufferElement()) != null) {
+            list.add(bufferElement);
+            drained++;
+        }
+        return drained;
+    }
+
     /**
      * This method is used to determine whether the buffer is empty or not.
      *
@@ -110,6 +162,7 @@ public class Buffer {
 		synchronized(shutdownLock){
 			this.shutdown = true;
 		}
+		signalConsumer();
 	}
 
 	/**
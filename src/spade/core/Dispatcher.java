@@ -0,0 +1,235 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Moves provenance elements from the buffers of the reporters to the filter list.
+ *
+ * Reporters are partitioned across a fixed number of threads. All elements of a reporter are handled by the same
+ * thread in the order in which they were added to the buffer. A thread parks when all of its buffers are empty and
+ * is unparked by the buffer when an element is added.
+ *
+ * Filters and storages are not thread-safe. Therefore, the elements are put into the filter list while holding a
+ * single lock. The elements are put as batches of vertices followed by edges (see AbstractFilter.putBatch). Draining the buffers and computing the hashes of the elements is done concurrently.
+ */
+public final class Dispatcher{
+
+	private static final Logger logger = Logger.getLogger(Dispatcher.class.getName());
+
+	// Max elements to take from a buffer before moving to the next buffer
+	private static final int BATCH_SIZE = 1000;
+	// Upper bound on parking in case a signal from a buffer is missed
+	private static final long MAX_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final List<AbstractFilter> filters;
+	private final Set<AbstractReporter> removeReporters;
+	private final Runnable housekeeping;
+
+	private final Object filtersLock = new Object();
+	private final List<Worker> workers = new ArrayList<Worker>();
+
+	private volatile boolean shutdown = false;
+
+	/**
+	 * @param threadCount Number of threads to use. Must be greater than 0
+	 * @param filters The filter list. The first filter is where all elements are put
+	 * @param removeReporters Reporters marked for removal. A reporter is removed from this set once its buffer is empty
+	 * @param housekeeping Task to run (while no element is in the filter list) whenever the first thread wakes up
+	 */
+	public Dispatcher(final int threadCount, final List<AbstractFilter> filters,
+			final Set<AbstractReporter> removeReporters, final Runnable housekeeping){
+		if(threadCount < 1){
+			throw new IllegalArgumentException("Thread count must be greater than 0: " + threadCount);
+		}
+		this.filters = filters;
+		this.removeReporters = removeReporters;
+		this.housekeeping = housekeeping;
+		for(int i = 0; i < threadCount; i++){
+			workers.add(new Worker(i));
+		}
+	}
+
+	public final void start(){
+		for(final Worker worker : workers){
+			worker.thread.start();
+		}
+		logger.log(Level.INFO, "Started dispatcher with " + workers.size() + " thread(s)");
+	}
+
+	/**
+	 * Assigns the reporter to the thread with the least number of reporters.
+	 *
+	 * @param reporter Reporter whose buffer is to be consumed
+	 */
+	public final void addReporter(final AbstractReporter reporter){
+		Worker selected = null;
+		synchronized(workers){
+			for(final Worker worker : workers){
+				if(selected == null || worker.reporters.size() < selected.reporters.size()){
+					selected = worker;
+				}
+			}
+			selected.reporters.add(reporter);
+		}
+		final Worker worker = selected;
+		reporter.getBuffer().setConsumerSignal(worker::signal);
+		worker.signal();
+	}
+
+	/**
+	 * Unparks all threads. Must be called after marking reporters, storages or analyzers for removal.
+	 */
+	public final void wakeUp(){
+		for(final Worker worker : workers){
+			LockSupport.unpark(worker.thread);
+		}
+	}
+
+	/**
+	 * Stops all threads after the elements already taken from the buffers have been put in the filter list.
+	 */
+	public final void shutdown(){
+		shutdown = true;
+		wakeUp();
+		for(final Worker worker : workers){
+			if(worker.thread != Thread.currentThread()){
+				try{
+					worker.thread.join();
+				}catch(InterruptedException e){
+					logger.log(Level.WARNING, "Interrupted while waiting for thread: " + worker.thread.getName(), e);
+				}
+			}
+		}
+	}
+
+	private final class Worker implements Runnable{
+
+		private final int index;
+		private final Thread thread;
+		private final List<AbstractReporter> reporters = new CopyOnWriteArrayList<AbstractReporter>();
+		private final List<Object> batch = new ArrayList<Object>(BATCH_SIZE);
+		private List<AbstractVertex> vertices = new ArrayList<AbstractVertex>();
+		private List<AbstractEdge> edges = new ArrayList<AbstractEdge>();
+		private volatile boolean parked = false;
+
+		private Worker(final int index){
+			this.index = index;
+			this.thread = new Thread(this, "mainSPADE-Thread-" + index);
+		}
+
+		private void signal(){
+			if(parked){
+				LockSupport.unpark(thread);
+			}
+		}
+
+		private boolean hasWork(){
+			for(final AbstractReporter reporter : reporters){
+				if(!reporter.getBuffer().isEmpty() || removeReporters.contains(reporter)){
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public void run(){
+			try{
+				while(!shutdown){
+					if(index == 0 && housekeeping != null){
+						synchronized(filtersLock){
+							housekeeping.run();
+						}
+					}
+
+					boolean dispatched = false;
+					for(final AbstractReporter reporter : reporters){
+						final Buffer buffer = reporter.getBuffer();
+						batch.clear();
+						if(buffer.drainTo(batch, BATCH_SIZE) == 0){
+							if(removeReporters.contains(reporter)){
+								reporters.remove(reporter);
+								removeReporters.remove(reporter);
+							}
+							continue;
+						}
+						dispatched = true;
+						dispatch();
+					}
+
+					if(!dispatched){
+						parked = true;
+						if(!shutdown && !hasWork()){
+							LockSupport.parkNanos(this, MAX_PARK_NANOS);
+						}
+						parked = false;
+					}
+				}
+			}catch(Exception exception){
+				logger.log(Level.SEVERE, "Error in dispatcher thread: " + thread.getName(), exception);
+			}
+		}
+
+		private void dispatch(){
+			// Hashes are cached in the elements. Computed here so that it is not done while holding the lock.
+			for(final Object bufferElement : batch){
+				if(bufferElement instanceof AbstractVertex){
+					((AbstractVertex)bufferElement).bigHashCode();
+				}else if(bufferElement instanceof AbstractEdge){
+					((AbstractEdge)bufferElement).bigHashCode();
+				}
+			}
+			synchronized(filtersLock){
+				final AbstractFilter firstFilter = filters.get(0);
+				// Split into runs of vertices followed by edges so that the original order is retained
+				for(final Object bufferElement : batch){
+					if(bufferElement instanceof AbstractVertex){
+						if(!edges.isEmpty()){
+							putBatch(firstFilter);
+						}
+						vertices.add((AbstractVertex)bufferElement);
+					}else if(bufferElement instanceof AbstractEdge){
+						edges.add((AbstractEdge)bufferElement);
+					}
+				}
+				putBatch(firstFilter);
+			}
+			batch.clear();
+		}
+
+		private void putBatch(final AbstractFilter firstFilter){
+			if(!vertices.isEmpty() || !edges.isEmpty()){
+				// New lists every time because filters are allowed to keep the given lists
+				firstFilter.putBatch(vertices, edges);
+				vertices = new ArrayList<AbstractVertex>();
+				edges = new ArrayList<AbstractEdge>();
+			}
+		}
+	}
+}
@@ -529,42 +529,10 @@ public class Graph implements Serializable{
 			final boolean closeWriter) throws Exception{
 		if(graph == null){
 			throw new RuntimeException("Cannot export NULL graph");
-		}else if(format == null){
-			throw new RuntimeException("Cannot export to NULL format");
 		}else{
-			final AbstractStorage storage;
-			final boolean printHeader = true, printFooter = true;
-			
-			switch(format){
-				case kJson:
-					final boolean printRecordSeparator = true;
-					final JSON jsonStorage = new JSON();
-					jsonStorage.initializeUnsafe(
-							writer,  
-							printHeader, printFooter, printRecordSeparator,
-							System.lineSeparator(), closeWriter);
-					storage = jsonStorage;
-					break;
-				case kDot:
-					final Graphviz dotStorage = new Graphviz();
-					dotStorage.initializeUnsafe(
-							writer, 
-							DotConfiguration.getDefaultConfigFilePath(), 
-							printHeader, printFooter, System.lineSeparator(),
-							closeWriter);
-					storage = dotStorage;
-					break;
-				default: throw new RuntimeException("Unhandled graph export format: " + format);
-			}
-
+			final AbstractStorage storage = createExportStorage(format, writer, closeWriter);
 			try{
-				for(AbstractVertex vertex : graph.vertexSet()){
-					storage.putVertex(vertex);
-				}
-				
-				for(AbstractEdge edge : graph.edgeSet()){
-					storage.putEdge(edge);
-				}
+				writeGraphToStorage(storage, graph);
 			}catch(Exception e){
 				throw e;
 			}finally{
@@ -577,4 +545,49 @@ public class Graph implements Serializable{
 		}
 	}
 
+	public static final void writeGraphToStorage(final AbstractStorage storage, final Graph graph) throws Exception{
+		for(AbstractVertex vertex : graph.vertexSet()){
+			storage.putVertex(vertex);
+		}
+		
+		for(AbstractEdge edge : graph.edgeSet()){
+			storage.putEdge(edge);
+		}
+	}
+
+	/**
+	 * Storage which writes the vertices and edges put in it to the writer in the given format.
+	 * The footer is written (and the writer closed if 'closeWriter') on shutdown.
+	 * 
+	 * Used to write a graph which is received in parts.
+	 */
+	public static final AbstractStorage createExportStorage(
+			final SaveGraph.Format format,
+			final BufferedWriter writer,
+			final boolean closeWriter) throws Exception{
+		if(format == null){
+			throw new RuntimeException("Cannot export to NULL format");
+		}
+		final boolean printHeader = true, printFooter = true;
+		switch(format){
+			case kJson:
+				final boolean printRecordSeparator = true;
+				final JSON jsonStorage = new JSON();
+				jsonStorage.initializeUnsafe(
+						writer,  
+						printHeader, printFooter, printRecordSeparator,
+						System.lineSeparator(), closeWriter);
+				return jsonStorage;
+			case kDot:
+				final Graphviz dotStorage = new Graphviz();
+				dotStorage.initializeUnsafe(
+						writer, 
+						DotConfiguration.getDefaultConfigFilePath(), 
+						printHeader, printFooter, System.lineSeparator(),
+						closeWriter);
+				return dotStorage;
+			default: throw new RuntimeException("Unhandled graph export format: " + format);
+		}
+	}
+
 }
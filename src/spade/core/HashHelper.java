@@ -19,8 +19,10 @@
  */
 package spade.core;
 
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
@@ -37,6 +39,9 @@ public abstract class HashHelper{
 	public final String hashAlgorithmName;
 	public final int bytesInHash;
 	
+	private final ThreadLocal<StreamingDigest> streamingDigests = 
+			ThreadLocal.withInitial(() -> new StreamingDigest(createMessageDigest()));
+	
 	private HashHelper(final String hashAlgorithmName, final int bytesInHash){
 		if(hashAlgorithmName == null){
 			throw new RuntimeException("NULL hash algorithm name");
@@ -50,6 +55,31 @@ public abstract class HashHelper{
 	
 	public abstract byte[] hashToByteArray(final String data);
 	public abstract String hashToHexString(final String data);
+	protected abstract MessageDigest createMessageDigest();
+	
+	/**
+	 * Returns the digest of the current thread after resetting it.
+	 * 
+	 * The returned digest is shared by all calls in the current thread. Therefore, any other hash required for 
+	 * the data must be computed before the first update.
+	 * 
+	 * @return StreamingDigest
+	 */
+	public final StreamingDigest getStreamingDigest(){
+		final StreamingDigest streamingDigest = streamingDigests.get();
+		streamingDigest.reset();
+		return streamingDigest;
+	}
+	
+	/**
+	 * Same as 'hashToHexString(annotations.toString())' but without building the string.
+	 * 
+	 * @param annotations Map to hash
+	 * @return Hex string of the hash
+	 */
+	public final String hashToHexString(final Map<String, String> annotations){
+		return getStreamingDigest().updateAnnotations(annotations).digestToHexString();
+	}
 	
 	public final boolean isValidHashByteArray(final byte[] hash){
 		if(hash != null){
@@ -124,6 +154,106 @@ public abstract class HashHelper{
 			return DigestUtils.md5Hex(data);
 		}
 
+		@Override
+		protected MessageDigest createMessageDigest(){
+			return DigestUtils.getMd5Digest();
+		}
+
+	}
+	
+	/*
+	 * Incremental digest over strings. The bytes digested are the UTF-8 bytes of the strings (same as what the 
+	 * 'hashTo*' functions digest) but are encoded into a reused buffer instead of a new byte array per string.
+	 */
+	public static final class StreamingDigest{
+		
+		private static final int bufferSize = 1024;
+		// Max bytes in UTF-8 for a single code point
+		private static final int maxBytesPerCodePoint = 4;
+		
+		private final MessageDigest messageDigest;
+		private final byte[] buffer = new byte[bufferSize];
+		private int position = 0;
+		
+		private StreamingDigest(final MessageDigest messageDigest){
+			this.messageDigest = messageDigest;
+		}
+		
+		private void reset(){
+			this.position = 0;
+			this.messageDigest.reset();
+		}
+		
+		private void flushBuffer(){
+			if(position > 0){
+				messageDigest.update(buffer, 0, position);
+				position = 0;
+			}
+		}
+		
+		public final StreamingDigest update(final String data){
+			final String str = String.valueOf(data);
+			final int length = str.length();
+			for(int i = 0; i < length; i++){
+				if(position > bufferSize - maxBytesPerCodePoint){
+					flushBuffer();
+				}
+				final char c = str.charAt(i);
+				if(c < 0x80){
+					buffer[position++] = (byte)c;
+				}else if(c < 0x800){
+					buffer[position++] = (byte)(0xc0 | (c >> 6));
+					buffer[position++] = (byte)(0x80 | (c & 0x3f));
+				}else if(Character.isSurrogate(c)){
+					if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(str.charAt(i + 1))){
+						final int codePoint = Character.toCodePoint(c, str.charAt(++i));
+						buffer[position++] = (byte)(0xf0 | (codePoint >> 18));
+						buffer[position++] = (byte)(0x80 | ((codePoint >> 12) & 0x3f));
+						buffer[position++] = (byte)(0x80 | ((codePoint >> 6) & 0x3f));
+						buffer[position++] = (byte)(0x80 | (codePoint & 0x3f));
+					}else{
+						// Malformed. Replaced the same way as String.getBytes
+						buffer[position++] = (byte)'?';
+					}
+				}else{
+					buffer[position++] = (byte)(0xe0 | (c >> 12));
+					buffer[position++] = (byte)(0x80 | ((c >> 6) & 0x3f));
+					buffer[position++] = (byte)(0x80 | (c & 0x3f));
+				}
+			}
+			return this;
+		}
+		
+		/**
+		 * Digests the map in the same format as java.util.AbstractMap#toString
+		 * 
+		 * @param annotations Map to digest
+		 * @return this
+		 */
+		public final StreamingDigest updateAnnotations(final Map<String, String> annotations){
+			update("{");
+			boolean first = true;
+			for(final Map.Entry<String, String> entry : annotations.entrySet()){
+				if(!first){
+					update(", ");
+				}
+				first = false;
+				update(entry.getKey());
+				update("=");
+				update(entry.getValue());
+			}
+			update("}");
+			return this;
+		}
+		
+		public final byte[] digest(){
+			flushBuffer();
+			return messageDigest.digest();
+		}
+		
+		public final String digestToHexString(){
+			return Hex.encodeHexString(digest());
+		}
 	}
 	
 	private static List<Byte> toList(final byte[] bytes){
@@ -203,11 +203,10 @@ public class Kernel
     private static Set<AbstractReporter> removeReporters;
     private static Set<AbstractStorage> removeStorages;
     private static Set<AbstractAnalyzer> removeAnalyzers;
+    private static Dispatcher dispatcher;
 
-    private static final int BATCH_BUFFER_ELEMENTS = 1000000;
     private static final int MAIN_THREAD_SLEEP_DELAY = 10;
     private static final int REMOVE_WAIT_DELAY = 100;
-    private static final int FIRST_FILTER = 0;
     private static Logger logger;
     private static boolean ANDROID_PLATFORM = false;
 
@@ -430,107 +429,51 @@ public class Kernel
     }
 
     /**
-     * Initialize the main thread. This thread performs critical
+     * Initialize the main threads. These threads perform critical
      * provenance-related work inside SPADE.
-     * It extracts provenance objects (vertices, edges) from the
-     * buffers, adds the source_reporter annotation to each object which is
-     * class name of the reporter, and then sends these objects to the filter list.
-     * This thread is also used for cleanly removing reporters and storages
+     * They extract provenance objects (vertices, edges) from the
+     * buffers and then send these objects to the filter list.
+     * The dispatcher is also used for cleanly removing reporters and storages
      * through the control commands and also when shutting down. This is done by
      * ensuring that once a reporter is marked for removal, the provenance objects from
      * its buffer are completely flushed.
      */
     private static void registerMainThread()
     {
-        Runnable mainRunnable = new Runnable()
+        Runnable housekeeping = new Runnable()
         {
             @Override
             public void run()
             {
-                try
+                if (!removeStorages.isEmpty())
                 {
-                    while (true)
+                    // Check if a storage is marked for removal.
+                    // If it is, shut it down and remove it from the list.
+                    Iterator<AbstractStorage> iterator = removeStorages.iterator();
+                    while(iterator.hasNext())
                     {
-//                        if (flushTransactions)
-//                        {
-//                            // Flushing of transactions is also handled by this thread to ensure that
-//                            // there are no errors/problems when using storages that are sensitive to
-//                            // thread-context for their transactions.
-//                            // For example, this is true for the embedded neo4j graph database.
-//                            for (AbstractStorage currentStorage : storages)
-//                            {
-//                                currentStorage.flushTransactions(false);
-//                            }
-//                            flushTransactions = false;
-//                        }
-
-                        if (!removeStorages.isEmpty())
-                        {
-                            // Check if a storage is marked for removal.
-                            // If it is, shut it down and remove it from the list.
-                            Iterator<AbstractStorage> iterator = removeStorages.iterator();
-                            while(iterator.hasNext())
-                            {
-                                AbstractStorage currentStorage = iterator.next();
-                                AbstractScreen.shutdownScreens(currentStorage.getScreens());
-                                currentStorage.shutdown();
-                                iterator.remove();
-                            }
-                        }
-                        if (!removeAnalyzers.isEmpty())
-                        {
-                            // Check if an analyzer is marked for removal.
-                            // If it is, shut it down and remove it from the list.
-                            Iterator<AbstractAnalyzer> iterator = removeAnalyzers.iterator();
-                            while(iterator.hasNext())
-                            {
-                                AbstractAnalyzer currentAnalyzer = iterator.next();
-                                currentAnalyzer.shutdown();
-                                iterator.remove();
-                            }
-                        }
-
-                        for (AbstractReporter reporter : reporters)
-                        {
-                            // This loop performs the actual task of committing provenance data to
-                            // the storages. Each reporter is selected and the nested loop is used to
-                            // extract buffer elements in a batch manner for increased efficiency.
-                            // The elements are then passed to the filter list.
-                            Buffer buffer = reporter.getBuffer();
-                            for (int i = 0; i < BATCH_BUFFER_ELEMENTS; i++)
-                            {
-                                Object bufferElement = buffer.getBufferElement();
-                                if (bufferElement instanceof AbstractVertex)
-                                {
-                                    AbstractVertex tempVertex = (AbstractVertex) bufferElement;
-                                    filters.get(FIRST_FILTER).putVertex(tempVertex);
-                                }
-                                else if (bufferElement instanceof AbstractEdge)
-                                {
-                                    AbstractEdge tempEdge = (AbstractEdge) bufferElement;
-                                    filters.get(FIRST_FILTER).putEdge(tempEdge);
-                                }
-                                else if (bufferElement == null)
-                                {
-                                    if (removeReporters.contains(reporter))
-                                    {
-                                        removeReporters.remove(reporter);
-                                    }
-                                    break;
-                                }
-                            }
-                        }
-                        Thread.sleep(MAIN_THREAD_SLEEP_DELAY);
+                        AbstractStorage currentStorage = iterator.next();
+                        AbstractScreen.shutdownScreens(currentStorage.getScreens());
+                        currentStorage.shutdown();
+                        iterator.remove();
                     }
                 }
-                catch (Exception exception)
+                if (!removeAnalyzers.isEmpty())
                 {
-                    logger.log(Level.SEVERE, "Error registering Main Thread", exception);
+                    // Check if an analyzer is marked for removal.
+                    // If it is, shut it down and remove it from the list.
+                    Iterator<AbstractAnalyzer> iterator = removeAnalyzers.iterator();
+                    while(iterator.hasNext())
+                    {
+                        AbstractAnalyzer currentAnalyzer = iterator.next();
+                        currentAnalyzer.shutdown();
+                        iterator.remove();
+                    }
                 }
             }
         };
-        Thread mainThread = new Thread(mainRunnable, "mainSPADE-Thread");
-        mainThread.start();
+        dispatcher = new Dispatcher(Settings.getDispatchThreads(), filters, removeReporters, housekeeping);
+        dispatcher.start();
     }
 
     /**
@@ -911,8 +854,24 @@ public class Kernel
 		final Buffer buffer;
 		final String bufferConfigKey = BlockingBuffer.keyWorkableFreeMemoryPercentageForBuffer;
 		final SimpleEntry<String, String> bufferConfigValueEntry = configMapWithSources.get(bufferConfigKey);
+		final String bufferCapacityConfigKey = RingBuffer.keyBufferCapacity;
+		final SimpleEntry<String, String> bufferCapacityConfigValueEntry = configMapWithSources.get(bufferCapacityConfigKey);
 		
-		if(bufferConfigValueEntry == null){
+		if(bufferCapacityConfigValueEntry != null){
+			final String bufferValue = bufferCapacityConfigValueEntry.getKey();
+			final String bufferValueSource = bufferCapacityConfigValueEntry.getValue();
+			try{
+				buffer = new RingBuffer(bufferValue, classObject);
+				logger.log(Level.INFO, "Bounded buffer used for reporter '" + classNameString + "' with "
+						+ "'" + bufferCapacityConfigKey + "'='" + bufferValue + "' from '" + bufferValueSource + "'");
+			}catch(Throwable t){
+				outputStream.println("error: Unable to create buffer using '" + bufferCapacityConfigKey + "' = "
+						+ "'" + bufferValue + "' from '" + bufferValueSource + "'. " + t.getMessage());
+				logger.log(Level.SEVERE, "error: Unable to create buffer using '" + bufferCapacityConfigKey + "' = "
+						+ "'" + bufferValue + "' from '" + bufferValueSource + "'. " + classObject, t);
+				return;
+			}
+		}else if(bufferConfigValueEntry == null){
 			buffer = new Buffer();
 			logger.log(Level.INFO, "Default (unlimited) buffer used for reporter '"+classNameString+"'");
 		}else{
@@ -959,6 +918,7 @@ public class Kernel
 			// SPADE thread to extract buffer elements.
 			reporter.arguments = arguments;
 			reporters.add(reporter);
+			dispatcher.addReporter(reporter);
 			logger.log(Level.INFO, "Reporter added: {0}", classNameString + " " + arguments);
 			outputStream.println("done");
 			return;
@@ -1600,6 +1560,7 @@ public class Kernel
 					long vertexCount = storage.vertexCount;
 					long edgeCount = storage.edgeCount;
 					removeStorages.add(storage);
+					dispatcher.wakeUp();
 					found = true;
 					logger.log(Level.INFO, "Shutting down storage: {0}", className);
 					outputStream.print("Shutting down storage " + className + "... ");
@@ -1693,6 +1654,7 @@ public class Kernel
                         	reporter.getBuffer().shutdown();
                             reporter.shutdown();
                             removeReporters.add(reporter);
+                            dispatcher.wakeUp();
                             found = true;
                             logger.log(Level.INFO, "Shutting down reporter: {0}", className);
                             outputStream.print("Shutting down reporter " + className + "... ");
@@ -1726,6 +1688,7 @@ public class Kernel
                             // This will enable the main SPADE thread to safely commit any transactions
                             // and then remove the analyzer.
                             removeAnalyzers.add(analyzer);
+                            dispatcher.wakeUp();
                             found = true;
                             logger.log(Level.INFO, "Shutting down analyzer: {0}", className);
                             outputStream.print("Shutting down analyzer " + className + "... ");
@@ -1883,6 +1846,8 @@ public class Kernel
                 logger.log(Level.WARNING, null, ex);
             }
         }
+        // Wait for the elements already taken from the buffers to reach the storages.
+        dispatcher.shutdown();
 
         // Shut down filters.
         for (int i = 0; i < filters.size() - 1; i++)
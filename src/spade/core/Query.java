@@ -47,6 +47,12 @@ public class Query implements Serializable{
 
 	private List<Query> remoteSubqueries = new ArrayList<Query>();
 
+	/*
+	 * Set by a client which can read a graph result as pages of spade.core.Graph sent
+	 * before this query is sent back. Absent (false) in queries from older clients.
+	 */
+	private boolean graphPagesAccepted = false;
+
 	// Only required for local transformation of queries
 	private final AbstractTransformer.ExecutionContext transformerExecutionContext = new AbstractTransformer.ExecutionContext();
 
@@ -95,6 +101,14 @@ public class Query implements Serializable{
 		return new ArrayList<Query>(remoteSubqueries);
 	}
 
+	public boolean areGraphPagesAccepted(){
+		return graphPagesAccepted;
+	}
+
+	public void setGraphPagesAccepted(final boolean graphPagesAccepted){
+		this.graphPagesAccepted = graphPagesAccepted;
+	}
+
 	public AbstractTransformer.ExecutionContext getTransformerExecutionContext(){
 		return transformerExecutionContext;
 	}
@@ -0,0 +1,333 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.core;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import spade.utility.FileUtility;
+import spade.utility.HelperFunctions;
+import spade.utility.Result;
+
+/**
+ * Bounded buffer backed by a preallocated array.
+ *
+ * Multiple producers and consumers are supported without locks (bounded queue by Dmitry Vyukov). When the buffer
+ * is full the producer (i.e. the reporter) waits according to the configured wait strategy until the consumer
+ * takes an element or the buffer is shutdown.
+ */
+public class RingBuffer extends Buffer{
+
+	public static final String keyBufferCapacity = "bufferCapacity";
+	private static final String keyWaitStrategy = "waitStrategy";
+	private static final String keyReportingIntervalSeconds = "reportingIntervalSeconds";
+
+	public static enum WaitStrategy{ BLOCKING, YIELDING, SPINNING }
+
+	// Upper bound on blocking in case a signal from the consumer is missed
+	private static final long MAX_BLOCK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private final Logger logger = Logger.getLogger(this.getClass().getName());
+	private final String reporterNameForLogging;
+
+	private final int capacity;
+	private final int mask;
+	private final AtomicReferenceArray<Object> elements;
+	private final AtomicLongArray sequences;
+	private final AtomicLong head = new AtomicLong(0);
+	private final AtomicLong tail = new AtomicLong(0);
+
+	private final WaitStrategy waitStrategy;
+	private final ReentrantLock notFullLock = new ReentrantLock();
+	private final Condition notFull = notFullLock.newCondition();
+	private volatile int waitingProducers = 0;
+
+	private final AtomicLong putCount = new AtomicLong(0);
+	private final AtomicLong getCount = new AtomicLong(0);
+	private final AtomicLong producerStallCount = new AtomicLong(0);
+	private final AtomicLong producerStallNanos = new AtomicLong(0);
+	private final AtomicLong maxOccupancy = new AtomicLong(0);
+
+	private final long reportingIntervalMillis;
+	private final AtomicLong lastReportedAtMillis = new AtomicLong(System.currentTimeMillis());
+
+	public RingBuffer(final String capacityString, final Class<? extends AbstractReporter> reporterClass){
+		super(null); // The elements are in the ring and not in the parent's queue
+		this.reporterNameForLogging = reporterClass.getSimpleName();
+
+		final Result<Long> capacityResult = HelperFunctions.parseLong(capacityString, 10, 2, 1 << 30);
+		if(capacityResult.error){
+			throw new RuntimeException("Invalid value for '" + keyBufferCapacity + "'. " + capacityResult.errorMessage);
+		}
+
+		final String configFilePath = Settings.getDefaultConfigFilePath(this.getClass());
+
+		final Map<String, String> map;
+		try{
+			map = FileUtility.readConfigFileAsKeyValueMap(configFilePath, "=");
+		}catch(Throwable t){
+			throw new RuntimeException("Failed to read file '"+configFilePath+"'. " + t.getMessage(), t);
+		}
+
+		final String waitStrategyString = map.get(keyWaitStrategy);
+		final Result<WaitStrategy> waitStrategyResult = HelperFunctions.parseEnumValue(WaitStrategy.class, waitStrategyString, true);
+		if(waitStrategyResult.error){
+			throw new RuntimeException("Invalid value for '"+keyWaitStrategy+"' in file '"+configFilePath+"'. "
+					+ waitStrategyResult.errorMessage);
+		}
+
+		final String reportingIntervalSecondsString = map.get(keyReportingIntervalSeconds);
+		final Result<Long> reportingIntervalSecondsResult = HelperFunctions.parseLong(reportingIntervalSecondsString, 10, Integer.MIN_VALUE, Integer.MAX_VALUE);
+		if(reportingIntervalSecondsResult.error){
+			throw new RuntimeException("Invalid value for '"+keyReportingIntervalSeconds+"' in file '"+configFilePath+"'. "
+					+ reportingIntervalSecondsResult.errorMessage);
+		}
+
+		// Rounded up to the next power of 2 so that the index can be computed with a mask
+		this.capacity = Integer.highestOneBit((int)(capacityResult.result.longValue() - 1)) << 1;
+		this.mask = this.capacity - 1;
+		this.elements = new AtomicReferenceArray<Object>(this.capacity);
+		this.sequences = new AtomicLongArray(this.capacity);
+		for(int i = 0; i < this.capacity; i++){
+			this.sequences.set(i, i);
+		}
+		this.waitStrategy = waitStrategyResult.result;
+		this.reportingIntervalMillis = TimeUnit.SECONDS.toMillis(reportingIntervalSecondsResult.result.longValue());
+
+		log(Level.INFO, String.format("%s=%s, %s=%s, %s=%s",
+				keyBufferCapacity, this.capacity,
+				keyWaitStrategy, this.waitStrategy,
+				keyReportingIntervalSeconds, reportingIntervalSecondsResult.result.intValue()));
+	}
+
+	@Override
+	public final boolean putVertex(final AbstractVertex incomingVertex){
+		if(incomingVertex == null){
+			return false;
+		}
+		return put(incomingVertex);
+	}
+
+	@Override
+	public final boolean putEdge(final AbstractEdge incomingEdge){
+		if((incomingEdge == null)
+				|| (incomingEdge.getChildVertex() == null)
+				|| (incomingEdge.getParentVertex() == null)){
+			return false;
+		}
+		return put(incomingEdge);
+	}
+
+	@Override
+	public final Object getBufferElement(){
+		report();
+		final Object element = poll();
+		if(element != null){
+			getCount.incrementAndGet();
+			signalProducers();
+		}
+		return element;
+	}
+
+	@Override
+	public final int drainTo(final List<Object> list, final int max){
+		report();
+		int drained = 0;
+		Object element;
+		while(drained < max && (element = poll()) != null){
+			list.add(element);
+			drained++;
+		}
+		if(drained > 0){
+			getCount.addAndGet(drained);
+			signalProducers();
+		}
+		return drained;
+	}
+
+	@Override
+	public final boolean isEmpty(){
+		return size() == 0;
+	}
+
+	@Override
+	public final int size(){
+		final long size = tail.get() - head.get();
+		return (int)Math.max(0, Math.min(size, capacity));
+	}
+
+	public final int getCapacity(){
+		return capacity;
+	}
+
+	public final long getPutCount(){
+		return putCount.get();
+	}
+
+	public final long getGetCount(){
+		return getCount.get();
+	}
+
+	/**
+	 * @return Number of times the producer found the buffer full
+	 */
+	public final long getProducerStallCount(){
+		return producerStallCount.get();
+	}
+
+	public final long getProducerStallMillis(){
+		return TimeUnit.NANOSECONDS.toMillis(producerStallNanos.get());
+	}
+
+	public final long getMaxOccupancy(){
+		return maxOccupancy.get();
+	}
+
+	private boolean put(final Object element){
+		report();
+		if(!offer(element)){
+			producerStallCount.incrementAndGet();
+			final long stallStartNanos = System.nanoTime();
+			boolean added = false;
+			boolean interrupted = false;
+			while(!(added = offer(element))){
+				if(isShutdown()){
+					break;
+				}
+				interrupted |= waitForSpace();
+			}
+			producerStallNanos.addAndGet(System.nanoTime() - stallStartNanos);
+			if(interrupted){
+				Thread.currentThread().interrupt(); // Restored only after the wait so that the wait does not spin
+			}
+			if(!added){
+				log(Level.WARNING, "Element discarded because the buffer was shutdown while it was full");
+				return false;
+			}
+		}
+		putCount.incrementAndGet();
+		maxOccupancy.accumulateAndGet(size(), Math::max);
+		signalConsumer();
+		return true;
+	}
+
+	private boolean offer(final Object element){
+		while(true){
+			final long position = tail.get();
+			final int index = (int)(position & mask);
+			final long difference = sequences.get(index) - position;
+			if(difference == 0){
+				if(tail.compareAndSet(position, position + 1)){
+					elements.lazySet(index, element);
+					sequences.set(index, position + 1);
+					return true;
+				}
+			}else if(difference < 0){
+				return false; // Full
+			}
+			// Else another producer took the slot. Retry.
+		}
+	}
+
+	private Object poll(){
+		while(true){
+			final long position = head.get();
+			final int index = (int)(position & mask);
+			final long difference = sequences.get(index) - (position + 1);
+			if(difference == 0){
+				if(head.compareAndSet(position, position + 1)){
+					final Object element = elements.get(index);
+					elements.lazySet(index, null);
+					sequences.set(index, position + capacity);
+					return element;
+				}
+			}else if(difference < 0){
+				return null; // Empty
+			}
+			// Else another consumer took the slot. Retry.
+		}
+	}
+
+	/**
+	 * @return true if the thread was interrupted while waiting. The interrupt flag is cleared
+	 */
+	private boolean waitForSpace(){
+		switch(waitStrategy){
+			case SPINNING: Thread.onSpinWait(); return false;
+			case YIELDING: Thread.yield(); return false;
+			case BLOCKING:
+			default:{
+				notFullLock.lock();
+				try{
+					waitingProducers++;
+					if(size() >= capacity && !isShutdown()){
+						notFull.awaitNanos(MAX_BLOCK_NANOS);
+					}
+					return false;
+				}catch(InterruptedException e){
+					return true;
+				}finally{
+					waitingProducers--;
+					notFullLock.unlock();
+				}
+			}
+		}
+	}
+
+	private void signalProducers(){
+		if(waitingProducers > 0){
+			notFullLock.lock();
+			try{
+				notFull.signalAll();
+			}finally{
+				notFullLock.unlock();
+			}
+		}
+	}
+
+	private final void log(final Level level, final String msg){
+		logger.log(level, "["+reporterNameForLogging+"] " + msg);
+	}
+
+	// Only the thread which moves the timestamp forward reports. No lock on the put/get path
+	private final void report(){
+		if(reportingIntervalMillis > 0){
+			final long lastReportedAt = lastReportedAtMillis.get();
+			final long now = System.currentTimeMillis();
+			if((now - lastReportedAt) > reportingIntervalMillis
+					&& lastReportedAtMillis.compareAndSet(lastReportedAt, now)){
+				log(Level.INFO,
+						String.format("Size=%s, Capacity=%s, Max-size=%s, Get-count=%s, Put-count=%s, "
+								+ "Producer-stall-count=%s, Producer-stall-millis=%s",
+								size(), capacity, getMaxOccupancy(), getGetCount(), getPutCount(),
+								getProducerStallCount(), getProducerStallMillis())
+						);
+			}
+		}
+	}
+}
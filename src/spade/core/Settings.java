@@ -51,6 +51,7 @@ public class Settings{
 			keyCommandLineQueryPort = "commandline_query_port",
 			keyRemoteSketchPort = "remote_sketch_port",
 			keyConnectionTimeout = "connection_timeout",
+			keyDispatchThreads = "dispatch_threads",
 			keySourceReporter = "source_reporter",
 			keyLoggerLevel = "logger_level",
 			keyTemporaryDirectoryPath = "temp_directory",
@@ -77,6 +78,7 @@ public class Settings{
 	private int commandLineQueryPort;
 	private int remoteSketchPort;
 	private int connectionTimeoutMillis;
+	private int dispatchThreads;
 	private String sourceReporter;
 	private Level loggerLevel;
 	private String temporaryDirectory;
@@ -159,6 +161,19 @@ public class Settings{
 				throw new Exception("Invalid value for key '"+ keyConnectionTimeout +"'. " + resultConnectionTimeout.toErrorString());
 			}
 			
+			// Optional for backwards compatibility with older settings files
+			final String valueDispatchThreads = map.get(keyDispatchThreads);
+			final int dispatchThreads;
+			if(valueDispatchThreads == null){
+				dispatchThreads = 1;
+			}else{
+				final Result<Long> resultDispatchThreads = HelperFunctions.parseLong(valueDispatchThreads, 10, 1, Short.MAX_VALUE);
+				if(resultDispatchThreads.error){
+					throw new Exception("Invalid value for key '"+ keyDispatchThreads +"'. " + resultDispatchThreads.toErrorString());
+				}
+				dispatchThreads = resultDispatchThreads.result.intValue();
+			}
+			
 			final String sourceReporter = map.get(keySourceReporter);
 			if(HelperFunctions.isNullOrEmpty(sourceReporter)){
 				throw new Exception("NULL/Empty value for key '" + keySourceReporter + "'");
@@ -335,6 +350,7 @@ public class Settings{
 			instance.commandLineQueryPort = resultCommandLineQueryPort.result.intValue();
 			instance.remoteSketchPort = resultRemoteSketchPort.result.intValue();
 			instance.connectionTimeoutMillis = resultConnectionTimeout.result.intValue();
+			instance.dispatchThreads = dispatchThreads;
 			instance.sourceReporter = sourceReporter;
 			instance.loggerLevel = loggerLevel;
 			instance.temporaryDirectory = temporaryDirectory;
@@ -467,6 +483,12 @@ public class Settings{
 		}
 	}
 	
+	public static int getDispatchThreads(){
+		synchronized(instance){
+			return instance.dispatchThreads;
+		}
+	}
+	
 	public static String getSourceReporter(){
 		synchronized(instance){
 			return instance.sourceReporter;
@@ -25,7 +25,9 @@ import java.util.logging.Logger;
 import spade.core.AbstractEdge;
 import spade.core.AbstractFilter;
 import spade.core.AbstractVertex;
+import spade.core.AbstractVertexConverter;
 import spade.core.Settings;
+import spade.utility.BinaryConverter;
 import spade.utility.Result;
 import spade.utility.map.external.ExternalMap;
 import spade.utility.map.external.ExternalMapArgument;
@@ -53,7 +55,8 @@ public class AuditSanity extends AbstractFilter{
 			return false;
 		}else{
 			ExternalMapArgument externalMapArgument = externalMapArgumentResult.result;
-			Result<ExternalMap<AbstractVertex, Integer>> externalMapResult = ExternalMapManager.create(externalMapArgument);
+			Result<ExternalMap<AbstractVertex, Integer>> externalMapResult = ExternalMapManager.create(externalMapArgument,
+					new AbstractVertexConverter(), new BinaryConverter.IntegerConverter());
 			if(externalMapResult.error){
 				logger.log(Level.SEVERE, "Failed to create external map '"+vertexMapId+"' from arguments: " + externalMapArgument);
 				logger.log(Level.SEVERE, externalMapResult.toErrorString());
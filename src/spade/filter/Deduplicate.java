@@ -19,6 +19,8 @@
  */
 package spade.filter;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -111,5 +113,24 @@ public class Deduplicate extends AbstractFilter{
 			putInNextFilter(incomingEdge);
 		}
 	}
+
+	@Override
+	public void putBatch(List<AbstractVertex> vertices, List<AbstractEdge> edges){
+		final List<AbstractVertex> newVertices = new ArrayList<AbstractVertex>(vertices.size());
+		for(final AbstractVertex vertex : vertices){
+			if(!negativeBloomFilter.containsAndAdd(vertex.bigHashCodeBytes())){
+				newVertices.add(vertex);
+			}
+		}
+		final List<AbstractEdge> newEdges = new ArrayList<AbstractEdge>(edges.size());
+		for(final AbstractEdge edge : edges){
+			if(!negativeBloomFilter.containsAndAdd(edge.bigHashCodeBytes())){
+				newEdges.add(edge);
+			}
+		}
+		if(!newVertices.isEmpty() || !newEdges.isEmpty()){
+			putInNextFilter(newVertices, newEdges);
+		}
+	}
 	
 }
@@ -20,7 +20,9 @@
  */
 package spade.filter;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
@@ -124,6 +126,35 @@ public class DropKeys extends AbstractFilter{
 			});
 		}
 	}
+
+	@Override
+	public void putBatch(List<AbstractVertex> vertices, List<AbstractEdge> edges){
+		List<AbstractVertex> vertexCopies = new ArrayList<AbstractVertex>(vertices.size());
+		for(AbstractVertex incomingVertex : vertices){
+			if(incomingVertex != null){
+				AbstractVertex vertexCopy = createCopyWithoutKeys(incomingVertex, keysToDrop);
+				if(vertexCopy != null){
+					vertexCopies.add(vertexCopy);
+				}
+			}else{
+				logger.log(Level.WARNING, "Null vertex");
+			}
+		}
+		List<AbstractEdge> edgeCopies = new ArrayList<AbstractEdge>(edges.size());
+		for(AbstractEdge incomingEdge : edges){
+			if(incomingEdge != null && incomingEdge.getChildVertex() != null && incomingEdge.getParentVertex() != null){
+				AbstractEdge edgeCopy = createCopyWithoutKeys(incomingEdge, keysToDrop);
+				if(edgeCopy != null){
+					edgeCopies.add(edgeCopy);
+				}
+			}else{
+				putEdge(incomingEdge); // Logs the invalid edge
+			}
+		}
+		if(!vertexCopies.isEmpty() || !edgeCopies.isEmpty()){
+			putInNextFilter(vertexCopies, edgeCopies);
+		}
+	}
 	
 	/**
 	 * Creates copy of vertex using Reflection API and removes the given keys afterwards
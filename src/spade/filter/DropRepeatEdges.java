@@ -34,6 +34,7 @@ import spade.core.AbstractEdge;
 import spade.core.AbstractFilter;
 import spade.core.AbstractVertex;
 import spade.core.Settings;
+import spade.utility.BinaryConverter;
 import spade.utility.HelperFunctions;
 import spade.utility.Result;
 import spade.utility.map.external.ExternalMap;
@@ -99,7 +100,8 @@ public class DropRepeatEdges extends AbstractFilter{
 				return false;
 			}else{
 				ExternalMapArgument externalMapArgument = externalMapArgumentResult.result;
-				Result<ExternalMap<String, HashMap<String, String>>> externalMapResult = ExternalMapManager.create(externalMapArgument);
+				Result<ExternalMap<String, HashMap<String, String>>> externalMapResult = ExternalMapManager.create(externalMapArgument,
+						new BinaryConverter.StringConverter(), new BinaryConverter.StringMapConverter());
 				if(externalMapResult.error){
 					logger.log(Level.SEVERE, "Failed to create external map '"+vertex2VertexMapId+"' from arguments: " + externalMapArgument);
 					logger.log(Level.SEVERE, externalMapResult.toErrorString());
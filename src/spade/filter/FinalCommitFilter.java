@@ -20,6 +20,7 @@
 package spade.filter;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import spade.core.AbstractEdge;
@@ -60,4 +61,28 @@ public class FinalCommitFilter extends AbstractFilter{
 			sketch.putEdge(incomingEdge);
 		}
 	}
+
+	@Override
+	public void putBatch(List<AbstractVertex> vertices, List<AbstractEdge> edges){
+		for(final AbstractStorage storage : storages){
+			if(!vertices.isEmpty()){
+				incrementStorageVertexCount(storage, storage.putVertices(vertices));
+			}
+			if(!edges.isEmpty()){
+				incrementStorageEdgeCount(storage, storage.putEdges(edges));
+			}
+		}
+		if(!sketches.isEmpty()){
+			for(final AbstractVertex vertex : vertices){
+				for(AbstractSketch sketch : sketches){
+					sketch.putVertex(vertex);
+				}
+			}
+			for(final AbstractEdge edge : edges){
+				for(AbstractSketch sketch : sketches){
+					sketch.putEdge(edge);
+				}
+			}
+		}
+	}
 }
@@ -22,18 +22,28 @@ package spade.query.quickgrail;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.io.StringWriter;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import spade.core.Query;
 import spade.core.Settings;
+import spade.query.quickgrail.core.AbstractQueryEnvironment;
+import spade.query.quickgrail.core.GraphPageWriter;
 import spade.query.quickgrail.core.Instruction;
 import spade.query.quickgrail.core.Program;
 import spade.query.quickgrail.core.QueryInstructionExecutor;
+import spade.query.quickgrail.core.QuickGrailPlanOptimizer;
 import spade.query.quickgrail.core.QuickGrailQueryResolver;
+import spade.query.quickgrail.entities.Graph;
+import spade.query.quickgrail.entities.GraphMetadata;
+import spade.query.quickgrail.entities.GraphPredicate;
+import spade.query.quickgrail.instruction.ExportGraph;
 import spade.query.quickgrail.parser.DSLParserWrapper;
+import spade.query.quickgrail.parser.ParseCommand;
 import spade.query.quickgrail.parser.ParseProgram;
+import spade.query.quickgrail.parser.ParseStatement;
 import spade.utility.ArgumentFunctions;
 import spade.utility.FileUtility;
 
@@ -44,8 +54,10 @@ public class QuickGrailExecutor{
 
 	private final Logger logger = Logger.getLogger(this.getClass().getName());
 
-	private final String keyDebug = "debug";
-	private boolean debug;
+	private final String keyDebug = "debug", keyOptimize = "optimize";
+	private boolean debug, optimize;
+
+	private static final String explainCommand = "explain";
 
 	private final QueryInstructionExecutor instructionExecutor;
 
@@ -62,23 +74,45 @@ public class QuickGrailExecutor{
 		try{
 			final Map<String, String> map = FileUtility.readConfigFileAsKeyValueMap(configFile, "=");
 			debug = ArgumentFunctions.mustParseBoolean(keyDebug, map);
+			// Optimized by default i.e. if the key is missing
+			optimize = map.containsKey(keyOptimize) ? ArgumentFunctions.mustParseBoolean(keyOptimize, map) : true;
 		}catch(Exception e){
 			throw new Exception("Failed to parse configuration file: '" + configFile + "'", e);
 		}
 	}
 
 	public Query execute(Query query){
+		return execute(query, null);
+	}
+
+	/**
+	 * If the page writer is not null and the last instruction is a graph export then the graph is given to the page
+	 * writer in pages, and the result is a summary (StreamedGraph) of the pages written.
+	 */
+	public Query execute(Query query, final GraphPageWriter pageWriter){
 		try{
+			final String explainedQuery = getExplainedQuery(query.query);
+			if(explainedQuery != null){
+				query.querySucceeded(explain(explainedQuery));
+				return query;
+			}
+
 			final DSLParserWrapper parserWrapper = new DSLParserWrapper();
 
 			final ParseProgram parseProgram = parserWrapper.fromText(query.query);
 
 			final QuickGrailQueryResolver resolver = new QuickGrailQueryResolver();
-			final Program program = resolver.resolveProgram(parseProgram, instructionExecutor.getQueryEnvironment());
+			final Program resolvedProgram = resolver.resolveProgram(parseProgram, instructionExecutor.getQueryEnvironment());
+			final Program program = optimize
+					? new QuickGrailPlanOptimizer().optimize(resolvedProgram, instructionExecutor.getQueryEnvironment())
+					: resolvedProgram;
 
 			if(debug){
 				logger.log(Level.INFO, "Parse tree:\n" + parseProgram.toString());
-				logger.log(Level.INFO, "Execution plan:\n" + program.toString());
+				logger.log(Level.INFO, "Execution plan:\n" + resolvedProgram.toString());
+				if(optimize){
+					logger.log(Level.INFO, "Optimized plan:\n" + program.toString());
+				}
 			}
 
 			try{
@@ -88,7 +122,12 @@ public class QuickGrailExecutor{
 					try{
 						instruction.updateTransformerExecutionContext(instructionExecutor,
 								query.getTransformerExecutionContext());
-						final Serializable instructionResult = instruction.execute(instructionExecutor);
+						final Serializable instructionResult;
+						if(pageWriter != null && i == instructionsSize - 1 && instruction instanceof ExportGraph){
+							instructionResult = ((ExportGraph)instruction).executeInPages(instructionExecutor, pageWriter);
+						}else{
+							instructionResult = instruction.execute(instructionExecutor);
+						}
 						instruction.setResult(instructionResult);
 						instruction.postExecute(instructionExecutor);
 					}catch(Exception e){
@@ -127,4 +166,89 @@ public class QuickGrailExecutor{
 		}
 	}
 
+	/**
+	 * @return the query after 'explain' if the query is an explain command. Otherwise null
+	 */
+	private static String getExplainedQuery(final String query){
+		if(query == null){
+			return null;
+		}
+		final String trimmedQuery = query.trim();
+		if(trimmedQuery.length() > explainCommand.length()
+				&& trimmedQuery.substring(0, explainCommand.length()).equalsIgnoreCase(explainCommand)
+				&& Character.isWhitespace(trimmedQuery.charAt(explainCommand.length()))){
+			return trimmedQuery.substring(explainCommand.length()).trim();
+		}
+		return null;
+	}
+
+	/**
+	 * Resolves (and optimizes) the query without executing it.
+	 * 
+	 * Symbols bound by the resolver are restored to what they were before.
+	 * 
+	 * @return the execution plan and the optimized plan
+	 */
+	private String explain(final String queryString){
+		final ParseProgram parseProgram = new DSLParserWrapper().fromText(queryString);
+		for(final ParseStatement statement : parseProgram.getStatements()){
+			if(statement instanceof ParseCommand
+					&& ((ParseCommand)statement).getCommandName().getValue().equalsIgnoreCase("reset")){
+				throw new RuntimeException("Cannot explain 'reset' because it is applied when the query is resolved");
+			}
+		}
+
+		final AbstractQueryEnvironment env = instructionExecutor.getQueryEnvironment();
+		final Map<String, Graph> graphSymbols = new HashMap<String, Graph>();
+		for(final String symbol : env.getCurrentGraphSymbolsStringMap().keySet()){
+			graphSymbols.put(symbol, env.getGraphSymbol(symbol));
+		}
+		final Map<String, GraphPredicate> predicateSymbols = new HashMap<String, GraphPredicate>();
+		for(final String symbol : env.getCurrentPredicateSymbolsStringMap().keySet()){
+			predicateSymbols.put(symbol, env.getPredicateSymbol(symbol));
+		}
+		final Map<String, GraphMetadata> metadataSymbols = new HashMap<String, GraphMetadata>();
+		for(final String symbol : env.getCurrentMetadataSymbolsStringMap().keySet()){
+			metadataSymbols.put(symbol, env.getMetadataSymbol(symbol));
+		}
+
+		try{
+			final Program program = new QuickGrailQueryResolver().resolveProgram(parseProgram, env);
+			String result = "Execution plan (" + program.getInstructionsSize() + " instructions):\n" + program;
+			if(optimize){
+				final Program optimizedProgram = new QuickGrailPlanOptimizer().optimize(program, env);
+				result += "\nOptimized plan (" + optimizedProgram.getInstructionsSize() + " instructions):\n"
+						+ optimizedProgram;
+			}else{
+				result += "\nOptimizer disabled";
+			}
+			return result;
+		}finally{
+			for(final String symbol : env.getCurrentGraphSymbolsStringMap().keySet()){
+				if(!graphSymbols.containsKey(symbol)){
+					env.removeGraphSymbol(symbol);
+				}
+			}
+			for(final Map.Entry<String, Graph> entry : graphSymbols.entrySet()){
+				env.setGraphSymbol(entry.getKey(), entry.getValue());
+			}
+			for(final String symbol : env.getCurrentPredicateSymbolsStringMap().keySet()){
+				if(!predicateSymbols.containsKey(symbol)){
+					env.removePredicateSymbol(symbol);
+				}
+			}
+			for(final Map.Entry<String, GraphPredicate> entry : predicateSymbols.entrySet()){
+				env.setPredicateSymbol(entry.getKey(), entry.getValue());
+			}
+			for(final String symbol : env.getCurrentMetadataSymbolsStringMap().keySet()){
+				if(!metadataSymbols.containsKey(symbol)){
+					env.removeMetadataSymbol(symbol);
+				}
+			}
+			for(final Map.Entry<String, GraphMetadata> entry : metadataSymbols.entrySet()){
+				env.setMetadataSymbol(entry.getKey(), entry.getValue());
+			}
+			env.doGarbageCollection();
+		}
+	}
 }
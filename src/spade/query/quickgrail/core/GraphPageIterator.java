@@ -0,0 +1,77 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.query.quickgrail.core;
+
+import spade.query.quickgrail.entities.Graph;
+
+/**
+ * Iterates over a QuickGrail graph as pages of spade.core.Graph with at most 'batchSize' vertices or edges.
+ * All the vertex pages are returned before the edge pages. Edges have reference vertices as endpoints.
+ * 
+ * Each page is copied into a scratch graph using the subset instructions, and then exported.
+ * The graph must not be modified while iterating.
+ */
+public class GraphPageIterator extends BatchIterator{
+
+	private final QueryInstructionExecutor executor;
+	private final Graph targetGraph;
+	private final long vertexCount, edgeCount;
+
+	private long vertexOffset = 0, edgeOffset = 0;
+	private Graph pageGraph = null;
+
+	public GraphPageIterator(final QueryInstructionExecutor executor, final Graph targetGraph, final int batchSize){
+		super(batchSize);
+		if(batchSize < 1){
+			throw new RuntimeException("Page size must be greater than zero: " + batchSize);
+		}
+		this.executor = executor;
+		this.targetGraph = targetGraph;
+		final GraphStatistic.Count count = executor.getGraphCount(targetGraph);
+		this.vertexCount = count.getVertices();
+		this.edgeCount = count.getEdges();
+	}
+
+	@Override
+	public spade.core.Graph nextBatch(){
+		if(!hasNextBatch()){
+			throw new RuntimeException("No more pages in graph: " + targetGraph.name);
+		}
+		if(pageGraph == null){
+			pageGraph = executor.createNewGraph();
+		}else{
+			executor.clearGraph(pageGraph);
+		}
+		if(vertexOffset < vertexCount){
+			executor.getSubsetVertex(pageGraph, targetGraph, vertexOffset, vertexOffset + batchSize);
+			vertexOffset += batchSize;
+			return QueryInstructionExecutor.createGraph(executor.exportVertices(pageGraph), null);
+		}else{
+			executor.getSubsetEdge(pageGraph, targetGraph, edgeOffset, edgeOffset + batchSize);
+			edgeOffset += batchSize;
+			return QueryInstructionExecutor.createGraph(null, executor.exportEdges(pageGraph));
+		}
+	}
+
+	@Override
+	public boolean hasNextBatch(){
+		return vertexOffset < vertexCount || edgeOffset < edgeCount;
+	}
+}
@@ -19,6 +19,8 @@
  */
 package spade.query.quickgrail.core;
 
+import java.io.BufferedWriter;
+import java.io.FileWriter;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -45,11 +47,12 @@ import spade.query.quickgrail.entities.GraphMetadata;
 import spade.query.quickgrail.entities.GraphPredicate;
 import spade.query.quickgrail.instruction.DescribeGraph;
 import spade.query.quickgrail.instruction.DescribeGraph.ElementType;
-import spade.query.quickgrail.instruction.ExportGraph;
+import spade.query.quickgrail.instruction.FilterGraph;
 import spade.query.quickgrail.instruction.GetEdgeEndpoint.Component;
 import spade.query.quickgrail.instruction.GetGraphStatistic;
 import spade.query.quickgrail.instruction.GetLineage;
 import spade.query.quickgrail.instruction.GetLineage.Direction;
+import spade.query.quickgrail.instruction.RemoteVariableOperation;
 import spade.query.quickgrail.instruction.SaveGraph;
 import spade.query.quickgrail.instruction.SetGraphMetadata;
 import spade.query.quickgrail.utility.QuickGrailPredicateTree.PredicateNode;
@@ -100,9 +103,14 @@ public abstract class QueryInstructionExecutor{
 	public abstract ResultTable evaluateQuery(final String nativeQuery);
 
 	public final spade.core.Graph exportGraph(final Graph targetGraph, final boolean force){
-		final GraphStatistic.Count count = getGraphCount(targetGraph);
-		long verticesAndEdges = count.getVertices() + count.getEdges();
+		checkExportLimit(targetGraph, force);
+		return createGraph(exportVertices(targetGraph), exportEdges(targetGraph));
+	}
+
+	private final void checkExportLimit(final Graph targetGraph, final boolean force){
 		if(!force){
+			final GraphStatistic.Count count = getGraphCount(targetGraph);
+			long verticesAndEdges = count.getVertices() + count.getEdges();
 			final int exportLimit = (int)getQueryEnvironment().getEnvVarManager().get(Name.exportLimit).getValue();
 			if(verticesAndEdges > exportLimit){
 				throw new RuntimeException(
@@ -110,30 +118,44 @@ public abstract class QueryInstructionExecutor{
 								+ verticesAndEdges + "'. " + "Please use 'dump all ...' to force the print.");
 			}
 		}
-		final Map<String, Map<String, String>> queriedVerticesMap = exportVertices(targetGraph);
+	}
+
+	/**
+	 * Vertices and edges are created as reference vertices and edges. An edge endpoint not in the vertices is created
+	 * as a reference vertex without annotations.
+	 * 
+	 * @param queriedVerticesMap vertices as returned by 'exportVertices'. Can be null
+	 * @param queriedEdges edges as returned by 'exportEdges'. Can be null
+	 * @return spade.core.Graph
+	 */
+	public static final spade.core.Graph createGraph(final Map<String, Map<String, String>> queriedVerticesMap,
+			final Set<QueriedEdge> queriedEdges){
 		final Map<String, AbstractVertex> verticesMap = new HashMap<String, AbstractVertex>();
-		for(Map.Entry<String, Map<String, String>> entry : queriedVerticesMap.entrySet()){
-			AbstractVertex vertex = new Vertex(entry.getKey()); // always create reference vertices
-			vertex.addAnnotations(entry.getValue());
-			verticesMap.put(entry.getKey(), vertex);
+		if(queriedVerticesMap != null){
+			for(Map.Entry<String, Map<String, String>> entry : queriedVerticesMap.entrySet()){
+				AbstractVertex vertex = new Vertex(entry.getKey()); // always create reference vertices
+				vertex.addAnnotations(entry.getValue());
+				verticesMap.put(entry.getKey(), vertex);
+			}
 		}
 
-		final Set<QueriedEdge> queriedEdges = exportEdges(targetGraph);
 		final Set<AbstractEdge> edges = new HashSet<AbstractEdge>();
-		for(final QueriedEdge queriedEdge : queriedEdges){
-			AbstractVertex child = verticesMap.get(queriedEdge.childHash);
-			AbstractVertex parent = verticesMap.get(queriedEdge.parentHash);
-			if(child == null){
-				child = new Vertex(queriedEdge.childHash);
-				// verticesMap.put(queriedEdge.childHash, child);
-			}
-			if(parent == null){
-				parent = new Vertex(queriedEdge.parentHash);
-				// verticesMap.put(queriedEdge.parentHash, parent);
+		if(queriedEdges != null){
+			for(final QueriedEdge queriedEdge : queriedEdges){
+				AbstractVertex child = verticesMap.get(queriedEdge.childHash);
+				AbstractVertex parent = verticesMap.get(queriedEdge.parentHash);
+				if(child == null){
+					child = new Vertex(queriedEdge.childHash);
+					// verticesMap.put(queriedEdge.childHash, child);
+				}
+				if(parent == null){
+					parent = new Vertex(queriedEdge.parentHash);
+					// verticesMap.put(queriedEdge.parentHash, parent);
+				}
+				final AbstractEdge edge = new Edge(queriedEdge.edgeHash, child, parent);
+				edge.addAnnotations(queriedEdge.getCopyOfAnnotations());
+				edges.add(edge);
 			}
-			final AbstractEdge edge = new Edge(queriedEdge.edgeHash, child, parent);
-			edge.addAnnotations(queriedEdge.getCopyOfAnnotations());
-			edges.add(edge);
 		}
 
 		final spade.core.Graph resultGraph = new spade.core.Graph();
@@ -142,6 +164,67 @@ public abstract class QueryInstructionExecutor{
 		return resultGraph;
 	}
 
+	/**
+	 * Pages of the graph as spade.core.Graph. See GraphPageIterator.
+	 * 
+	 * Override if the storage can read pages directly.
+	 */
+	public BatchIterator getGraphPageIterator(final Graph targetGraph, final int pageSize){
+		return new GraphPageIterator(this, targetGraph, pageSize);
+	}
+
+	private final int getExportPageSize(){
+		final Object pageSize = getQueryEnvironment().getEnvVarManager().get(Name.exportPageSize).getValue();
+		if(pageSize == null || (Integer)pageSize < 1){
+			return Integer.MAX_VALUE;
+		}
+		return (Integer)pageSize;
+	}
+
+	/**
+	 * Same as ExportGraph but the graph (local and then remote) is given to the writer in pages of size
+	 * 'exportPageSize' so that the whole graph is never in memory at once.
+	 */
+	public final StreamedGraph exportGraphInPages(final Graph targetGraph, final boolean force,
+			final GraphPageWriter pageWriter){
+		checkExportLimit(targetGraph, force);
+		return writeGraphPages(targetGraph, force, pageWriter);
+	}
+
+	private final StreamedGraph writeGraphPages(final Graph targetGraph, final boolean force,
+			final GraphPageWriter pageWriter){
+		long vertices = 0, edges = 0;
+		int pages = 0;
+
+		final BatchIterator pageIterator = getGraphPageIterator(targetGraph, getExportPageSize());
+		while(pageIterator.hasNextBatch()){
+			final spade.core.Graph page = (spade.core.Graph)pageIterator.nextBatch();
+			writeGraphPage(pageWriter, page);
+			vertices += page.vertexSet().size();
+			edges += page.edgeSet().size();
+			pages++;
+		}
+
+		final boolean verifyRemote = false;
+		final RemoteGraph remoteGraph = new RemoteVariableOperation.Export(targetGraph, force, verifyRemote).execute(this);
+		if(!remoteGraph.vertexSet().isEmpty() || !remoteGraph.edgeSet().isEmpty()){
+			writeGraphPage(pageWriter, remoteGraph);
+			vertices += remoteGraph.vertexSet().size();
+			edges += remoteGraph.edgeSet().size();
+			pages++;
+		}
+
+		return new StreamedGraph(vertices, edges, pages);
+	}
+
+	private final void writeGraphPage(final GraphPageWriter pageWriter, final spade.core.Graph page){
+		try{
+			pageWriter.writePage(page);
+		}catch(Exception e){
+			throw new RuntimeException("Failed to write graph page", e);
+		}
+	}
+
 	public abstract void getAdjacentVertex(Graph targetGraph, Graph subjectGraph, Graph sourceGraph, GetLineage.Direction direction);
 
 	public abstract void getEdge(Graph targetGraph, Graph subjectGraph, String annotationKey, PredicateOperator operator,
@@ -149,6 +232,40 @@ public abstract class QueryInstructionExecutor{
 
 	public abstract void getEdgeEndpoint(Graph targetGraph, Graph subjectGraph, Component component);
 
+	/**
+	 * Same as a chain of getVertex (or getEdge) calls with one comparison each where only the last call adds to the
+	 * target graph. Override to match all the comparisons in a single pass.
+	 *
+	 * @param targetGraph graph to add the matched vertices (or edges) to
+	 * @param subjectGraph graph to match the vertices (or edges) in
+	 * @param component vertex or edge
+	 * @param comparisons all of which must match. Empty for all the vertices (or edges) of the subject graph
+	 */
+	public void filterGraph(final Graph targetGraph, final Graph subjectGraph, final Graph.Component component,
+			final List<FilterGraph.Comparison> comparisons){
+		if(comparisons.isEmpty()){
+			if(component == Graph.Component.kVertex){
+				getVertex(targetGraph, subjectGraph, null, null, null, false);
+			}else{
+				getEdge(targetGraph, subjectGraph, null, null, null, false);
+			}
+			return;
+		}
+		Graph currentGraph = subjectGraph;
+		for(int i = 0; i < comparisons.size(); i++){
+			final FilterGraph.Comparison comparison = comparisons.get(i);
+			final Graph nextGraph = (i == comparisons.size() - 1) ? targetGraph : createNewGraph();
+			if(component == Graph.Component.kVertex){
+				getVertex(nextGraph, currentGraph,
+						comparison.annotationKey, comparison.operator, comparison.annotationValue, true);
+			}else{
+				getEdge(nextGraph, currentGraph,
+						comparison.annotationKey, comparison.operator, comparison.annotationValue, true);
+			}
+			currentGraph = nextGraph;
+		}
+	}
+
 	public abstract GraphStatistic.Count getGraphCount(final Graph graph);
 
 	public abstract GraphStatistic.Distribution getGraphDistribution(final Graph graph, final ElementType elementType, final String annotationKey,
@@ -260,10 +377,17 @@ public abstract class QueryInstructionExecutor{
 
 	public final void saveGraph(final Graph targetGraph, final SaveGraph.Format format, final boolean force,
 			final String filePath){
-		final boolean verify = false;
-		final spade.core.Graph exportedGraph = new ExportGraph(targetGraph, force, verify).execute(this);
-		try{
-			spade.core.Graph.exportGraphToFile(format, filePath, exportedGraph);
+		if(HelperFunctions.isNullOrEmpty(filePath)){
+			throw new RuntimeException("Cannot export graph to NULL/Empty file path: '" + filePath + "'");
+		}
+		checkExportLimit(targetGraph, force);
+		try(BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))){
+			final AbstractStorage fileStorage = spade.core.Graph.createExportStorage(format, writer, false);
+			try{
+				writeGraphPages(targetGraph, force, page -> spade.core.Graph.writeGraphToStorage(fileStorage, page));
+			}finally{
+				fileStorage.shutdown();
+			}
 		}catch(Exception e){
 			throw new RuntimeException("Failed to save graph to file '" + filePath + "' on SPADE server", e);
 		}
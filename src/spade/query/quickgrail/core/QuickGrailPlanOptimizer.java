@@ -0,0 +1,487 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.query.quickgrail.core;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import spade.query.quickgrail.entities.Graph;
+import spade.query.quickgrail.instruction.CollapseEdge;
+import spade.query.quickgrail.instruction.CreateEmptyGraph;
+import spade.query.quickgrail.instruction.CreateEmptyGraphMetadata;
+import spade.query.quickgrail.instruction.DescribeGraph;
+import spade.query.quickgrail.instruction.DistinctifyGraph;
+import spade.query.quickgrail.instruction.EnvironmentVariableOperation;
+import spade.query.quickgrail.instruction.EraseSymbols;
+import spade.query.quickgrail.instruction.ExportGraph;
+import spade.query.quickgrail.instruction.FilterGraph;
+import spade.query.quickgrail.instruction.GetAdjacentVertex;
+import spade.query.quickgrail.instruction.GetEdge;
+import spade.query.quickgrail.instruction.GetEdgeEndpoint;
+import spade.query.quickgrail.instruction.GetGraphStatistic;
+import spade.query.quickgrail.instruction.GetLineage;
+import spade.query.quickgrail.instruction.GetLink;
+import spade.query.quickgrail.instruction.GetList;
+import spade.query.quickgrail.instruction.GetRandomSample;
+import spade.query.quickgrail.instruction.GetShortestPath;
+import spade.query.quickgrail.instruction.GetSimplePath;
+import spade.query.quickgrail.instruction.GetSubgraph;
+import spade.query.quickgrail.instruction.GetSubset;
+import spade.query.quickgrail.instruction.GetVertex;
+import spade.query.quickgrail.instruction.GetWhereAnnotationsExist;
+import spade.query.quickgrail.instruction.InsertLiteralEdge;
+import spade.query.quickgrail.instruction.InsertLiteralVertex;
+import spade.query.quickgrail.instruction.IntersectGraph;
+import spade.query.quickgrail.instruction.LimitGraph;
+import spade.query.quickgrail.instruction.PrintPredicate;
+import spade.query.quickgrail.instruction.RemoteVariableOperation;
+import spade.query.quickgrail.instruction.SaveGraph;
+import spade.query.quickgrail.instruction.SetGraphMetadata;
+import spade.query.quickgrail.instruction.SubtractGraph;
+import spade.query.quickgrail.instruction.UnionGraph;
+
+/**
+ * Rewrites a resolved program into an equivalent one with fewer (or cheaper) instructions.
+ * 
+ * 1) Filter fusion: getVertex (or getEdge) on the temporary result of another getVertex (or getEdge) is replaced with
+ * a single FilterGraph on the subject of the first one with the comparisons of both.
+ * 2) Duplicate distinctify: distinctifyGraph of a graph already known to be distinct into an empty graph is replaced
+ * with unionGraph.
+ * 3) Dead instructions: instructions which only write temporary graphs that are never read are removed.
+ * 
+ * Only graphs created in the program (with createEmptyGraph) and not bound to a symbol are considered temporary.
+ * Programs with instructions not known to the optimizer (native queries, transformers, etc.) are returned as is.
+ */
+public class QuickGrailPlanOptimizer{
+
+	/**
+	 * @param program resolved program
+	 * @param env environment the program was resolved in (with the symbols bound by the program)
+	 * @return the optimized program, or the same program if it cannot be optimized
+	 */
+	public Program optimize(final Program program, final AbstractQueryEnvironment env){
+		final List<Instruction<? extends Serializable>> instructions = new ArrayList<Instruction<? extends Serializable>>();
+		for(int i = 0; i < program.getInstructionsSize(); i++){
+			final Instruction<? extends Serializable> instruction = program.getInstruction(i);
+			if(!isKnown(instruction)){
+				return program;
+			}
+			instructions.add(instruction);
+		}
+
+		final Set<String> liveGraphNames = getLiveGraphNames(instructions, env);
+		fuseFilters(instructions, liveGraphNames);
+		replaceDuplicateDistinctify(instructions, env);
+		removeDeadInstructions(instructions, liveGraphNames);
+		return new Program(instructions);
+	}
+
+	private static boolean isKnown(final Instruction<? extends Serializable> instruction){
+		return getInputs(instruction) != null
+				|| instruction instanceof EraseSymbols
+				|| instruction instanceof EnvironmentVariableOperation
+				|| instruction instanceof GetList
+				|| instruction instanceof PrintPredicate
+				|| instruction instanceof CreateEmptyGraphMetadata;
+	}
+
+	/**
+	 * @return the only graph written by the instruction. Null if none (or if the instruction is not known)
+	 */
+	private static Graph getOutput(final Instruction<? extends Serializable> instruction){
+		if(instruction instanceof CreateEmptyGraph){
+			return ((CreateEmptyGraph)instruction).graph;
+		}else if(instruction instanceof GetVertex){
+			return ((GetVertex)instruction).targetGraph;
+		}else if(instruction instanceof GetEdge){
+			return ((GetEdge)instruction).targetGraph;
+		}else if(instruction instanceof FilterGraph){
+			return ((FilterGraph)instruction).targetGraph;
+		}else if(instruction instanceof DistinctifyGraph){
+			return ((DistinctifyGraph)instruction).targetGraph;
+		}else if(instruction instanceof UnionGraph){
+			return ((UnionGraph)instruction).targetGraph;
+		}else if(instruction instanceof IntersectGraph){
+			return ((IntersectGraph)instruction).outputGraph;
+		}else if(instruction instanceof SubtractGraph){
+			return ((SubtractGraph)instruction).outputGraph;
+		}else if(instruction instanceof GetLineage){
+			return ((GetLineage)instruction).targetGraph;
+		}else if(instruction instanceof GetAdjacentVertex){
+			return ((GetAdjacentVertex)instruction).targetGraph;
+		}else if(instruction instanceof GetEdgeEndpoint){
+			return ((GetEdgeEndpoint)instruction).targetGraph;
+		}else if(instruction instanceof GetSubgraph){
+			return ((GetSubgraph)instruction).targetGraph;
+		}else if(instruction instanceof GetLink){
+			return ((GetLink)instruction).targetGraph;
+		}else if(instruction instanceof GetSimplePath){
+			return ((GetSimplePath)instruction).targetGraph;
+		}else if(instruction instanceof GetShortestPath){
+			return ((GetShortestPath)instruction).targetGraph;
+		}else if(instruction instanceof LimitGraph){
+			return ((LimitGraph)instruction).targetGraph;
+		}else if(instruction instanceof GetSubset){
+			return ((GetSubset)instruction).targetGraph;
+		}else if(instruction instanceof GetRandomSample){
+			return ((GetRandomSample)instruction).targetGraph;
+		}else if(instruction instanceof CollapseEdge){
+			return ((CollapseEdge)instruction).targetGraph;
+		}else if(instruction instanceof GetWhereAnnotationsExist){
+			return ((GetWhereAnnotationsExist)instruction).targetGraph;
+		}else if(instruction instanceof InsertLiteralVertex){
+			return ((InsertLiteralVertex)instruction).targetGraph;
+		}else if(instruction instanceof InsertLiteralEdge){
+			return ((InsertLiteralEdge)instruction).targetGraph;
+		}else if(instruction instanceof RemoteVariableOperation.Copy){
+			return ((RemoteVariableOperation.Copy)instruction).dstGraph;
+		}else if(instruction instanceof RemoteVariableOperation.Intersect){
+			return ((RemoteVariableOperation.Intersect)instruction).resultGraph;
+		}else if(instruction instanceof RemoteVariableOperation.Subtract){
+			return ((RemoteVariableOperation.Subtract)instruction).resultGraph;
+		}
+		return null;
+	}
+
+	/**
+	 * @return the graphs read by the instruction. Null if the instruction is not known
+	 */
+	private static List<Graph> getInputs(final Instruction<? extends Serializable> instruction){
+		if(instruction instanceof CreateEmptyGraph){
+			return Collections.emptyList();
+		}else if(instruction instanceof GetVertex){
+			return Arrays.asList(((GetVertex)instruction).subjectGraph);
+		}else if(instruction instanceof GetEdge){
+			return Arrays.asList(((GetEdge)instruction).subjectGraph);
+		}else if(instruction instanceof FilterGraph){
+			return Arrays.asList(((FilterGraph)instruction).subjectGraph);
+		}else if(instruction instanceof DistinctifyGraph){
+			return Arrays.asList(((DistinctifyGraph)instruction).sourceGraph);
+		}else if(instruction instanceof UnionGraph){
+			final UnionGraph i = (UnionGraph)instruction;
+			return Arrays.asList(i.sourceGraph, i.targetGraph);
+		}else if(instruction instanceof IntersectGraph){
+			final IntersectGraph i = (IntersectGraph)instruction;
+			return Arrays.asList(i.lhsGraph, i.rhsGraph);
+		}else if(instruction instanceof SubtractGraph){
+			final SubtractGraph i = (SubtractGraph)instruction;
+			return Arrays.asList(i.minuendGraph, i.subtrahendGraph);
+		}else if(instruction instanceof GetLineage){
+			final GetLineage i = (GetLineage)instruction;
+			return Arrays.asList(i.subjectGraph, i.startGraph);
+		}else if(instruction instanceof GetAdjacentVertex){
+			final GetAdjacentVertex i = (GetAdjacentVertex)instruction;
+			return Arrays.asList(i.subjectGraph, i.sourceGraph);
+		}else if(instruction instanceof GetEdgeEndpoint){
+			return Arrays.asList(((GetEdgeEndpoint)instruction).subjectGraph);
+		}else if(instruction instanceof GetSubgraph){
+			final GetSubgraph i = (GetSubgraph)instruction;
+			return Arrays.asList(i.subjectGraph, i.skeletonGraph);
+		}else if(instruction instanceof GetLink){
+			final GetLink i = (GetLink)instruction;
+			return Arrays.asList(i.subjectGraph, i.srcGraph, i.dstGraph);
+		}else if(instruction instanceof GetSimplePath){
+			final GetSimplePath i = (GetSimplePath)instruction;
+			return Arrays.asList(i.subjectGraph, i.srcGraph, i.dstGraph);
+		}else if(instruction instanceof GetShortestPath){
+			final GetShortestPath i = (GetShortestPath)instruction;
+			return Arrays.asList(i.subjectGraph, i.srcGraph, i.dstGraph);
+		}else if(instruction instanceof LimitGraph){
+			return Arrays.asList(((LimitGraph)instruction).sourceGraph);
+		}else if(instruction instanceof GetSubset){
+			return Arrays.asList(((GetSubset)instruction).sourceGraph);
+		}else if(instruction instanceof GetRandomSample){
+			return Arrays.asList(((GetRandomSample)instruction).sourceGraph);
+		}else if(instruction instanceof CollapseEdge){
+			return Arrays.asList(((CollapseEdge)instruction).sourceGraph);
+		}else if(instruction instanceof GetWhereAnnotationsExist){
+			return Arrays.asList(((GetWhereAnnotationsExist)instruction).subjectGraph);
+		}else if(instruction instanceof InsertLiteralVertex || instruction instanceof InsertLiteralEdge){
+			return Collections.emptyList();
+		}else if(instruction instanceof RemoteVariableOperation.Copy){
+			return Arrays.asList(((RemoteVariableOperation.Copy)instruction).srcGraph);
+		}else if(instruction instanceof RemoteVariableOperation.Intersect){
+			final RemoteVariableOperation.Intersect i = (RemoteVariableOperation.Intersect)instruction;
+			return Arrays.asList(i.lhsGraph, i.rhsGraph);
+		}else if(instruction instanceof RemoteVariableOperation.Subtract){
+			final RemoteVariableOperation.Subtract i = (RemoteVariableOperation.Subtract)instruction;
+			return Arrays.asList(i.lhsGraph, i.rhsGraph);
+		}else if(instruction instanceof ExportGraph){
+			return Arrays.asList(((ExportGraph)instruction).targetGraph);
+		}else if(instruction instanceof SaveGraph){
+			return Arrays.asList(((SaveGraph)instruction).targetGraph);
+		}else if(instruction instanceof GetGraphStatistic){
+			return Arrays.asList(((GetGraphStatistic<?>)instruction).graph);
+		}else if(instruction instanceof DescribeGraph){
+			return Arrays.asList(((DescribeGraph)instruction).graph);
+		}else if(instruction instanceof SetGraphMetadata){
+			return Arrays.asList(((SetGraphMetadata)instruction).sourceGraph);
+		}else if(instruction instanceof RemoteVariableOperation.List){
+			return Arrays.asList(((RemoteVariableOperation.List)instruction).graph);
+		}else if(instruction instanceof RemoteVariableOperation.Export){
+			return Arrays.asList(((RemoteVariableOperation.Export)instruction).graph);
+		}
+		return null;
+	}
+
+	/**
+	 * Lineage is never removed because it also updates the transformer execution context
+	 */
+	private static boolean isRemovable(final Instruction<? extends Serializable> instruction){
+		return getOutput(instruction) != null && !(instruction instanceof GetLineage);
+	}
+
+	/**
+	 * Graphs which must not be touched by the optimizer. Everything except the graphs created in the program and
+	 * not bound to symbols.
+	 */
+	private static Set<String> getLiveGraphNames(final List<Instruction<? extends Serializable>> instructions,
+			final AbstractQueryEnvironment env){
+		final Set<String> createdGraphNames = new HashSet<String>();
+		final Set<String> allGraphNames = new HashSet<String>();
+		for(final Instruction<? extends Serializable> instruction : instructions){
+			if(instruction instanceof CreateEmptyGraph){
+				createdGraphNames.add(((CreateEmptyGraph)instruction).graph.name);
+			}
+			final List<Graph> inputs = getInputs(instruction);
+			if(inputs != null){
+				for(final Graph input : inputs){
+					allGraphNames.add(input.name);
+				}
+			}
+			final Graph output = getOutput(instruction);
+			if(output != null){
+				allGraphNames.add(output.name);
+			}
+		}
+
+		final Set<String> liveGraphNames = new HashSet<String>(allGraphNames);
+		liveGraphNames.removeAll(createdGraphNames);
+		liveGraphNames.add(env.getBaseGraph().name);
+		liveGraphNames.addAll(env.getCurrentGraphSymbolsStringMap().values());
+		liveGraphNames.addAll(env.getCurrentMetadataSymbolsStringMap().values());
+		return liveGraphNames;
+	}
+
+	private static List<FilterGraph.Comparison> getComparisons(final Instruction<? extends Serializable> instruction){
+		final List<FilterGraph.Comparison> comparisons = new ArrayList<FilterGraph.Comparison>();
+		if(instruction instanceof GetVertex){
+			final GetVertex getVertex = (GetVertex)instruction;
+			if(getVertex.hasArguments()){
+				comparisons.add(new FilterGraph.Comparison(
+						getVertex.annotationKey, getVertex.operator, getVertex.annotationValue));
+			}
+		}else if(instruction instanceof GetEdge){
+			final GetEdge getEdge = (GetEdge)instruction;
+			if(getEdge.hasArguments()){
+				comparisons.add(new FilterGraph.Comparison(
+						getEdge.annotationKey, getEdge.operator, getEdge.annotationValue));
+			}
+		}else if(instruction instanceof FilterGraph){
+			comparisons.addAll(((FilterGraph)instruction).comparisons);
+		}
+		return comparisons;
+	}
+
+	/**
+	 * @return vertex or edge if the instruction is a filter. Null otherwise
+	 */
+	private static Graph.Component getFilterComponent(final Instruction<? extends Serializable> instruction){
+		if(instruction instanceof GetVertex){
+			return Graph.Component.kVertex;
+		}else if(instruction instanceof GetEdge){
+			return Graph.Component.kEdge;
+		}else if(instruction instanceof FilterGraph){
+			return ((FilterGraph)instruction).component;
+		}
+		return null;
+	}
+
+	private static Graph getFilterSubject(final Instruction<? extends Serializable> instruction){
+		if(instruction instanceof GetVertex){
+			return ((GetVertex)instruction).subjectGraph;
+		}else if(instruction instanceof GetEdge){
+			return ((GetEdge)instruction).subjectGraph;
+		}else if(instruction instanceof FilterGraph){
+			return ((FilterGraph)instruction).subjectGraph;
+		}
+		return null;
+	}
+
+	/**
+	 * A filter reading a temporary graph which is written only by (the createEmptyGraph and) a single filter on the
+	 * same component, and read by nothing else, is replaced by a filter on the subject of the other filter.
+	 * The other filter is left for dead instruction removal.
+	 */
+	private static void fuseFilters(final List<Instruction<? extends Serializable>> instructions,
+			final Set<String> liveGraphNames){
+		for(int c = 0; c < instructions.size(); c++){
+			final Instruction<? extends Serializable> consumer = instructions.get(c);
+			final Graph.Component component = getFilterComponent(consumer);
+			if(component == null){
+				continue;
+			}
+			final Graph intermediateGraph = getFilterSubject(consumer);
+			if(liveGraphNames.contains(intermediateGraph.name)){
+				continue;
+			}
+
+			int producerIndex = -1;
+			boolean fusable = true;
+			for(int i = 0; i < instructions.size() && fusable; i++){
+				final Instruction<? extends Serializable> instruction = instructions.get(i);
+				final List<Graph> inputs = getInputs(instruction);
+				if(i != c && inputs != null && inputs.contains(intermediateGraph)){
+					fusable = false; // Read by another instruction
+				}
+				final Graph output = getOutput(instruction);
+				if(output != null && output.equals(intermediateGraph) && !(instruction instanceof CreateEmptyGraph)){
+					if(producerIndex == -1 && i < c && getFilterComponent(instruction) == component){
+						producerIndex = i;
+					}else{
+						fusable = false; // Written by more than one filter (or by something else)
+					}
+				}
+			}
+			if(!fusable || producerIndex == -1){
+				continue;
+			}
+
+			final Instruction<? extends Serializable> producer = instructions.get(producerIndex);
+			final Graph subjectGraph = getFilterSubject(producer);
+			if(subjectGraph.equals(intermediateGraph)){
+				continue;
+			}
+			for(int i = producerIndex + 1; i < c && fusable; i++){
+				final Graph output = getOutput(instructions.get(i));
+				if(output != null && (output.equals(subjectGraph) || output.equals(intermediateGraph))){
+					fusable = false; // Subject modified (or the intermediate graph cleared) between the two filters
+				}
+			}
+			if(!fusable){
+				continue;
+			}
+
+			final List<FilterGraph.Comparison> comparisons = getComparisons(producer);
+			comparisons.addAll(getComparisons(consumer));
+			final Graph targetGraph = getOutput(consumer);
+			instructions.set(c, new FilterGraph(targetGraph, subjectGraph, component, comparisons));
+		}
+	}
+
+	/**
+	 * distinctifyGraph into an empty graph from a graph which cannot have duplicates is the same as unionGraph.
+	 * 
+	 * Graphs which cannot have duplicates: the base graph, graphs from before the program, empty graphs, and graphs
+	 * into which only a distinctifyGraph (or a union of a graph without duplicates) was done.
+	 */
+	private static void replaceDuplicateDistinctify(final List<Instruction<? extends Serializable>> instructions,
+			final AbstractQueryEnvironment env){
+		final Set<String> createdGraphNames = new HashSet<String>();
+		for(final Instruction<? extends Serializable> instruction : instructions){
+			if(instruction instanceof CreateEmptyGraph){
+				createdGraphNames.add(((CreateEmptyGraph)instruction).graph.name);
+			}
+		}
+
+		final Map<String, Boolean> emptyGraphs = new HashMap<String, Boolean>();
+		final Map<String, Boolean> distinctGraphs = new HashMap<String, Boolean>();
+		for(int i = 0; i < instructions.size(); i++){
+			final Instruction<? extends Serializable> instruction = instructions.get(i);
+			final Graph output = getOutput(instruction);
+			if(output == null || instruction instanceof RemoteVariableOperation.Copy){
+				continue; // Nothing written locally
+			}
+			if(instruction instanceof CreateEmptyGraph){
+				emptyGraphs.put(output.name, true);
+				distinctGraphs.put(output.name, true);
+				continue;
+			}
+
+			final boolean outputEmpty = Boolean.TRUE.equals(emptyGraphs.get(output.name));
+			boolean outputDistinct = false;
+			if(instruction instanceof DistinctifyGraph){
+				final Graph sourceGraph = ((DistinctifyGraph)instruction).sourceGraph;
+				if(outputEmpty && isDistinct(sourceGraph, distinctGraphs, createdGraphNames, env)){
+					instructions.set(i, new UnionGraph(output, sourceGraph));
+				}
+				outputDistinct = outputEmpty;
+			}else if(instruction instanceof UnionGraph){
+				final Graph sourceGraph = ((UnionGraph)instruction).sourceGraph;
+				outputDistinct = outputEmpty && isDistinct(sourceGraph, distinctGraphs, createdGraphNames, env);
+			}
+			emptyGraphs.put(output.name, false);
+			distinctGraphs.put(output.name, outputDistinct);
+		}
+	}
+
+	private static boolean isDistinct(final Graph graph, final Map<String, Boolean> distinctGraphs,
+			final Set<String> createdGraphNames, final AbstractQueryEnvironment env){
+		if(env.isBaseGraph(graph)){
+			return true;
+		}
+		if(!createdGraphNames.contains(graph.name)){
+			// Graphs from before the program are only reachable through symbols which are always distinctified
+			return env.getCurrentGraphSymbolsStringMap().containsValue(graph.name);
+		}
+		return Boolean.TRUE.equals(distinctGraphs.get(graph.name));
+	}
+
+	/**
+	 * Removes instructions whose output is a temporary graph which is not read by any instruction left in the
+	 * program, until there are no more to remove.
+	 */
+	private static void removeDeadInstructions(final List<Instruction<? extends Serializable>> instructions,
+			final Set<String> liveGraphNames){
+		boolean removed = true;
+		while(removed){
+			removed = false;
+			final Set<String> readGraphNames = new HashSet<String>();
+			for(final Instruction<? extends Serializable> instruction : instructions){
+				final List<Graph> inputs = getInputs(instruction);
+				if(inputs != null){
+					for(final Graph input : inputs){
+						// A graph reading itself (i.e. union into target) does not keep it alive
+						if(!input.equals(getOutput(instruction))){
+							readGraphNames.add(input.name);
+						}
+					}
+				}
+			}
+			for(int i = instructions.size() - 1; i > -1; i--){
+				final Instruction<? extends Serializable> instruction = instructions.get(i);
+				if(isRemovable(instruction)){
+					final String outputName = getOutput(instruction).name;
+					if(!liveGraphNames.contains(outputName) && !readGraphNames.contains(outputName)){
+						instructions.remove(i);
+						removed = true;
+					}
+				}
+			}
+		}
+	}
+}
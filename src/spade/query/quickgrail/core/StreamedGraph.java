@@ -0,0 +1,44 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.query.quickgrail.core;
+
+import java.io.Serializable;
+
+/**
+ * Result of a graph export which was written as pages instead of being returned as one spade.core.Graph.
+ */
+public final class StreamedGraph implements Serializable{
+
+	private static final long serialVersionUID = -3904416721873255092L;
+
+	public final long vertices, edges;
+	public final int pages;
+
+	public StreamedGraph(final long vertices, final long edges, final int pages){
+		this.vertices = vertices;
+		this.edges = edges;
+		this.pages = pages;
+	}
+
+	@Override
+	public String toString(){
+		return "Exported " + vertices + " vertices and " + edges + " edges in " + pages + " page(s)";
+	}
+}
@@ -21,9 +21,11 @@ package spade.query.quickgrail.instruction;
 
 import java.util.ArrayList;
 
+import spade.query.quickgrail.core.GraphPageWriter;
 import spade.query.quickgrail.core.Instruction;
 import spade.query.quickgrail.core.QueryInstructionExecutor;
 import spade.query.quickgrail.core.RemoteGraph;
+import spade.query.quickgrail.core.StreamedGraph;
 import spade.query.quickgrail.entities.Graph;
 import spade.query.quickgrail.utility.TreeStringSerializable;
 
@@ -72,4 +74,11 @@ public class ExportGraph extends Instruction<spade.core.Graph>{
 
 		return resultGraph;
 	}
+
+	/**
+	 * Instead of returning the graph, give it to the page writer in pages.
+	 */
+	public final StreamedGraph executeInPages(final QueryInstructionExecutor executor, final GraphPageWriter pageWriter){
+		return executor.exportGraphInPages(targetGraph, force, pageWriter);
+	}
 }
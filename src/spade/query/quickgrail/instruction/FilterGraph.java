@@ -0,0 +1,94 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.query.quickgrail.instruction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import spade.query.quickgrail.core.Instruction;
+import spade.query.quickgrail.core.QueryInstructionExecutor;
+import spade.query.quickgrail.core.QuickGrailQueryResolver.PredicateOperator;
+import spade.query.quickgrail.entities.Graph;
+import spade.query.quickgrail.utility.TreeStringSerializable;
+
+/**
+ * Get the vertices (or edges) of the subject graph which match all the comparisons.
+ * 
+ * Not generated by the resolver. The plan optimizer fuses a chain of getVertex (or getEdge) instructions into this.
+ * No comparisons means all the vertices (or edges) of the subject graph.
+ */
+public class FilterGraph extends Instruction<String>{
+
+	public final Graph targetGraph, subjectGraph;
+	public final Graph.Component component;
+	public final List<Comparison> comparisons;
+
+	public FilterGraph(Graph targetGraph, Graph subjectGraph, Graph.Component component,
+			List<Comparison> comparisons){
+		this.targetGraph = targetGraph;
+		this.subjectGraph = subjectGraph;
+		this.component = component;
+		this.comparisons = Collections.unmodifiableList(new ArrayList<Comparison>(comparisons));
+	}
+
+	@Override
+	public String getLabel(){
+		return "FilterGraph";
+	}
+
+	@Override
+	protected void getFieldStringItems(ArrayList<String> inline_field_names, ArrayList<String> inline_field_values,
+			ArrayList<String> non_container_child_field_names,
+			ArrayList<TreeStringSerializable> non_container_child_fields, ArrayList<String> container_child_field_names,
+			ArrayList<ArrayList<? extends TreeStringSerializable>> container_child_fields){
+		inline_field_names.add("targetGraph");
+		inline_field_values.add(targetGraph.name);
+		inline_field_names.add("subjectGraph");
+		inline_field_values.add(subjectGraph.name);
+		inline_field_names.add("component");
+		inline_field_values.add(component.name());
+		inline_field_names.add("comparisons");
+		inline_field_values.add(comparisons.toString());
+	}
+
+	@Override
+	public final String execute(final QueryInstructionExecutor executor){
+		executor.filterGraph(targetGraph, subjectGraph, component, comparisons);
+		return null;
+	}
+
+	public static final class Comparison{
+		public final String annotationKey;
+		public final PredicateOperator operator;
+		public final String annotationValue;
+
+		public Comparison(String annotationKey, PredicateOperator operator, String annotationValue){
+			this.annotationKey = annotationKey;
+			this.operator = operator;
+			this.annotationValue = annotationValue;
+		}
+
+		@Override
+		public String toString(){
+			return annotationKey + " " + operator + " '" + annotationValue + "'";
+		}
+	}
+}
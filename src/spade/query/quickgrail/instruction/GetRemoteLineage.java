@@ -21,6 +21,14 @@ package spade.query.quickgrail.instruction;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -32,16 +40,33 @@ import spade.query.quickgrail.core.QueryInstructionExecutor;
 import spade.query.quickgrail.core.QuickGrailQueryResolver.PredicateOperator;
 import spade.query.quickgrail.entities.Graph;
 import spade.reporter.audit.OPMConstants;
+import spade.utility.ArgumentFunctions;
 import spade.utility.DiscrepancyDetector;
+import spade.utility.FileUtility;
 import spade.utility.HelperFunctions;
 import spade.utility.RemoteSPADEQueryConnection;
-
+import spade.utility.RemoteSPADEQueryConnectionPool;
+
+/**
+ * Local lineage followed by the lineage on the remote SPADE servers that the local network vertices in it
+ * are connected to.
+ * 
+ * The network vertices are grouped by remote server, and by the remaining depth. Each group is matched on the remote
+ * server with one predicate. The remote servers are queried in parallel using pooled connections.
+ */
 public class GetRemoteLineage extends GetLineage{
 
 	private static final Logger logger = Logger.getLogger(GetRemoteLineage.class.getName());
 
+	private static final String keyThreads = "threads", keyConnectTimeoutMillis = "connectTimeoutMillis",
+			keyIdleConnectionsPerServer = "idleConnectionsPerServer",
+			keyIdleConnectionTimeoutMillis = "idleConnectionTimeoutMillis", keyVerticesPerQuery = "verticesPerQuery";
+
 	private static final Object lock = new Object();
 	private static DiscrepancyDetector discrepancyDetector = null;
+	private static ExecutorService remoteQueryExecutor = null;
+	private static RemoteSPADEQueryConnectionPool connectionPool = null;
+	private static int verticesPerQuery;
 
 	public GetRemoteLineage(Graph targetGraph, Graph subjectGraph, Graph startGraph, int depth, Direction direction){
 		super(targetGraph, subjectGraph, startGraph, depth, direction);
@@ -52,6 +77,36 @@ public class GetRemoteLineage extends GetLineage{
 		return "GetRemoteLineage";
 	}
 
+	// Must hold the lock
+	private static void initializeRemoteQuerying(){
+		final String configFilePath = Settings.getDefaultConfigFilePath(GetRemoteLineage.class);
+		final int threads, connectTimeoutMillis, idleConnectionsPerServer;
+		final long idleConnectionTimeoutMillis;
+		try{
+			final Map<String, String> map = FileUtility.readConfigFileAsKeyValueMap(configFilePath, "=");
+			threads = ArgumentFunctions.mustParseInteger(keyThreads, map);
+			connectTimeoutMillis = ArgumentFunctions.mustParseInteger(keyConnectTimeoutMillis, map);
+			idleConnectionsPerServer = ArgumentFunctions.mustParseInteger(keyIdleConnectionsPerServer, map);
+			idleConnectionTimeoutMillis = ArgumentFunctions.mustParseLong(keyIdleConnectionTimeoutMillis, map);
+			verticesPerQuery = ArgumentFunctions.mustParseInteger(keyVerticesPerQuery, map);
+			if(threads < 1){
+				throw new Exception("'" + keyThreads + "' must be greater than zero");
+			}
+			if(verticesPerQuery < 1){
+				throw new Exception("'" + keyVerticesPerQuery + "' must be greater than zero");
+			}
+		}catch(Exception e){
+			throw new RuntimeException("Failed to read config file: " + configFilePath, e);
+		}
+		connectionPool = new RemoteSPADEQueryConnectionPool(Kernel.getHostName(), Kernel.getClientSocketFactory(),
+				connectTimeoutMillis, idleConnectionsPerServer, idleConnectionTimeoutMillis);
+		remoteQueryExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+			final Thread thread = new Thread(runnable, "Remote-Lineage-Query-Thread");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
 	@Override
 	public final String execute(final QueryInstructionExecutor executor){
 		synchronized(lock){
@@ -62,6 +117,9 @@ public class GetRemoteLineage extends GetLineage{
 					throw new RuntimeException("Failed to initialize discrepancy detector", e);
 				}
 			}
+			if(remoteQueryExecutor == null){
+				initializeRemoteQuerying();
+			}
 		}
 
 		if(Direction.kAncestor.equals(direction) || Direction.kDescendant.equals(direction)){
@@ -77,105 +135,200 @@ public class GetRemoteLineage extends GetLineage{
 	}
 
 	private final void executeOneDirection(final QueryInstructionExecutor executor, final Direction direction){
-		Graph networkVerticesGraph = executor.createNewGraph();
+		final Graph networkVerticesGraph = executor.createNewGraph();
 		executor.getVertex(networkVerticesGraph, targetGraph, OPMConstants.ARTIFACT_SUBTYPE, PredicateOperator.EQUAL,
 				OPMConstants.SUBTYPE_NETWORK_SOCKET, true);
-		GraphStatistic.Count networkVerticesCount = executor.getGraphCount(networkVerticesGraph);
-		while(networkVerticesCount.getVertices() > 0){
-			// Get one network vertex
-			final Graph oneNetworkVertexGraph = executor.createNewGraph();
-			executor.limitGraph(oneNetworkVertexGraph, networkVerticesGraph, 1);
-
-			final Graph tmpNetworkVerticesGraph = executor.createNewGraph();
-			// Remove the found network vertices from the working set (i.e.
-			// networkVerticesGraph)
-			executor.subtractGraph(tmpNetworkVerticesGraph, networkVerticesGraph, oneNetworkVertexGraph,
-					Graph.Component.kVertex);
-			executor.clearGraph(networkVerticesGraph);
-			networkVerticesGraph = tmpNetworkVerticesGraph;
-			// Update the graph count variable
-			networkVerticesCount = executor.getGraphCount(networkVerticesGraph);
-
-			final ArrayList<Integer> oneNetworkVertexDepths;
-			if(direction == Direction.kAncestor){
-				oneNetworkVertexDepths = executor.getPathLengths(subjectGraph, startGraph, oneNetworkVertexGraph,
-						depth);
-			}else{ // descendants
-				oneNetworkVertexDepths = executor.getPathLengths(subjectGraph, oneNetworkVertexGraph, startGraph,
-						depth);
-			}
-			final Integer oneNetworkVertexMinDepth = HelperFunctions.min(oneNetworkVertexDepths);
-			final spade.core.Graph oneNetworkVertexGraphMaterialized = executor.exportGraph(oneNetworkVertexGraph,
-					true);
-			final AbstractVertex oneNetworkVertexMaterialized = oneNetworkVertexGraphMaterialized.vertexSet().iterator()
-					.next();
 
-			RemoteSPADEQueryConnection connection = null;
-			try{
-				final String remoteAddress = getRemoteAddress(oneNetworkVertexMaterialized);
-				final int spadeQueryPort = Settings.getCommandLineQueryPort();
-				connection = new RemoteSPADEQueryConnection(Kernel.getHostName(), remoteAddress, spadeQueryPort);
-				connection.connect(Kernel.getClientSocketFactory(), 5 * 1000);
-
-				final String remoteVerticesPredicate = buildRemoteGetVertexPredicate(oneNetworkVertexMaterialized);
-				final String remoteVerticesSymbol = connection.getBaseVertices(remoteVerticesPredicate);
-				final GraphStatistic.Count remoteVerticesCount = connection.getGraphCount(remoteVerticesSymbol);
-				if(remoteVerticesCount.getVertices() <= 0){
+		// remote address -> remaining depth -> predicates
+		final Map<String, TreeMap<Integer, LinkedHashSet<String>>> remotePredicates =
+				new TreeMap<String, TreeMap<Integer, LinkedHashSet<String>>>();
+		for(final Map.Entry<Integer, List<AbstractVertex>> entry
+				: getNetworkVertexDepths(executor, networkVerticesGraph, direction).entrySet()){
+			final Integer remoteDepth = depth - entry.getKey();
+			for(final AbstractVertex networkVertex : entry.getValue()){
+				final String remoteAddress = getRemoteAddress(networkVertex);
+				if(HelperFunctions.isNullOrEmpty(remoteAddress)){
+					logger.log(Level.WARNING, "Skipped network vertex without remote address: " + networkVertex);
 					continue;
 				}
-				final Integer remoteDepth = depth - oneNetworkVertexMinDepth;
-				final String remoteLineageSymbol = connection.getBaseLineage(remoteVerticesSymbol, remoteDepth,
-						direction);
-				final GraphStatistic.Count remoteLineageStats = connection.getGraphCount(remoteLineageSymbol);
-				if(remoteLineageStats.isEmpty()){
-					continue;
+				remotePredicates.computeIfAbsent(remoteAddress, k -> new TreeMap<Integer, LinkedHashSet<String>>())
+						.computeIfAbsent(remoteDepth, k -> new LinkedHashSet<String>())
+						.add(buildRemoteGetVertexPredicate(networkVertex));
+			}
+		}
+
+		final int spadeQueryPort = Settings.getCommandLineQueryPort();
+		final Map<String, Future<List<Graph.Remote>>> futures = new TreeMap<String, Future<List<Graph.Remote>>>();
+		for(final Map.Entry<String, TreeMap<Integer, LinkedHashSet<String>>> entry : remotePredicates.entrySet()){
+			final String remoteAddress = entry.getKey();
+			final TreeMap<Integer, LinkedHashSet<String>> depthToPredicates = entry.getValue();
+			futures.put(remoteAddress, remoteQueryExecutor.submit(
+					() -> queryRemoteServer(remoteAddress, spadeQueryPort, depthToPredicates, direction)));
+		}
+
+		for(final Map.Entry<String, Future<List<Graph.Remote>>> entry : futures.entrySet()){
+			try{
+				for(final Graph.Remote remote : entry.getValue().get()){
+					executor.getQueryEnvironment().setRemoteSymbol(targetGraph, remote);
 				}
-				final String toLinkSymbolName = connection.generateUniqueRemoteSymbolName();
-				connection.executeQuery(toLinkSymbolName + " = " + remoteLineageSymbol);
-
-				synchronized(lock){
-					try{
-						final boolean isValidRemoteGraph;
-						if(discrepancyDetector.isFindInconsistency()){
-							final boolean force = true;
-							final boolean verify = false;
-							final spade.core.Graph remoteLineageGraph = connection.exportGraph(remoteLineageSymbol, force, verify);
-							final spade.core.Graph remoteVertexGraph = connection.exportGraph(remoteVerticesSymbol, force, verify);
-
-							isValidRemoteGraph = discrepancyDetector.doDiscrepancyDetection(
-									remoteLineageGraph, new HashSet<AbstractVertex>(remoteVertexGraph.vertexSet()), 
-									remoteDepth, direction, remoteLineageGraph.getHostName()
-											);
-						}else{
-							// Everything is valid if discrepancyDetector disabled
-							isValidRemoteGraph = true;
-						}
-						if(isValidRemoteGraph == false){
-							logger.log(Level.WARNING, "Discrepancies found in result graph. Remote graph discarded.");
-						}else{
-							executor.getQueryEnvironment().setRemoteSymbol(targetGraph,
-									new Graph.Remote(remoteAddress, spadeQueryPort, toLinkSymbolName));
-						}
-					}catch(Exception e){
-						throw new RuntimeException("Failed to detect discrepancies in remote graph", e);
-					}
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while querying remote SPADE servers", e);
+			}catch(ExecutionException e){
+				logger.log(Level.WARNING, "Failed to query remote SPADE server: " + entry.getKey(), e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Same as 'getPathLengths' for each network vertex but all the network vertices are found in one walk from the
+	 * start graph.
+	 * 
+	 * @return minimum depth -> network vertices at that depth. Network vertices not within 'depth' are excluded
+	 */
+	private final TreeMap<Integer, List<AbstractVertex>> getNetworkVertexDepths(final QueryInstructionExecutor executor,
+			final Graph networkVerticesGraph, final Direction direction){
+		final TreeMap<Integer, List<AbstractVertex>> result = new TreeMap<Integer, List<AbstractVertex>>();
+		Graph remainingGraph = networkVerticesGraph;
+		final Graph commonGraph = executor.createNewGraph();
+		final Graph currentLevelGraph = executor.createNewGraph();
+		final Graph sourceGraph = executor.createNewGraph();
+		final Graph adjacentGraph = executor.createNewGraph();
+		executor.unionGraph(sourceGraph, startGraph);
+		for(int i = 0; i < depth && executor.getGraphCount(remainingGraph).getVertices() > 0; i++){
+			executor.getAdjacentVertex(adjacentGraph, subjectGraph, sourceGraph, direction);
+
+			executor.subtractGraph(currentLevelGraph, adjacentGraph, sourceGraph, Graph.Component.kVertex);
+			if(executor.getGraphCount(currentLevelGraph).getVertices() <= 0){
+				break;
+			}
+
+			executor.intersectGraph(commonGraph, currentLevelGraph, remainingGraph);
+			if(executor.getGraphCount(commonGraph).getVertices() > 0){
+				// Found the network vertices at this depth
+				result.put(i + 1, new ArrayList<AbstractVertex>(executor.exportGraph(commonGraph, true).vertexSet()));
+				final Graph tmpRemainingGraph = executor.createNewGraph();
+				executor.subtractGraph(tmpRemainingGraph, remainingGraph, commonGraph, Graph.Component.kVertex);
+				if(remainingGraph != networkVerticesGraph){
+					executor.clearGraph(remainingGraph);
 				}
+				remainingGraph = tmpRemainingGraph;
+			}
+
+			executor.clearGraph(adjacentGraph);
+			executor.clearGraph(commonGraph);
+			executor.clearGraph(sourceGraph);
+			executor.unionGraph(sourceGraph, currentLevelGraph);
+			executor.clearGraph(currentLevelGraph);
+		}
+		if(remainingGraph != networkVerticesGraph){
+			executor.clearGraph(remainingGraph);
+		}
+		executor.clearGraph(adjacentGraph);
+		executor.clearGraph(commonGraph);
+		executor.clearGraph(sourceGraph);
+		executor.clearGraph(currentLevelGraph);
+		return result;
+	}
+
+	// Runs in the remote query executor. Doesn't use the local query executor
+	private final List<Graph.Remote> queryRemoteServer(final String remoteAddress, final int spadeQueryPort,
+			final TreeMap<Integer, LinkedHashSet<String>> depthToPredicates, final Direction direction)
+			throws Exception{
+		RemoteSPADEQueryConnection connection = connectionPool.acquireIdle(remoteAddress, spadeQueryPort);
+		// Only an idle connection can be retried. A new connection failing means the server is unreachable
+		boolean retry = connection != null;
+		if(connection == null){
+			connection = connectionPool.connect(remoteAddress, spadeQueryPort);
+		}
+		while(true){
+			final long responsesRead = connection.getResponsesRead();
+			try{
+				final List<Graph.Remote> result = queryRemoteServer(connection, remoteAddress, spadeQueryPort,
+						depthToPredicates, direction);
+				connectionPool.release(connection);
+				return result;
 			}catch(Exception e){
-				logger.log(Level.WARNING, "Failed to query remote SPADE server", e);
-			}finally{
-				if(connection != null){
-					try{
-						connection.close();
-					}catch(Exception e){
-
-					}
+				// Read before discarding since closing the connection talks to the server
+				final boolean replied = connection.getResponsesRead() != responsesRead;
+				connectionPool.discard(connection);
+				if(!retry || replied){
+					throw e;
+				}
+				// The idle connection was closed by the remote server before anything was done on it
+				logger.log(Level.FINE, "Retrying remote lineage query on a new connection: " + remoteAddress, e);
+				retry = false;
+				connection = connectionPool.connect(remoteAddress, spadeQueryPort);
+			}
+		}
+	}
+
+	private final List<Graph.Remote> queryRemoteServer(final RemoteSPADEQueryConnection connection,
+			final String remoteAddress, final int spadeQueryPort,
+			final TreeMap<Integer, LinkedHashSet<String>> depthToPredicates, final Direction direction)
+			throws Exception{
+		final List<Graph.Remote> result = new ArrayList<Graph.Remote>();
+		for(final Map.Entry<Integer, LinkedHashSet<String>> entry : depthToPredicates.entrySet()){
+			final int remoteDepth = entry.getKey();
+			final List<String> predicates = new ArrayList<String>(entry.getValue());
+			for(int i = 0; i < predicates.size(); i += verticesPerQuery){
+				final String remoteVerticesPredicate = String.join(" or ",
+						predicates.subList(i, Math.min(predicates.size(), i + verticesPerQuery)));
+				final Graph.Remote remote = queryRemoteLineage(connection, remoteAddress, spadeQueryPort,
+						remoteVerticesPredicate, remoteDepth, direction);
+				if(remote != null){
+					result.add(remote);
+				}
+			}
+		}
+		return result;
+	}
+
+	private final Graph.Remote queryRemoteLineage(final RemoteSPADEQueryConnection connection,
+			final String remoteAddress, final int spadeQueryPort, final String remoteVerticesPredicate,
+			final int remoteDepth, final Direction direction) throws Exception{
+		final String remoteVerticesSymbol = connection.getBaseVertices(remoteVerticesPredicate);
+		final GraphStatistic.Count remoteVerticesCount = connection.getGraphCount(remoteVerticesSymbol);
+		if(remoteVerticesCount.getVertices() <= 0){
+			return null;
+		}
+		final String remoteLineageSymbol = connection.getBaseLineage(remoteVerticesSymbol, remoteDepth, direction);
+		final GraphStatistic.Count remoteLineageStats = connection.getGraphCount(remoteLineageSymbol);
+		if(remoteLineageStats.isEmpty()){
+			return null;
+		}
+		final String toLinkSymbolName = connection.generateUniqueRemoteSymbolName();
+		connection.executeQuery(toLinkSymbolName + " = " + remoteLineageSymbol);
+
+		final boolean isValidRemoteGraph;
+		if(discrepancyDetector.isFindInconsistency()){
+			final boolean force = true;
+			final boolean verify = false;
+			final spade.core.Graph remoteLineageGraph = connection.exportGraph(remoteLineageSymbol, force, verify);
+			final spade.core.Graph remoteVertexGraph = connection.exportGraph(remoteVerticesSymbol, force, verify);
+			synchronized(lock){
+				try{
+					isValidRemoteGraph = discrepancyDetector.doDiscrepancyDetection(
+							remoteLineageGraph, new HashSet<AbstractVertex>(remoteVertexGraph.vertexSet()), 
+							remoteDepth, direction, remoteLineageGraph.getHostName()
+									);
+				}catch(Exception e){
+					throw new RuntimeException("Failed to detect discrepancies in remote graph", e);
 				}
 			}
+		}else{
+			// Everything is valid if discrepancyDetector disabled
+			isValidRemoteGraph = true;
+		}
+		if(isValidRemoteGraph == false){
+			logger.log(Level.WARNING, "Discrepancies found in result graph. Remote graph discarded.");
+			return null;
 		}
+		return new Graph.Remote(remoteAddress, spadeQueryPort, toLinkSymbolName);
 	}
 
 	private String buildRemoteGetVertexPredicate(final AbstractVertex localNetworkVertex){
-		String predicate = "";
+		String predicate = "(";
 		predicate += formatQueryName(getAnnotationLocalAddress()) + "="
 				+ formatQueryValue(getRemoteAddress(localNetworkVertex));
 		predicate += " and ";
@@ -187,6 +340,7 @@ public class GetRemoteLineage extends GetLineage{
 		predicate += " and ";
 		predicate += formatQueryName(getAnnotationRemotePort()) + "="
 				+ formatQueryValue(getLocalPort(localNetworkVertex));
+		predicate += ")";
 		return predicate;
 	}
 
@@ -49,6 +49,7 @@ import spade.reporter.audit.KernelModuleManager;
 import spade.reporter.audit.LinuxConstants;
 import spade.reporter.audit.LinuxPathResolver;
 import spade.reporter.audit.MalformedAuditDataException;
+import spade.reporter.audit.MappedAuditLogReader;
 import spade.reporter.audit.NetfilterHooksManager;
 import spade.reporter.audit.OPMConstants;
 import spade.reporter.audit.OutputLog;
@@ -127,6 +128,8 @@ public class Audit extends AbstractReporter {
 	private ProcessUserSyscallFilter processUserSyscallFilter;
 	
 	private SPADEAuditBridgeProcess spadeAuditBridgeProcess;
+	// Used instead of the SPADE audit bridge process if the input logs are to be memory-mapped
+	private MappedAuditLogReader mappedAuditLogReader;
 	
 	private AuditEventReader auditEventReader;
 	// A flag to block on shutdown call if buffers are being emptied and events are still being read
@@ -406,34 +409,55 @@ public class Audit extends AbstractReporter {
 			}
 		}
 		
-		try{
-			this.spadeAuditBridgeProcess = SPADEAuditBridgeProcess.launch(this.input, auditConfiguration.isUnits(), auditConfiguration.getMergeUnit());
-			logger.log(Level.INFO, "Launched SPADE audit bridge process with pid '" + spadeAuditBridgeProcess.getPid() + "' using command:"
-					+ " " + spadeAuditBridgeProcess.getCommand());
-			this.spadeAuditBridgeProcess.consumeStdErr(new BiConsumer<String, Exception>(){
-				@Override
-				public void accept(final String msg, final Exception exception){
-					if(msg != null && exception != null){
-						logger.log(Level.SEVERE, "[SPADE audit bridge] [ERROR] " + msg, exception);
-					}else if(msg != null && exception == null){
-						logger.log(Level.INFO, "[SPADE audit bridge] [OUTPUT] " + msg);
-					}else if(msg == null && exception != null){
-						logger.log(Level.SEVERE, "[SPADE audit bridge] [ERROR] " + "Unexpected error", exception);
-					}else{
-						logger.log(Level.INFO, "[SPADE audit bridge] [OUTPUT] " + "Exiting error thread");
+		if(input.isMapInputLog()){
+			if(auditConfiguration.isUnits()){
+				logger.log(Level.SEVERE, "Memory-mapped input logs cannot be used with units. Units require the SPADE audit bridge");
+				return false;
+			}
+			try{
+				this.mappedAuditLogReader = new MappedAuditLogReader(input.getInputLogList(), input.getInputLogIndexDir(),
+						input.getInputLogStartTime());
+			}catch(Exception e){
+				logger.log(Level.SEVERE, "Failed to instantiate memory-mapped input log reader", e);
+				return false;
+			}
+		}else{
+			try{
+				this.spadeAuditBridgeProcess = SPADEAuditBridgeProcess.launch(this.input, auditConfiguration.isUnits(), auditConfiguration.getMergeUnit());
+				logger.log(Level.INFO, "Launched SPADE audit bridge process with pid '" + spadeAuditBridgeProcess.getPid() + "' using command:"
+						+ " " + spadeAuditBridgeProcess.getCommand());
+				this.spadeAuditBridgeProcess.consumeStdErr(new BiConsumer<String, Exception>(){
+					@Override
+					public void accept(final String msg, final Exception exception){
+						if(msg != null && exception != null){
+							logger.log(Level.SEVERE, "[SPADE audit bridge] [ERROR] " + msg, exception);
+						}else if(msg != null && exception == null){
+							logger.log(Level.INFO, "[SPADE audit bridge] [OUTPUT] " + msg);
+						}else if(msg == null && exception != null){
+							logger.log(Level.SEVERE, "[SPADE audit bridge] [ERROR] " + "Unexpected error", exception);
+						}else{
+							logger.log(Level.INFO, "[SPADE audit bridge] [OUTPUT] " + "Exiting error thread");
+						}
 					}
-				}
-			});
-		}catch(Exception e){
-			logger.log(Level.SEVERE, "Failed to start SPADE audit bridge process", e);
-			return false;
+				});
+			}catch(Exception e){
+				logger.log(Level.SEVERE, "Failed to start SPADE audit bridge process", e);
+				return false;
+			}
 		}
 		
 		try{
-			this.auditEventReader = new AuditEventReader(input.getSPADEAuditBridgeName(), spadeAuditBridgeProcess.getStdOutStream());
+			if(this.mappedAuditLogReader != null){
+				this.auditEventReader = new AuditEventReader(MappedAuditLogReader.class.getSimpleName(), this.mappedAuditLogReader);
+			}else{
+				this.auditEventReader = new AuditEventReader(input.getSPADEAuditBridgeName(), spadeAuditBridgeProcess.getStdOutStream());
+			}
 			if(this.outputLog.isEnabled()){
 				this.auditEventReader.setOutputLog(this.outputLog.getOutputLogPath(), this.outputLog.getRotateLogAfterLines());
 			}
+			if(!input.isLiveMode()){
+				this.auditEventReader.startReplayPipeline();
+			}
 		}catch(Exception e){
 			logger.log(Level.SEVERE, "Failed to instantiate audit event reader", e);
 			return false;
@@ -599,6 +623,10 @@ public class Audit extends AbstractReporter {
 				logger.log(Level.WARNING, "Failed to stop SPADE audit bridge process", e);
 			}
 		}
+		// Same as the SPADE audit bridge process on interrupt
+		if(mappedAuditLogReader != null && !input.isWaitForLog()){
+			mappedAuditLogReader.stop();
+		}
 
 		// Return. The event reader thread and the error reader thread will exit on
 		// their own.
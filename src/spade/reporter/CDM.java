@@ -63,9 +63,11 @@ import com.bbn.tc.schema.avro.cdm20.UnitDependency;
 import spade.core.AbstractEdge;
 import spade.core.AbstractReporter;
 import spade.core.AbstractVertex;
+import spade.core.AbstractVertexConverter;
 import spade.core.Settings;
 import spade.edge.cdm.SimpleEdge;
 import spade.reporter.audit.OPMConstants;
+import spade.utility.BinaryConverter;
 import spade.utility.FileUtility;
 import spade.utility.HelperFunctions;
 import spade.utility.Result;
@@ -299,7 +301,8 @@ public class CDM extends AbstractReporter{
 				return false;
 			}else{
 				ExternalMapArgument externalMapArgument = externalMapArgumentResult.result;
-				Result<ExternalMap<String, AbstractVertex>> externalMapResult = ExternalMapManager.create(externalMapArgument);
+				Result<ExternalMap<String, AbstractVertex>> externalMapResult = ExternalMapManager.create(externalMapArgument,
+						new BinaryConverter.StringConverter(), new AbstractVertexConverter());
 				if(externalMapResult.error){
 					logger.log(Level.SEVERE, "Failed to create external map '"+uuidMapId+"' from arguments: " + externalMapArgument);
 					logger.log(Level.SEVERE, externalMapResult.toErrorString());
@@ -19,17 +19,14 @@
  */
 package spade.reporter.audit;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -171,12 +168,29 @@ public class AuditEventReader{
 	private boolean reportingEnabled = false;
 	private long reportEveryMs;
 	private long startTime, lastReportedTime;
-	private long lastReportedRecordCount, recordCount;
+	private long lastReportedRecordCount;
+	private volatile long recordCount; // Incremented by the reader thread of the replay pipeline
+
+	//Replay pipeline variables
+	private int pipelineParserThreads = 0;
+	private int pipelineChunkSize = 256 * 1024;
+	private int pipelineChunksInFlight = 16;
+	private AuditReplayPipeline pipeline = null;
+
+	/**
+	 * Initial capacity of the event map. Big enough for a syscall event with a few paths without resizing
+	 */
+	static final int EVENT_MAP_INITIAL_CAPACITY = 64;
+
+	/**
+	 * Key-values of all the records for the current event being read. NULL if no event being read
+	 */
+	private Map<String, String> currentEventMap = null;
 
 	/**
-	 * Buffers all the records for the current event being read
+	 * The first error in parsing the records for the current event being read
 	 */
-	private final Set<AuditRecord> currentEventRecords = new HashSet<AuditRecord>();
+	private MalformedAuditDataException currentEventError = null;
 
 	/**
 	 * Keeps track of the current event id being buffered
@@ -191,7 +205,7 @@ public class AuditEventReader{
 	/**
 	 *	The stream to read from by this class
 	 */
-	private BufferedReader stream;
+	private AuditRecordTokenizer stream;
 
 	private long rotateAfterRecordCount = 0;
 	private String outputLogFile = null;
@@ -219,7 +233,7 @@ public class AuditEventReader{
 			throw new IllegalArgumentException("The stream to read from cannot be NULL");
 		}
 
-		stream = new BufferedReader(new InputStreamReader(streamToReadFrom));
+		stream = new AuditRecordTokenizer(new InputStreamReader(streamToReadFrom));
 
 		setGlobalsFromConfig();
 	}
@@ -241,6 +255,18 @@ public class AuditEventReader{
 							recordCount = lastReportedRecordCount = 0;
 						}
 					}
+					Long parserThreads = HelperFunctions.parseLong(properties.get("pipelineParserThreads"), null);
+					if(parserThreads != null){
+						pipelineParserThreads = (int)Math.max(0, Math.min(parserThreads, Short.MAX_VALUE));
+					}
+					Long chunkSize = HelperFunctions.parseLong(properties.get("pipelineChunkSize"), null);
+					if(chunkSize != null && chunkSize > 0){
+						pipelineChunkSize = (int)Math.min(chunkSize, Integer.MAX_VALUE / 4);
+					}
+					Long chunksInFlight = HelperFunctions.parseLong(properties.get("pipelineChunksInFlight"), null);
+					if(chunksInFlight != null && chunksInFlight > 0){
+						pipelineChunksInFlight = (int)Math.min(chunksInFlight, Short.MAX_VALUE);
+					}
 				}
 			}
 		}catch(Exception e){
@@ -264,10 +290,10 @@ public class AuditEventReader{
 		outputLogWriter = new PrintWriter(outputLogFile);
 	}
 
-	private void writeToOutputLog(String record){
+	private void writeToOutputLog(final AuditRecordTokenizer record){
 		if(outputLogWriter != null){
 			try{
-				outputLogWriter.println(record);
+				record.writeLine(outputLogWriter);
 				recordsWrittenToOutputLog++;
 				if(rotateAfterRecordCount > 0 && recordsWrittenToOutputLog >= rotateAfterRecordCount){
 					recordsWrittenToOutputLog = 0;
@@ -282,16 +308,31 @@ public class AuditEventReader{
 		}
 	}
 
+	/**
+	 * Read, parse, and group the records into events on separate threads (if enabled in the config). 
+	 * Only meant for reading from a file because a chunk of records is read before the events in it are returned.
+	 * 
+	 * Must be called before the first event is read, and after the output log has been set.
+	 */
+	public void startReplayPipeline(){
+		if(pipeline != null || currentEventIdString != null || EOF){
+			throw new IllegalStateException("Events already being read");
+		}
+		if(pipelineParserThreads < 1){
+			return;
+		}
+		pipeline = new AuditReplayPipeline(this, stream, pipelineParserThreads, pipelineChunkSize, pipelineChunksInFlight);
+		pipeline.start();
+		logger.log(Level.INFO, "Replay pipeline started with " + pipelineParserThreads + " parser thread(s), chunk size "
+				+ pipelineChunkSize + ", and " + pipelineChunksInFlight + " chunk(s) in flight");
+	}
+
 	public void close(){
 		if(reportingEnabled){
 			printStats();
 		}
-		if(outputLogWriter != null){
-			try{
-				outputLogWriter.close();
-			}catch(Exception e){
-				logger.log(Level.SEVERE, "Failed to close output log writer", e);
-			}
+		if(pipeline != null){
+			pipeline.shutdown();
 		}
 		if(stream != null){
 			try{
@@ -300,6 +341,16 @@ public class AuditEventReader{
 				logger.log(Level.SEVERE, "Failed to close the stream '"+streamId+"'", e);
 			}
 		}
+		if(pipeline != null){
+			pipeline.awaitShutdown(1000);
+		}
+		if(outputLogWriter != null){
+			try{
+				outputLogWriter.close();
+			}catch(Exception e){
+				logger.log(Level.SEVERE, "Failed to close output log writer", e);
+			}
+		}
 	}
 
 	private void printStats(){
@@ -324,75 +375,97 @@ public class AuditEventReader{
 			}
 		}
 
+		if(pipeline != null){
+			return pipeline.take();
+		}
+
 		while(!EOF){
-			final String line = stream.readLine();
-			if(line == null){
+			if(!stream.nextLine()){
 				EOF = true;
 				break;
 			}
-			writeToOutputLog(line);
-
-			if(reportingEnabled){
-				recordCount++;
-			}
+			recordRead(stream);
 
 			// Can throw the malformed audit data exception
-			final AuditRecord record = new AuditRecord(line);
+			stream.parseHeader();
 
-			if(record.type.equals(RECORD_TYPE_EOE)
-					|| record.type.equals(RECORD_TYPE_PROCTITLE)
-					|| record.type.startsWith(RECORD_TYPE_UNKNOWN_PREFIX)){
+			if(isIgnoredRecordType(stream)){
 				continue;
 			}
 
 			if(currentEventIdString == null){
 				// First event
-				currentEventIdString = record.id;
-				currentEventRecords.add(record);
+				startEvent();
+				addRecordToCurrentEvent();
 				continue;
 			}
 
-			if(currentEventIdString.equals(record.id)){
-				currentEventRecords.add(record);
+			if(stream.idEquals(currentEventIdString)){
+				addRecordToCurrentEvent();
 				continue;
 			}else{
-				final Set<AuditRecord> auditRecordsToFlush = new HashSet<AuditRecord>();
-				auditRecordsToFlush.addAll(currentEventRecords);
+				final Map<String, String> completedEventMap = currentEventMap;
+				final MalformedAuditDataException completedEventError = currentEventError;
 
-				currentEventRecords.clear();
-				currentEventRecords.add(record);
-				currentEventIdString = record.id;
+				startEvent();
+				addRecordToCurrentEvent();
 
-				return convertAuditRecordsToEventMap(auditRecordsToFlush);
+				if(completedEventError != null){
+					throw completedEventError;
+				}
+				return completedEventMap;
 			}
 		}
 
-		if(currentEventRecords.isEmpty()){
+		if(currentEventMap == null){
 			return null;
 		}
 
-		final Set<AuditRecord> auditRecordsToFlush = new HashSet<AuditRecord>();
-		auditRecordsToFlush.addAll(currentEventRecords);
+		final Map<String, String> completedEventMap = currentEventMap;
+		final MalformedAuditDataException completedEventError = currentEventError;
+		currentEventMap = null;
+		currentEventError = null;
+		currentEventIdString = null;
+
+		if(completedEventError != null){
+			throw completedEventError;
+		}
+		return completedEventMap;
+	}
 
-		currentEventRecords.clear();
+	final void recordRead(final AuditRecordTokenizer record){
+		writeToOutputLog(record);
 
-		return convertAuditRecordsToEventMap(auditRecordsToFlush);
+		if(reportingEnabled){
+			recordCount++;
+		}
 	}
 
-	private final Map<String, String> convertAuditRecordsToEventMap(final Set<AuditRecord> auditRecords)
-			throws Exception{
+	static final boolean isIgnoredRecordType(final AuditRecordTokenizer record){
+		return record.typeEquals(RECORD_TYPE_EOE)
+				|| record.typeEquals(RECORD_TYPE_PROCTITLE)
+				|| record.typeStartsWith(RECORD_TYPE_UNKNOWN_PREFIX);
+	}
+
+	private final void startEvent(){
+		currentEventIdString = stream.id();
+		currentEventMap = new HashMap<String, String>(EVENT_MAP_INITIAL_CAPACITY);
+		currentEventError = null;
+	}
+
+	/*
+	 * The key-values of the current record are added to the current event map as the record is read.
+	 * If the record cannot be parsed then the error is reported (and the event discarded) once all the records of 
+	 * the event have been read.
+	 */
+	private final void addRecordToCurrentEvent(){
 		try{
-			final Map<String, String> eventMap = new HashMap<String, String>();
-			for(final AuditRecord auditRecord : auditRecords){
-				final Map<String, String> recordMap = parseAuditRecord(auditRecord);
-				if(recordMap != null){
-					eventMap.putAll(recordMap);
-				}
-			}
-			return eventMap;
+			parseRecord(stream, currentEventIdString, currentEventMap);
 		}catch(Exception e){
-			throw new MalformedAuditDataException(
-					"Failed to create event map from audit records", String.valueOf(auditRecords), e);
+			if(currentEventError == null){
+				currentEventError = new MalformedAuditDataException(
+						"Failed to create event map from audit records", stream.lineToString(), e);
+			}
 		}
 	}
 
@@ -531,79 +604,105 @@ public class AuditEventReader{
 		return auditRecordKeyValues;
 	}
 	
-	private final Map<String, String> parseSyscallRecord(final AuditRecord auditRecord) throws Exception{
+	private final void putAllKeyValues(final AuditRecordTokenizer record, final Map<String, String> eventMap){
+		record.resetKeyValues();
+		while(record.nextKeyValue()){
+			eventMap.put(record.key(), record.value());
+		}
+	}
+
+	private final String mustFindAuditString(final AuditRecordTokenizer record, final String key) throws Exception{
+		final String value = record.findValue(key);
+		if(value == null){
+			throw new MalformedAuditDataException("Missing field: " + key);
+		}else{
+			return value;
+		}
+	}
+
+	private final void parseSyscallRecord(final AuditRecordTokenizer record, final String eventId,
+			final Map<String, String> eventMap) throws Exception{
 		/*
 		 * -> node=ubuntu-bionic type=SYSCALL msg=audit(1601587102.900:16403): 
 		 * 		arch=c000003e syscall=0 success=yes exit=30 a0=6 a1=7fff06b61700 a2=1000 a3=0 items=0 
 		 * 		ppid=26414 pid=26415 auid=1000 uid=1002 gid=1002 euid=1002 suid=1002 fsuid=1002 egid=1002 sgid=1002 fsgid=1002 
 		 * 		tty=(none) ses=3 comm="screen" exe="/usr/bin/screen" key=(null)
 		 */
-		final Map<String, String> auditRecordKeyValues = HelperFunctions.parseKeyValPairs(auditRecord.data);
-		auditRecordKeyValues.put(COMM, mustParseAuditString(auditRecord.data, COMM));
-		auditRecordKeyValues.put(TIME, auditRecord.time);
-		auditRecordKeyValues.put(EVENT_ID, auditRecord.id);
-		auditRecordKeyValues.put(RECORD_TYPE_KEY, RECORD_TYPE_SYSCALL);
-		return auditRecordKeyValues;
+		final String comm = mustFindAuditString(record, COMM);
+		putAllKeyValues(record, eventMap);
+		eventMap.put(COMM, comm);
+		eventMap.put(TIME, record.time());
+		eventMap.put(EVENT_ID, eventId);
+		eventMap.put(RECORD_TYPE_KEY, RECORD_TYPE_SYSCALL);
 	}
 	
-	private final Map<String, String> parseCwdRecord(final AuditRecord auditRecord) throws Exception{
+	private final void parseCwdRecord(final AuditRecordTokenizer record, final Map<String, String> eventMap) throws Exception{
 		/*
 		 * -> node=ubuntu-bionic type=CWD msg=audit(1601587106.252:16451): cwd="/"
 		 */
-		final Map<String, String> auditRecordKeyValues = HelperFunctions.parseKeyValPairs(auditRecord.data);
-		auditRecordKeyValues.put(CWD, mustParseAuditString(auditRecord.data, CWD));
-		return auditRecordKeyValues;
+		final String cwd = mustFindAuditString(record, CWD);
+		putAllKeyValues(record, eventMap);
+		eventMap.put(CWD, cwd);
 	}
 	
-	private final Map<String, String> parsePathRecord(final AuditRecord auditRecord) throws Exception{
+	private final void parsePathRecord(final AuditRecordTokenizer record, final Map<String, String> eventMap) throws Exception{
 		/*
 		 * -> node=ubuntu-bionic type=PATH msg=audit(1601587106.252:16451): 
 		 * 		item=0 name="/usr/share/dbus-1/system-services" inode=32602 dev=08:01 mode=040755 
 		 * 		ouid=0 ogid=0 rdev=00:00 nametype=NORMAL cap_fp=0000000000000000 cap_fi=0000000000000000 
 		 * 		cap_fe=0 cap_fver=0
 		 */
-		final Map<String, String> auditRecordKeyValues = new HashMap<String, String>();
-		final Map<String, String> tempMap = HelperFunctions.parseKeyValPairs(auditRecord.data);
-
-		final String itemNumber = tempMap.get(ITEM);
-		final String mode = tempMap.get(MODE_PREFIX) == null ? "0" : tempMap.get(MODE_PREFIX);
-		final String nametype = tempMap.get(NAMETYPE_PREFIX);
-		final String name = parseAuditString(auditRecord.data, NAME);
-		final String inode = tempMap.get(INODE_PREFIX) == null ? "-1" : tempMap.get(INODE_PREFIX);
-
-		auditRecordKeyValues.put(MODE_PREFIX + itemNumber, mode);
-		auditRecordKeyValues.put(NAMETYPE_PREFIX + itemNumber, nametype);
-		auditRecordKeyValues.put(PATH_PREFIX + itemNumber, name);
-		auditRecordKeyValues.put(INODE_PREFIX + itemNumber, inode);
-		return auditRecordKeyValues;
+		String itemNumber = null, mode = null, nametype = null, inode = null;
+		record.resetKeyValues();
+		while(record.nextKeyValue()){
+			if(record.keyEquals(ITEM)){
+				itemNumber = record.value();
+			}else if(record.keyEquals(MODE_PREFIX)){
+				mode = record.value();
+			}else if(record.keyEquals(NAMETYPE_PREFIX)){
+				nametype = record.value();
+			}else if(record.keyEquals(INODE_PREFIX)){
+				inode = record.value();
+			}
+		}
+		final String name = record.findValue(NAME);
+
+		eventMap.put(MODE_PREFIX + itemNumber, mode == null ? "0" : mode);
+		eventMap.put(NAMETYPE_PREFIX + itemNumber, nametype);
+		eventMap.put(PATH_PREFIX + itemNumber, name);
+		eventMap.put(INODE_PREFIX + itemNumber, inode == null ? "-1" : inode);
 	}
 	
-	private final Map<String, String> parseExecveRecord(final AuditRecord auditRecord) throws Exception{
+	private final void parseExecveRecord(final AuditRecordTokenizer record, final Map<String, String> eventMap) throws Exception{
 		/*
 		 * -> node=ubuntu-bionic type=EXECVE msg=audit(1601587110.584:16741): argc=1 a0="./server_mq"
 		 */
-		final Map<String, String> auditRecordKeyValues = new HashMap<String, String>();
-		final Map<String, String> tempMap = HelperFunctions.parseKeyValPairs(auditRecord.data);
+		String argcString = null;
+		record.resetKeyValues();
+		while(record.nextKeyValue()){
+			if(record.keyEquals(ARGC)){
+				argcString = record.value();
+			}
+		}
 
-		final String argcString = tempMap.get(ARGC);
 		final Integer argc = HelperFunctions.parseInt(argcString, null);
 		if(argc != null){
 			for(int i = 0; i < argc; i++){
 				final String key = "a" + i;
 				final String prefixedKey = EXECVE_PREFIX + key;
-				final String value = parseAuditString(auditRecord.data, key);
+				final String value = record.findValue(key);
 				if(value != null){
-					auditRecordKeyValues.put(prefixedKey, value);
+					eventMap.put(prefixedKey, value);
 				}else{
-					auditRecordKeyValues.put(prefixedKey, "");
+					eventMap.put(prefixedKey, "");
 				}
 			}
 		}
-		auditRecordKeyValues.put(EXECVE_ARGC, argcString);
-		return auditRecordKeyValues;
+		eventMap.put(EXECVE_ARGC, argcString);
 	}
 	
-	private final Map<String, String> parseSimpleKeyValuePairRecord(final AuditRecord auditRecord) throws Exception{
+	private final void parseSimpleKeyValuePairRecord(final AuditRecordTokenizer record,
+			final Map<String, String> eventMap) throws Exception{
 		/*
 		 * -> node=ubuntu-bionic type=FD_PAIR msg=audit(1601587107.820:16569): fd0=3 fd1=4
 		 * 
@@ -616,9 +715,52 @@ public class AuditEventReader{
 		 * -> node=ubuntu-bionic type=MQ_SENDRECV msg=audit(1601587110.592:16933): 
 		 * 		mqdes=3 msg_len=266 msg_prio=0 abs_timeout_sec=0 abs_timeout_nsec=0
 		 */
-		return HelperFunctions.parseKeyValPairs(auditRecord.data);
+		putAllKeyValues(record, eventMap);
 	}
-	
+
+	/*
+	 * Infrequent records which are parsed from the record data as a string
+	 */
+	private final void parseRecordData(final AuditRecordTokenizer record, final String eventId,
+			final Map<String, String> eventMap) throws Exception{
+		final AuditRecord auditRecord = new AuditRecord(eventId, record.time(), record.type(), record.data());
+		final Map<String, String> recordMap = parseAuditRecord(auditRecord);
+		if(recordMap != null){
+			eventMap.putAll(recordMap);
+		}
+	}
+
+	final void parseRecord(final AuditRecordTokenizer record, final String eventId, final Map<String, String> eventMap) throws Exception{
+		switch(record.type()){
+			case RECORD_TYPE_SYSCALL:
+				parseSyscallRecord(record, eventId, eventMap);
+				break;
+			case RECORD_TYPE_CWD:
+				parseCwdRecord(record, eventMap);
+				break;
+			case RECORD_TYPE_PATH:
+				parsePathRecord(record, eventMap);
+				break;
+			case RECORD_TYPE_EXECVE:
+				parseExecveRecord(record, eventMap);
+				break;
+			case RECORD_TYPE_FD_PAIR:
+			case RECORD_TYPE_SOCKADDR:
+			case RECORD_TYPE_MMAP:
+			case RECORD_TYPE_IPC:
+			case RECORD_TYPE_MQ_SENDRECV:
+				parseSimpleKeyValuePairRecord(record, eventMap);
+				break;
+			case RECORD_TYPE_DAEMON_START:
+			case RECORD_TYPE_UBSI_ENTRY:
+			case RECORD_TYPE_UBSI_EXIT:
+			case RECORD_TYPE_UBSI_DEP:
+			case RECORD_TYPE_USER:
+				parseRecordData(record, eventId, eventMap);
+				break;
+		}
+	}
+
 	private final Map<String, String> parseAuditRecord(final AuditRecord auditRecord) throws Exception{
 		switch(auditRecord.type){
 			case RECORD_TYPE_DAEMON_START:
@@ -650,20 +792,6 @@ public class AuditEventReader{
 				}
 			}
 			break;
-			case RECORD_TYPE_SYSCALL:
-				return parseSyscallRecord(auditRecord);
-			case RECORD_TYPE_CWD:
-				return parseCwdRecord(auditRecord);
-			case RECORD_TYPE_PATH:
-				return parsePathRecord(auditRecord);
-			case RECORD_TYPE_EXECVE:
-				return parseExecveRecord(auditRecord);
-			case RECORD_TYPE_FD_PAIR:
-			case RECORD_TYPE_SOCKADDR:
-			case RECORD_TYPE_MMAP:
-			case RECORD_TYPE_IPC:
-			case RECORD_TYPE_MQ_SENDRECV:
-				return parseSimpleKeyValuePairRecord(auditRecord);
 		}
 		return null;
 	}
@@ -47,6 +47,13 @@ public class AuditRecord{
 		this.data = StringUtils.substringAfter(auditRecord, "):").trim();
 	}
 
+	public AuditRecord(final String id, final String time, final String type, final String data){
+		this.id = id;
+		this.time = time;
+		this.type = type;
+		this.data = data;
+	}
+
 	@Override
 	public String toString(){
 		return "AuditRecord [id=" + id + ", time=" + time + ", type=" + type + ", data=" + data + "]";
@@ -0,0 +1,464 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.reporter.audit;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.util.Arrays;
+
+import spade.utility.HelperFunctions;
+
+/**
+ * Reads audit records one line at a time into a reusable char window and tokenizes them in place.
+ *
+ * The line, the header fields (type, time, event id), and the key-value pairs in the data are kept as offsets into
+ * the window. Strings are only created for the values that are asked for. Keys and record types are interned so that
+ * the same String instances are used for every record.
+ *
+ * Line splitting is the same as BufferedReader.readLine, header parsing is the same as AuditRecord, and key-value
+ * parsing is the same as HelperFunctions.parseKeyValPairs.
+ *
+ * The offsets are only valid until the next call to nextLine.
+ */
+public class AuditRecordTokenizer{
+
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private static final int INTERN_TABLE_SIZE = 1024; // Power of 2
+	private static final int INTERN_TABLE_MAX_ENTRIES = (INTERN_TABLE_SIZE * 3) / 4;
+
+	private final Reader reader;
+	private char[] buffer;
+	private int bufferLength = 0;
+	private int position = 0;
+	private boolean eof = false;
+	private boolean skipLF = false;
+
+	private int lineStart = 0, lineEnd = 0;
+	private int typeStart, typeEnd, timeStart, timeEnd, idStart, idEnd, dataStart, dataEnd;
+
+	private int keyValueCursor;
+	private int keyStart, keyEnd, valueStart, valueEnd;
+
+	private final String[] internTable = new String[INTERN_TABLE_SIZE];
+	private int internTableEntries = 0;
+
+	public AuditRecordTokenizer(final Reader reader){
+		this(reader, DEFAULT_BUFFER_SIZE);
+	}
+
+	public AuditRecordTokenizer(final Reader reader, final int initialBufferSize){
+		if(reader == null){
+			throw new IllegalArgumentException("The reader to read from cannot be NULL");
+		}
+		this.reader = reader;
+		this.buffer = new char[Math.max(16, initialBufferSize)];
+	}
+
+	/**
+	 * Tokenize the lines already in the array. The array is used as the window without copying
+	 */
+	public AuditRecordTokenizer(final char[] chars, final int length){
+		this.reader = null;
+		reset(chars, length);
+	}
+
+	/**
+	 * Start tokenizing the lines in the given array. Only for a tokenizer created without a reader
+	 *
+	 * @param chars The lines
+	 * @param length Number of chars to tokenize from the start of the array
+	 */
+	public void reset(final char[] chars, final int length){
+		if(reader != null){
+			throw new IllegalStateException("Cannot reset a tokenizer reading from a reader");
+		}
+		this.buffer = chars;
+		this.bufferLength = length;
+		this.position = 0;
+		this.eof = true;
+		this.skipLF = false;
+		this.lineStart = this.lineEnd = 0;
+	}
+
+	/**
+	 * Moves to the next line
+	 *
+	 * @return false if end of stream
+	 * @throws IOException
+	 */
+	public boolean nextLine() throws IOException{
+		if(skipLF){
+			if(position < bufferLength || fill()){
+				if(buffer[position] == '\n'){
+					position++;
+				}
+			}
+			skipLF = false;
+		}
+		int scanned = 0;
+		while(true){
+			for(int i = position + scanned; i < bufferLength; i++){
+				final char c = buffer[i];
+				if(c == '\n' || c == '\r'){
+					lineStart = position;
+					lineEnd = i;
+					position = i + 1;
+					skipLF = (c == '\r');
+					return true;
+				}
+			}
+			scanned = bufferLength - position;
+			if(!fill()){
+				if(position < bufferLength){
+					lineStart = position;
+					lineEnd = bufferLength;
+					position = bufferLength;
+					return true;
+				}
+				return false;
+			}
+		}
+	}
+
+	// Moves the unread chars to the start of the window and reads more. Returns false on end of stream
+	private boolean fill() throws IOException{
+		if(eof){
+			return false;
+		}
+		if(position > 0){
+			System.arraycopy(buffer, position, buffer, 0, bufferLength - position);
+			bufferLength -= position;
+			position = 0;
+		}
+		if(bufferLength == buffer.length){
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		}
+		final int read = reader.read(buffer, bufferLength, buffer.length - bufferLength);
+		if(read < 0){
+			eof = true;
+			return false;
+		}
+		bufferLength += read;
+		return true;
+	}
+
+	public void close() throws IOException{
+		if(reader != null){
+			reader.close();
+		}
+	}
+
+	public int lineLength(){
+		return lineEnd - lineStart;
+	}
+
+	/**
+	 * Copies the current line (without the line terminator) to the array at the offset
+	 */
+	public void copyLine(final char[] destination, final int offset){
+		System.arraycopy(buffer, lineStart, destination, offset, lineEnd - lineStart);
+	}
+
+	public String lineToString(){
+		return new String(buffer, lineStart, lineEnd - lineStart);
+	}
+
+	public void writeLine(final PrintWriter writer){
+		writer.write(buffer, lineStart, lineEnd - lineStart);
+		writer.println();
+	}
+
+	/**
+	 * Finds the type, time, event id, and the data in the current line
+	 *
+	 * @throws MalformedAuditDataException If the line is blank or a header field is missing
+	 */
+	public void parseHeader() throws MalformedAuditDataException{
+		if(isBlank(lineStart, lineEnd)){
+			throw new MalformedAuditDataException("NULL/Empty audit record", lineToString());
+		}
+
+		final int typeKeyIndex = indexOf("type=", lineStart, lineEnd);
+		typeEnd = typeKeyIndex < 0 ? -1 : indexOf(' ', typeKeyIndex + 5, lineEnd);
+		if(typeEnd < 0){
+			throw new MalformedAuditDataException("No 'type' in the audit record", lineToString());
+		}
+		typeStart = typeKeyIndex + 5;
+
+		final int idOpenIndex = indexOf(':', lineStart, lineEnd);
+		idEnd = idOpenIndex < 0 ? -1 : indexOf("):", idOpenIndex + 1, lineEnd);
+		if(idEnd < 0){
+			throw new MalformedAuditDataException("No event id in the audit record", lineToString());
+		}
+		idStart = idOpenIndex + 1;
+
+		final int timeOpenIndex = indexOf('(', lineStart, lineEnd);
+		timeEnd = timeOpenIndex < 0 ? -1 : indexOf(':', timeOpenIndex + 1, lineEnd);
+		if(timeEnd < 0){
+			throw new MalformedAuditDataException("No event time in the audit record", lineToString());
+		}
+		timeStart = timeOpenIndex + 1;
+
+		final int dataSeparatorIndex = indexOf("):", lineStart, lineEnd);
+		dataStart = dataSeparatorIndex < 0 ? lineEnd : dataSeparatorIndex + 2;
+		dataEnd = lineEnd;
+		while(dataStart < dataEnd && buffer[dataStart] <= ' '){
+			dataStart++;
+		}
+		while(dataEnd > dataStart && buffer[dataEnd - 1] <= ' '){
+			dataEnd--;
+		}
+
+		keyValueCursor = dataStart;
+	}
+
+	public String type(){
+		return intern(typeStart, typeEnd);
+	}
+
+	public boolean typeEquals(final String value){
+		return spanEquals(typeStart, typeEnd, value);
+	}
+
+	public boolean typeStartsWith(final String prefix){
+		return (typeEnd - typeStart) >= prefix.length() && regionMatches(typeStart, prefix);
+	}
+
+	public String time(){
+		return new String(buffer, timeStart, timeEnd - timeStart);
+	}
+
+	public String id(){
+		return new String(buffer, idStart, idEnd - idStart);
+	}
+
+	public boolean idEquals(final String value){
+		return spanEquals(idStart, idEnd, value);
+	}
+
+	public String data(){
+		return new String(buffer, dataStart, dataEnd - dataStart);
+	}
+
+	/**
+	 * Moves to the next key-value pair in the data. Same pairs and order as the matches of the pattern used by
+	 * HelperFunctions.parseKeyValPairs.
+	 *
+	 * @return false if no more pairs
+	 */
+	public boolean nextKeyValue(){
+		int from = keyValueCursor;
+		while(true){
+			final int equalsIndex = indexOf('=', from, dataEnd);
+			if(equalsIndex < 0){
+				keyValueCursor = dataEnd;
+				return false;
+			}
+			int start = equalsIndex;
+			while(start > from && isWordChar(buffer[start - 1])){
+				start--;
+			}
+			if(start < equalsIndex && matchValue(equalsIndex + 1)){
+				keyStart = start;
+				keyEnd = equalsIndex;
+				while(valueStart < valueEnd && buffer[valueStart] <= ' '){
+					valueStart++;
+				}
+				while(valueEnd > valueStart && buffer[valueEnd - 1] <= ' '){
+					valueEnd--;
+				}
+				return true;
+			}
+			from = equalsIndex + 1;
+		}
+	}
+
+	// Sets the value span and the cursor if a value matches at the index
+	private boolean matchValue(final int index){
+		int afterQuotes = index;
+		while(afterQuotes < dataEnd && buffer[afterQuotes] == '"'){
+			afterQuotes++;
+		}
+		if(afterQuotes > index && afterQuotes < dataEnd){
+			// Quoted value
+			final int closingQuoteIndex = indexOf('"', afterQuotes, dataEnd);
+			if(closingQuoteIndex >= 0){
+				valueStart = afterQuotes;
+				valueEnd = closingQuoteIndex;
+				keyValueCursor = closingQuoteIndex;
+				while(keyValueCursor < dataEnd && buffer[keyValueCursor] == '"'){
+					keyValueCursor++;
+				}
+				return true;
+			}
+		}
+		int start = afterQuotes;
+		if(start == dataEnd || isWhitespace(buffer[start])){
+			if(afterQuotes == index){
+				return false; // Empty value
+			}
+			start = afterQuotes - 1; // Value is the last quote
+		}
+		int end = start;
+		while(end < dataEnd && !isWhitespace(buffer[end])){
+			end++;
+		}
+		valueStart = start;
+		valueEnd = end;
+		keyValueCursor = end;
+		return true;
+	}
+
+	/**
+	 * Restart the key-value pairs from the start of the data
+	 */
+	public void resetKeyValues(){
+		keyValueCursor = dataStart;
+	}
+
+	public String key(){
+		return intern(keyStart, keyEnd);
+	}
+
+	public boolean keyEquals(final String value){
+		return spanEquals(keyStart, keyEnd, value);
+	}
+
+	public String value(){
+		return new String(buffer, valueStart, valueEnd - valueStart);
+	}
+
+	/**
+	 * Same as AuditEventReader.parseAuditString on the data
+	 *
+	 * @param key The key to find the value of
+	 * @return null if not found or not decodable
+	 */
+	public String findValue(final String key){
+		int keyIndex = -1;
+		final int last = dataEnd - (key.length() + 1);
+		for(int i = dataStart; i <= last; i++){
+			if(buffer[i + key.length()] == '=' && regionMatches(i, key)){
+				keyIndex = i;
+				break;
+			}
+		}
+		if(keyIndex < 0){
+			return null;
+		}
+		final int start = keyIndex + key.length() + 1;
+		if(start >= dataEnd){
+			return null;
+		}
+		final char firstChar = buffer[start];
+		if(firstChar == '"'){
+			final int end = indexOf('"', start + 1, dataEnd);
+			return end < 0 ? null : new String(buffer, start + 1, end - start - 1);
+		}else if(firstChar == '('){
+			final int end = indexOf(')', start + 1, dataEnd);
+			if(end < 0 || spanEquals(start + 1, end, "null")){
+				return null;
+			}
+			return new String(buffer, start + 1, end - start - 1);
+		}else{
+			int end = indexOf(' ', start + 1, dataEnd);
+			if(end < 0){
+				end = dataEnd;
+			}
+			return HelperFunctions.decodeHex(new String(buffer, start, end - start));
+		}
+	}
+
+	private String intern(final int start, final int end){
+		int hash = 0;
+		for(int i = start; i < end; i++){
+			hash = 31 * hash + buffer[i];
+		}
+		hash ^= (hash >>> 16);
+		final int mask = INTERN_TABLE_SIZE - 1;
+		for(int slot = hash & mask; ; slot = (slot + 1) & mask){
+			final String existing = internTable[slot];
+			if(existing == null){
+				final String string = new String(buffer, start, end - start);
+				if(internTableEntries < INTERN_TABLE_MAX_ENTRIES){
+					internTable[slot] = string;
+					internTableEntries++;
+				}
+				return string;
+			}
+			if(spanEquals(start, end, existing)){
+				return existing;
+			}
+		}
+	}
+
+	private boolean spanEquals(final int start, final int end, final String value){
+		return (end - start) == value.length() && regionMatches(start, value);
+	}
+
+	private boolean regionMatches(final int start, final String value){
+		for(int i = 0; i < value.length(); i++){
+			if(buffer[start + i] != value.charAt(i)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int indexOf(final char c, final int from, final int to){
+		for(int i = from; i < to; i++){
+			if(buffer[i] == c){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private int indexOf(final String str, final int from, final int to){
+		final int last = to - str.length();
+		for(int i = from; i <= last; i++){
+			if(regionMatches(i, str)){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private boolean isBlank(final int start, final int end){
+		for(int i = start; i < end; i++){
+			if(!Character.isWhitespace(buffer[i])){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Same as '\w' in java.util.regex
+	private static boolean isWordChar(final char c){
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+	}
+
+	// Same as '\s' in java.util.regex
+	private static boolean isWhitespace(final char c){
+		return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+	}
+}
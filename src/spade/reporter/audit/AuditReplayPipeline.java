@@ -0,0 +1,283 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.reporter.audit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads, parses, and groups audit records into events on separate threads for AuditEventReader.
+ *
+ * Stages:
+ * 1) Reader thread: reads lines from the stream and copies them into chunks
+ * 2) Parser threads: parse the records in a chunk into event maps
+ * 3) Assembler thread: takes the parsed chunks in the order in which they were read, merges the events split between
+ * two chunks and queues the events
+ *
+ * Every stage is connected to the next one by a bounded queue. The events (and errors) are returned in the same order
+ * as AuditEventReader returns them when reading on the calling thread.
+ */
+class AuditReplayPipeline{
+
+	private static final Logger logger = Logger.getLogger(AuditReplayPipeline.class.getName());
+
+	private static final int EVENT_QUEUE_SIZE = 4096;
+
+	private static final class EventFragment{
+		private final String eventId; // NULL if not an event
+		private final Map<String, String> eventMap;
+		private MalformedAuditDataException error;
+		private Exception failure; // Reading failed. Not related to an event
+
+		private EventFragment(final String eventId, final Map<String, String> eventMap){
+			this.eventId = eventId;
+			this.eventMap = eventMap;
+		}
+	}
+
+	private static final Future<List<EventFragment>> END_OF_CHUNKS = CompletableFuture.completedFuture(null);
+	private static final EventFragment END_OF_EVENTS = new EventFragment(null, null);
+
+	private final AuditEventReader auditEventReader;
+	private final AuditRecordTokenizer stream;
+	private final int chunkSize;
+
+	private final ExecutorService parsers;
+	private final BlockingQueue<Future<List<EventFragment>>> chunks;
+	private final BlockingQueue<EventFragment> events = new ArrayBlockingQueue<EventFragment>(EVENT_QUEUE_SIZE);
+	private final ThreadLocal<AuditRecordTokenizer> chunkTokenizers = ThreadLocal.withInitial(
+			() -> new AuditRecordTokenizer(new char[0], 0));
+
+	private final Thread readerThread, assemblerThread;
+	private volatile boolean shutdown = false;
+	private boolean ended = false;
+
+	/**
+	 * @param auditEventReader The reader to parse the records with
+	 * @param stream The stream to read the records from
+	 * @param parserThreads Number of threads parsing the records
+	 * @param chunkSize Number of chars (rounded up to the end of a line) in the chunk of records given to a parser
+	 * @param chunksInFlight Number of chunks read but not yet grouped into events
+	 */
+	AuditReplayPipeline(final AuditEventReader auditEventReader, final AuditRecordTokenizer stream,
+			final int parserThreads, final int chunkSize, final int chunksInFlight){
+		this.auditEventReader = auditEventReader;
+		this.stream = stream;
+		this.chunkSize = chunkSize;
+		this.chunks = new ArrayBlockingQueue<Future<List<EventFragment>>>(chunksInFlight);
+		this.parsers = Executors.newFixedThreadPool(parserThreads, runnable -> {
+			final Thread thread = new Thread(runnable, "Audit-Record-Parser-Thread");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.readerThread = new Thread(this::readChunks, "Audit-Record-Reader-Thread");
+		this.readerThread.setDaemon(true);
+		this.assemblerThread = new Thread(this::assembleEvents, "Audit-Event-Assembler-Thread");
+		this.assemblerThread.setDaemon(true);
+	}
+
+	void start(){
+		readerThread.start();
+		assemblerThread.start();
+	}
+
+	/**
+	 * @return The next event. NULL if no more events
+	 * @throws Exception MalformedAuditDataException if the event could not be parsed. Any other exception if the stream
+	 * could not be read
+	 */
+	Map<String, String> take() throws Exception{
+		if(ended){
+			return null;
+		}
+		final EventFragment event = events.take();
+		if(event == END_OF_EVENTS){
+			ended = true;
+			return null;
+		}
+		if(event.failure != null){
+			throw event.failure;
+		}
+		if(event.error != null){
+			throw event.error;
+		}
+		return event.eventMap;
+	}
+
+	/**
+	 * Stops all the stages. The stream must be closed by the caller to unblock a read
+	 */
+	void shutdown(){
+		shutdown = true;
+		readerThread.interrupt();
+		assemblerThread.interrupt();
+		parsers.shutdownNow();
+	}
+
+	void awaitShutdown(final long millis){
+		try{
+			readerThread.join(millis);
+			assemblerThread.join(millis);
+			parsers.awaitTermination(millis, TimeUnit.MILLISECONDS);
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void readChunks(){
+		Future<List<EventFragment>> end = END_OF_CHUNKS;
+		try{
+			char[] chunk = new char[chunkSize];
+			int length = 0;
+			while(!shutdown && stream.nextLine()){
+				auditEventReader.recordRead(stream);
+				final int lineLength = stream.lineLength();
+				if(length + lineLength + 1 > chunk.length){
+					chunk = Arrays.copyOf(chunk, Math.max(chunk.length * 2, length + lineLength + 1));
+				}
+				stream.copyLine(chunk, length);
+				length += lineLength;
+				chunk[length++] = '\n';
+				if(length >= chunkSize){
+					submitChunk(chunk, length);
+					chunk = new char[chunkSize];
+					length = 0;
+				}
+			}
+			if(length > 0){
+				submitChunk(chunk, length);
+			}
+		}catch(InterruptedException e){
+			return;
+		}catch(Exception e){
+			final CompletableFuture<List<EventFragment>> failed = new CompletableFuture<List<EventFragment>>();
+			failed.completeExceptionally(e);
+			end = failed;
+		}
+		try{
+			chunks.put(end);
+		}catch(InterruptedException e){
+			// Shutting down
+		}
+	}
+
+	private void submitChunk(final char[] chunk, final int length) throws InterruptedException{
+		chunks.put(parsers.submit(() -> parseChunk(chunk, length)));
+	}
+
+	/*
+	 * Same grouping as AuditEventReader.readEventData but for the records in the chunk only. The first and the last
+	 * events can be partial.
+	 */
+	private List<EventFragment> parseChunk(final char[] chunk, final int length) throws Exception{
+		final List<EventFragment> fragments = new ArrayList<EventFragment>();
+		final AuditRecordTokenizer record = chunkTokenizers.get();
+		record.reset(chunk, length);
+		EventFragment current = null;
+		while(record.nextLine()){
+			try{
+				record.parseHeader();
+			}catch(MalformedAuditDataException e){
+				final EventFragment error = new EventFragment(null, null);
+				error.error = e;
+				fragments.add(error);
+				continue;
+			}
+			if(AuditEventReader.isIgnoredRecordType(record)){
+				continue;
+			}
+			if(current == null || !record.idEquals(current.eventId)){
+				current = new EventFragment(record.id(), new HashMap<String, String>(AuditEventReader.EVENT_MAP_INITIAL_CAPACITY));
+				fragments.add(current);
+			}
+			try{
+				auditEventReader.parseRecord(record, current.eventId, current.eventMap);
+			}catch(Exception e){
+				if(current.error == null){
+					current.error = new MalformedAuditDataException(
+							"Failed to create event map from audit records", record.lineToString(), e);
+				}
+			}
+		}
+		record.reset(new char[0], 0); // Don't hold on to the chunk
+		return fragments;
+	}
+
+	private void assembleEvents(){
+		EventFragment pending = null;
+		try{
+			while(true){
+				final Future<List<EventFragment>> chunk = chunks.take();
+				final List<EventFragment> fragments;
+				try{
+					fragments = chunk.get();
+				}catch(ExecutionException e){
+					final EventFragment failure = new EventFragment(null, null);
+					failure.failure = (e.getCause() instanceof Exception) ? (Exception)e.getCause() : e;
+					if(pending != null){
+						events.put(pending);
+						pending = null;
+					}
+					events.put(failure);
+					break;
+				}
+				if(fragments == null){
+					break; // END_OF_CHUNKS
+				}
+				for(final EventFragment fragment : fragments){
+					if(fragment.eventId == null){
+						events.put(fragment);
+					}else if(pending == null){
+						pending = fragment;
+					}else if(pending.eventId.equals(fragment.eventId)){
+						pending.eventMap.putAll(fragment.eventMap);
+						if(pending.error == null){
+							pending.error = fragment.error;
+						}
+					}else{
+						events.put(pending);
+						pending = fragment;
+					}
+				}
+			}
+			if(pending != null){
+				events.put(pending);
+			}
+			events.put(END_OF_EVENTS);
+		}catch(InterruptedException e){
+			if(!shutdown){
+				logger.log(Level.WARNING, "Audit event assembler interrupted", e);
+			}
+		}
+	}
+}
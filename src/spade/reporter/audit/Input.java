@@ -40,6 +40,9 @@ public class Input{
 
 	private final static String keyInputLog = "inputLog",
 			keyInputLogRotate = "rotate",
+			keyMapInputLog = "mapInputLog",
+			keyInputLogStartTime = "inputLogStartTime",
+			keyInputLogIndexDir = "inputLogIndexDir",
 			keyInputDir = "inputDir",
 			keyInputDirTime = "inputTime",
 			keySPADEAuditBridge = "spadeAuditBridge",
@@ -56,6 +59,9 @@ public class Input{
 	private boolean inputLogRotate;
 	private List<String> inputLogList;
 	private String inputLogListFile;
+	private boolean mapInputLog;
+	private long inputLogStartTime;
+	private String inputLogIndexDir;
 	private String inputDir;
 	private String inputDirTime;
 	private boolean waitForLog;
@@ -63,6 +69,7 @@ public class Input{
 	private Input(String spadeAuditBridgePath, Mode mode, 
 			String linuxAuditSocketPath,
 			String inputLog, boolean inputLogRotate, List<String> inputLogList, String inputLogListFile, 
+			boolean mapInputLog, long inputLogStartTime, String inputLogIndexDir,
 			String inputDir, String inputDirTime, boolean waitForLog){
 		this.spadeAuditBridgePath = spadeAuditBridgePath;
 		final String spadeAuditBridgePathTokens[] = spadeAuditBridgePath.split(File.separator);
@@ -74,6 +81,9 @@ public class Input{
 		this.inputLogRotate = inputLogRotate;
 		this.inputLogList = inputLogList;
 		this.inputLogListFile = inputLogListFile;
+		this.mapInputLog = mapInputLog;
+		this.inputLogStartTime = inputLogStartTime;
+		this.inputLogIndexDir = inputLogIndexDir;
 		this.inputDir = inputDir;
 		this.inputDirTime = inputDirTime;
 		this.waitForLog = waitForLog;
@@ -125,6 +135,24 @@ public class Input{
 		}
 	}
 
+	/**
+	 * @return True if the input logs are to be read by MappedAuditLogReader instead of the SPADE audit bridge
+	 */
+	public boolean isMapInputLog(){
+		return mapInputLog;
+	}
+
+	/**
+	 * @return Time in milliseconds of the first event to read. MappedAuditLogReader.NO_START_TIME if not specified
+	 */
+	public long getInputLogStartTime(){
+		return inputLogStartTime;
+	}
+
+	public String getInputLogIndexDir(){
+		return inputLogIndexDir;
+	}
+
 	public String getInputDir(){
 		return inputDir;
 	}
@@ -150,7 +178,8 @@ public class Input{
 		return "Input [spadeAuditBridgePath=" + spadeAuditBridgePath + ", spadeAuditBridgeName=" + spadeAuditBridgeName
 				+ ", mode=" + mode + ", linuxAuditSocketPath=" + linuxAuditSocketPath
 				+ ", inputLog=" + inputLog + ", inputLogRotate=" + inputLogRotate + ", inputLogList=" + inputLogList
-				+ ", inputLogListFile=" + inputLogListFile + ", inputDir=" + inputDir + ", inputDirTime=" + inputDirTime
+				+ ", inputLogListFile=" + inputLogListFile + ", mapInputLog=" + mapInputLog
+				+ ", inputLogStartTime=" + inputLogStartTime + ", inputLogIndexDir=" + inputLogIndexDir + ", inputDir=" + inputDir + ", inputDirTime=" + inputDirTime
 				+ ", waitForLog=" + waitForLog + "]";
 	}
 
@@ -214,6 +243,9 @@ public class Input{
 		final boolean inputLogRotate;
 		final List<String> inputLogList;
 		final String inputLogListFile;
+		final boolean mapInputLog;
+		final long inputLogStartTime;
+		final String inputLogIndexDir;
 		final String inputDir;
 		final String inputDirTime;
 		final boolean waitForLog;
@@ -244,6 +276,38 @@ public class Input{
 				throw new Exception("Invalid input log rotate specified by '" + keyInputLogRotate + "'. Error: " + resultInputLogRotate.toErrorString());
 			}
 
+			final String valueInputLogStartTime = map.get(keyInputLogStartTime);
+			if(valueInputLogStartTime != null){
+				try{
+					final SimpleDateFormat dateFormat = new SimpleDateFormat(inputDirTimeFormat);
+					inputLogStartTime = dateFormat.parse(valueInputLogStartTime).getTime();
+				}catch(Exception e){
+					throw new Exception(
+							"Invalid input log start time value specified by '" + keyInputLogStartTime + "'"
+									+ ". Must be in format '" + inputDirTimeFormat + "' but is '" + valueInputLogStartTime + "'", e);
+				}
+				mapInputLog = true;
+			}else{
+				inputLogStartTime = MappedAuditLogReader.NO_START_TIME;
+				final String valueMapInputLog = map.get(keyMapInputLog);
+				if(valueMapInputLog == null){
+					mapInputLog = false;
+				}else{
+					final Result<Boolean> resultMapInputLog = HelperFunctions.parseBoolean(valueMapInputLog);
+					if(resultMapInputLog.error){
+						throw new Exception("Invalid map input log value specified by '" + keyMapInputLog + "'. Error: " + resultMapInputLog.toErrorString());
+					}
+					mapInputLog = resultMapInputLog.result;
+				}
+			}
+
+			final String valueInputLogIndexDir = map.get(keyInputLogIndexDir);
+			if(HelperFunctions.isNullOrEmpty(valueInputLogIndexDir)){
+				inputLogIndexDir = Settings.getPathRelativeToTemporaryDirectory("audit-log-index");
+			}else{
+				inputLogIndexDir = Settings.getPathRelativeToSPADERootIfNotAbsolute(valueInputLogIndexDir);
+			}
+
 			mode = Mode.FILE;
 			linuxAuditSocketPath = null;
 			inputLog = resolvedInputLog;
@@ -281,6 +345,9 @@ public class Input{
 				inputLogRotate = false;
 				inputLogList = null;
 				inputLogListFile = null;
+				mapInputLog = false;
+				inputLogStartTime = MappedAuditLogReader.NO_START_TIME;
+				inputLogIndexDir = null;
 				inputDir = resolvedInputDir;
 				inputDirTime = valueInputDirTime;
 			}else{
@@ -304,6 +371,9 @@ public class Input{
 				inputLogRotate = false;
 				inputLogList = null;
 				inputLogListFile = null;
+				mapInputLog = false;
+				inputLogStartTime = MappedAuditLogReader.NO_START_TIME;
+				inputLogIndexDir = null;
 				inputDir = null;
 				inputDirTime = null;
 			}
@@ -322,6 +392,7 @@ public class Input{
 		
 		return new Input(spadeAuditBridgePath, mode, 
 				linuxAuditSocketPath, 
-				inputLog, inputLogRotate, inputLogList, inputLogListFile, inputDir, inputDirTime, waitForLog);
+				inputLog, inputLogRotate, inputLogList, inputLogListFile,
+				mapInputLog, inputLogStartTime, inputLogIndexDir, inputDir, inputDirTime, waitForLog);
 	}
 }
@@ -0,0 +1,612 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.reporter.audit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads (rotated) audit logs by memory-mapping them, in place of the SPADE audit bridge process in FILE mode.
+ *
+ * The output is the same as the output of the SPADE audit bridge without unit analysis i.e. records are grouped by
+ * event id, reordered in the same window, and EOE and UNKNOWN[...] records are dropped. PROCTITLE records are kept
+ * because the bridge keeps them too (its filter for them is misspelled as 'PROCTILE').
+ *
+ * A sparse index of every audit log is kept in the index directory. An entry in the index is the offset of a line
+ * and the largest event time in the log before that offset. The index is built the first time a log is read (or
+ * whenever the log has changed since) and is used to skip all the logs and the lines in the log which only have
+ * events before the start time.
+ */
+public class MappedAuditLogReader extends InputStream{
+
+	private static final Logger logger = Logger.getLogger(MappedAuditLogReader.class.getName());
+
+	public static final long NO_START_TIME = -1;
+
+	private static final int INDEX_MAGIC = 0x53414958, INDEX_VERSION = 1;
+	private static final String INDEX_FILE_SUFFIX = ".index";
+	/** Minimum bytes of the audit log between two entries in the index */
+	private static final long INDEX_INTERVAL = 1024 * 1024;
+	/** Largest part of an audit log mapped at a time */
+	private static final long MAP_WINDOW_SIZE = 256L * 1024 * 1024;
+	/** Same as REORDERING_WINDOW in spadeAuditBridge */
+	private static final int REORDERING_WINDOW = 10000;
+
+	private static final byte[] TYPE = ascii("type="), TYPE_EOE = ascii("EOE"), TYPE_UNKNOWN = ascii("UNKNOWN["),
+			TYPE_DAEMON_START = ascii("DAEMON_START"), EVENT_ID_ERROR = ascii("ERROR: cannot parse event id.\n");
+
+	private final List<String> inputLogs;
+	private final File indexDir;
+	private final long startTime;
+
+	private int inputLogIndex = -1;
+	private MappedLogFile current;
+	private IndexBuilder currentIndexBuilder; // NULL if the index of the current log does not need to be built
+	private boolean startTimeReached;
+
+	private final Map<Long, ByteArrayOutputStream> events = new HashMap<Long, ByteArrayOutputStream>();
+	private long nextEventId = 0;
+
+	private final ArrayDeque<byte[]> output = new ArrayDeque<byte[]>();
+	private byte[] outputBytes = null;
+	private int outputPosition = 0;
+
+	private byte[] line = new byte[4096];
+	private int lineLength = 0;
+
+	private boolean ended = false;
+	private volatile boolean stopped = false;
+
+	private long bytesSkipped = 0;
+
+	/**
+	 * @param inputLogs Audit logs in the order to read them in
+	 * @param indexDir Directory to keep the index of audit logs in. Created if missing
+	 * @param startTime Time in milliseconds of the first event to read. NO_START_TIME to read all events
+	 * @throws Exception If the index directory could not be created
+	 */
+	public MappedAuditLogReader(final List<String> inputLogs, final String indexDir, final long startTime) throws Exception{
+		if(inputLogs == null || inputLogs.isEmpty()){
+			throw new IllegalArgumentException("NULL/Empty list of audit logs to read");
+		}
+		this.inputLogs = inputLogs;
+		this.indexDir = new File(indexDir);
+		if(!this.indexDir.isDirectory() && !this.indexDir.mkdirs()){
+			throw new Exception("Failed to create audit log index directory: '" + indexDir + "'");
+		}
+		this.startTime = startTime;
+		this.startTimeReached = startTime == NO_START_TIME;
+	}
+
+	/**
+	 * Stop reading the audit logs. All events buffered for reordering are returned before the end of the stream.
+	 * Same as interrupting the SPADE audit bridge process.
+	 */
+	public void stop(){
+		stopped = true;
+	}
+
+	@Override
+	public int read() throws IOException{
+		final byte[] b = new byte[1];
+		return read(b, 0, 1) == -1 ? -1 : (b[0] & 0xFF);
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) throws IOException{
+		if(len == 0){
+			return 0;
+		}
+		while(outputBytes == null || outputPosition == outputBytes.length){
+			outputBytes = output.poll();
+			outputPosition = 0;
+			if(outputBytes == null){
+				if(ended){
+					return -1;
+				}
+				fill();
+			}
+		}
+		final int count = Math.min(len, outputBytes.length - outputPosition);
+		System.arraycopy(outputBytes, outputPosition, b, off, count);
+		outputPosition += count;
+		return count;
+	}
+
+	@Override
+	public void close() throws IOException{
+		ended = true;
+		output.clear();
+		events.clear();
+		outputBytes = null;
+		if(current != null){
+			current.close();
+			current = null;
+		}
+	}
+
+	private void fill() throws IOException{
+		while(output.isEmpty() && !ended){
+			if(stopped){
+				logger.log(Level.INFO, "Stopped reading audit logs");
+				if(current != null){
+					current.close(); // Index is not saved for a partially read log
+					current = null;
+					currentIndexBuilder = null;
+				}
+				flushEvents();
+				ended = true;
+				return;
+			}
+			if(current == null || !current.nextLine()){
+				finishCurrentLog();
+				if(!openNextLog()){
+					flushEvents();
+					ended = true;
+				}
+				continue;
+			}
+			handleLine();
+		}
+	}
+
+	private void handleLine(){
+		lineLength = current.copyLine(line);
+		if(lineLength + 1 > line.length){
+			line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + 1));
+			lineLength = current.copyLine(line);
+		}
+		line[lineLength++] = '\n';
+
+		final long time = parseTime(line, lineLength);
+		if(currentIndexBuilder != null){
+			currentIndexBuilder.add(current.lineStart, time);
+		}
+		if(startTime != NO_START_TIME && time != -1 && time < startTime){
+			return;
+		}
+
+		final int typeStart = indexOf(line, lineLength, TYPE, 0);
+		if(typeStart != -1){
+			final int type = typeStart + TYPE.length;
+			if(startsWith(line, lineLength, type, TYPE_DAEMON_START)){
+				flushEvents();
+			}
+			if(startsWith(line, lineLength, type, TYPE_EOE) || startsWith(line, lineLength, type, TYPE_UNKNOWN)){
+				return;
+			}
+		}
+
+		final long eventId = parseEventId(line, lineLength);
+		if(eventId == -1){
+			output.add(EVENT_ID_ERROR);
+			return;
+		}
+		if(nextEventId == 0){
+			nextEventId = eventId;
+		}
+		ByteArrayOutputStream event = events.get(eventId);
+		if(event == null){
+			event = new ByteArrayOutputStream(Math.max(256, lineLength));
+			events.put(eventId, event);
+			if(nextEventId > eventId){
+				nextEventId = eventId;
+			}
+		}
+		event.write(line, 0, lineLength);
+
+		while(events.size() > REORDERING_WINDOW){
+			emitNextEvent();
+		}
+	}
+
+	private void emitNextEvent(){
+		final ByteArrayOutputStream event = events.remove(nextEventId++);
+		if(event != null){
+			output.add(event.toByteArray());
+		}
+	}
+
+	private void flushEvents(){
+		while(!events.isEmpty()){
+			emitNextEvent();
+		}
+	}
+
+	private boolean openNextLog() throws IOException{
+		while(++inputLogIndex < inputLogs.size()){
+			final File log = new File(inputLogs.get(inputLogIndex));
+			final File indexFile = getIndexFile(log);
+			LogIndex index = LogIndex.load(indexFile, log);
+			long offset = 0;
+			if(!startTimeReached){
+				if(index == null){
+					logger.log(Level.INFO, "Building index of audit log: '" + log.getAbsolutePath() + "'");
+					index = LogIndex.build(log);
+					saveIndex(index, indexFile);
+				}
+				if(index.maxTime < startTime){
+					logger.log(Level.INFO, "Skipped audit log with all events before the start time: '" + log.getAbsolutePath() + "'");
+					bytesSkipped += index.fileLength;
+					continue;
+				}
+				offset = index.seek(startTime);
+				bytesSkipped += offset;
+				startTimeReached = true;
+				logger.log(Level.INFO, "Reading audit log '" + log.getAbsolutePath() + "' from offset " + offset
+						+ " for the start time. Total bytes skipped: " + bytesSkipped);
+			}
+			current = new MappedLogFile(log, offset);
+			currentIndexBuilder = (index == null && offset == 0) ? new IndexBuilder(log) : null;
+			logger.log(Level.INFO, "Reading audit log: '" + log.getAbsolutePath() + "'");
+			return true;
+		}
+		return false;
+	}
+
+	private void finishCurrentLog() throws IOException{
+		if(current == null){
+			return;
+		}
+		current.close();
+		if(currentIndexBuilder != null){
+			saveIndex(currentIndexBuilder.finish(), getIndexFile(current.file));
+			currentIndexBuilder = null;
+		}
+		current = null;
+	}
+
+	private File getIndexFile(final File log){
+		final String path = log.getAbsolutePath();
+		return new File(indexDir, log.getName() + "." + Integer.toHexString(path.hashCode()) + INDEX_FILE_SUFFIX);
+	}
+
+	private void saveIndex(final LogIndex index, final File indexFile){
+		try{
+			index.save(indexFile);
+		}catch(Exception e){
+			logger.log(Level.WARNING, "Failed to save audit log index: '" + indexFile.getAbsolutePath() + "'", e);
+		}
+	}
+
+	/*
+	 * Time in milliseconds between the first '(' and the following ':' e.g. 'msg=audit(1600000000.123:45):'.
+	 * -1 if not found.
+	 */
+	private static long parseTime(final byte[] bytes, final int length){
+		int i = 0;
+		while(i < length && bytes[i] != '('){
+			i++;
+		}
+		long seconds = 0, millis = 0;
+		int digits = 0, fractionDigits = -1;
+		for(i++; i < length; i++){
+			final byte b = bytes[i];
+			if(b >= '0' && b <= '9'){
+				if(fractionDigits == -1){
+					seconds = seconds * 10 + (b - '0');
+					digits++;
+				}else if(fractionDigits < 3){
+					millis = millis * 10 + (b - '0');
+					fractionDigits++;
+				}
+			}else if(b == '.' && fractionDigits == -1){
+				fractionDigits = 0;
+			}else if(b == ':'){
+				break;
+			}else{
+				return -1;
+			}
+		}
+		if(i == length || digits == 0 || digits > 18){
+			return -1;
+		}
+		for(; fractionDigits < 3; fractionDigits++){
+			millis = millis * 10;
+		}
+		return seconds * 1000 + millis;
+	}
+
+	/*
+	 * Same as spadeAuditBridge: the number after the first ':'. -1 if no ':'.
+	 */
+	private static long parseEventId(final byte[] bytes, final int length){
+		int i = 0;
+		while(i < length && bytes[i] != ':'){
+			i++;
+		}
+		if(i == length){
+			return -1;
+		}
+		for(i++; i < length && (bytes[i] == ' ' || bytes[i] == '\t'); i++){
+		}
+		boolean negative = false;
+		if(i < length && (bytes[i] == '-' || bytes[i] == '+')){
+			negative = bytes[i++] == '-';
+		}
+		long id = 0;
+		for(; i < length && bytes[i] >= '0' && bytes[i] <= '9'; i++){
+			id = id * 10 + (bytes[i] - '0');
+		}
+		return negative ? -id : id;
+	}
+
+	private static int indexOf(final byte[] bytes, final int length, final byte[] pattern, final int from){
+		for(int i = from; i + pattern.length <= length; i++){
+			if(startsWith(bytes, length, i, pattern)){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean startsWith(final byte[] bytes, final int length, final int offset, final byte[] prefix){
+		if(offset + prefix.length > length){
+			return false;
+		}
+		for(int i = 0; i < prefix.length; i++){
+			if(bytes[offset + i] != prefix[i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static byte[] ascii(final String str){
+		final byte[] bytes = new byte[str.length()];
+		for(int i = 0; i < bytes.length; i++){
+			bytes[i] = (byte)str.charAt(i);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Lines of a file mapped in windows of at most MAP_WINDOW_SIZE bytes
+	 */
+	private static final class MappedLogFile{
+		private final File file;
+		private final RandomAccessFile randomAccessFile;
+		private final FileChannel channel;
+		private final long size;
+
+		private MappedByteBuffer window;
+		private ByteBuffer windowView;
+		private long windowStart = 0, windowEnd = 0;
+
+		private long position;
+		private long lineStart = 0, lineEnd = 0; // lineEnd excludes the '\n'
+
+		private MappedLogFile(final File file, final long offset) throws IOException{
+			this.file = file;
+			this.randomAccessFile = new RandomAccessFile(file, "r");
+			this.channel = randomAccessFile.getChannel();
+			this.size = channel.size();
+			this.position = Math.min(offset, size);
+		}
+
+		private void map(final long start) throws IOException{
+			windowStart = start;
+			windowEnd = Math.min(size, start + MAP_WINDOW_SIZE);
+			window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+			windowView = window.duplicate();
+		}
+
+		private boolean nextLine() throws IOException{
+			if(position >= size){
+				return false;
+			}
+			if(window == null || position >= windowEnd){
+				map(position);
+			}
+			lineStart = position;
+			long i = position;
+			while(true){
+				if(i == windowEnd){
+					if(windowEnd == size){
+						lineEnd = size; // Last line without a '\n'
+						position = size;
+						return true;
+					}
+					if(lineStart == windowStart){
+						throw new IOException("Line longer than " + MAP_WINDOW_SIZE + " bytes at offset " + lineStart
+								+ " in audit log: '" + file.getAbsolutePath() + "'");
+					}
+					map(lineStart);
+				}
+				if(window.get((int)(i - windowStart)) == '\n'){
+					lineEnd = i;
+					position = i + 1;
+					return true;
+				}
+				i++;
+			}
+		}
+
+		/*
+		 * Copies the current line if it fits and returns the length of the line
+		 */
+		private int copyLine(final byte[] dst){
+			final int length = (int)(lineEnd - lineStart);
+			if(length < dst.length){
+				windowView.position((int)(lineStart - windowStart));
+				windowView.get(dst, 0, length);
+			}
+			return length;
+		}
+
+		private void close() throws IOException{
+			window = null;
+			windowView = null;
+			randomAccessFile.close();
+		}
+	}
+
+	private static final class IndexBuilder{
+		private final File log;
+		private final long fileLength, lastModified;
+		private long[] offsets = new long[64], maxTimesBefore = new long[64];
+		private int count = 0;
+		private long maxTime = -1, nextOffset = 0;
+
+		private IndexBuilder(final File log){
+			this.log = log;
+			this.fileLength = log.length();
+			this.lastModified = log.lastModified();
+		}
+
+		private void add(final long lineStart, final long time){
+			if(lineStart >= nextOffset){
+				if(count == offsets.length){
+					offsets = Arrays.copyOf(offsets, count * 2);
+					maxTimesBefore = Arrays.copyOf(maxTimesBefore, count * 2);
+				}
+				offsets[count] = lineStart;
+				maxTimesBefore[count] = maxTime;
+				count++;
+				nextOffset = lineStart + INDEX_INTERVAL;
+			}
+			if(time > maxTime){
+				maxTime = time;
+			}
+		}
+
+		private LogIndex finish(){
+			return new LogIndex(log.getAbsolutePath(), fileLength, lastModified, maxTime,
+					Arrays.copyOf(offsets, count), Arrays.copyOf(maxTimesBefore, count));
+		}
+	}
+
+	private static final class LogIndex{
+		private final String path;
+		private final long fileLength, lastModified;
+		private final long maxTime;
+		private final long[] offsets, maxTimesBefore;
+
+		private LogIndex(final String path, final long fileLength, final long lastModified, final long maxTime,
+				final long[] offsets, final long[] maxTimesBefore){
+			this.path = path;
+			this.fileLength = fileLength;
+			this.lastModified = lastModified;
+			this.maxTime = maxTime;
+			this.offsets = offsets;
+			this.maxTimesBefore = maxTimesBefore;
+		}
+
+		/*
+		 * Offset of the last entry with all events before it earlier than the given time
+		 */
+		private long seek(final long time){
+			long offset = 0;
+			for(int i = 0; i < offsets.length && maxTimesBefore[i] < time; i++){
+				offset = offsets[i];
+			}
+			return offset;
+		}
+
+		private static LogIndex build(final File log) throws IOException{
+			final IndexBuilder builder = new IndexBuilder(log);
+			final MappedLogFile file = new MappedLogFile(log, 0);
+			try{
+				byte[] line = new byte[4096];
+				while(file.nextLine()){
+					int length = file.copyLine(line);
+					if(length >= line.length){
+						line = new byte[Math.max(line.length * 2, length + 1)];
+						length = file.copyLine(line);
+					}
+					builder.add(file.lineStart, parseTime(line, length));
+				}
+			}finally{
+				file.close();
+			}
+			return builder.finish();
+		}
+
+		/*
+		 * NULL if the index does not exist or the log has changed since the index was built
+		 */
+		private static LogIndex load(final File indexFile, final File log){
+			if(!indexFile.isFile()){
+				return null;
+			}
+			try(final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))){
+				if(in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION){
+					return null;
+				}
+				final String path = in.readUTF();
+				final long fileLength = in.readLong();
+				final long lastModified = in.readLong();
+				if(!path.equals(log.getAbsolutePath()) || fileLength != log.length() || lastModified != log.lastModified()){
+					return null;
+				}
+				final long maxTime = in.readLong();
+				final int count = in.readInt();
+				final long[] offsets = new long[count], maxTimesBefore = new long[count];
+				for(int i = 0; i < count; i++){
+					offsets[i] = in.readLong();
+					maxTimesBefore[i] = in.readLong();
+				}
+				return new LogIndex(path, fileLength, lastModified, maxTime, offsets, maxTimesBefore);
+			}catch(Exception e){
+				logger.log(Level.WARNING, "Ignoring unreadable audit log index: '" + indexFile.getAbsolutePath() + "'", e);
+				return null;
+			}
+		}
+
+		private void save(final File indexFile) throws IOException{
+			final File tempFile = new File(indexFile.getPath() + ".tmp");
+			try(final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))){
+				out.writeInt(INDEX_MAGIC);
+				out.writeInt(INDEX_VERSION);
+				out.writeUTF(path);
+				out.writeLong(fileLength);
+				out.writeLong(lastModified);
+				out.writeLong(maxTime);
+				out.writeInt(offsets.length);
+				for(int i = 0; i < offsets.length; i++){
+					out.writeLong(offsets[i]);
+					out.writeLong(maxTimesBefore[i]);
+				}
+			}
+			Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+	}
+}
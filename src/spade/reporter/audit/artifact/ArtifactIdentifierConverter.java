@@ -0,0 +1,198 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.reporter.audit.artifact;
+
+import spade.reporter.audit.OPMConstants;
+import spade.utility.BinaryConverter;
+
+/**
+ * Subtype followed by the fields of the artifact identifier of that subtype.
+ *
+ * Path identifiers are written as the root path and the path (not the combined path) same as before.
+ */
+public class ArtifactIdentifierConverter extends BinaryConverter<ArtifactIdentifier>{
+
+	public ArtifactIdentifierConverter(){
+		super(OPMConstants.SUBTYPE_FILE,
+				OPMConstants.SUBTYPE_DIRECTORY,
+				OPMConstants.SUBTYPE_BLOCK_DEVICE,
+				OPMConstants.SUBTYPE_CHARACTER_DEVICE,
+				OPMConstants.SUBTYPE_LINK,
+				OPMConstants.SUBTYPE_MEMORY_ADDRESS,
+				OPMConstants.SUBTYPE_NAMED_PIPE,
+				OPMConstants.SUBTYPE_NETWORK_SOCKET,
+				OPMConstants.SUBTYPE_UNIX_SOCKET,
+				OPMConstants.SUBTYPE_UNKNOWN,
+				OPMConstants.SUBTYPE_UNNAMED_PIPE,
+				OPMConstants.SUBTYPE_UNNAMED_UNIX_SOCKET_PAIR,
+				OPMConstants.SUBTYPE_UNNAMED_NETWORK_SOCKET_PAIR,
+				OPMConstants.SUBTYPE_SYSV_MSG_Q,
+				OPMConstants.SUBTYPE_SYSV_SHARED_MEMORY,
+				OPMConstants.SUBTYPE_POSIX_MSG_Q,
+				"/", "tcp", "udp");
+	}
+
+	@Override
+	protected void write(final ArtifactIdentifier i, final Output out) throws Exception{
+		final String subtype = i.getSubtype();
+		writeString(out, subtype);
+		switch(subtype){
+			case OPMConstants.SUBTYPE_BLOCK_DEVICE:
+			case OPMConstants.SUBTYPE_CHARACTER_DEVICE:
+			case OPMConstants.SUBTYPE_DIRECTORY:
+			case OPMConstants.SUBTYPE_FILE:
+			case OPMConstants.SUBTYPE_LINK:
+			case OPMConstants.SUBTYPE_NAMED_PIPE:
+			case OPMConstants.SUBTYPE_UNIX_SOCKET:
+			case OPMConstants.SUBTYPE_POSIX_MSG_Q:
+				final PathIdentifier pathIdentifier = (PathIdentifier)i;
+				writeString(out, pathIdentifier.rootFSPath);
+				writeString(out, pathIdentifier.path);
+				writeString(out, pathIdentifier.inode);
+				break;
+			case OPMConstants.SUBTYPE_MEMORY_ADDRESS:
+				final MemoryIdentifier mem = (MemoryIdentifier)i;
+				writeString(out, mem.getMemoryAddress());
+				writeString(out, mem.getSize());
+				writeString(out, mem.getTgid());
+				break;
+			case OPMConstants.SUBTYPE_NETWORK_SOCKET:
+				final NetworkSocketIdentifier net = (NetworkSocketIdentifier)i;
+				writeString(out, net.getLocalHost());
+				writeString(out, net.getLocalPort());
+				writeString(out, net.getRemoteHost());
+				writeString(out, net.getRemotePort());
+				writeString(out, net.getProtocol());
+				writeString(out, net.netNamespaceId);
+				break;
+			case OPMConstants.SUBTYPE_UNKNOWN:
+				final UnknownIdentifier unknown = (UnknownIdentifier)i;
+				writeString(out, unknown.getFD());
+				writeString(out, unknown.getTgid());
+				break;
+			case OPMConstants.SUBTYPE_UNNAMED_NETWORK_SOCKET_PAIR:
+				final UnnamedNetworkSocketPairIdentifier unNet = (UnnamedNetworkSocketPairIdentifier)i;
+				writeString(out, unNet.fd0);
+				writeString(out, unNet.fd1);
+				writeString(out, unNet.protocol);
+				writeString(out, unNet.tgid);
+				break;
+			case OPMConstants.SUBTYPE_UNNAMED_PIPE:
+			case OPMConstants.SUBTYPE_UNNAMED_UNIX_SOCKET_PAIR:
+				final FdPairIdentifier fdPair = (FdPairIdentifier)i;
+				writeString(out, fdPair.fd0);
+				writeString(out, fdPair.fd1);
+				writeString(out, fdPair.tgid);
+				break;
+			case OPMConstants.SUBTYPE_SYSV_MSG_Q:
+			case OPMConstants.SUBTYPE_SYSV_SHARED_MEMORY:
+				final SystemVArtifactIdentifier sysv = (SystemVArtifactIdentifier)i;
+				writeString(out, sysv.id);
+				writeString(out, sysv.ouid);
+				writeString(out, sysv.ogid);
+				writeString(out, sysv.ipcNamespace);
+				break;
+			default: throw new RuntimeException("Unexpected subtype: " + subtype);
+		}
+	}
+
+	@Override
+	protected ArtifactIdentifier read(final Input in) throws Exception{
+		final String subtype = readString(in);
+		if(subtype == null){
+			throw new Exception("NULL subtype");
+		}
+		switch(subtype){
+			case OPMConstants.SUBTYPE_BLOCK_DEVICE:
+			case OPMConstants.SUBTYPE_CHARACTER_DEVICE:
+			case OPMConstants.SUBTYPE_DIRECTORY:
+			case OPMConstants.SUBTYPE_FILE:
+			case OPMConstants.SUBTYPE_LINK:
+			case OPMConstants.SUBTYPE_NAMED_PIPE:
+			case OPMConstants.SUBTYPE_UNIX_SOCKET:
+			case OPMConstants.SUBTYPE_POSIX_MSG_Q:{
+				final String rootFSPath = readString(in);
+				final String path = readString(in);
+				final String inode = readString(in);
+				switch(subtype){
+					case OPMConstants.SUBTYPE_BLOCK_DEVICE: return new BlockDeviceIdentifier(path, rootFSPath, inode);
+					case OPMConstants.SUBTYPE_CHARACTER_DEVICE: return new CharacterDeviceIdentifier(path, rootFSPath, inode);
+					case OPMConstants.SUBTYPE_DIRECTORY: return new DirectoryIdentifier(path, rootFSPath, inode);
+					case OPMConstants.SUBTYPE_FILE: return new FileIdentifier(path, rootFSPath, inode);
+					case OPMConstants.SUBTYPE_LINK: return new LinkIdentifier(path, rootFSPath, inode);
+					case OPMConstants.SUBTYPE_NAMED_PIPE: return new NamedPipeIdentifier(path, rootFSPath, inode);
+					case OPMConstants.SUBTYPE_UNIX_SOCKET: return new UnixSocketIdentifier(path, rootFSPath, inode);
+					default: return new PosixMessageQueue(path, rootFSPath, inode);
+				}
+			}
+			case OPMConstants.SUBTYPE_MEMORY_ADDRESS:{
+				final String memoryAddress = readString(in);
+				final String size = readString(in);
+				final String tgid = readString(in);
+				return new MemoryIdentifier(tgid, memoryAddress, size);
+			}
+			case OPMConstants.SUBTYPE_NETWORK_SOCKET:{
+				final String localHost = readString(in);
+				final String localPort = readString(in);
+				final String remoteHost = readString(in);
+				final String remotePort = readString(in);
+				final String protocol = readString(in);
+				final String netNamespaceId = readString(in);
+				return new NetworkSocketIdentifier(localHost, localPort, remoteHost, remotePort, protocol, netNamespaceId);
+			}
+			case OPMConstants.SUBTYPE_UNKNOWN:{
+				final String fd = readString(in);
+				final String tgid = readString(in);
+				return new UnknownIdentifier(tgid, fd);
+			}
+			case OPMConstants.SUBTYPE_UNNAMED_NETWORK_SOCKET_PAIR:{
+				final String fd0 = readString(in);
+				final String fd1 = readString(in);
+				final String protocol = readString(in);
+				final String tgid = readString(in);
+				return new UnnamedNetworkSocketPairIdentifier(tgid, fd0, fd1, protocol);
+			}
+			case OPMConstants.SUBTYPE_UNNAMED_PIPE:
+			case OPMConstants.SUBTYPE_UNNAMED_UNIX_SOCKET_PAIR:{
+				final String fd0 = readString(in);
+				final String fd1 = readString(in);
+				final String tgid = readString(in);
+				if(OPMConstants.SUBTYPE_UNNAMED_PIPE.equals(subtype)){
+					return new UnnamedPipeIdentifier(tgid, fd0, fd1);
+				}else{
+					return new UnnamedUnixSocketPairIdentifier(tgid, fd0, fd1);
+				}
+			}
+			case OPMConstants.SUBTYPE_SYSV_MSG_Q:
+			case OPMConstants.SUBTYPE_SYSV_SHARED_MEMORY:{
+				final String id = readString(in);
+				final String ouid = readString(in);
+				final String ogid = readString(in);
+				final String ipcNamespace = readString(in);
+				if(OPMConstants.SUBTYPE_SYSV_MSG_Q.equals(subtype)){
+					return new SystemVMessageQueueIdentifier(id, ouid, ogid, ipcNamespace);
+				}else{
+					return new SystemVSharedMemoryIdentifier(id, ouid, ogid, ipcNamespace);
+				}
+			}
+			default: throw new Exception("Unexpected subtype: " + subtype);
+		}
+	}
+}
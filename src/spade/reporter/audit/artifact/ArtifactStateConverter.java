@@ -0,0 +1,78 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.reporter.audit.artifact;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.Set;
+
+import spade.utility.BinaryConverter;
+
+/**
+ * Epochs and versions as varints and the permissions (octal strings) as decimal varints.
+ */
+public class ArtifactStateConverter extends BinaryConverter<ArtifactState>{
+
+	public ArtifactStateConverter(){
+		super();
+	}
+
+	@Override
+	protected void write(final ArtifactState i, final Output out) throws Exception{
+		out.writeBoolean(i.hasBeenPut());
+		writeBigInteger(out, i.getEpoch());
+		writeBigInteger(out, i.getVersion());
+		writeBigInteger(out, i.getLastPutEpoch());
+		writeBigInteger(out, i.getLastPutVersion());
+		writeString(out, i.getPermissions());
+		writeString(out, i.getLastPutPermissions());
+		final Set<String> previousPutPermissions = i.getPreviousPutPermissions();
+		if(previousPutPermissions == null){
+			out.writeBoolean(false);
+		}else{
+			out.writeBoolean(true);
+			out.writeVarLong(previousPutPermissions.size());
+			for(final String permissions : previousPutPermissions){
+				writeString(out, permissions);
+			}
+		}
+	}
+
+	@Override
+	protected ArtifactState read(final Input in) throws Exception{
+		final boolean hasBeenPut = in.readBoolean();
+		final BigInteger epoch = readBigInteger(in);
+		final BigInteger version = readBigInteger(in);
+		final BigInteger lastPutEpoch = readBigInteger(in);
+		final BigInteger lastPutVersion = readBigInteger(in);
+		final String permissions = readString(in);
+		final String lastPutPermissions = readString(in);
+		Set<String> previousPutPermissions = null;
+		if(in.readBoolean()){
+			final int count = in.readCount();
+			previousPutPermissions = new HashSet<String>();
+			for(int i = 0; i < count; i++){
+				previousPutPermissions.add(readString(in));
+			}
+		}
+		return new ArtifactState(hasBeenPut, epoch, version, lastPutEpoch,
+				lastPutVersion, permissions, lastPutPermissions, previousPutPermissions);
+	}
+}
@@ -35,6 +35,7 @@ import spade.reporter.audit.AuditEventReader;
 import spade.reporter.audit.LinuxConstants;
 import spade.reporter.audit.OPMConstants;
 import spade.reporter.audit.SYSCALL;
+import spade.utility.BinaryConverter;
 import spade.utility.HelperFunctions;
 import spade.utility.Result;
 import spade.utility.map.external.ExternalMap;
@@ -106,7 +107,8 @@ public abstract class ProcessManager extends ProcessStateManager{
 			throw new Exception("Failed to parse external map arguments");
 		}else{
 			ExternalMapArgument externalMapArgument = externalMapArgumentResult.result;
-			Result<ExternalMap<ProcessKey, ProcessUnitState>> externalMapResult = ExternalMapManager.create(externalMapArgument);
+			Result<ExternalMap<ProcessKey, ProcessUnitState>> externalMapResult = ExternalMapManager.create(externalMapArgument,
+					new ProcessKeyConverter(), new ProcessUnitStateConverter());
 			if(externalMapResult.error){
 				logger.log(Level.SEVERE, "Failed to create external map '"+processUnitStateMapId+"' from arguments: " + externalMapArgument);
 				logger.log(Level.SEVERE, externalMapResult.toErrorString());
@@ -1199,3 +1201,23 @@ class ProcessKey implements Serializable{
 	}
 
 }
+
+/**
+ * Pid and start time written as numbers
+ */
+class ProcessKeyConverter extends BinaryConverter<ProcessKey>{
+
+	@Override
+	protected void write(ProcessKey key, Output out) throws Exception{
+		writeString(out, key.pid);
+		writeString(out, key.time);
+	}
+
+	@Override
+	protected ProcessKey read(Input in) throws Exception{
+		final String pid = readString(in);
+		final String time = readString(in);
+		return new ProcessKey(pid, time);
+	}
+
+}
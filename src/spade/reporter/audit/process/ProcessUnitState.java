@@ -74,6 +74,25 @@ public class ProcessUnitState implements Serializable{
 		}
 	}
 	
+	/**
+	 * Restores the complete state. Used by ProcessUnitStateConverter.
+	 */
+	ProcessUnitState(ProcessIdentifier process, AgentIdentifier agent, UnitIdentifier unit, NamespaceIdentifier namespace,
+			String threadGroupId, Series<Double, SimpleEntry<AgentIdentifier, NamespaceIdentifier>> timeToAgentAndNamespace,
+			boolean hadUnits){
+		this.process = process;
+		this.agent = agent;
+		this.unit = unit;
+		this.namespace = namespace;
+		this.threadGroupId = threadGroupId;
+		this.timeToAgentAndNamespace = timeToAgentAndNamespace;
+		this.hadUnits = hadUnits;
+	}
+	
+	Series<Double, SimpleEntry<AgentIdentifier, NamespaceIdentifier>> getTimeToAgentAndNamespace(){
+		return timeToAgentAndNamespace;
+	}
+	
 	protected void setThreadGroupId(String threadGroupId){
 		this.threadGroupId = threadGroupId;
 	}
@@ -0,0 +1,204 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.reporter.audit.process;
+
+import java.util.AbstractMap.SimpleEntry;
+
+import spade.reporter.audit.OPMConstants;
+import spade.utility.BinaryConverter;
+import spade.utility.Series;
+
+/**
+ * All the fields of the process state including the agent and namespace history.
+ *
+ * Agents and namespaces in the history which are the same as the current ones are written as a reference.
+ */
+class ProcessUnitStateConverter extends BinaryConverter<ProcessUnitState>{
+
+	private static final int IDENTIFIER_NULL = 0, IDENTIFIER_CURRENT = 1, IDENTIFIER_NEW = 2;
+
+	ProcessUnitStateConverter(){
+		super(OPMConstants.SOURCE_AUDIT_SYSCALL,
+				OPMConstants.SOURCE_PROCFS,
+				OPMConstants.SOURCE_BEEP,
+				OPMConstants.SOURCE_AUDIT_NETFILTER,
+				"/");
+	}
+
+	@Override
+	protected void write(final ProcessUnitState state, final Output out) throws Exception{
+		final ProcessIdentifier process = state.getProcess();
+		writeString(out, process.pid);
+		writeString(out, process.ppid);
+		writeString(out, process.name);
+		writeString(out, process.cwd);
+		writeString(out, process.commandLine);
+		writeString(out, process.startTime);
+		writeString(out, process.seenTime);
+		writeString(out, process.processUnitId);
+		writeString(out, process.processSource);
+		writeString(out, process.nsPid);
+		writeString(out, process.exe);
+
+		final AgentIdentifier agent = state.getAgent();
+		final NamespaceIdentifier namespace = state.getNamespace();
+		writeAgent(out, agent, null);
+		writeNamespace(out, namespace, null);
+
+		final UnitIdentifier unit = state.getUnit();
+		out.writeBoolean(unit != null);
+		if(unit != null){
+			writeString(out, unit.id);
+			writeString(out, unit.iteration);
+			writeString(out, unit.count);
+			writeString(out, unit.startTime);
+			writeString(out, unit.eventId);
+		}
+
+		writeString(out, state.getThreadGroupId());
+		out.writeBoolean(state.hadUnits());
+
+		final Series<Double, SimpleEntry<AgentIdentifier, NamespaceIdentifier>> series = state.getTimeToAgentAndNamespace();
+		out.writeVarLong(series.getEntries().size());
+		for(final SimpleEntry<Double, SimpleEntry<AgentIdentifier, NamespaceIdentifier>> entry : series.getEntries()){
+			out.writeDouble(entry.getKey());
+			final SimpleEntry<AgentIdentifier, NamespaceIdentifier> value = entry.getValue();
+			writeAgent(out, value == null ? null : value.getKey(), agent);
+			writeNamespace(out, value == null ? null : value.getValue(), namespace);
+		}
+	}
+
+	@Override
+	protected ProcessUnitState read(final Input in) throws Exception{
+		final String pid = readString(in);
+		final String ppid = readString(in);
+		final String name = readString(in);
+		final String cwd = readString(in);
+		final String commandLine = readString(in);
+		final String startTime = readString(in);
+		final String seenTime = readString(in);
+		final String processUnitId = readString(in);
+		final String processSource = readString(in);
+		final String nsPid = readString(in);
+		final String exe = readString(in);
+		final ProcessIdentifier process = new ProcessIdentifier(pid, ppid, name, cwd, commandLine,
+				startTime, seenTime, processUnitId, processSource, nsPid, exe);
+
+		final AgentIdentifier agent = readAgent(in, null);
+		final NamespaceIdentifier namespace = readNamespace(in, null);
+
+		UnitIdentifier unit = null;
+		if(in.readBoolean()){
+			final String id = readString(in);
+			final String iteration = readString(in);
+			final String count = readString(in);
+			final String unitStartTime = readString(in);
+			final String eventId = readString(in);
+			unit = new UnitIdentifier(id, iteration, count, unitStartTime, eventId);
+		}
+
+		final String threadGroupId = readString(in);
+		final boolean hadUnits = in.readBoolean();
+
+		final Series<Double, SimpleEntry<AgentIdentifier, NamespaceIdentifier>> series =
+				new Series<Double, SimpleEntry<AgentIdentifier, NamespaceIdentifier>>();
+		final int count = in.readCount();
+		for(int i = 0; i < count; i++){
+			final double time = in.readDouble();
+			final AgentIdentifier entryAgent = readAgent(in, agent);
+			final NamespaceIdentifier entryNamespace = readNamespace(in, namespace);
+			series.add(time, new SimpleEntry<AgentIdentifier, NamespaceIdentifier>(entryAgent, entryNamespace));
+		}
+
+		return new ProcessUnitState(process, agent, unit, namespace, threadGroupId, series, hadUnits);
+	}
+
+	private void writeAgent(final Output out, final AgentIdentifier agent, final AgentIdentifier current){
+		if(agent == null){
+			out.writeByte(IDENTIFIER_NULL);
+		}else if(current != null && current.equals(agent)){
+			out.writeByte(IDENTIFIER_CURRENT);
+		}else{
+			out.writeByte(IDENTIFIER_NEW);
+			writeString(out, agent.uid);
+			writeString(out, agent.euid);
+			writeString(out, agent.gid);
+			writeString(out, agent.egid);
+			writeString(out, agent.suid);
+			writeString(out, agent.fsuid);
+			writeString(out, agent.sgid);
+			writeString(out, agent.fsgid);
+		}
+	}
+
+	private AgentIdentifier readAgent(final Input in, final AgentIdentifier current) throws Exception{
+		final int tag = in.readByte();
+		switch(tag){
+			case IDENTIFIER_NULL: return null;
+			case IDENTIFIER_CURRENT: return current;
+			case IDENTIFIER_NEW:{
+				final String uid = readString(in);
+				final String euid = readString(in);
+				final String gid = readString(in);
+				final String egid = readString(in);
+				final String suid = readString(in);
+				final String fsuid = readString(in);
+				final String sgid = readString(in);
+				final String fsgid = readString(in);
+				return new AgentIdentifier(uid, euid, gid, egid, suid, fsuid, sgid, fsgid);
+			}
+			default: throw new Exception("Invalid agent tag: " + tag);
+		}
+	}
+
+	private void writeNamespace(final Output out, final NamespaceIdentifier namespace, final NamespaceIdentifier current){
+		if(namespace == null){
+			out.writeByte(IDENTIFIER_NULL);
+		}else if(current != null && current.equals(namespace)){
+			out.writeByte(IDENTIFIER_CURRENT);
+		}else{
+			out.writeByte(IDENTIFIER_NEW);
+			writeString(out, namespace.mount);
+			writeString(out, namespace.user);
+			writeString(out, namespace.net);
+			writeString(out, namespace.pid);
+			writeString(out, namespace.pid_children);
+			writeString(out, namespace.ipc);
+		}
+	}
+
+	private NamespaceIdentifier readNamespace(final Input in, final NamespaceIdentifier current) throws Exception{
+		final int tag = in.readByte();
+		switch(tag){
+			case IDENTIFIER_NULL: return null;
+			case IDENTIFIER_CURRENT: return current;
+			case IDENTIFIER_NEW:{
+				final String mount = readString(in);
+				final String user = readString(in);
+				final String net = readString(in);
+				final String pid = readString(in);
+				final String pidChildren = readString(in);
+				final String ipc = readString(in);
+				return new NamespaceIdentifier(mount, user, net, pid, pidChildren, ipc);
+			}
+			default: throw new Exception("Invalid namespace tag: " + tag);
+		}
+	}
+}
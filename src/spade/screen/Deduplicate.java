@@ -336,6 +336,21 @@ public final class Deduplicate extends AbstractScreen{
 		return true;
 	}
 	
+	@Override
+	public void blockBatch(final List<AbstractVertex> vertices, final List<AbstractEdge> edges){
+		// Hashes computed before taking the lock
+		for(final AbstractVertex vertex : vertices){
+			vertex.bigHashCode();
+		}
+		for(final AbstractEdge edge : edges){
+			edge.bigHashCode();
+		}
+		synchronized(lockObject){
+			vertices.removeIf(this::blockVertex);
+			edges.removeIf(this::blockEdge);
+		}
+	}
+	
 	private final synchronized boolean block(final String hashCode, 
 			final spade.core.BloomFilter<String> bloomFilter, final LRUCache<String, Object> cache){
 		printStats(false);
@@ -0,0 +1,135 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.storage;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import spade.core.AbstractEdge;
+import spade.core.AbstractStorage;
+import spade.core.AbstractVertex;
+import spade.core.Settings;
+import spade.query.quickgrail.core.QueryInstructionExecutor;
+import spade.storage.inmemory.InMemoryGraph;
+import spade.storage.inmemory.InMemoryInstructionExecutor;
+import spade.storage.inmemory.InMemoryQueryEnvironment;
+import spade.utility.HelperFunctions;
+import spade.utility.Result;
+
+/**
+ * A storage implementation that keeps the graph in memory and answers QuickGrail queries natively.
+ *
+ * Edges are indexed by child and parent in compressed sparse row segments, and annotations are stored in dictionary
+ * encoded columns. The graph is lost on shutdown.
+ */
+public final class InMemory extends AbstractStorage{
+
+	private static final Logger logger = Logger.getLogger(InMemory.class.getName());
+
+	private static final String
+		keySegmentSize = "segmentSize",
+		baseGraphName = "spade_base_graph";
+
+	private InMemoryGraph graph;
+	private InMemoryQueryEnvironment queryEnvironment;
+	private InMemoryInstructionExecutor queryInstructionExecutor;
+
+	@Override
+	public final synchronized boolean initialize(String arguments){
+		final Map<String, String> map = new HashMap<String, String>();
+		try{
+			final String configFilePath = Settings.getDefaultConfigFilePath(this.getClass());
+			map.putAll(HelperFunctions.parseKeyValuePairsFrom(arguments, configFilePath, null));
+		}catch(Exception e){
+			logger.log(Level.SEVERE, "Failed to parse arguments and/or storage config file", e);
+			return false;
+		}
+
+		final String segmentSizeString = map.remove(keySegmentSize);
+		final Result<Long> segmentSizeResult = HelperFunctions.parseLong(segmentSizeString, 10, 1, Integer.MAX_VALUE);
+		if(segmentSizeResult.error){
+			logger.log(Level.SEVERE, "Invalid value for '" + keySegmentSize + "': '" + segmentSizeString + "'. "
+					+ segmentSizeResult.errorMessage);
+			return false;
+		}
+
+		try{
+			this.graph = new InMemoryGraph(segmentSizeResult.result.intValue());
+			this.queryEnvironment = new InMemoryQueryEnvironment(baseGraphName);
+			this.queryEnvironment.initialize();
+			this.queryInstructionExecutor = new InMemoryInstructionExecutor(this, queryEnvironment);
+		}catch(Exception e){
+			logger.log(Level.SEVERE, "Failed to initialize storage", e);
+			return false;
+		}
+
+		logger.log(Level.INFO, "Arguments [" + keySegmentSize + "=" + segmentSizeResult.result + "]");
+		return true;
+	}
+
+	public final InMemoryGraph getGraph(){
+		return graph;
+	}
+
+	@Override
+	public final boolean storeVertex(AbstractVertex incomingVertex){
+		if(graph.putVertex(incomingVertex)){
+			updateCounts();
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public final boolean storeEdge(AbstractEdge incomingEdge){
+		if(graph.putEdge(incomingEdge)){
+			updateCounts();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * The counts are taken from the graph because an edge also adds its endpoints if they don't exist already
+	 */
+	private void updateCounts(){
+		final Lock readLock = graph.readLock();
+		readLock.lock();
+		try{
+			vertexCount = graph.getVertexCount();
+			edgeCount = graph.getEdgeCount();
+		}finally{
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public final Object executeQuery(String query){
+		throw new RuntimeException("In-memory storage does NOT support native queries");
+	}
+
+	@Override
+	public final QueryInstructionExecutor getQueryInstructionExecutor(){
+		return queryInstructionExecutor;
+	}
+}
@@ -19,6 +19,7 @@
  */
 package spade.storage;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -55,6 +56,7 @@ import spade.storage.neo4j.TaskCreateIndex;
 import spade.storage.neo4j.TaskExecuteQuery;
 import spade.storage.neo4j.TaskGetHashToVertexMap;
 import spade.storage.neo4j.TaskGetQueriedEdgeSet;
+import spade.storage.neo4j.TaskPutBatch;
 import spade.storage.neo4j.TaskPutEdge;
 import spade.storage.neo4j.TaskPutVertex;
 import spade.utility.HelperFunctions;
@@ -322,6 +324,8 @@ public class Neo4j extends AbstractStorage{
 	//////////////////////////////////
 
 	private final LinkedList<StorageTask<?>> neo4jDbTasksPending = new LinkedList<StorageTask<?>>();
+	// Sum of the element counts of all the pending tasks. Guarded by neo4jDbTasksPending
+	private long neo4jDbElementsPending = 0;
 
 	public final int getPendingTasksSize(){
 		synchronized(neo4jDbTasksPending){
@@ -329,11 +333,25 @@ public class Neo4j extends AbstractStorage{
 		}
 	}
 
+	public final long getPendingElementsSize(){
+		synchronized(neo4jDbTasksPending){
+			return neo4jDbElementsPending;
+		}
+	}
+
+	private final void clearPendingTasks(){
+		synchronized(neo4jDbTasksPending){
+			neo4jDbTasksPending.clear();
+			neo4jDbElementsPending = 0;
+		}
+	}
+
 	private final StorageTask<?> removeFirstPendingTask(){
 		if(isMainThreadRunning()){
 			synchronized(neo4jDbTasksPending){
 				final StorageTask<?> task = neo4jDbTasksPending.pollFirst();
 				if(task != null){
+					neo4jDbElementsPending -= task.getElementCount();
 					getStorageStats().pendingTasksOutgoing.increment();
 				}
 				return task;
@@ -349,6 +367,7 @@ public class Neo4j extends AbstractStorage{
 				synchronized(neo4jDbTasksPending){
 					getStorageStats().pendingTasksIncoming.increment();
 					neo4jDbTasksPending.addLast(task);
+					neo4jDbElementsPending += task.getElementCount();
 				}
 			}
 		}
@@ -361,6 +380,7 @@ public class Neo4j extends AbstractStorage{
 				synchronized(neo4jDbTasksPending){
 					getStorageStats().pendingTasksIncoming.increment();
 					neo4jDbTasksPending.addFirst(task);
+					neo4jDbElementsPending += task.getElementCount();
 				}
 			}
 		}
@@ -392,12 +412,12 @@ public class Neo4j extends AbstractStorage{
 	private final void enforceBufferLimit(){
 		if(getConfiguration().bufferLimit > -1){
 			long waitStartMillis = 0;
-			boolean needToWait = getPendingTasksSize() > getConfiguration().bufferLimit;
+			boolean needToWait = getPendingElementsSize() > getConfiguration().bufferLimit;
 			if(needToWait){
 				//debug("Buffer limit reached: " + bufferLimit + ". Current buffer size: " + getPendingTasksSize());
 				waitStartMillis = System.currentTimeMillis();
 			}
-			while(getPendingTasksSize() > getConfiguration().bufferLimit){
+			while(getPendingElementsSize() > getConfiguration().bufferLimit){
 				if(isShutdown() || !isMainThreadRunning()){
 					break;
 				}
@@ -482,7 +502,7 @@ public class Neo4j extends AbstractStorage{
 							if(tasksExecutedSinceLastFlush > getConfiguration().flushBufferSize || 
 									(System.currentTimeMillis() - timeInMillisOfLastFlush > (getConfiguration().flushAfterSeconds * 1000))){
 								if(tasksExecutedSinceLastFlush > 0){
-									debug(tasksExecutedSinceLastFlush + " tasks flushed after "
+									debug(tasksExecutedSinceLastFlush + " task element(s) flushed after "
 											+ (System.currentTimeMillis() - timeInMillisOfLastFlush) + " millis");
 
 									// Not a resource leak. Always closed in the function
@@ -537,7 +557,7 @@ public class Neo4j extends AbstractStorage{
 									}
 								}
 								getStorageStats().stopActionTimer("EXECUTE-" + task.getClass().getSimpleName());
-								tasksExecutedSinceLastFlush++;
+								tasksExecutedSinceLastFlush += task.getElementCount();
 								task.completed();
 							}
 						}
@@ -555,9 +575,7 @@ public class Neo4j extends AbstractStorage{
 						if(fatalErrorCount >= getConfiguration().maxRetries){
 							logger.log(Level.SEVERE, "Max retries (" + getConfiguration().maxRetries + ") exhausted. " + "Discarding "
 									+ getPendingTasksSize() + " tasks and shutting down.");
-							synchronized(neo4jDbTasksPending){
-								neo4jDbTasksPending.clear();
-							}
+							clearPendingTasks();
 							break;
 						}
 					}
@@ -604,9 +622,7 @@ public class Neo4j extends AbstractStorage{
 			}
 			logger.log(Level.INFO, "Pending tasks going to be discarded: '" + getPendingTasksSize() + "'. Continuing with shutdown ...");
 
-			synchronized(neo4jDbTasksPending){
-				neo4jDbTasksPending.clear();
-			}
+			clearPendingTasks();
 			
 			try{
 				getDatabaseManager().shutdown();
@@ -712,6 +728,40 @@ public class Neo4j extends AbstractStorage{
 		return true;
 	}
 
+	@Override
+	public final int storeVertices(final List<AbstractVertex> vertices){
+		if(getConfiguration().taskBatchSize <= 1){
+			return super.storeVertices(vertices);
+		}
+		if(!isShutdown() && isMainThreadRunning()){
+			for(int from = 0; from < vertices.size(); from += getConfiguration().taskBatchSize){
+				final int to = Math.min(vertices.size(), from + getConfiguration().taskBatchSize);
+				appendPendingTask(new TaskPutBatch(
+						new ArrayList<AbstractVertex>(vertices.subList(from, to)), new ArrayList<AbstractEdge>(0)));
+			}
+		}else{
+			debug("Storage already shutdown. Vertices discarded: " + vertices.size());
+		}
+		return vertices.size();
+	}
+
+	@Override
+	public final int storeEdges(final List<AbstractEdge> edges){
+		if(getConfiguration().taskBatchSize <= 1){
+			return super.storeEdges(edges);
+		}
+		if(!isShutdown() && isMainThreadRunning()){
+			for(int from = 0; from < edges.size(); from += getConfiguration().taskBatchSize){
+				final int to = Math.min(edges.size(), from + getConfiguration().taskBatchSize);
+				appendPendingTask(new TaskPutBatch(
+						new ArrayList<AbstractVertex>(0), new ArrayList<AbstractEdge>(edges.subList(from, to))));
+			}
+		}else{
+			debug("Storage already shutdown. Edges discarded: " + edges.size());
+		}
+		return edges.size();
+	}
+
 	@Override
 	public final Object executeQuery(final String query){
 		return executeQueryForSmallResult(query);
@@ -19,8 +19,6 @@
  */
 package spade.storage;
 
-import java.io.BufferedReader;
-import java.io.StringReader;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
@@ -33,6 +31,9 @@ import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 
 import org.postgresql.copy.CopyManager;
@@ -42,7 +43,11 @@ import spade.core.AbstractEdge;
 import spade.core.AbstractVertex;
 import spade.core.Settings;
 import spade.query.quickgrail.core.QueryInstructionExecutor;
+import spade.storage.postgresql.AsyncFlusher;
+import spade.storage.postgresql.BinaryCopyWriter;
+import spade.storage.postgresql.CSVCopyWriter;
 import spade.storage.postgresql.Configuration;
+import spade.storage.postgresql.CopyWriter;
 import spade.storage.postgresql.PostgreSQLInstructionExecutor;
 import spade.storage.postgresql.PostgreSQLQueryEnvironment;
 import spade.utility.GraphBuffer;
@@ -67,11 +72,24 @@ public class PostgreSQL extends SQL{
 	 */
 	private final Set<String> vertexColumnNames = new LinkedHashSet<>();
 	private final Set<String> edgeColumnNames = new LinkedHashSet<>();
+	/*
+	 * Columns seen in the buffered elements but not added to the tables yet. Added in one statement per table right
+	 * before the buffer is flushed instead of flushing on every new column.
+	 */
+	private final Set<String> pendingVertexColumnNames = new LinkedHashSet<>();
+	private final Set<String> pendingEdgeColumnNames = new LinkedHashSet<>();
+	/*
+	 * Held while adding to the buffer (and the pending columns), and while flushing and updating the schema. Stores
+	 * come from the dispatcher thread and flushes for queries from the query threads.
+	 */
+	private final Object writeLock = new Object();
 
 	private final Configuration configuration = new Configuration();
 	private final GraphBuffer graphBuffer = new GraphBuffer();
 
 	private Connection connection = null;
+	private AsyncFlusher asyncFlusher = null;
+	private ParallelWriter parallelWriter = null;
 
 	@Override
 	public boolean initialize(final String arguments){
@@ -92,6 +110,15 @@ public class PostgreSQL extends SQL{
 
 			setupDatabase(connection, configuration.isSecondaryIndexes());
 
+			if(configuration.getWriterConnections() > 1){
+				parallelWriter = new ParallelWriter(configuration.getWriterConnections());
+			}
+
+			if(configuration.isAsyncFlush()){
+				asyncFlusher = new AsyncFlusher(this::persist, 
+						configuration.getMaxInFlightFlushes(), configuration.getFlushReportingIntervalSeconds());
+			}
+
 			logger.info(this.configuration.toString());
 			return true;
 		}catch(Exception e){
@@ -103,6 +130,12 @@ public class PostgreSQL extends SQL{
 	@Override
 	public boolean shutdown(){
 		flush();
+		if(asyncFlusher != null){
+			asyncFlusher.shutdown();
+		}
+		if(parallelWriter != null){
+			parallelWriter.close();
+		}
 		try{
 			closeConnection();
 		}catch(Exception e){
@@ -116,6 +149,10 @@ public class PostgreSQL extends SQL{
 	}
 
 	private CopyManager createCopyManager() throws Exception{
+		return createCopyManager(connection);
+	}
+
+	private CopyManager createCopyManager(final Connection connection) throws Exception{
 		return new CopyManager((BaseConnection)connection);
 	}
 
@@ -325,49 +362,80 @@ public class PostgreSQL extends SQL{
 		}
 	}
 
-	private Set<String> getNewVertexColumns(final Set<String> columnNames){
-		final Set<String> newColumnNames = new HashSet<String>(columnNames);
-		newColumnNames.removeAll(getVertexColumnNames());
-		return newColumnNames;
+	/**
+	 * Remembers the annotation keys which are not columns yet. The columns are added right before the next flush.
+	 * Must be called with the write lock held.
+	 */
+	private void addPendingVertexColumns(final Set<String> annotationKeys){
+		for(final String annotationKey : annotationKeys){
+			if(!getVertexColumnNames().contains(annotationKey)){
+				pendingVertexColumnNames.add(annotationKey);
+			}
+		}
 	}
 
-	private Set<String> getNewEdgeColumns(final Set<String> columnNames){
-		final Set<String> newColumnNames = new HashSet<String>(columnNames);
-		newColumnNames.removeAll(getEdgeColumnNames());
-		return newColumnNames;
+	private void addPendingEdgeColumns(final Set<String> annotationKeys){
+		for(final String annotationKey : annotationKeys){
+			if(!getEdgeColumnNames().contains(annotationKey)){
+				pendingEdgeColumnNames.add(annotationKey);
+			}
+		}
 	}
 
 	private void updateTableColumns(
 			final Set<String> newColumnNames, final String tableName) throws Exception{
 		try(final Statement statement = createStatement()){
-			String query = "";
+			final StringBuilder query = new StringBuilder();
+			query.append("alter table ").append(tableName);
+			boolean first = true;
 			for(final String newColumnName : newColumnNames){
-				query += "alter table " + tableName + " add column " + formatColumnName(newColumnName) + " varchar;";
+				query.append(first ? " " : ", ");
+				query.append("add column if not exists ").append(formatColumnName(newColumnName)).append(" varchar");
+				first = false;
 			}
-			statement.execute(query);
+			statement.execute(query.toString());
 		}catch(Exception e0){
 			throw new Exception("Failed to add columns to " + tableName + " table", e0);
 		}
 	}
 
+	/**
+	 * Adds all the pending columns (one statement per table). Must not be called while a flush is in flight because
+	 * the flush uses the column names. Must be called with the write lock held so that no flush is submitted and no
+	 * column is added to the pending ones in the meantime.
+	 * 
+	 * If the columns cannot be added then the values for those columns are not stored.
+	 */
+	private void applyPendingColumns(){
+		if(!pendingVertexColumnNames.isEmpty()){
+			try{
+				updateTableColumns(pendingVertexColumnNames, getVertexTableName());
+				addToVertexColumn(pendingVertexColumnNames);
+			}catch(Exception e){
+				logger.log(Level.WARNING, "Values for vertex annotations " + pendingVertexColumnNames + " discarded", e);
+			}
+			pendingVertexColumnNames.clear();
+		}
+		if(!pendingEdgeColumnNames.isEmpty()){
+			try{
+				updateTableColumns(pendingEdgeColumnNames, getEdgeTableName());
+				addToEdgeColumn(pendingEdgeColumnNames);
+			}catch(Exception e){
+				logger.log(Level.WARNING, "Values for edge annotations " + pendingEdgeColumnNames + " discarded", e);
+			}
+			pendingEdgeColumnNames.clear();
+		}
+	}
+
 	@Override
 	public boolean storeVertex(final AbstractVertex vertex){
 		if(vertex == null){
 			return false;
 		}
-		final Set<String> newColumnNames = getNewVertexColumns(vertex.getAnnotationKeys());
-		if(!newColumnNames.isEmpty()){
-			// Flush existing data because schema needs to be updated
-			flush();
-			try{
-				updateTableColumns(newColumnNames, getVertexTableName());
-				addToVertexColumn(newColumnNames);
-			}catch(Exception e){
-				logger.log(Level.WARNING, "Vertex discarded because of PostgreSQL error", e);
-				return false;
-			}
+		synchronized(writeLock){
+			addPendingVertexColumns(vertex.getAnnotationKeys());
+			addToBuffer(vertex);
 		}
-		addToBuffer(vertex);
 		return true;
 	}
 
@@ -376,160 +444,288 @@ public class PostgreSQL extends SQL{
 		if(edge == null || edge.getChildVertex() == null || edge.getParentVertex() == null){
 			return false;
 		}
-		final Set<String> newColumnNames = getNewEdgeColumns(edge.getAnnotationKeys());
-		if(!newColumnNames.isEmpty()){
-			// Flush existing data because schema needs to be updated
-			flush();
-			try{
-				updateTableColumns(newColumnNames, getEdgeTableName());
-				addToEdgeColumn(newColumnNames);
-			}catch(Exception e){
-				logger.log(Level.WARNING, "Edge discarded because of PostgreSQL error", e);
-				return false;
-			}
+		synchronized(writeLock){
+			addPendingEdgeColumns(edge.getAnnotationKeys());
+			addToBuffer(edge);
 		}
-		addToBuffer(edge);
 		return true;
 	}
 
+	@Override
+	public int storeVertices(final List<AbstractVertex> vertices){
+		synchronized(writeLock){
+			for(final AbstractVertex vertex : vertices){
+				addPendingVertexColumns(vertex.getAnnotationKeys());
+			}
+			graphBuffer.addVertices(vertices);
+			if(graphBuffer.full()){
+				flushInBackground();
+			}
+		}
+		return vertices.size();
+	}
+
+	@Override
+	public int storeEdges(final List<AbstractEdge> edges){
+		final List<AbstractEdge> validEdges = new ArrayList<AbstractEdge>(edges.size());
+		for(final AbstractEdge edge : edges){
+			if(edge.getChildVertex() != null && edge.getParentVertex() != null){
+				validEdges.add(edge);
+			}
+		}
+		synchronized(writeLock){
+			for(final AbstractEdge edge : validEdges){
+				addPendingEdgeColumns(edge.getAnnotationKeys());
+			}
+			graphBuffer.addEdges(validEdges);
+			if(graphBuffer.full()){
+				flushInBackground();
+			}
+		}
+		return validEdges.size();
+	}
+
 	private void addToBuffer(final AbstractVertex vertex){
 		graphBuffer.add(vertex);
 		if(graphBuffer.full()){
-			flush();
+			flushInBackground();
 		}
 	}
 
 	private void addToBuffer(final AbstractEdge edge){
 		graphBuffer.add(edge);
 		if(graphBuffer.full()){
-			flush();
+			flushInBackground();
 		}
 	}
 
-	private void persist(final GraphSnapshot graph){
-		if(graph.vertexSize() > 0){
-			final int vertexBufferSize = graph.vertexSize();
-			try{
-				final StringBuffer csvHashes = new StringBuffer();
-				csvHashes.append(getCSVLine(Arrays.asList(getPrimaryKeyName())));
-	
-				final StringBuffer csvVertices = new StringBuffer();
-				csvVertices.append(getCSVLine(getVertexColumnNames()));
-	
-				final List<String> vertexValues = new ArrayList<>();
-				final Iterator<AbstractVertex> vertices = graph.vertices();
-				while(vertices.hasNext()){
-					final AbstractVertex vertex = vertices.next();
-					for(final String vertexColumnName : getVertexColumnNames()){
-						final String vertexValue;
-						switch(vertexColumnName){
-							case PRIMARY_KEY:{
-								vertexValue = vertex.bigHashCode();
-								csvHashes.append(getCSVLine(Arrays.asList(vertexValue)));
-								break;
-							}
-							default: vertexValue = vertex.getAnnotation(vertexColumnName); break;
-						}
-						vertexValues.add(vertexValue);
+	private CopyWriter createCopyWriter(final CopyManager copyManager, final String tableName,
+			final Iterable<String> columnNames) throws Exception{
+		switch(configuration.getCopyFormat()){
+			case BINARY:
+				return new BinaryCopyWriter(copyManager.copyIn("copy " + tableName + " from stdin (format binary)"));
+			case CSV:
+			default:{
+				final CSVCopyWriter csvCopyWriter = new CSVCopyWriter(
+						copyManager.copyIn("copy " + tableName + " from stdin (format csv, header)"));
+				csvCopyWriter.writeRow(columnNames);
+				return csvCopyWriter;
+			}
+		}
+	}
+
+	private void copyVertices(final CopyManager copyManager, final Iterable<AbstractVertex> vertices) throws Exception{
+		final CopyWriter vertexWriter = createCopyWriter(copyManager, getVertexTableName(), getVertexColumnNames());
+		try{
+			final int columnCount = getVertexColumnNames().size();
+			for(final AbstractVertex vertex : vertices){
+				vertexWriter.startRow(columnCount);
+				for(final String vertexColumnName : getVertexColumnNames()){
+					switch(vertexColumnName){
+						case PRIMARY_KEY: vertexWriter.writeHash(vertex.bigHashCode()); break;
+						default: vertexWriter.writeValue(vertex.getAnnotation(vertexColumnName)); break;
 					}
-					csvVertices.append(getCSVLine(vertexValues));
-					vertexValues.clear();
 				}
-	
-				final CopyManager copyManager = createCopyManager();
-				copyManager.copyIn(
-						"copy " + getVertexTableName() + " from stdin (format csv, header)", 
-						new BufferedReader(new StringReader(csvVertices.toString()))
-						);
-	
-				copyManager.copyIn(
-						"copy " + getBaseVertexTableName() + " from stdin (format csv, header)", 
-						new BufferedReader(new StringReader(csvHashes.toString()))
-						);
-			}catch(Exception e){
-				logger.log(Level.WARNING, "Failed to persist " + vertexBufferSize + " vertices", e);
+				vertexWriter.endRow();
 			}
+			vertexWriter.finish();
+		}catch(Exception e){
+			vertexWriter.cancel();
+			throw e;
 		}
-		
-		if(graph.edgeSize() > 0){
-			final int edgeBufferSize = graph.edgeSize();
-			try{
-				final StringBuffer csvHashes = new StringBuffer();
-				csvHashes.append(getCSVLine(Arrays.asList(getPrimaryKeyName())));
-	
-				final StringBuffer csvData = new StringBuffer();
-				csvData.append(getCSVLine(getEdgeColumnNames()));
-	
-				final List<String> edgesValues = new ArrayList<>();
-				final Iterator<AbstractEdge> edges = graph.edges();
-				while(edges.hasNext()){
-					final AbstractEdge edge = edges.next();
-					for(final String edgeColumnName : getEdgeColumnNames()){
-						final String edgeValue;
-						switch(edgeColumnName){
-							case PRIMARY_KEY:{
-								edgeValue = edge.bigHashCode();
-								csvHashes.append(getCSVLine(Arrays.asList(edgeValue)));
-								break;
-							}
-							case CHILD_VERTEX_KEY: edgeValue = edge.getChildVertex().bigHashCode(); break;
-							case PARENT_VERTEX_KEY: edgeValue = edge.getParentVertex().bigHashCode(); break;
-							default: edgeValue = edge.getAnnotation(edgeColumnName); break;
-						}
-						edgesValues.add(edgeValue);
+
+		final CopyWriter hashWriter = createCopyWriter(copyManager, getBaseVertexTableName(), 
+				Arrays.asList(getPrimaryKeyName()));
+		try{
+			for(final AbstractVertex vertex : vertices){
+				hashWriter.startRow(1);
+				hashWriter.writeHash(vertex.bigHashCode());
+				hashWriter.endRow();
+			}
+			hashWriter.finish();
+		}catch(Exception e){
+			hashWriter.cancel();
+			throw e;
+		}
+	}
+
+	private void copyEdges(final CopyManager copyManager, final Iterable<AbstractEdge> edges) throws Exception{
+		final CopyWriter edgeWriter = createCopyWriter(copyManager, getEdgeTableName(), getEdgeColumnNames());
+		try{
+			final int columnCount = getEdgeColumnNames().size();
+			for(final AbstractEdge edge : edges){
+				edgeWriter.startRow(columnCount);
+				for(final String edgeColumnName : getEdgeColumnNames()){
+					switch(edgeColumnName){
+						case PRIMARY_KEY: edgeWriter.writeHash(edge.bigHashCode()); break;
+						case CHILD_VERTEX_KEY: edgeWriter.writeHash(edge.getChildVertex().bigHashCode()); break;
+						case PARENT_VERTEX_KEY: edgeWriter.writeHash(edge.getParentVertex().bigHashCode()); break;
+						default: edgeWriter.writeValue(edge.getAnnotation(edgeColumnName)); break;
 					}
-					csvData.append(getCSVLine(edgesValues));
-					edgesValues.clear();
 				}
-	
-				final CopyManager copyManager = createCopyManager();
-				copyManager.copyIn(
-						"copy " + getEdgeTableName() + " from stdin (format csv, header)", 
-						new BufferedReader(new StringReader(csvData.toString()))
-						);
-	
-				copyManager.copyIn(
-						"copy " + getBaseEdgeTableName() + " from stdin (format csv, header)", 
-						new BufferedReader(new StringReader(csvHashes.toString()))
-						);
-	
-				if(BUILD_SCAFFOLD){
-					try{
-						final Iterator<AbstractEdge> edgesForScaffold = graph.edges();
-						while(edgesForScaffold.hasNext()){
-							final AbstractEdge edge = edgesForScaffold.next();
-							insertScaffoldEntry(edge);
-						}
-					}catch(Exception e){
-						logger.log(Level.WARNING, "Failed to update scaffold", e);
-					}
+				edgeWriter.endRow();
+			}
+			edgeWriter.finish();
+		}catch(Exception e){
+			edgeWriter.cancel();
+			throw e;
+		}
+
+		final CopyWriter hashWriter = createCopyWriter(copyManager, getBaseEdgeTableName(), 
+				Arrays.asList(getPrimaryKeyName()));
+		try{
+			for(final AbstractEdge edge : edges){
+				hashWriter.startRow(1);
+				hashWriter.writeHash(edge.bigHashCode());
+				hashWriter.endRow();
+			}
+			hashWriter.finish();
+		}catch(Exception e){
+			hashWriter.cancel();
+			throw e;
+		}
+	}
+
+	private void persist(final GraphSnapshot graph){
+		if(parallelWriter != null){
+			parallelWriter.persist(graph);
+		}else{
+			if(graph.vertexSize() > 0){
+				try{
+					copyVertices(createCopyManager(), graph::vertices);
+				}catch(Exception e){
+					logger.log(Level.WARNING, "Failed to persist " + graph.vertexSize() + " vertices", e);
+				}
+			}
+			if(graph.edgeSize() > 0){
+				try{
+					copyEdges(createCopyManager(), graph::edges);
+					updateScaffold(graph.edges());
+				}catch(Exception e){
+					logger.log(Level.WARNING, "Failed to persist " + graph.edgeSize() + " edges", e);
 				}
-			}catch(Exception e){
-				logger.log(Level.WARNING, "Failed to persist " + edgeBufferSize + " edges", e);
 			}
 		}
 		graph.clear();
 	}
 
-	private String getCSVLine(final Iterable<String> iterable){
-		final StringBuffer str = new StringBuffer();
-		for(String item : iterable){
-			item = formatToCSV(item);
-			str.append(item).append(",");
-		}
-		if(str.length() > 0){
-			str.setCharAt(str.length() - 1, '\n');
+	private void updateScaffold(final Iterator<AbstractEdge> edgesForScaffold){
+		if(BUILD_SCAFFOLD){
+			try{
+				while(edgesForScaffold.hasNext()){
+					final AbstractEdge edge = edgesForScaffold.next();
+					insertScaffoldEntry(edge);
+				}
+			}catch(Exception e){
+				logger.log(Level.WARNING, "Failed to update scaffold", e);
+			}
 		}
-		return str.toString();
 	}
 
-	private String formatToCSV(String item){
-		if(item == null){
-			return ""; // NULL
+	/**
+	 * Persists a snapshot using a dedicated set of connections (each in its own transaction).
+	 * 
+	 * The vertices are copied using the first connection while the edges (sharded by hash) are copied concurrently 
+	 * using the rest of the connections. The vertex transaction is committed before the edge transactions so that 
+	 * the endpoints of an edge are always visible when the edge is. If the vertices fail then the edge transactions 
+	 * are rolled back too.
+	 */
+	private final class ParallelWriter{
+		private final List<Connection> connections = new ArrayList<Connection>();
+		private final ExecutorService executor;
+
+		private ParallelWriter(final int connectionCount) throws Exception{
+			if(connectionCount < 2){
+				throw new IllegalArgumentException("Must have at least 2 connections: " + connectionCount);
+			}
+			try{
+				for(int i = 0; i < connectionCount; i++){
+					final Connection writerConnection = DriverManager.getConnection(
+							configuration.getConnectionURL(), configuration.getDbUser(), configuration.getDbPassword());
+					writerConnection.setAutoCommit(false);
+					connections.add(writerConnection);
+				}
+			}catch(Exception e){
+				close();
+				throw new Exception("Failed to open writer connections", e);
+			}
+			this.executor = Executors.newFixedThreadPool(connectionCount);
+		}
+
+		private void persist(final GraphSnapshot graph){
+			final int edgeShardCount = connections.size() - 1;
+			final List<List<AbstractEdge>> edgeShards = new ArrayList<List<AbstractEdge>>(edgeShardCount);
+			for(int i = 0; i < edgeShardCount; i++){
+				edgeShards.add(new ArrayList<AbstractEdge>());
+			}
+			final Iterator<AbstractEdge> edges = graph.edges();
+			while(edges.hasNext()){
+				final AbstractEdge edge = edges.next();
+				edgeShards.get((edge.bigHashCode().hashCode() & Integer.MAX_VALUE) % edgeShardCount).add(edge);
+			}
+
+			final Future<?> vertexFuture = graph.vertexSize() == 0 ? null 
+					: executor.submit(() -> { copyVertices(createCopyManager(connections.get(0)), graph::vertices); return null; });
+			final List<Future<?>> edgeFutures = new ArrayList<Future<?>>(edgeShardCount);
+			for(int i = 0; i < edgeShardCount; i++){
+				final List<AbstractEdge> edgeShard = edgeShards.get(i);
+				final Connection edgeConnection = connections.get(i + 1);
+				edgeFutures.add(edgeShard.isEmpty() ? null
+						: executor.submit(() -> { copyEdges(createCopyManager(edgeConnection), edgeShard); return null; }));
+			}
+
+			// Vertices first
+			final boolean verticesCommitted = vertexFuture == null 
+					|| complete(vertexFuture, connections.get(0), graph.vertexSize() + " vertices", true);
+			for(int i = 0; i < edgeShardCount; i++){
+				if(edgeFutures.get(i) != null){
+					final List<AbstractEdge> edgeShard = edgeShards.get(i);
+					if(complete(edgeFutures.get(i), connections.get(i + 1), edgeShard.size() + " edges", 
+							verticesCommitted)){
+						updateScaffold(edgeShard.iterator());
+					}
+				}
+			}
+		}
+
+		/**
+		 * Waits for the copy and then commits the transaction if 'commit' is true, otherwise rolls it back.
+		 * 
+		 * @return true if the transaction was committed
+		 */
+		private boolean complete(final Future<?> future, final Connection writerConnection, final String description, 
+				final boolean commit){
+			try{
+				future.get();
+				if(commit){
+					writerConnection.commit();
+					return true;
+				}
+				logger.log(Level.WARNING, "Failed to persist " + description + " because their vertices failed");
+			}catch(Exception e){
+				logger.log(Level.WARNING, "Failed to persist " + description, e);
+			}
+			try{
+				writerConnection.rollback();
+			}catch(Exception rollbackException){
+				logger.log(Level.WARNING, "Failed to rollback", rollbackException);
+			}
+			return false;
+		}
+
+		private void close(){
+			if(executor != null){
+				executor.shutdown();
+			}
+			for(final Connection writerConnection : connections){
+				try{
+					writerConnection.close();
+				}catch(Exception e){
+					logger.log(Level.WARNING, "Failed to close writer connection", e);
+				}
+			}
+			connections.clear();
 		}
-		item = item.replace('"', '\"');
-		item = '"' + item + '"';
-		return item;
 	}
 
 	@Override
@@ -549,8 +745,47 @@ public class PostgreSQL extends SQL{
 		return result;
 	}
 
+	/**
+	 * Persists all the buffered elements before returning.
+	 * Must be called before updating the schema or querying. Safe to call from any thread.
+	 */
 	private void flush(){
-		persist(graphBuffer.flush());
+		synchronized(writeLock){
+			if(asyncFlusher != null){
+				if(hasPendingColumns()){
+					asyncFlusher.awaitFlushed();
+					applyPendingColumns();
+				}
+				asyncFlusher.submit(graphBuffer);
+				asyncFlusher.awaitFlushed();
+			}else{
+				applyPendingColumns();
+				persist(graphBuffer.flush());
+			}
+		}
+	}
+
+	/**
+	 * Persists the buffered elements in the background if async flush is enabled.
+	 * Blocks only if the max number of flushes are already in flight.
+	 * Must be called with the write lock held.
+	 */
+	private void flushInBackground(){
+		if(asyncFlusher != null){
+			if(hasPendingColumns()){
+				// Column names must not change while a flush is in flight
+				asyncFlusher.awaitFlushed();
+				applyPendingColumns();
+			}
+			asyncFlusher.submit(graphBuffer);
+		}else{
+			applyPendingColumns();
+			persist(graphBuffer.flush());
+		}
+	}
+
+	private boolean hasPendingColumns(){
+		return !pendingVertexColumnNames.isEmpty() || !pendingEdgeColumnNames.isEmpty();
 	}
 
 	public List<List<String>> executeQueryForResult(String query, boolean addColumnNames){
@@ -26,6 +26,7 @@ import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -45,6 +46,7 @@ import spade.core.Settings;
 import spade.query.quickgrail.core.QueryInstructionExecutor;
 import spade.screen.Deduplicate;
 import spade.storage.quickstep.GraphBatch;
+import spade.storage.quickstep.LoadBuffer;
 import spade.storage.quickstep.QuickstepClient;
 import spade.storage.quickstep.QuickstepConfiguration;
 import spade.storage.quickstep.QuickstepExecutor;
@@ -171,10 +173,11 @@ public class Quickstep extends AbstractStorage {
     // Double buffer, simple producer-consumer pattern.
     private GraphBatch batchBuffer = new GraphBatch();
 
-    private StringBuilder vertexMD5 = new StringBuilder();
-    private StringBuilder vertexAnnos = new StringBuilder();
-    private StringBuilder edgeLinks = new StringBuilder();
-    private StringBuilder edgeAnnos = new StringBuilder();
+    // Load data is encoded directly as UTF-8 bytes and the buffers are reused across batches.
+    private LoadBuffer vertexMD5 = new LoadBuffer();
+    private LoadBuffer vertexAnnos = new LoadBuffer();
+    private LoadBuffer edgeLinks = new LoadBuffer();
+    private LoadBuffer edgeAnnos = new LoadBuffer();
 
     private ExecutorService batchExecutor;
     private Future<Void> batchFuture;
@@ -346,8 +349,8 @@ public class Quickstep extends AbstractStorage {
       int vertexIdCounter = lastNumVertices;
       long edgeIdCounter = lastNumEdges;
 
-      vertexMD5.setLength(0);
-      vertexAnnos.setLength(0);
+      vertexMD5.reset();
+      vertexAnnos.reset();
       for (AbstractVertex vertex : batchBuffer.getVertices()) {
         final String md5 = vertex.bigHashCode();
         if(getVertexId(md5) != null){
@@ -356,8 +359,8 @@ public class Quickstep extends AbstractStorage {
         appendVertex(vertex, md5, ++vertexIdCounter);
       }
 
-      edgeLinks.setLength(0);
-      edgeAnnos.setLength(0);
+      edgeLinks.reset();
+      edgeAnnos.reset();
       for (AbstractEdge edge : batchBuffer.getEdges()) {
     	  final String md5 = edge.bigHashCode();
         final AbstractVertex srcVertex = edge.getChildVertex();
@@ -384,10 +387,10 @@ public class Quickstep extends AbstractStorage {
                        ", " + vertexIdCounter +  ") AS t(idx);");
 
         qs.submitQuery("COPY "+vertexTableName+" FROM stdin WITH (DELIMITER '|');",
-                       vertexMD5.toString());
+                       vertexMD5);
 
         qs.submitQuery("COPY "+vertexAnnotationsTableName+" FROM stdin WITH (DELIMITER '|');",
-                       vertexAnnos.toString());
+                       vertexAnnos);
       }
 
       if (edgeIdCounter > lastNumEdges) {
@@ -396,10 +399,10 @@ public class Quickstep extends AbstractStorage {
                        ", " + edgeIdCounter +  ") AS t(idx);");
 
         qs.submitQuery("COPY "+edgeTableName+" FROM stdin WITH (DELIMITER '|');",
-                       edgeLinks.toString());
+                       edgeLinks);
 
         qs.submitQuery("COPY "+edgeAnnotationTableName+" FROM stdin WITH (DELIMITER '|');",
-                       edgeAnnos.toString());
+                       edgeAnnos);
       }
 
       // For stable measurement of loading time, we just finalize each batch here ...
@@ -411,16 +414,16 @@ public class Quickstep extends AbstractStorage {
 
     private void appendVertex(AbstractVertex vertex, String md5, final int vertexId) {
       vertexMD5.append(vertexId);
-      vertexMD5.append("|");
-      vertexMD5.append(md5);
+      vertexMD5.append('|');
+      vertexMD5.appendAscii(md5);
       vertexMD5.append('\n');
 
       for (Map.Entry<String, String> annoEntry : vertex.getCopyOfAnnotations().entrySet()) {
         vertexAnnos.append(vertexId);
         vertexAnnos.append('|');
-        appendEscaped(vertexAnnos, annoEntry.getKey(), maxVertexKeyLength);
+        vertexAnnos.appendEscaped(annoEntry.getKey(), maxVertexKeyLength, '|');
         vertexAnnos.append('|');
-        appendEscaped(vertexAnnos, annoEntry.getValue(), maxVertexValueLength);
+        vertexAnnos.appendEscaped(annoEntry.getValue(), maxVertexValueLength, '|');
         vertexAnnos.append('\n');
       }
 
@@ -429,41 +432,25 @@ public class Quickstep extends AbstractStorage {
 
     private void appendEdge(AbstractEdge edge, final String md5, final long edgeId,
                             final int srcVertexId, final int dstVertexId) {
-      edgeLinks.append(String.valueOf(edgeId));
+      edgeLinks.append(edgeId);
       edgeLinks.append('|');
-      edgeLinks.append(String.valueOf(srcVertexId));
+      edgeLinks.append(srcVertexId);
       edgeLinks.append('|');
-      edgeLinks.append(String.valueOf(dstVertexId));
+      edgeLinks.append(dstVertexId);
       edgeLinks.append('|');
-      edgeLinks.append(md5);
+      edgeLinks.appendAscii(md5);
       edgeLinks.append('\n');
 
       for (Map.Entry<String, String> annoEntry : edge.getCopyOfAnnotations().entrySet()) {
         edgeAnnos.append(edgeId);
         edgeAnnos.append('|');
-        appendEscaped(edgeAnnos, annoEntry.getKey(), maxEdgeKeyLength);
+        edgeAnnos.appendEscaped(annoEntry.getKey(), maxEdgeKeyLength, '|');
         edgeAnnos.append('|');
-        appendEscaped(edgeAnnos, annoEntry.getValue(), maxEdgeValueLength);
+        edgeAnnos.appendEscaped(annoEntry.getValue(), maxEdgeValueLength, '|');
         edgeAnnos.append('\n');
       }
     }
 
-    private void appendEscaped(StringBuilder sb, String str, final int maxLength) {
-      for (int i = 0; i < Math.min(str.length(), maxLength); ++i) {
-        char c = str.charAt(i);
-        switch (c) {
-          case '\\':
-            sb.append("\\\\");
-            break;
-          case '|':
-            sb.append("\\|");
-            break;
-          default:
-            sb.append(c);
-        }
-      }
-    }
-
     private String formatTime(final long milliseconds) {
       long time = milliseconds / 1000;
       StringBuilder sb = new StringBuilder();
@@ -602,6 +589,32 @@ public class Quickstep extends AbstractStorage {
     return true;
   }
 
+  @Override
+  public synchronized int storeEdges(List<AbstractEdge> incomingEdges) {
+    synchronized (batch) {
+      for (AbstractEdge incomingEdge : incomingEdges) {
+        batch.addEdge(incomingEdge);
+        if (batch.getVertices().size() + batch.getEdges().size() >= conf.getBatchSize()) {
+          flushTransactions(false);
+        }
+      }
+    }
+    return incomingEdges.size();
+  }
+
+  @Override
+  public synchronized int storeVertices(List<AbstractVertex> incomingVertices) {
+    synchronized (batch) {
+      for (AbstractVertex incomingVertex : incomingVertices) {
+        batch.addVertex(incomingVertex);
+        if (batch.getVertices().size() + batch.getEdges().size() >= conf.getBatchSize()) {
+          flushTransactions(false);
+        }
+      }
+    }
+    return incomingVertices.size();
+  }
+
   @Override
   public String executeQuery(String query) {
     String result = null;
@@ -0,0 +1,168 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.storage.inmemory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Edges indexed by one of their endpoints (child or parent) in compressed sparse row segments.
+ *
+ * New edges are kept in a tail which is sealed into a segment once it reaches the segment size. Segments are merged
+ * when the one before is not more than twice as big, so there are only a logarithmic number of segments and each
+ * edge is re-sorted a logarithmic number of times.
+ * Not thread-safe.
+ */
+public class Adjacency{
+
+	private final int segmentSize;
+
+	private final List<Segment> segments = new ArrayList<Segment>();
+	private int sealed = 0;
+
+	public Adjacency(final int segmentSize){
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * To be called after each edge is appended
+	 *
+	 * @param endpoints endpoint (vertex id) of each edge indexed by edge id
+	 * @param edgeCount number of edges appended so far
+	 */
+	public void appended(final int[] endpoints, final int edgeCount){
+		if(edgeCount - sealed >= segmentSize){
+			segments.add(Segment.build(endpoints, sealed, edgeCount));
+			sealed = edgeCount;
+			while(segments.size() > 1){
+				final Segment last = segments.get(segments.size() - 1);
+				final Segment previous = segments.get(segments.size() - 2);
+				if(previous.size() > 2 * last.size()){
+					break;
+				}
+				segments.remove(segments.size() - 1);
+				segments.set(segments.size() - 1, Segment.build(endpoints, previous.from, last.to));
+			}
+		}
+	}
+
+	/**
+	 * Pass the ids of all the edges whose endpoint is in the given vertices to the consumer.
+	 * Edges are passed in increasing id order for each segment.
+	 *
+	 * @param vertices endpoint vertex ids
+	 * @param endpoints endpoint (vertex id) of each edge indexed by edge id
+	 * @param edgeCount number of edges appended so far
+	 * @param consumer edge id consumer
+	 */
+	public void forEachEdge(final BitSet vertices, final int[] endpoints, final int edgeCount,
+			final IntConsumer consumer){
+		if(vertices.isEmpty()){
+			return;
+		}
+		final int cardinality = vertices.cardinality();
+		for(final Segment segment : segments){
+			segment.forEachEdge(vertices, cardinality, consumer);
+		}
+		for(int edge = sealed; edge < edgeCount; edge++){
+			if(vertices.get(endpoints[edge])){
+				consumer.accept(edge);
+			}
+		}
+	}
+
+	public int getSegmentCount(){
+		return segments.size();
+	}
+
+	private static final class Segment{
+		private final int from, to;
+		private final int[] keys; // Distinct endpoints in increasing order
+		private final int[] offsets; // Edges of keys[i] are in edges[offsets[i], offsets[i + 1])
+		private final int[] edges;
+
+		private Segment(final int from, final int to, final int[] keys, final int[] offsets, final int[] edges){
+			this.from = from;
+			this.to = to;
+			this.keys = keys;
+			this.offsets = offsets;
+			this.edges = edges;
+		}
+
+		private int size(){
+			return to - from;
+		}
+
+		private static Segment build(final int[] endpoints, final int from, final int to){
+			final long[] sorted = new long[to - from];
+			for(int edge = from; edge < to; edge++){
+				sorted[edge - from] = ((long)endpoints[edge] << 32) | edge;
+			}
+			Arrays.sort(sorted);
+
+			int distinct = 0;
+			for(int i = 0; i < sorted.length; i++){
+				if(i == 0 || (sorted[i] >>> 32) != (sorted[i - 1] >>> 32)){
+					distinct++;
+				}
+			}
+			final int[] keys = new int[distinct];
+			final int[] offsets = new int[distinct + 1];
+			final int[] edges = new int[sorted.length];
+			int k = -1;
+			for(int i = 0; i < sorted.length; i++){
+				final int key = (int)(sorted[i] >>> 32);
+				if(k == -1 || keys[k] != key){
+					k++;
+					keys[k] = key;
+					offsets[k] = i;
+				}
+				edges[i] = (int)sorted[i];
+			}
+			offsets[distinct] = sorted.length;
+			return new Segment(from, to, keys, offsets, edges);
+		}
+
+		private void forEachEdge(final BitSet vertices, final int cardinality, final IntConsumer consumer){
+			if(cardinality > keys.length / 8){
+				// Scan the keys when a large part of the segment is wanted
+				for(int k = 0; k < keys.length; k++){
+					if(vertices.get(keys[k])){
+						for(int i = offsets[k]; i < offsets[k + 1]; i++){
+							consumer.accept(edges[i]);
+						}
+					}
+				}
+			}else{
+				for(int vertex = vertices.nextSetBit(0); vertex >= 0; vertex = vertices.nextSetBit(vertex + 1)){
+					final int k = Arrays.binarySearch(keys, vertex);
+					if(k >= 0){
+						for(int i = offsets[k]; i < offsets[k + 1]; i++){
+							consumer.accept(edges[i]);
+						}
+					}
+				}
+			}
+		}
+	}
+}
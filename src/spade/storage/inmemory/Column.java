@@ -0,0 +1,99 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.storage.inmemory;
+
+import java.util.Arrays;
+
+/**
+ * Values of one annotation key for all the vertices (or edges) which have it.
+ *
+ * Values are dictionary encoded. The ids of the elements are appended in increasing order so a value is found by
+ * binary search and a scan of the column visits the elements in id order. A predicate is evaluated once for each
+ * distinct value instead of once for each element.
+ * Not thread-safe.
+ */
+public class Column{
+
+	public final String name;
+
+	private final Dictionary dictionary = new Dictionary();
+
+	private int[] ids = new int[16];
+	private int[] codes = new int[16];
+	private int size = 0;
+
+	public Column(final String name){
+		this.name = name;
+	}
+
+	/**
+	 * @param id must be greater than the id appended before
+	 * @param value non-null value
+	 */
+	public void append(final int id, final String value){
+		if(size == ids.length){
+			ids = Arrays.copyOf(ids, size * 2);
+			codes = Arrays.copyOf(codes, size * 2);
+		}
+		ids[size] = id;
+		codes[size] = dictionary.add(value);
+		size++;
+	}
+
+	private int indexOf(final int id){
+		return Arrays.binarySearch(ids, 0, size, id);
+	}
+
+	public boolean contains(final int id){
+		return indexOf(id) >= 0;
+	}
+
+	/**
+	 * @return code of the value for the id or -1 if the id doesn't have this annotation
+	 */
+	public int getCode(final int id){
+		final int index = indexOf(id);
+		return index < 0 ? -1 : codes[index];
+	}
+
+	public String get(final int id){
+		final int index = indexOf(id);
+		return index < 0 ? null : dictionary.getValue(codes[index]);
+	}
+
+	/**
+	 * @return number of elements which have this annotation
+	 */
+	public int size(){
+		return size;
+	}
+
+	public int getId(final int index){
+		return ids[index];
+	}
+
+	public int getCodeAt(final int index){
+		return codes[index];
+	}
+
+	public Dictionary getDictionary(){
+		return dictionary;
+	}
+}
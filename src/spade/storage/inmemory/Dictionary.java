@@ -0,0 +1,107 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.storage.inmemory;
+
+import java.util.Arrays;
+
+/**
+ * Append-only dictionary which encodes strings to dense int codes (0, 1, 2, ...) in the order they were added.
+ *
+ * Open addressing table of codes so that there is no boxed entry per string.
+ * Not thread-safe.
+ */
+public class Dictionary{
+
+	private static final int EMPTY = -1;
+
+	private String[] values = new String[16];
+	private int size = 0;
+
+	private int[] table = newTable(32);
+
+	private static int[] newTable(final int length){
+		final int[] table = new int[length];
+		Arrays.fill(table, EMPTY);
+		return table;
+	}
+
+	private static int spread(final int hash){
+		return (hash ^ (hash >>> 16)) * 0x9e3779b9;
+	}
+
+	private int slotOf(final String value){
+		final int mask = table.length - 1;
+		int slot = spread(value.hashCode()) & mask;
+		while(true){
+			final int code = table[slot];
+			if(code == EMPTY || values[code].equals(value)){
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * @param value string to look up
+	 * @return code of the value or -1 if not present
+	 */
+	public int getCode(final String value){
+		if(value == null){
+			return EMPTY;
+		}
+		return table[slotOf(value)];
+	}
+
+	/**
+	 * @param value string to add if not present
+	 * @return code of the value (existing or new)
+	 */
+	public int add(final String value){
+		int slot = slotOf(value);
+		if(table[slot] != EMPTY){
+			return table[slot];
+		}
+		if(size == values.length){
+			values = Arrays.copyOf(values, values.length * 2);
+		}
+		final int code = size++;
+		values[code] = value;
+		table[slot] = code;
+		if(size * 2 > table.length){
+			rehash();
+		}
+		return code;
+	}
+
+	private void rehash(){
+		table = newTable(table.length * 2);
+		for(int code = 0; code < size; code++){
+			table[slotOf(values[code])] = code;
+		}
+	}
+
+	public String getValue(final int code){
+		return values[code];
+	}
+
+	public int size(){
+		return size;
+	}
+}
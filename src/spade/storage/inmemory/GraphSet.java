@@ -0,0 +1,40 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.storage.inmemory;
+
+import java.util.BitSet;
+
+/**
+ * Vertices and edges of a QuickGrail graph symbol as sets of ids of the in-memory graph.
+ */
+public class GraphSet{
+
+	public final BitSet vertices;
+	public final BitSet edges;
+
+	public GraphSet(){
+		this(new BitSet(), new BitSet());
+	}
+
+	public GraphSet(final BitSet vertices, final BitSet edges){
+		this.vertices = vertices;
+		this.edges = edges;
+	}
+}
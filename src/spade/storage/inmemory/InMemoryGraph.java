@@ -0,0 +1,251 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.storage.inmemory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+
+import spade.core.AbstractEdge;
+import spade.core.AbstractVertex;
+
+/**
+ * Provenance graph kept in memory.
+ *
+ * Vertices and edges are dictionary encoded by hash to dense int ids in the order they were added. The child and
+ * parent of each edge are kept in int arrays indexed by edge id and the edges are indexed by child and by parent in
+ * compressed sparse row segments (see Adjacency). Annotations are kept in one column for each annotation key.
+ *
+ * Modifications take the write lock. Readers must hold the read lock for the duration of their read.
+ */
+public class InMemoryGraph{
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final Dictionary vertexHashes = new Dictionary();
+	private final Dictionary edgeHashes = new Dictionary();
+
+	private int[] edgeChildren = new int[1024];
+	private int[] edgeParents = new int[1024];
+
+	private final Adjacency edgesByChild, edgesByParent;
+
+	private final Map<String, Column> vertexColumns = new TreeMap<String, Column>();
+	private final Map<String, Column> edgeColumns = new TreeMap<String, Column>();
+
+	/**
+	 * @param segmentSize number of edges at which the unindexed edges are sealed into a compressed sparse row segment
+	 */
+	public InMemoryGraph(final int segmentSize){
+		this.edgesByChild = new Adjacency(segmentSize);
+		this.edgesByParent = new Adjacency(segmentSize);
+	}
+
+	public Lock readLock(){
+		return lock.readLock();
+	}
+
+	private static void appendAnnotations(final Map<String, Column> columns, final int id,
+			final Map<String, String> annotations){
+		for(final Map.Entry<String, String> entry : annotations.entrySet()){
+			if(entry.getKey() == null || entry.getValue() == null){
+				continue;
+			}
+			Column column = columns.get(entry.getKey());
+			if(column == null){
+				column = new Column(entry.getKey());
+				columns.put(entry.getKey(), column);
+			}
+			column.append(id, entry.getValue());
+		}
+	}
+
+	// Must hold the write lock
+	private int putVertexUnsafe(final AbstractVertex vertex){
+		final String hash = vertex.bigHashCode();
+		int id = vertexHashes.getCode(hash);
+		if(id < 0){
+			id = vertexHashes.add(hash);
+			appendAnnotations(vertexColumns, id, vertex.getCopyOfAnnotations());
+		}
+		return id;
+	}
+
+	/**
+	 * @return false if a vertex with the same hash exists already
+	 */
+	public boolean putVertex(final AbstractVertex vertex){
+		lock.writeLock().lock();
+		try{
+			final int count = vertexHashes.size();
+			putVertexUnsafe(vertex);
+			return vertexHashes.size() > count;
+		}finally{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Endpoints which don't exist already are added too.
+	 *
+	 * @return false if an edge with the same hash exists already
+	 */
+	public boolean putEdge(final AbstractEdge edge){
+		lock.writeLock().lock();
+		try{
+			final String hash = edge.bigHashCode();
+			if(edgeHashes.getCode(hash) >= 0){
+				return false;
+			}
+			final int child = putVertexUnsafe(edge.getChildVertex());
+			final int parent = putVertexUnsafe(edge.getParentVertex());
+			final int id = edgeHashes.add(hash);
+			if(id == edgeChildren.length){
+				edgeChildren = Arrays.copyOf(edgeChildren, id * 2);
+				edgeParents = Arrays.copyOf(edgeParents, id * 2);
+			}
+			edgeChildren[id] = child;
+			edgeParents[id] = parent;
+			appendAnnotations(edgeColumns, id, edge.getCopyOfAnnotations());
+			edgesByChild.appended(edgeChildren, id + 1);
+			edgesByParent.appended(edgeParents, id + 1);
+			return true;
+		}finally{
+			lock.writeLock().unlock();
+		}
+	}
+
+	////////////////////////////////////////
+	// Readers below must hold the read lock
+	////////////////////////////////////////
+
+	public int getVertexCount(){
+		return vertexHashes.size();
+	}
+
+	public int getEdgeCount(){
+		return edgeHashes.size();
+	}
+
+	/**
+	 * @return id of the vertex or -1 if not present
+	 */
+	public int getVertexId(final String hash){
+		return vertexHashes.getCode(hash);
+	}
+
+	/**
+	 * @return id of the edge or -1 if not present
+	 */
+	public int getEdgeId(final String hash){
+		return edgeHashes.getCode(hash);
+	}
+
+	public String getVertexHash(final int id){
+		return vertexHashes.getValue(id);
+	}
+
+	public String getEdgeHash(final int id){
+		return edgeHashes.getValue(id);
+	}
+
+	public int getChild(final int edge){
+		return edgeChildren[edge];
+	}
+
+	public int getParent(final int edge){
+		return edgeParents[edge];
+	}
+
+	/**
+	 * @param vertices child vertex ids
+	 * @param consumer gets the ids of all the edges whose child is in the vertices
+	 */
+	public void forEachEdgeFromChildren(final BitSet vertices, final IntConsumer consumer){
+		edgesByChild.forEachEdge(vertices, edgeChildren, getEdgeCount(), consumer);
+	}
+
+	/**
+	 * @param vertices parent vertex ids
+	 * @param consumer gets the ids of all the edges whose parent is in the vertices
+	 */
+	public void forEachEdgeFromParents(final BitSet vertices, final IntConsumer consumer){
+		edgesByParent.forEachEdge(vertices, edgeParents, getEdgeCount(), consumer);
+	}
+
+	/**
+	 * @return column of the vertex annotation key or null if no vertex has the annotation
+	 */
+	public Column getVertexColumn(final String key){
+		return vertexColumns.get(key);
+	}
+
+	/**
+	 * @return column of the edge annotation key or null if no edge has the annotation
+	 */
+	public Column getEdgeColumn(final String key){
+		return edgeColumns.get(key);
+	}
+
+	/**
+	 * @return columns of all the vertex annotation keys sorted by key
+	 */
+	public List<Column> getVertexColumns(){
+		return new ArrayList<Column>(vertexColumns.values());
+	}
+
+	/**
+	 * @return columns of all the edge annotation keys sorted by key
+	 */
+	public List<Column> getEdgeColumns(){
+		return new ArrayList<Column>(edgeColumns.values());
+	}
+
+	private static Map<String, String> getAnnotations(final Map<String, Column> columns, final int id){
+		final Map<String, String> annotations = new HashMap<String, String>();
+		for(final Column column : columns.values()){
+			final String value = column.get(id);
+			if(value != null){
+				annotations.put(column.name, value);
+			}
+		}
+		return annotations;
+	}
+
+	public Map<String, String> getVertexAnnotations(final int id){
+		return getAnnotations(vertexColumns, id);
+	}
+
+	public Map<String, String> getEdgeAnnotations(final int id){
+		return getAnnotations(edgeColumns, id);
+	}
+
+	public int getSegmentCount(){
+		return edgesByChild.getSegmentCount();
+	}
+}
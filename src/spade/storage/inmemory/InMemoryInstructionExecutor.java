@@ -0,0 +1,1238 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.storage.inmemory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.regex.Pattern;
+
+import spade.core.AbstractStorage;
+import spade.query.quickgrail.core.BatchIterator;
+import spade.query.quickgrail.core.EnvironmentVariableManager;
+import spade.query.quickgrail.core.GraphDescription;
+import spade.query.quickgrail.core.GraphStatistic;
+import spade.query.quickgrail.core.GraphStatistic.Interval;
+import spade.query.quickgrail.core.QueriedEdge;
+import spade.query.quickgrail.core.QueryInstructionExecutor;
+import spade.query.quickgrail.core.QuickGrailQueryResolver.PredicateOperator;
+import spade.query.quickgrail.entities.Graph;
+import spade.query.quickgrail.entities.GraphMetadata;
+import spade.query.quickgrail.instruction.DescribeGraph;
+import spade.query.quickgrail.instruction.DescribeGraph.ElementType;
+import spade.query.quickgrail.instruction.FilterGraph;
+import spade.query.quickgrail.instruction.GetEdgeEndpoint;
+import spade.query.quickgrail.instruction.GetLineage;
+import spade.query.quickgrail.instruction.GetLineage.Direction;
+import spade.query.quickgrail.instruction.SetGraphMetadata;
+import spade.query.quickgrail.utility.ResultTable;
+import spade.storage.InMemory;
+
+/**
+ * Executes QuickGrail instructions directly on the in-memory graph.
+ *
+ * Graphs are sets of vertex and edge ids. Traversals expand a whole frontier at a time through the compressed sparse
+ * row segments, and annotation predicates are evaluated once for each distinct value of a column.
+ * The results of the instructions are added to the target graph (same as the SQL storages).
+ */
+public class InMemoryInstructionExecutor extends QueryInstructionExecutor{
+
+	private final InMemory storage;
+	private final InMemoryQueryEnvironment queryEnvironment;
+	private final InMemoryGraph graph;
+
+	public InMemoryInstructionExecutor(final InMemory storage, final InMemoryQueryEnvironment queryEnvironment){
+		this.storage = storage;
+		this.queryEnvironment = queryEnvironment;
+		if(this.queryEnvironment == null){
+			throw new IllegalArgumentException("NULL Query Environment");
+		}
+		if(this.storage == null){
+			throw new IllegalArgumentException("NULL storage");
+		}
+		this.graph = storage.getGraph();
+	}
+
+	@Override
+	public final InMemoryQueryEnvironment getQueryEnvironment(){
+		return queryEnvironment;
+	}
+
+	@Override
+	public AbstractStorage getStorage(){
+		return storage;
+	}
+
+	////////////////////////////////////////
+	// Helpers. Must hold the graph read lock
+	////////////////////////////////////////
+
+	private Lock lock(){
+		final Lock lock = graph.readLock();
+		lock.lock();
+		return lock;
+	}
+
+	private static BitSet all(final int count){
+		final BitSet bitSet = new BitSet(count);
+		bitSet.set(0, count);
+		return bitSet;
+	}
+
+	// Must not be modified
+	private BitSet vertices(final Graph subject){
+		if(queryEnvironment.isBaseGraph(subject)){
+			return all(graph.getVertexCount());
+		}
+		return queryEnvironment.getGraphSet(subject).vertices;
+	}
+
+	// Must not be modified
+	private BitSet edges(final Graph subject){
+		if(queryEnvironment.isBaseGraph(subject)){
+			return all(graph.getEdgeCount());
+		}
+		return queryEnvironment.getGraphSet(subject).edges;
+	}
+
+	// Null means all the edges
+	private BitSet edgeFilter(final Graph subject){
+		if(queryEnvironment.isBaseGraph(subject)){
+			return null;
+		}
+		return queryEnvironment.getGraphSet(subject).edges;
+	}
+
+	private GraphSet target(final Graph target){
+		if(queryEnvironment.isBaseGraph(target)){
+			throw new RuntimeException("Cannot modify the base graph");
+		}
+		return queryEnvironment.getGraphSet(target);
+	}
+
+	private BitSet elements(final Graph subject, final ElementType elementType){
+		switch(elementType){
+			case VERTEX: return vertices(subject);
+			case EDGE: return edges(subject);
+			default: throw new RuntimeException("Unknown element type: " + elementType);
+		}
+	}
+
+	private Column column(final ElementType elementType, final String annotationKey){
+		switch(elementType){
+			case VERTEX: return graph.getVertexColumn(annotationKey);
+			case EDGE: return graph.getEdgeColumn(annotationKey);
+			default: throw new RuntimeException("Unknown element type: " + elementType);
+		}
+	}
+
+	/**
+	 * @param candidates element ids
+	 * @param column annotation column
+	 * @param matching codes of the column values to match. Null to match any value
+	 * @return candidates which have a matching value in the column
+	 */
+	private static BitSet filter(final BitSet candidates, final Column column, final boolean[] matching){
+		final BitSet result = new BitSet();
+		if(candidates.cardinality() < column.size() / 16){
+			for(int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)){
+				final int code = column.getCode(id);
+				if(code >= 0 && (matching == null || matching[code])){
+					result.set(id);
+				}
+			}
+		}else{
+			for(int i = 0; i < column.size(); i++){
+				final int id = column.getId(i);
+				if(candidates.get(id) && (matching == null || matching[column.getCodeAt(i)])){
+					result.set(id);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return number of candidates with each value (code) of the column
+	 */
+	private static long[] countValues(final BitSet candidates, final Column column){
+		final long[] counts = new long[column.getDictionary().size()];
+		final BitSet present = filter(candidates, column, null);
+		for(int id = present.nextSetBit(0); id >= 0; id = present.nextSetBit(id + 1)){
+			counts[column.getCode(id)]++;
+		}
+		return counts;
+	}
+
+	private static Pattern likePattern(final String value){
+		final StringBuilder regex = new StringBuilder();
+		int start = 0;
+		for(int i = 0; i < value.length(); i++){
+			final char c = value.charAt(i);
+			if(c == '%' || c == '_'){
+				if(i > start){
+					regex.append(Pattern.quote(value.substring(start, i)));
+				}
+				regex.append(c == '%' ? ".*" : ".");
+				start = i + 1;
+			}
+		}
+		if(start < value.length()){
+			regex.append(Pattern.quote(value.substring(start)));
+		}
+		return Pattern.compile(regex.toString(), Pattern.DOTALL);
+	}
+
+	/**
+	 * Comparison is on the string values (same as the text columns of the SQL storages)
+	 *
+	 * @return the codes of the column values which satisfy the predicate
+	 */
+	private static boolean[] matching(final Column column, final PredicateOperator operator, final String value){
+		final Pattern pattern;
+		switch(operator){
+			case REGEX: pattern = Pattern.compile(value); break;
+			case LIKE: pattern = likePattern(value); break;
+			default: pattern = null; break;
+		}
+		final Dictionary dictionary = column.getDictionary();
+		final boolean[] matching = new boolean[dictionary.size()];
+		for(int code = 0; code < matching.length; code++){
+			final String columnValue = dictionary.getValue(code);
+			final boolean match;
+			switch(operator){
+				case EQUAL: match = columnValue.equals(value); break;
+				case NOT_EQUAL: match = !columnValue.equals(value); break;
+				case GREATER: match = columnValue.compareTo(value) > 0; break;
+				case GREATER_EQUAL: match = columnValue.compareTo(value) >= 0; break;
+				case LESSER: match = columnValue.compareTo(value) < 0; break;
+				case LESSER_EQUAL: match = columnValue.compareTo(value) <= 0; break;
+				case REGEX: match = pattern.matcher(columnValue).find(); break;
+				case LIKE: match = pattern.matcher(columnValue).matches(); break;
+				default: throw new RuntimeException("Unexpected comparison operator");
+			}
+			matching[code] = match;
+		}
+		return matching;
+	}
+
+	private BitSet select(final BitSet candidates, final List<Column> columns, final String annotationKey,
+			final PredicateOperator operator, final String annotationValue){
+		if(annotationKey.equals("*")){
+			final BitSet result = new BitSet();
+			for(final Column column : columns){
+				result.or(filter(candidates, column, matching(column, operator, annotationValue)));
+			}
+			return result;
+		}
+		Column column = null;
+		for(final Column existing : columns){
+			if(existing.name.equals(annotationKey)){
+				column = existing;
+				break;
+			}
+		}
+		if(column == null){
+			// Missing annotation never equals the value
+			return operator.equals(PredicateOperator.NOT_EQUAL) ? (BitSet)candidates.clone() : new BitSet();
+		}
+		return filter(candidates, column, matching(column, operator, annotationValue));
+	}
+
+	/**
+	 * Expand the frontier by one level along the edges in the filter.
+	 *
+	 * @param frontier vertices to expand
+	 * @param ancestors true to go from child to parent, and false to go from parent to child
+	 * @param edgeFilter edges to follow. Null for all
+	 * @param visitedEdges edges followed are added to it
+	 * @return vertices at the other end of the followed edges
+	 */
+	private BitSet expand(final BitSet frontier, final boolean ancestors, final BitSet edgeFilter,
+			final BitSet visitedEdges){
+		final BitSet next = new BitSet();
+		if(ancestors){
+			graph.forEachEdgeFromChildren(frontier, edge -> {
+				if(edgeFilter == null || edgeFilter.get(edge)){
+					visitedEdges.set(edge);
+					next.set(graph.getParent(edge));
+				}
+			});
+		}else{
+			graph.forEachEdgeFromParents(frontier, edge -> {
+				if(edgeFilter == null || edgeFilter.get(edge)){
+					visitedEdges.set(edge);
+					next.set(graph.getChild(edge));
+				}
+			});
+		}
+		return next;
+	}
+
+	private static List<Boolean> directions(final Direction direction){
+		final List<Boolean> ancestors = new ArrayList<Boolean>();
+		switch(direction){
+			case kAncestor: ancestors.add(true); break;
+			case kDescendant: ancestors.add(false); break;
+			case kBoth: ancestors.add(true); ancestors.add(false); break;
+			default: throw new RuntimeException("Unexpected direction: " + direction);
+		}
+		return ancestors;
+	}
+
+	private void lineage(final GraphSet target, final Graph subjectGraph, final Graph startGraph, final int depth,
+			final Direction direction){
+		final BitSet edgeFilter = edgeFilter(subjectGraph);
+		for(final boolean ancestors : directions(direction)){
+			final BitSet visited = (BitSet)vertices(startGraph).clone();
+			final BitSet visitedEdges = new BitSet();
+			BitSet frontier = visited;
+			for(int i = 0; i < depth && !frontier.isEmpty(); i++){
+				frontier = expand(frontier, ancestors, edgeFilter, visitedEdges);
+				frontier.andNot(visited);
+				visited.or(frontier);
+			}
+			target.vertices.or(visited);
+			target.edges.or(visitedEdges);
+		}
+	}
+
+	/**
+	 * Breadth-first levels from the destination vertices against the direction of the path (parent to child).
+	 * Both directions are followed if undirected.
+	 *
+	 * @return levels[i] is the set of vertices at distance i from the destination vertices
+	 */
+	private List<BitSet> levelsToDestination(final BitSet destination, final BitSet edgeFilter, final int maxDepth,
+			final boolean undirected){
+		final List<BitSet> levels = new ArrayList<BitSet>();
+		final BitSet visited = (BitSet)destination.clone();
+		BitSet frontier = (BitSet)destination.clone();
+		levels.add(frontier);
+		for(int i = 0; i < maxDepth; i++){
+			final BitSet next = expand(frontier, false, edgeFilter, new BitSet());
+			if(undirected){
+				next.or(expand(frontier, true, edgeFilter, new BitSet()));
+			}
+			next.andNot(visited);
+			if(next.isEmpty()){
+				break;
+			}
+			visited.or(next);
+			levels.add(next);
+			frontier = next;
+		}
+		return levels;
+	}
+
+	private static BitSet within(final List<BitSet> levels, final int maxLevel){
+		final BitSet within = new BitSet();
+		for(int i = 0; i <= maxLevel && i < levels.size(); i++){
+			within.or(levels.get(i));
+		}
+		return within;
+	}
+
+	/**
+	 * Vertices and edges on paths from the source to the destination vertices of length at most maxDepth.
+	 * Edges are followed from child to parent, and in both directions if undirected.
+	 */
+	private GraphSet paths(final Graph subjectGraph, final Graph srcGraph, final Graph dstGraph, final int maxDepth,
+			final boolean undirected){
+		final BitSet edgeFilter = edgeFilter(subjectGraph);
+		final List<BitSet> levels = levelsToDestination(vertices(dstGraph), edgeFilter, maxDepth, undirected);
+
+		final GraphSet result = new GraphSet();
+		BitSet current = (BitSet)vertices(srcGraph).clone();
+		current.and(within(levels, maxDepth));
+		result.vertices.or(current);
+		for(int i = 0; i < maxDepth && !current.isEmpty(); i++){
+			// Next vertex must be close enough to a destination to finish the path within maxDepth
+			final BitSet reachable = within(levels, maxDepth - 1 - i);
+			final BitSet stepEdges = new BitSet();
+			final BitSet next = expand(current, true, edgeFilter, stepEdges);
+			if(undirected){
+				next.or(expand(current, false, edgeFilter, stepEdges));
+			}
+			next.and(reachable);
+			for(int edge = stepEdges.nextSetBit(0); edge >= 0; edge = stepEdges.nextSetBit(edge + 1)){
+				final int child = graph.getChild(edge), parent = graph.getParent(edge);
+				if((current.get(child) && reachable.get(parent)) || (undirected && current.get(parent) && reachable.get(child))){
+					result.edges.set(edge);
+				}
+			}
+			next.andNot(result.vertices);
+			result.vertices.or(next);
+			current = next;
+		}
+		return result;
+	}
+
+	private static int levelOf(final List<BitSet> levels, final int vertex){
+		for(int i = 0; i < levels.size(); i++){
+			if(levels.get(i).get(vertex)){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static String key(final int[] codes){
+		final StringBuilder key = new StringBuilder();
+		for(final int code : codes){
+			key.append(code).append(',');
+		}
+		return key.toString();
+	}
+
+	private void sortByHash(final Integer[] ids, final boolean vertices){
+		Arrays.sort(ids, Comparator.comparing(id -> vertices ? graph.getVertexHash(id) : graph.getEdgeHash(id)));
+	}
+
+	private static BitSet first(final BitSet source, final int limit){
+		final BitSet result = new BitSet();
+		int count = 0;
+		for(int id = source.nextSetBit(0); id >= 0 && count < limit; id = source.nextSetBit(id + 1), count++){
+			result.set(id);
+		}
+		return result;
+	}
+
+	private BitSet subset(final BitSet source, final boolean vertices, final long fromInclusive, final long toExclusive){
+		final Integer[] ids = new Integer[source.cardinality()];
+		int i = 0;
+		for(int id = source.nextSetBit(0); id >= 0; id = source.nextSetBit(id + 1)){
+			ids[i++] = id;
+		}
+		sortByHash(ids, vertices);
+		final BitSet result = new BitSet();
+		for(long j = Math.max(0, fromInclusive); j < toExclusive && j < ids.length; j++){
+			result.set(ids[(int)j]);
+		}
+		return result;
+	}
+
+	////////////////////////////////////////
+	// Instructions
+	////////////////////////////////////////
+
+	@Override
+	public void insertLiteralEdge(final Graph targetGraph, final ArrayList<String> edges){
+		final Lock lock = lock();
+		try{
+			final GraphSet target = target(targetGraph);
+			for(final String hash : edges){
+				final int id = graph.getEdgeId(hash);
+				if(id >= 0){
+					target.edges.set(id);
+				}
+			}
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void insertLiteralVertex(final Graph targetGraph, final ArrayList<String> vertices){
+		final Lock lock = lock();
+		try{
+			final GraphSet target = target(targetGraph);
+			for(final String hash : vertices){
+				final int id = graph.getVertexId(hash);
+				if(id >= 0){
+					target.vertices.set(id);
+				}
+			}
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void createEmptyGraph(final Graph graph){
+		if(!queryEnvironment.isBaseGraph(graph)){
+			queryEnvironment.createGraphSet(graph);
+		}
+	}
+
+	@Override
+	public void distinctifyGraph(final Graph targetGraph, final Graph sourceGraph){
+		unionGraph(targetGraph, sourceGraph);
+	}
+
+	@Override
+	public void getWhereAnnotationsExist(final Graph targetGraph, final Graph subjectGraph,
+			final ArrayList<String> annotationNames){
+		final Lock lock = lock();
+		try{
+			BitSet result = vertices(subjectGraph);
+			for(final String annotationName : annotationNames){
+				final Column column = graph.getVertexColumn(annotationName);
+				if(column == null){
+					return;
+				}
+				result = filter(result, column, null);
+			}
+			target(targetGraph).vertices.or(result);
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void getMatch(final Graph targetGraph, final Graph graph1, final Graph graph2,
+			final ArrayList<String> annotationKeys){
+		final Lock lock = lock();
+		try{
+			final Column[] columns = new Column[annotationKeys.size()];
+			BitSet vertices1 = vertices(graph1);
+			BitSet vertices2 = vertices(graph2);
+			for(int i = 0; i < columns.length; i++){
+				columns[i] = graph.getVertexColumn(annotationKeys.get(i));
+				if(columns[i] == null){
+					return;
+				}
+				vertices1 = filter(vertices1, columns[i], null);
+				vertices2 = filter(vertices2, columns[i], null);
+			}
+
+			// Hash join on the codes since the same value has the same code in a column
+			final Map<String, List<Integer>> keyToVertices1 = new HashMap<String, List<Integer>>();
+			final int[] codes = new int[columns.length];
+			for(int id = vertices1.nextSetBit(0); id >= 0; id = vertices1.nextSetBit(id + 1)){
+				for(int i = 0; i < columns.length; i++){
+					codes[i] = columns[i].getCode(id);
+				}
+				keyToVertices1.computeIfAbsent(key(codes), k -> new ArrayList<Integer>()).add(id);
+			}
+			final GraphSet target = target(targetGraph);
+			for(int id = vertices2.nextSetBit(0); id >= 0; id = vertices2.nextSetBit(id + 1)){
+				for(int i = 0; i < columns.length; i++){
+					codes[i] = columns[i].getCode(id);
+				}
+				final List<Integer> matched = keyToVertices1.get(key(codes));
+				if(matched != null){
+					target.vertices.set(id);
+					for(final Integer matchedId : matched){
+						target.vertices.set(matchedId);
+					}
+				}
+			}
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void getVertex(final Graph targetGraph, final Graph subjectGraph, final String annotationKey,
+			final PredicateOperator operator, final String annotationValue, final boolean hasArguments){
+		final Lock lock = lock();
+		try{
+			if(!hasArguments){
+				target(targetGraph).vertices.or(vertices(subjectGraph));
+			}else{
+				target(targetGraph).vertices.or(
+						select(vertices(subjectGraph), graph.getVertexColumns(), annotationKey, operator, annotationValue));
+			}
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void getEdge(final Graph targetGraph, final Graph subjectGraph, final String annotationKey,
+			final PredicateOperator operator, final String annotationValue, final boolean hasArguments){
+		final Lock lock = lock();
+		try{
+			if(!hasArguments){
+				target(targetGraph).edges.or(edges(subjectGraph));
+			}else{
+				target(targetGraph).edges.or(
+						select(edges(subjectGraph), graph.getEdgeColumns(), annotationKey, operator, annotationValue));
+			}
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void filterGraph(final Graph targetGraph, final Graph subjectGraph, final Graph.Component component,
+			final List<FilterGraph.Comparison> comparisons){
+		final boolean vertex = component == Graph.Component.kVertex;
+		final Lock lock = lock();
+		try{
+			final List<Column> columns = vertex ? graph.getVertexColumns() : graph.getEdgeColumns();
+			BitSet candidates = vertex ? vertices(subjectGraph) : edges(subjectGraph);
+			for(final FilterGraph.Comparison comparison : comparisons){
+				candidates = select(candidates, columns,
+						comparison.annotationKey, comparison.operator, comparison.annotationValue);
+			}
+			final GraphSet target = target(targetGraph);
+			if(vertex){
+				target.vertices.or(candidates);
+			}else{
+				target.edges.or(candidates);
+			}
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public ResultTable evaluateQuery(final String nativeQuery){
+		throw new RuntimeException("Native queries not supported by the in-memory storage");
+	}
+
+	@Override
+	public void collapseEdge(final Graph targetGraph, final Graph sourceGraph, final ArrayList<String> fields){
+		final Lock lock = lock();
+		try{
+			final GraphSet target = target(targetGraph);
+			target.vertices.or(vertices(sourceGraph));
+
+			final Column[] columns = new Column[fields.size()];
+			for(int i = 0; i < columns.length; i++){
+				columns[i] = graph.getEdgeColumn(fields.get(i));
+			}
+			// Keep the first edge for each child, parent and values of the fields
+			final Set<String> seen = new HashSet<String>();
+			final int[] codes = new int[columns.length + 2];
+			final BitSet edges = edges(sourceGraph);
+			for(int edge = edges.nextSetBit(0); edge >= 0; edge = edges.nextSetBit(edge + 1)){
+				codes[0] = graph.getChild(edge);
+				codes[1] = graph.getParent(edge);
+				for(int i = 0; i < columns.length; i++){
+					codes[i + 2] = columns[i] == null ? -1 : columns[i].getCode(edge);
+				}
+				if(seen.add(key(codes))){
+					target.edges.set(edge);
+				}
+			}
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void getSubsetVertex(final Graph targetGraph, final Graph sourceGraph, final long fromInclusive,
+			final long toExclusive){
+		final Lock lock = lock();
+		try{
+			target(targetGraph).vertices.or(subset(vertices(sourceGraph), true, fromInclusive, toExclusive));
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void getSubsetEdge(final Graph targetGraph, final Graph sourceGraph, final long fromInclusive,
+			final long toExclusive){
+		final Lock lock = lock();
+		try{
+			target(targetGraph).edges.or(subset(edges(sourceGraph), false, fromInclusive, toExclusive));
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void getEdgeEndpoint(final Graph targetGraph, final Graph subjectGraph,
+			final GetEdgeEndpoint.Component component){
+		final Lock lock = lock();
+		try{
+			final boolean source = component == GetEdgeEndpoint.Component.kSource
+					|| component == GetEdgeEndpoint.Component.kBoth;
+			final boolean destination = component == GetEdgeEndpoint.Component.kDestination
+					|| component == GetEdgeEndpoint.Component.kBoth;
+			final GraphSet target = target(targetGraph);
+			final BitSet edges = edges(subjectGraph);
+			for(int edge = edges.nextSetBit(0); edge >= 0; edge = edges.nextSetBit(edge + 1)){
+				if(source){
+					target.vertices.set(graph.getChild(edge));
+				}
+				if(destination){
+					target.vertices.set(graph.getParent(edge));
+				}
+			}
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void intersectGraph(final Graph outputGraph, final Graph lhsGraph, final Graph rhsGraph){
+		final Lock lock = lock();
+		try{
+			final BitSet vertices = (BitSet)vertices(lhsGraph).clone();
+			vertices.and(vertices(rhsGraph));
+			final BitSet edges = (BitSet)edges(lhsGraph).clone();
+			edges.and(edges(rhsGraph));
+			final GraphSet output = target(outputGraph);
+			output.vertices.or(vertices);
+			output.edges.or(edges);
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void limitGraph(final Graph targetGraph, final Graph sourceGraph, final int limit){
+		final Lock lock = lock();
+		try{
+			final BitSet vertices = first(vertices(sourceGraph), limit);
+			final BitSet edges = first(edges(sourceGraph), limit);
+			final GraphSet target = target(targetGraph);
+			target.vertices.or(vertices);
+			target.edges.or(edges);
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public GraphStatistic.Count getGraphCount(final Graph graph){
+		final Lock lock = lock();
+		try{
+			if(queryEnvironment.isBaseGraph(graph)){
+				return new GraphStatistic.Count(this.graph.getVertexCount(), this.graph.getEdgeCount());
+			}
+			final GraphSet graphSet = queryEnvironment.getGraphSet(graph);
+			return new GraphStatistic.Count(graphSet.vertices.cardinality(), graphSet.edges.cardinality());
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public long getGraphStatisticSize(final Graph graph, final ElementType elementType, final String annotationKey){
+		final Lock lock = lock();
+		try{
+			final Column column = column(elementType, annotationKey);
+			if(column == null){
+				return 0;
+			}
+			final long[] counts = countValues(elements(graph, elementType), column);
+			long size = 0;
+			for(int code = 0; code < counts.length; code++){
+				if(!column.getDictionary().getValue(code).isEmpty()){
+					size += counts[code];
+				}
+			}
+			return size;
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return numeric value to count for the annotation values in the graph. Non-numeric values are skipped
+	 */
+	private SortedMap<Double, Long> numericValues(final Graph graph, final ElementType elementType,
+			final String annotationKey){
+		final SortedMap<Double, Long> values = new TreeMap<Double, Long>();
+		final Column column = column(elementType, annotationKey);
+		if(column != null){
+			final long[] counts = countValues(elements(graph, elementType), column);
+			for(int code = 0; code < counts.length; code++){
+				if(counts[code] > 0){
+					try{
+						values.merge(Double.parseDouble(column.getDictionary().getValue(code)), counts[code], Long::sum);
+					}catch(NumberFormatException e){
+						// Skip
+					}
+				}
+			}
+		}
+		return values;
+	}
+
+	@Override
+	public GraphStatistic.Distribution getGraphDistribution(final Graph graph, final ElementType elementType,
+			final String annotationKey, final Integer binCount){
+		final Lock lock = lock();
+		try{
+			final SortedMap<Double, Long> values = numericValues(graph, elementType, annotationKey);
+			if(values.isEmpty()){
+				return new GraphStatistic.Distribution();
+			}
+			final double min = values.firstKey();
+			final double max = values.lastKey();
+			final double range = max - min + 1;
+			final double step = range / binCount;
+
+			// Same intervals as the other storages. The last one is closed and ends at max
+			final List<Interval> intervals = new ArrayList<Interval>();
+			double begin = min;
+			while(begin + step < max){
+				intervals.add(new Interval(begin, begin + step));
+				begin += step;
+			}
+			intervals.add(new Interval(begin, max));
+
+			final double[] counts = new double[intervals.size()];
+			for(final Map.Entry<Double, Long> entry : values.entrySet()){
+				final int index = (int)Math.min(intervals.size() - 1, Math.floor((entry.getKey() - min) / step));
+				counts[index] += entry.getValue();
+			}
+			final SortedMap<Interval, Double> distribution = new TreeMap<Interval, Double>();
+			for(int i = 0; i < counts.length; i++){
+				distribution.put(intervals.get(i), counts[i]);
+			}
+			return new GraphStatistic.Distribution(distribution);
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public GraphStatistic.StandardDeviation getGraphStandardDeviation(final Graph graph, final ElementType elementType,
+			final String annotationKey){
+		final Lock lock = lock();
+		try{
+			final SortedMap<Double, Long> values = numericValues(graph, elementType, annotationKey);
+			if(values.isEmpty()){
+				return new GraphStatistic.StandardDeviation();
+			}
+			long n = 0;
+			double sum = 0;
+			for(final Map.Entry<Double, Long> entry : values.entrySet()){
+				n += entry.getValue();
+				sum += entry.getKey() * entry.getValue();
+			}
+			if(n < 2){
+				return new GraphStatistic.StandardDeviation(0);
+			}
+			final double mean = sum / n;
+			double squares = 0;
+			for(final Map.Entry<Double, Long> entry : values.entrySet()){
+				squares += (entry.getKey() - mean) * (entry.getKey() - mean) * entry.getValue();
+			}
+			// Sample standard deviation (same as the other storages)
+			return new GraphStatistic.StandardDeviation(Math.sqrt(squares / (n - 1)));
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public GraphStatistic.Mean getGraphMean(final Graph graph, final ElementType elementType,
+			final String annotationKey){
+		final Lock lock = lock();
+		try{
+			final SortedMap<Double, Long> values = numericValues(graph, elementType, annotationKey);
+			if(values.isEmpty()){
+				return new GraphStatistic.Mean();
+			}
+			long n = 0;
+			double sum = 0;
+			for(final Map.Entry<Double, Long> entry : values.entrySet()){
+				n += entry.getValue();
+				sum += entry.getKey() * entry.getValue();
+			}
+			return new GraphStatistic.Mean(sum / n);
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public GraphStatistic.Histogram getGraphHistogram(final Graph graph, final ElementType elementType,
+			final String annotationKey){
+		final Lock lock = lock();
+		try{
+			final Column column = column(elementType, annotationKey);
+			if(column == null){
+				return new GraphStatistic.Histogram();
+			}
+			final long[] counts = countValues(elements(graph, elementType), column);
+			final SortedMap<String, Double> histogram = new TreeMap<String, Double>();
+			for(int code = 0; code < counts.length; code++){
+				if(counts[code] > 0){
+					histogram.put(column.getDictionary().getValue(code), (double)counts[code]);
+				}
+			}
+			if(histogram.isEmpty()){
+				return new GraphStatistic.Histogram();
+			}
+			return new GraphStatistic.Histogram(histogram);
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void subtractGraph(final Graph outputGraph, final Graph minuendGraph, final Graph subtrahendGraph,
+			final Graph.Component component){
+		final Lock lock = lock();
+		try{
+			final GraphSet output = target(outputGraph);
+			if(component == null || component == Graph.Component.kVertex){
+				final BitSet vertices = (BitSet)vertices(minuendGraph).clone();
+				vertices.andNot(vertices(subtrahendGraph));
+				output.vertices.or(vertices);
+			}
+			if(component == null || component == Graph.Component.kEdge){
+				final BitSet edges = (BitSet)edges(minuendGraph).clone();
+				edges.andNot(edges(subtrahendGraph));
+				output.edges.or(edges);
+			}
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void unionGraph(final Graph targetGraph, final Graph sourceGraph){
+		final Lock lock = lock();
+		try{
+			final BitSet vertices = vertices(sourceGraph);
+			final BitSet edges = edges(sourceGraph);
+			final GraphSet target = target(targetGraph);
+			target.vertices.or(vertices);
+			target.edges.or(edges);
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void getAdjacentVertex(final Graph targetGraph, final Graph subjectGraph, final Graph sourceGraph,
+			final GetLineage.Direction direction){
+		final Lock lock = lock();
+		try{
+			lineage(target(targetGraph), subjectGraph, sourceGraph, 1, direction);
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void getLineage(final Graph targetGraph, final Graph subjectGraph, final Graph startGraph, final int depth,
+			final Direction direction){
+		final Lock lock = lock();
+		try{
+			lineage(target(targetGraph), subjectGraph, startGraph, depth, direction);
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void getSimplePath(final Graph targetGraph, final Graph subjectGraph, final Graph srcGraph,
+			final Graph dstGraph, final int maxDepth){
+		final Lock lock = lock();
+		try{
+			final GraphSet result = paths(subjectGraph, srcGraph, dstGraph, maxDepth, false);
+			final GraphSet target = target(targetGraph);
+			target.vertices.or(result.vertices);
+			target.edges.or(result.edges);
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void getLink(final Graph targetGraph, final Graph subjectGraph, final Graph srcGraph, final Graph dstGraph,
+			final int maxDepth){
+		if(maxDepth <= 0){
+			return;
+		}
+		final Lock lock = lock();
+		try{
+			// Same depth convention as the PostgreSQL executor
+			final GraphSet result = paths(subjectGraph, srcGraph, dstGraph, maxDepth - 1, true);
+			final GraphSet target = target(targetGraph);
+			target.vertices.or(result.vertices);
+			// All the edges between the vertices on the paths
+			final BitSet edgeFilter = edgeFilter(subjectGraph);
+			graph.forEachEdgeFromChildren(result.vertices, edge -> {
+				if((edgeFilter == null || edgeFilter.get(edge)) && result.vertices.get(graph.getParent(edge))){
+					target.edges.set(edge);
+				}
+			});
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void getShortestPath(final Graph targetGraph, final Graph subjectGraph, final Graph srcGraph,
+			final Graph dstGraph, final int maxDepth){
+		final Lock lock = lock();
+		try{
+			final BitSet edgeFilter = edgeFilter(subjectGraph);
+			final List<BitSet> levels = levelsToDestination(vertices(dstGraph), edgeFilter, maxDepth, false);
+
+			final GraphSet target = target(targetGraph);
+			BitSet current = (BitSet)vertices(srcGraph).clone();
+			current.and(within(levels, maxDepth));
+			final BitSet answer = (BitSet)current.clone();
+			while(!current.isEmpty()){
+				// One parent closer to a destination for each vertex
+				final BitSet next = new BitSet();
+				final BitSet done = new BitSet();
+				final BitSet frontier = current;
+				graph.forEachEdgeFromChildren(frontier, edge -> {
+					if(edgeFilter != null && !edgeFilter.get(edge)){
+						return;
+					}
+					final int child = graph.getChild(edge), parent = graph.getParent(edge);
+					if(done.get(child)){
+						return;
+					}
+					final int level = levelOf(levels, child);
+					if(level > 0 && levels.get(level - 1).get(parent)){
+						done.set(child);
+						target.edges.set(edge);
+						next.set(parent);
+					}
+				});
+				next.andNot(answer);
+				answer.or(next);
+				current = next;
+			}
+			target.vertices.or(answer);
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void getSubgraph(final Graph targetGraph, final Graph subjectGraph, final Graph skeletonGraph){
+		final Lock lock = lock();
+		try{
+			final BitSet subjectVertices = vertices(subjectGraph);
+			final BitSet answer = (BitSet)vertices(skeletonGraph).clone();
+			answer.and(subjectVertices);
+			final BitSet skeletonEdges = edges(skeletonGraph);
+			for(int edge = skeletonEdges.nextSetBit(0); edge >= 0; edge = skeletonEdges.nextSetBit(edge + 1)){
+				final int child = graph.getChild(edge), parent = graph.getParent(edge);
+				if(subjectVertices.get(child)){
+					answer.set(child);
+				}
+				if(subjectVertices.get(parent)){
+					answer.set(parent);
+				}
+			}
+
+			final GraphSet target = target(targetGraph);
+			target.vertices.or(answer);
+			final BitSet edgeFilter = edgeFilter(subjectGraph);
+			graph.forEachEdgeFromChildren(answer, edge -> {
+				if((edgeFilter == null || edgeFilter.get(edge)) && answer.get(graph.getParent(edge))){
+					target.edges.set(edge);
+				}
+			});
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public GraphDescription describeGraph(final DescribeGraph instruction){
+		if(instruction.graph == null){
+			throw new RuntimeException("NULL graph");
+		}
+		if(instruction.elementType == null){
+			throw new RuntimeException("NULL element type");
+		}
+		final Lock lock = lock();
+		try{
+			final BitSet elements = elements(instruction.graph, instruction.elementType);
+			if(instruction.all){
+				final List<Column> columns = instruction.elementType == ElementType.VERTEX
+						? graph.getVertexColumns() : graph.getEdgeColumns();
+				final Set<String> annotations = new HashSet<String>();
+				for(final Column column : columns){ // Sorted by name
+					if(instruction.limit != null && annotations.size() >= instruction.limit){
+						break;
+					}
+					if(!filter(elements, column, null).isEmpty()){
+						annotations.add(column.name);
+					}
+				}
+				final GraphDescription desc = new GraphDescription(instruction.elementType);
+				desc.addAnnotations(annotations);
+				return desc;
+			}
+
+			if(instruction.annotationName == null){
+				throw new RuntimeException("NULL annotation name");
+			}
+			if(instruction.descriptionType == null){
+				throw new RuntimeException("NULL annotation description type");
+			}
+			final GraphDescription desc = new GraphDescription(instruction.elementType, instruction.annotationName,
+					instruction.descriptionType);
+			final Column column = column(instruction.elementType, instruction.annotationName);
+			final SortedMap<String, Long> valueToCount = new TreeMap<String, Long>();
+			if(column != null){
+				final long[] counts = countValues(elements, column);
+				for(int code = 0; code < counts.length; code++){
+					if(counts[code] > 0){
+						valueToCount.put(column.getDictionary().getValue(code), counts[code]);
+					}
+				}
+			}
+			switch(instruction.descriptionType){
+				case COUNT:{
+					int count = 0;
+					for(final Map.Entry<String, Long> entry : valueToCount.entrySet()){
+						if(instruction.limit != null && count++ >= instruction.limit){
+							break;
+						}
+						desc.putValueToCount(entry.getKey(), entry.getValue());
+					}
+					return desc;
+				}
+				case MINMAX:{
+					if(valueToCount.isEmpty()){
+						desc.setMinMax(EnvironmentVariableManager.getUndefinedConstant(),
+								EnvironmentVariableManager.getUndefinedConstant());
+					}else{
+						desc.setMinMax(valueToCount.firstKey(), valueToCount.lastKey());
+					}
+					return desc;
+				}
+				default: throw new RuntimeException("Unhandled description type: " + instruction.descriptionType);
+			}
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Map<String, Map<String, String>> exportVertices(final Graph targetGraph){
+		final Lock lock = lock();
+		try{
+			final Map<String, Map<String, String>> hashToVertexMap = new HashMap<String, Map<String, String>>();
+			final BitSet vertices = vertices(targetGraph);
+			for(int id = vertices.nextSetBit(0); id >= 0; id = vertices.nextSetBit(id + 1)){
+				hashToVertexMap.put(graph.getVertexHash(id), graph.getVertexAnnotations(id));
+			}
+			return hashToVertexMap;
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Set<QueriedEdge> exportEdges(final Graph targetGraph){
+		final Lock lock = lock();
+		try{
+			final Set<QueriedEdge> edgeSet = new HashSet<QueriedEdge>();
+			final BitSet edges = edges(targetGraph);
+			for(int id = edges.nextSetBit(0); id >= 0; id = edges.nextSetBit(id + 1)){
+				edgeSet.add(new QueriedEdge(graph.getEdgeHash(id), graph.getVertexHash(graph.getChild(id)),
+						graph.getVertexHash(graph.getParent(id)), graph.getEdgeAnnotations(id)));
+			}
+			return edgeSet;
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Pages are read directly from a copy of the vertex and edge sets taken at the start. No scratch graphs.
+	 */
+	@Override
+	public BatchIterator getGraphPageIterator(final Graph targetGraph, final int pageSize){
+		final Lock lock = lock();
+		try{
+			return new PageIterator((BitSet)vertices(targetGraph).clone(), (BitSet)edges(targetGraph).clone(), pageSize);
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	private final class PageIterator extends BatchIterator{
+		private final BitSet vertices, edges;
+		private int nextVertex, nextEdge;
+
+		private PageIterator(final BitSet vertices, final BitSet edges, final int pageSize){
+			super(pageSize);
+			if(pageSize < 1){
+				throw new RuntimeException("Page size must be greater than zero: " + pageSize);
+			}
+			this.vertices = vertices;
+			this.edges = edges;
+			this.nextVertex = vertices.nextSetBit(0);
+			this.nextEdge = edges.nextSetBit(0);
+		}
+
+		@Override
+		public spade.core.Graph nextBatch(){
+			if(!hasNextBatch()){
+				throw new RuntimeException("No more pages");
+			}
+			final Lock lock = lock();
+			try{
+				if(nextVertex >= 0){
+					final Map<String, Map<String, String>> hashToVertexMap = new HashMap<String, Map<String, String>>();
+					int id = nextVertex;
+					for(int i = 0; i < batchSize && id >= 0; i++, id = vertices.nextSetBit(id + 1)){
+						hashToVertexMap.put(graph.getVertexHash(id), graph.getVertexAnnotations(id));
+					}
+					nextVertex = id;
+					return createGraph(hashToVertexMap, null);
+				}else{
+					final Set<QueriedEdge> edgeSet = new HashSet<QueriedEdge>();
+					int id = nextEdge;
+					for(int i = 0; i < batchSize && id >= 0; i++, id = edges.nextSetBit(id + 1)){
+						edgeSet.add(new QueriedEdge(graph.getEdgeHash(id), graph.getVertexHash(graph.getChild(id)),
+								graph.getVertexHash(graph.getParent(id)), graph.getEdgeAnnotations(id)));
+					}
+					nextEdge = id;
+					return createGraph(null, edgeSet);
+				}
+			}finally{
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public boolean hasNextBatch(){
+			return nextVertex >= 0 || nextEdge >= 0;
+		}
+	}
+
+	@Override
+	public void createEmptyGraphMetadata(final GraphMetadata metadata){
+	}
+
+	@Override
+	public void overwriteGraphMetadata(final GraphMetadata targetMetadata, final GraphMetadata lhsMetadata,
+			final GraphMetadata rhsMetadata){
+	}
+
+	@Override
+	public void setGraphMetadata(final GraphMetadata targetMetadata, final SetGraphMetadata.Component component,
+			final Graph sourceGraph, final String name, final String value){
+	}
+}
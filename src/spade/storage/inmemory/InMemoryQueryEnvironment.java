@@ -0,0 +1,189 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.storage.inmemory;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import spade.query.quickgrail.core.AbstractQueryEnvironment;
+import spade.query.quickgrail.entities.Graph;
+
+/**
+ * Symbols and graphs of QuickGrail kept in memory along with the in-memory graph.
+ *
+ * Each graph name maps to a GraphSet. The base graph has no GraphSet and always means the whole in-memory graph.
+ */
+public class InMemoryQueryEnvironment extends AbstractQueryEnvironment{
+
+	private int idCounter = 0;
+	private final Map<String, String> graphSymbols = new HashMap<String, String>();
+	private final Map<String, String> metadataSymbols = new HashMap<String, String>();
+	private final Map<String, String> predicateSymbols = new HashMap<String, String>();
+	private final Map<String, LinkedHashSet<Graph.Remote>> remoteSymbols = new HashMap<String, LinkedHashSet<Graph.Remote>>();
+
+	private final Map<String, GraphSet> graphSets = new HashMap<String, GraphSet>();
+
+	public InMemoryQueryEnvironment(final String baseGraphName){
+		super(baseGraphName);
+	}
+
+	/**
+	 * @param graph non-base graph
+	 * @return the vertices and edges of the graph. Empty if the graph hasn't been created
+	 */
+	public synchronized GraphSet getGraphSet(final Graph graph){
+		GraphSet graphSet = graphSets.get(graph.name);
+		if(graphSet == null){
+			graphSet = new GraphSet();
+			graphSets.put(graph.name, graphSet);
+		}
+		return graphSet;
+	}
+
+	/**
+	 * Replaces the existing vertices and edges of the graph (if any) with empty sets
+	 *
+	 * @param graph non-base graph
+	 */
+	public synchronized void createGraphSet(final Graph graph){
+		graphSets.put(graph.name, new GraphSet());
+	}
+
+	@Override
+	public synchronized void doGarbageCollection(){
+		final Set<String> referencedGraphNames = new HashSet<String>(getCurrentGraphSymbolsStringMap().values());
+		graphSets.keySet().retainAll(referencedGraphNames);
+		referencedGraphNames.add(getBaseGraph().name);
+		remoteSymbols.keySet().retainAll(referencedGraphNames);
+	}
+
+	@Override
+	public void createSymbolStorageIfNotPresent(){
+		// Always present
+	}
+
+	@Override
+	public synchronized void deleteSymbolStorageIfPresent(){
+		idCounter = 0;
+		graphSymbols.clear();
+		metadataSymbols.clear();
+		predicateSymbols.clear();
+		remoteSymbols.clear();
+		graphSets.clear();
+	}
+
+	@Override
+	public synchronized int readIdCount(){
+		return idCounter;
+	}
+
+	@Override
+	public synchronized Map<String, Graph> readGraphSymbols(){
+		final Map<String, Graph> symbolToGraph = new HashMap<String, Graph>();
+		for(final Map.Entry<String, String> entry : graphSymbols.entrySet()){
+			symbolToGraph.put(entry.getKey(), new Graph(entry.getValue()));
+		}
+		return symbolToGraph;
+	}
+
+	@Override
+	public synchronized void readRemoteSymbols(final Graph graph){
+		final Set<Graph.Remote> remotes = remoteSymbols.get(graph.name);
+		if(remotes != null){
+			for(final Graph.Remote remote : remotes){
+				graph.addRemote(remote);
+			}
+		}
+	}
+
+	@Override
+	public synchronized Map<String, String> readMetadataSymbols(){
+		return new HashMap<String, String>(metadataSymbols);
+	}
+
+	@Override
+	public synchronized Map<String, String> readPredicateSymbols(){
+		return new HashMap<String, String>(predicateSymbols);
+	}
+
+	@Override
+	public synchronized void saveIdCounter(final int idCounter){
+		this.idCounter = idCounter;
+	}
+
+	@Override
+	public synchronized void saveGraphSymbol(final String symbol, final String graphName,
+			final boolean symbolNameWasPresent){
+		graphSymbols.put(symbol, graphName);
+	}
+
+	@Override
+	public synchronized void saveRemoteSymbol(final Graph graph, final Graph.Remote remote){
+		LinkedHashSet<Graph.Remote> remotes = remoteSymbols.get(graph.name);
+		if(remotes == null){
+			remotes = new LinkedHashSet<Graph.Remote>();
+			remoteSymbols.put(graph.name, remotes);
+		}
+		remotes.add(remote);
+	}
+
+	@Override
+	public synchronized void saveMetadataSymbol(final String symbol, final String metadataName,
+			final boolean symbolNameWasPresent){
+		metadataSymbols.put(symbol, metadataName);
+	}
+
+	@Override
+	public synchronized void savePredicateSymbol(final String symbol, final String predicate,
+			final boolean symbolNameWasPresent){
+		predicateSymbols.put(symbol, predicate);
+	}
+
+	@Override
+	public synchronized void deleteGraphSymbol(final String symbol){
+		graphSymbols.remove(symbol);
+	}
+
+	@Override
+	public synchronized void deleteRemoteSymbol(final Graph graph, final Graph.Remote remote){
+		final Set<Graph.Remote> remotes = remoteSymbols.get(graph.name);
+		if(remotes != null){
+			remotes.remove(remote);
+		}
+	}
+
+	@Override
+	public synchronized void deleteRemoteSymbols(final Graph graph){
+		remoteSymbols.remove(graph.name);
+	}
+
+	@Override
+	public synchronized void deleteMetadataSymbol(final String symbol){
+		metadataSymbols.remove(symbol);
+	}
+
+	@Override
+	public synchronized void deletePredicateSymbol(final String symbol){
+		predicateSymbols.remove(symbol);
+	}
+}
@@ -19,6 +19,13 @@
  */
 package spade.storage.neo4j;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Transaction;
 
@@ -92,6 +99,44 @@ public class CacheManager{
 		return true;
 	}
 
+	public final Set<String> executeTaskGetRelationshipsByHashCodes(final Collection<String> hashCodes, final Transaction tx){
+		final TaskGetRelationshipsByProperty storageTask = new TaskGetRelationshipsByProperty(
+				storage.getConfiguration().neo4jEdgeRelationshipType, storage.getConfiguration().hashPropertyName, hashCodes);
+		return storageTask.execute(storage, tx);
+	}
+
+	/**
+	 * Same as edgeCacheGet for each hash code but the ones not in the cache are looked up with a single task
+	 * 
+	 * @return the hash codes which exist
+	 */
+	public final Set<String> edgeCacheGetExisting(final Collection<String> hashCodes, final Transaction tx){
+		final Set<String> existingHashCodes = new HashSet<String>();
+		final List<String> notCachedHashCodes = new ArrayList<String>();
+		for(final String hashCode : hashCodes){
+			if(hashCode == null){
+				continue;
+			}
+			Object value = null;
+			synchronized(screenLock){
+				if(deduplicateScreen != null){
+					value = deduplicateScreen.getEdgeCacheValueForStorage(hashCode);
+				}
+			}
+			if(value == null){
+				notCachedHashCodes.add(hashCode);
+			}else if(Boolean.TRUE.equals(value)){
+				existingHashCodes.add(hashCode);
+			}
+		}
+
+		for(final String hashCode : executeTaskGetRelationshipsByHashCodes(notCachedHashCodes, tx)){
+			existingHashCodes.add(hashCode);
+			edgeCachePut(hashCode, true);
+		}
+		return existingHashCodes;
+	}
+
 	public final void edgeCachePut(final String hashCode, final boolean value){
 		if(hashCode != null){
 			synchronized(screenLock){
@@ -116,6 +161,12 @@ public class CacheManager{
 		return storageTask.execute(storage, tx);
 	}
 
+	public final Map<String, Node> executeTaskGetNodesByHashCodes(final Collection<String> hashCodes, final Transaction tx){
+		final TaskGetNodesByProperty storageTask = new TaskGetNodesByProperty(
+				storage.getConfiguration().neo4jVertexLabel, storage.getConfiguration().hashPropertyName, hashCodes);
+		return storageTask.execute(storage, tx);
+	}
+
 	public final Node vertexCacheGetNode(final String hashCode, final Transaction tx){
 		if(hashCode == null){
 			return null;
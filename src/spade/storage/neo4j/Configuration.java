@@ -55,6 +55,7 @@ public class Configuration{
 		keyFlushAfterSeconds = "flushAfterSeconds",
 		keyBufferLimit = "bufferLimit",
 		keyTransactionTimeoutInSeconds = "transactionTimeoutInSeconds",
+		keyTaskBatchSize = "taskBatchSize",
 		// Storage and database interaction management
 		keyForceShutdown = "forceShutdown",
 		keyReset = "reset",
@@ -99,6 +100,7 @@ public class Configuration{
 	public final int flushAfterSeconds;
 	public final int bufferLimit;
 	public final int transactionTimeoutInSeconds;
+	public final int taskBatchSize;
 	// Storage and database interaction management
 	public final boolean forceShutdown;
 	public final boolean reset;
@@ -150,6 +152,7 @@ public class Configuration{
 			final int flushAfterSeconds, 
 			final int bufferLimit, 
 			final int transactionTimeoutInSeconds,
+			final int taskBatchSize,
 			// Storage and database interaction management
 			final boolean forceShutdown,
 			final boolean reset,
@@ -201,6 +204,7 @@ public class Configuration{
 		this.flushAfterSeconds = flushAfterSeconds;
 		this.bufferLimit = bufferLimit;
 		this.transactionTimeoutInSeconds = transactionTimeoutInSeconds;
+		this.taskBatchSize = taskBatchSize;
 		// Storage and database interaction management
 		this.forceShutdown = forceShutdown;
 		this.reset = reset;
@@ -439,6 +443,13 @@ public class Configuration{
 			return Result.failed("Invalid value for '" + keyTransactionTimeoutInSeconds + "': '"+transactionTimeoutInSecondsString+"'", null, transactionTimeoutInSecondsResult);
 		}
 		final int transactionTimeoutInSeconds = transactionTimeoutInSecondsResult.result.intValue();
+
+		final String taskBatchSizeString = map.remove(keyTaskBatchSize);
+		final Result<Long> taskBatchSizeResult = HelperFunctions.parseLong(taskBatchSizeString, 10, 1, Integer.MAX_VALUE);
+		if(taskBatchSizeResult.error){
+			return Result.failed("Invalid value for '" + keyTaskBatchSize + "': '"+taskBatchSizeString+"'", null, taskBatchSizeResult);
+		}
+		final int taskBatchSize = taskBatchSizeResult.result.intValue();
 		// End - Storage buffer management
 
 		// Start - Storage and database interaction management
@@ -672,6 +683,7 @@ public class Configuration{
 						flushAfterSeconds, 
 						bufferLimit,
 						transactionTimeoutInSeconds,
+						taskBatchSize,
 						// Storage and database interaction management
 						forceShutdown, 
 						reset, 
@@ -729,6 +741,7 @@ public class Configuration{
 				+ ", " + keyFlushAfterSeconds + "=" + flushAfterSeconds + newLine
 				+ ", " + keyBufferLimit + "=" + bufferLimit + " (buffering:" + ((bufferLimit < 0) ? ("disabled") : ("enabled") )+ ")" + newLine
 				+ ", " + keyTransactionTimeoutInSeconds + "=" + transactionTimeoutInSeconds + " (limited:" + ((transactionTimeoutInSeconds < 0) ? ("no") : ("yes") )+ ")" + newLine
+				+ ", " + keyTaskBatchSize + "=" + taskBatchSize + " (batching:" + ((taskBatchSize > 1) ? ("enabled") : ("disabled") )+ ")" + newLine
 				// Storage and database interaction management
 				+ ", " + keyForceShutdown + "=" + forceShutdown + newLine
 				+ ", " + keyReset + "=" + reset + newLine
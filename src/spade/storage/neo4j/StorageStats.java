@@ -41,6 +41,9 @@ public class StorageStats{
 	public final StorageStat pendingTasksIncoming = new StorageStat("Pending Tasks Incoming");
 	public final StorageStat pendingTasksOutgoing = new StorageStat("Pending Tasks Outgoing");
 
+	public final StorageStat putBatchCount = new StorageStat("Put Batches");
+	public final StorageStat putBatchElementCount = new StorageStat("Put Batch Elements");
+
 	private final boolean timeMe;
 	private final boolean reportingEnabled;
 	private final long reportingStartedAtMillis;
@@ -85,6 +88,11 @@ public class StorageStats{
 				logger.log(Level.INFO,
 						pendingTasksOutgoing.format(elapsedTimeSinceStartMillis, elapsedTimeSinceIntervalMillis));
 
+				logger.log(Level.INFO,
+						putBatchCount.format(elapsedTimeSinceStartMillis, elapsedTimeSinceIntervalMillis));
+				logger.log(Level.INFO,
+						putBatchElementCount.format(elapsedTimeSinceStartMillis, elapsedTimeSinceIntervalMillis));
+
 				logger.log(Level.INFO,
 						String.format("JVM Heap Size In Use: %.3f GB",
 								((double)(Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()))
@@ -116,6 +124,9 @@ public class StorageStats{
 
 				pendingTasksIncoming.newInterval();
 				pendingTasksOutgoing.newInterval();
+
+				putBatchCount.newInterval();
+				putBatchElementCount.newInterval();
 				
 				this.lastReportedAtMillis = System.currentTimeMillis();
 			}
@@ -160,6 +171,11 @@ public class StorageStats{
 			this.valueSinceEpoch++;
 		}
 
+		public synchronized final void add(final long value){
+			this.valueSinceLastInterval += value;
+			this.valueSinceEpoch += value;
+		}
+
 		synchronized final void newInterval(){
 			this.valueSinceLastInterval = 0;
 		}
@@ -99,6 +99,11 @@ public abstract class StorageTask<R>{
 		}
 	}
 
+	// Number of vertices and edges put by this task. Used to decide when to commit
+	public int getElementCount(){
+		return 1;
+	}
+
 	// Execute and set result if necessary
 	public abstract R execute(final Neo4j storage, final Transaction tx) throws Exception;
 	
@@ -0,0 +1,87 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.storage.neo4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+import spade.storage.Neo4j;
+
+/**
+ * Finds the nodes for all the given property values with a single (indexed) query.
+ */
+public class TaskGetNodesByProperty extends StorageTask<Map<String, Node>>{
+
+	private static final String parameterName = "spade_values";
+	private static final String nodeAlias = "n";
+
+	private final Label nodeLabel;
+	private final String propertyName;
+	private final Collection<String> propertyValues;
+
+	@Override
+	public final String toString(){
+		return "TaskGetNodesByProperty [nodeLabel="+nodeLabel+", propertyName="+propertyName+", propertyValues="+propertyValues.size()+"]";
+	}
+
+	public TaskGetNodesByProperty(final Label nodeLabel, final String propertyName, final Collection<String> propertyValues){
+		super(false, false);
+		this.nodeLabel = nodeLabel;
+		this.propertyName = propertyName;
+		this.propertyValues = propertyValues;
+	}
+
+	@Override
+	public final Map<String, Node> execute(final Neo4j storage, final Transaction transaction){
+		final Map<String, Node> valueToNode = new HashMap<String, Node>();
+		if(propertyValues.isEmpty()){
+			setResult(valueToNode);
+			return valueToNode;
+		}
+		try{
+			storage.getStorageStats().startActionTimer(this.getClass().getSimpleName());
+			final String query = "match (" + nodeAlias + ":`" + nodeLabel.name() + "`) where " 
+					+ nodeAlias + ".`" + propertyName + "` in $" + parameterName + " return " + nodeAlias + ";";
+			final Map<String, Object> parameters = new HashMap<String, Object>();
+			parameters.put(parameterName, new ArrayList<String>(propertyValues));
+			try(final org.neo4j.graphdb.Result result = transaction.execute(query, parameters)){
+				final Iterator<Node> nodes = result.columnAs(nodeAlias);
+				while(nodes.hasNext()){
+					final Node node = nodes.next();
+					final Object value = node.getProperty(propertyName, null);
+					if(value != null){
+						valueToNode.put(value.toString(), node);
+					}
+				}
+			}
+			setResult(valueToNode);
+			return valueToNode;
+		}finally{
+			storage.getStorageStats().stopActionTimer(this.getClass().getSimpleName());
+		}
+	}
+}
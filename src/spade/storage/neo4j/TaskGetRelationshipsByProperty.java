@@ -0,0 +1,114 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.storage.neo4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+
+import spade.storage.Neo4j;
+import spade.storage.neo4j.Configuration.EdgeCacheFindMode;
+
+/**
+ * Finds which of the given property values exist on relationships with a single query (or a single pass over the
+ * relationships). Same find modes as TaskGetRelationshipByProperty.
+ */
+public class TaskGetRelationshipsByProperty extends StorageTask<Set<String>>{
+
+	private static final String parameterName = "spade_values";
+	private static final String valueAlias = "v";
+
+	private final RelationshipType relationshipType;
+	private final String propertyName;
+	private final Collection<String> propertyValues;
+
+	@Override
+	public final String toString(){
+		return "TaskGetRelationshipsByProperty [relationshipType="+relationshipType+", propertyName="+propertyName+", "
+				+ "propertyValues="+propertyValues.size()+"]";
+	}
+
+	public TaskGetRelationshipsByProperty(final RelationshipType relationshipType,
+			final String propertyName, final Collection<String> propertyValues){
+		super(false, false);
+		this.relationshipType = relationshipType;
+		this.propertyName = propertyName;
+		this.propertyValues = propertyValues;
+	}
+
+	@Override
+	public final Set<String> execute(final Neo4j storage, final Transaction tx){
+		final Set<String> foundValues = new HashSet<String>();
+		if(propertyValues.isEmpty()){
+			setResult(foundValues);
+			return foundValues;
+		}
+		try{
+			storage.getStorageStats().startActionTimer(this.getClass().getSimpleName());
+			final EdgeCacheFindMode edgeCacheFindMode = storage.getConfiguration().edgeCacheFindMode;
+			if(edgeCacheFindMode.equals(EdgeCacheFindMode.ITERATE)){
+				final Set<String> remainingValues = new HashSet<String>(propertyValues);
+				try(final ResourceIterator<Relationship> relationshipIterator = tx.getAllRelationships().iterator()){
+					while(relationshipIterator.hasNext() && !remainingValues.isEmpty()){
+						final Relationship relationship = relationshipIterator.next();
+						if(relationship.isType(relationshipType)){
+							final String value = String.valueOf(relationship.getProperty(propertyName, null));
+							if(remainingValues.remove(value)){
+								foundValues.add(value);
+							}
+						}
+					}
+				}
+			}else if(edgeCacheFindMode.equals(EdgeCacheFindMode.NONE)){
+				// Nothing is looked up
+			}else if(edgeCacheFindMode.equals(EdgeCacheFindMode.CYPHER)){
+				final String query = "match ()-[e]->() where e.`" + propertyName + "` in $" + parameterName
+						+ " return distinct e.`" + propertyName + "` as " + valueAlias + ";";
+				final Map<String, Object> parameters = new HashMap<String, Object>();
+				parameters.put(parameterName, new ArrayList<String>(propertyValues));
+				try(final org.neo4j.graphdb.Result result = tx.execute(query, parameters)){
+					final Iterator<Object> values = result.columnAs(valueAlias);
+					while(values.hasNext()){
+						final Object value = values.next();
+						if(value != null){
+							foundValues.add(value.toString());
+						}
+					}
+				}
+			}else{
+				throw new RuntimeException(
+						"Failed to find relationships. Unhandled edge cache find mode: " + edgeCacheFindMode);
+			}
+			setResult(foundValues);
+			return foundValues;
+		}finally{
+			storage.getStorageStats().stopActionTimer(this.getClass().getSimpleName());
+		}
+	}
+}
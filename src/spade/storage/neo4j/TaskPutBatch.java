@@ -0,0 +1,194 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.storage.neo4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+import spade.core.AbstractEdge;
+import spade.core.AbstractVertex;
+import spade.storage.Neo4j;
+import spade.storage.neo4j.Configuration.VertexCacheMode;
+
+/**
+ * Puts a list of vertices and a list of edges with a single task.
+ * 
+ * Same result as executing TaskPutVertex for each vertex and then TaskPutEdge for each edge but the nodes which are
+ * not in the cache are looked up with one query for the whole batch instead of one lookup per vertex. The same for
+ * the relationships.
+ */
+public class TaskPutBatch extends StorageTask<Void>{
+
+	private final List<AbstractVertex> vertices;
+	private final List<AbstractEdge> edges;
+
+	@Override
+	public String toString(){
+		return "TaskPutBatch [vertices=" + vertices.size() + ", edges=" + edges.size() + "]";
+	}
+
+	public TaskPutBatch(final List<AbstractVertex> vertices, final List<AbstractEdge> edges){
+		super(false, false);
+		this.vertices = vertices;
+		this.edges = edges;
+	}
+
+	@Override
+	public final int getElementCount(){
+		return vertices.size() + edges.size();
+	}
+
+	private final Node getCachedNode(final Neo4j storage, final Transaction tx, final String hashCode){
+		final Object value = storage.getCacheManager().vertexCacheGet(hashCode);
+		if(value == null){
+			return null;
+		}
+		final VertexCacheMode vertexCacheMode = storage.getConfiguration().vertexCacheMode;
+		if(VertexCacheMode.ID.equals(vertexCacheMode)){
+			try{
+				return tx.getNodeById((Long)value);
+			}catch(ClassCastException e){
+				throw new RuntimeException(
+						"Invalid object ("+value+") type in cache. Expected '"+Long.class+"' but is '"+value.getClass()+"'", e);
+			}
+		}else if(VertexCacheMode.NODE.equals(vertexCacheMode)){
+			try{
+				return (Node)value;
+			}catch(ClassCastException e){
+				throw new RuntimeException(
+						"Invalid object ("+value+") type in cache. Expected '"+Node.class+"' but is '"+value.getClass()+"'", e);
+			}
+		}else{
+			throw new RuntimeException("Failed to find node. Unhandled vertex cache mode: " + vertexCacheMode);
+		}
+	}
+
+	private final void putCachedNode(final Neo4j storage, final String hashCode, final Node node){
+		final VertexCacheMode vertexCacheMode = storage.getConfiguration().vertexCacheMode;
+		if(VertexCacheMode.ID.equals(vertexCacheMode)){
+			storage.getCacheManager().vertexCachePutNodeId(hashCode, node.getId());
+		}else if(VertexCacheMode.NODE.equals(vertexCacheMode)){
+			storage.getCacheManager().vertexCachePutNode(hashCode, node);
+		}else{
+			throw new RuntimeException("Failed to cache node. Unhandled vertex cache mode: " + vertexCacheMode);
+		}
+	}
+
+	private final String getVertexHashCode(final AbstractVertex vertex, final String vertexName, final Object owner) throws Exception{
+		if(vertex == null){
+			throw new Exception("NULL " + vertexName + " to put: " + owner);
+		}
+		final String hashCode = vertex.bigHashCode();
+		if(hashCode == null){
+			throw new Exception("NULL hash code for " + vertexName + " to put: " + owner);
+		}
+		return hashCode;
+	}
+
+	@Override
+	public final Void execute(final Neo4j storage, final Transaction tx) throws Exception{
+		final StorageStats stats = storage.getStorageStats();
+
+		// All the vertices which must exist in the order in which they would have been put
+		final Map<String, AbstractVertex> hashToVertex = new LinkedHashMap<String, AbstractVertex>();
+		for(final AbstractVertex vertex : vertices){
+			hashToVertex.putIfAbsent(getVertexHashCode(vertex, "vertex", vertex), vertex);
+		}
+		for(final AbstractEdge edge : edges){
+			if(edge == null){
+				throw new Exception("NULL edge to put");
+			}
+			if(edge.bigHashCode() == null){
+				throw new Exception("NULL hash code for edge to put: " + edge);
+			}
+			hashToVertex.putIfAbsent(getVertexHashCode(edge.getChildVertex(), "child vertex", edge), edge.getChildVertex());
+			hashToVertex.putIfAbsent(getVertexHashCode(edge.getParentVertex(), "parent vertex", edge), edge.getParentVertex());
+		}
+
+		stats.startActionTimer("BATCH-NODE-RESOLVE");
+		final Map<String, Node> hashToNode = new HashMap<String, Node>();
+		final List<String> notCachedHashCodes = new ArrayList<String>();
+		for(final String hashCode : hashToVertex.keySet()){
+			final Node node = getCachedNode(storage, tx, hashCode);
+			if(node == null){
+				stats.vertexCacheMiss.increment();
+				notCachedHashCodes.add(hashCode);
+			}else{
+				stats.vertexCacheHit.increment();
+				hashToNode.put(hashCode, node);
+			}
+		}
+		if(!notCachedHashCodes.isEmpty()){
+			final Map<String, Node> foundNodes = storage.getCacheManager().executeTaskGetNodesByHashCodes(notCachedHashCodes, tx);
+			for(final Map.Entry<String, Node> entry : foundNodes.entrySet()){
+				stats.vertexDbHit.increment();
+				hashToNode.put(entry.getKey(), entry.getValue());
+				putCachedNode(storage, entry.getKey(), entry.getValue());
+			}
+		}
+		stats.stopActionTimer("BATCH-NODE-RESOLVE");
+
+		stats.startActionTimer("BATCH-NODE-CREATE");
+		for(final Map.Entry<String, AbstractVertex> entry : hashToVertex.entrySet()){
+			final String hashCode = entry.getKey();
+			if(!hashToNode.containsKey(hashCode)){
+				final Node node = TaskPutVertex.storeVertex(storage, tx, hashCode, entry.getValue());
+				hashToNode.put(hashCode, node);
+				putCachedNode(storage, hashCode, node);
+				stats.vertexCount.increment();
+			}
+		}
+		stats.stopActionTimer("BATCH-NODE-CREATE");
+
+		stats.startActionTimer("BATCH-RELATIONSHIP-RESOLVE");
+		final Set<String> edgeHashCodes = new LinkedHashSet<String>();
+		for(final AbstractEdge edge : edges){
+			edgeHashCodes.add(edge.bigHashCode());
+		}
+		// Updated as the relationships are created so that a repeated edge in the batch is created only once
+		final Set<String> existingEdgeHashCodes = storage.getCacheManager().edgeCacheGetExisting(edgeHashCodes, tx);
+		stats.stopActionTimer("BATCH-RELATIONSHIP-RESOLVE");
+
+		stats.startActionTimer("BATCH-RELATIONSHIP-CREATE");
+		for(final AbstractEdge edge : edges){
+			final String hashCode = edge.bigHashCode();
+			if(existingEdgeHashCodes.add(hashCode)){
+				final Node childNode = hashToNode.get(edge.getChildVertex().bigHashCode());
+				final Node parentNode = hashToNode.get(edge.getParentVertex().bigHashCode());
+				stats.edgeCount.increment();
+				TaskPutEdge.storeEdge(storage, tx, edge, childNode, parentNode);
+				storage.getCacheManager().edgeCachePut(hashCode, true);
+			}
+		}
+		stats.stopActionTimer("BATCH-RELATIONSHIP-CREATE");
+
+		stats.putBatchCount.increment();
+		stats.putBatchElementCount.add(getElementCount());
+		return null;
+	}
+}
@@ -44,8 +44,8 @@ public class TaskPutEdge extends StorageTask<Relationship>{
 		this.edge = edge;
 	}
 
-	private final void storeAnnotations(final Neo4j storage, final Transaction tx, final Relationship relationship,
-			final Map<String, String> annotations) throws Exception{
+	private static final void storeAnnotations(final Neo4j storage, final Transaction tx, final AbstractEdge edge,
+			final Relationship relationship, final Map<String, String> annotations) throws Exception{
 
 		for(final Map.Entry<String, String> entry : annotations.entrySet()){
 			final String key = entry.getKey();
@@ -59,7 +59,7 @@ public class TaskPutEdge extends StorageTask<Relationship>{
 		storage.updateRelationshipPropertyNames(relationship.getAllProperties().keySet());
 	}
 
-	private final Relationship storeEdge(final Neo4j storage, final Transaction tx,
+	static final Relationship storeEdge(final Neo4j storage, final Transaction tx,
 			final AbstractEdge edge, final Node childNode, final Node parentNode) throws Exception{
 		final String hashCode = edge.bigHashCode();
 		final Map<String, String> annotations = edge.getCopyOfAnnotations();
@@ -68,7 +68,7 @@ public class TaskPutEdge extends StorageTask<Relationship>{
 		storage.getStorageStats().startActionTimer("RELATIONSHIP-CREATE");
 		final Relationship relationship = childNode.createRelationshipTo(parentNode, storage.getConfiguration().neo4jEdgeRelationshipType);
 		relationship.setProperty(storage.getConfiguration().hashPropertyName, hashCode);
-		storeAnnotations(storage, tx, relationship, annotations);
+		storeAnnotations(storage, tx, edge, relationship, annotations);
 		storage.getStorageStats().stopActionTimer("RELATIONSHIP-CREATE");
 		return relationship;
 	}
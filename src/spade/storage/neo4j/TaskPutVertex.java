@@ -41,8 +41,8 @@ public class TaskPutVertex extends StorageTask<Node>{
 		this.vertex = vertex;
 	}
 
-	private final void storeAnnotations(
-			final Neo4j storage, final Transaction tx, final Node node, final Map<String, String> annotations) throws Exception{
+	private static final void storeAnnotations(final Neo4j storage, final Transaction tx, final AbstractVertex vertex,
+			final Node node, final Map<String, String> annotations) throws Exception{
 
 		for(final Map.Entry<String, String> entry : annotations.entrySet()){
 			final String key = entry.getKey();
@@ -56,14 +56,14 @@ public class TaskPutVertex extends StorageTask<Node>{
 		storage.updateNodePropertyNames(node.getAllProperties().keySet());
 	}
 
-	private final Node storeVertex(final Neo4j storage, final Transaction tx, final String hashCode, final AbstractVertex vertex) throws Exception{
+	static final Node storeVertex(final Neo4j storage, final Transaction tx, final String hashCode, final AbstractVertex vertex) throws Exception{
 		final Map<String, String> annotations = vertex.getCopyOfAnnotations();
 		storage.validateUpdateHashKeyAndKeysInAnnotationMap(vertex, "Vertex", annotations);
 
 		storage.getStorageStats().startActionTimer("NODE-CREATE");
 		final Node node = tx.createNode(storage.getConfiguration().neo4jVertexLabel);
 		node.setProperty(storage.getConfiguration().hashPropertyName, hashCode);
-		storeAnnotations(storage, tx, node, annotations);
+		storeAnnotations(storage, tx, vertex, node, annotations);
 		storage.getStorageStats().stopActionTimer("NODE-CREATE");
 		return node;
 	}
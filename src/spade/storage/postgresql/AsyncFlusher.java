@@ -0,0 +1,198 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.storage.postgresql;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import spade.utility.GraphBuffer;
+import spade.utility.GraphBuffer.GraphSnapshot;
+
+/**
+ * Persists snapshots of the graph buffer on a background thread.
+ *
+ * A fixed number of snapshots are allocated and reused. The graph buffer keeps getting filled while the snapshots
+ * are persisted. If all snapshots are in flight then submit blocks until one of them has been persisted.
+ */
+public class AsyncFlusher{
+
+	private static final Logger logger = Logger.getLogger(AsyncFlusher.class.getName());
+
+	private final Consumer<GraphSnapshot> persister;
+	private final BlockingQueue<GraphSnapshot> free;
+	private final BlockingQueue<GraphSnapshot> pending;
+	private final Thread thread;
+
+	private final Object inFlightLock = new Object();
+	private int inFlight = 0;
+
+	private volatile boolean shutdown = false;
+
+	private final long reportingIntervalMillis;
+	// Volatile because read and written by the background thread, and by the thread calling shutdown
+	private volatile long lastReportedAtMillis = System.currentTimeMillis();
+
+	// Updated only by the background thread. Volatile because read by the thread calling shutdown
+	private volatile long flushCount = 0, rowCount = 0, flushNanos = 0, maxFlushNanos = 0;
+	// Updated only by the submitting thread. Volatile because read by the background thread
+	private volatile long submitStallCount = 0, submitStallNanos = 0;
+
+	/**
+	 * @param persister Function to persist the snapshot. Must clear the snapshot
+	 * @param maxInFlight Number of snapshots that can be submitted but not yet persisted
+	 * @param reportingIntervalSeconds Interval at which to log the stats. Not logged if less than 1
+	 */
+	public AsyncFlusher(final Consumer<GraphSnapshot> persister, final int maxInFlight, final int reportingIntervalSeconds){
+		if(maxInFlight < 1){
+			throw new IllegalArgumentException("Max in flight must be greater than 0: " + maxInFlight);
+		}
+		this.persister = persister;
+		this.free = new ArrayBlockingQueue<GraphSnapshot>(maxInFlight);
+		this.pending = new ArrayBlockingQueue<GraphSnapshot>(maxInFlight);
+		for(int i = 0; i < maxInFlight; i++){
+			this.free.add(new GraphSnapshot());
+		}
+		this.reportingIntervalMillis = TimeUnit.SECONDS.toMillis(reportingIntervalSeconds);
+		this.thread = new Thread(this::run, "PostgreSQL-AsyncFlusher");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Moves the contents of the graph buffer into a free snapshot and queues it to be persisted.
+	 *
+	 * Blocks if the max number of snapshots are already in flight.
+	 *
+	 * @param graphBuffer The buffer to flush
+	 */
+	public void submit(final GraphBuffer graphBuffer){
+		if(shutdown){
+			throw new IllegalStateException("Flusher already shutdown");
+		}
+		if(graphBuffer.empty()){
+			return;
+		}
+		GraphSnapshot snapshot = free.poll();
+		if(snapshot == null){
+			final long stallStartNanos = System.nanoTime();
+			try{
+				snapshot = free.take();
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while waiting for a free snapshot", e);
+			}
+			submitStallCount++;
+			submitStallNanos += System.nanoTime() - stallStartNanos;
+		}
+		if(!graphBuffer.flushTo(snapshot)){
+			free.add(snapshot);
+			return;
+		}
+		synchronized(inFlightLock){
+			inFlight++;
+		}
+		pending.add(snapshot); // Never full because the number of snapshots is fixed
+	}
+
+	/**
+	 * Blocks until all the submitted snapshots have been persisted.
+	 */
+	public void awaitFlushed(){
+		synchronized(inFlightLock){
+			while(inFlight > 0){
+				try{
+					inFlightLock.wait();
+				}catch(InterruptedException e){
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("Interrupted while waiting for flush", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Waits for all the submitted snapshots to be persisted and then stops the background thread.
+	 */
+	public void shutdown(){
+		awaitFlushed();
+		shutdown = true;
+		thread.interrupt();
+		try{
+			thread.join();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+		report(true);
+	}
+
+	private void run(){
+		while(!shutdown){
+			final GraphSnapshot snapshot;
+			try{
+				snapshot = pending.take();
+			}catch(InterruptedException e){
+				continue;
+			}
+			final int rows = snapshot.size();
+			final long startNanos = System.nanoTime();
+			try{
+				persister.accept(snapshot);
+			}catch(Throwable t){
+				logger.log(Level.SEVERE, "Failed to persist " + rows + " elements", t);
+			}
+			final long elapsedNanos = System.nanoTime() - startNanos;
+			snapshot.clear();
+
+			flushCount++;
+			rowCount += rows;
+			flushNanos += elapsedNanos;
+			maxFlushNanos = Math.max(maxFlushNanos, elapsedNanos);
+
+			free.add(snapshot);
+			synchronized(inFlightLock){
+				inFlight--;
+				inFlightLock.notifyAll();
+			}
+			report(false);
+		}
+	}
+
+	private void report(final boolean force){
+		if(reportingIntervalMillis <= 0){
+			return;
+		}
+		final long nowMillis = System.currentTimeMillis();
+		if(force || (nowMillis - lastReportedAtMillis) > reportingIntervalMillis){
+			lastReportedAtMillis = nowMillis;
+			final double flushSeconds = flushNanos / 1000000000.0;
+			logger.log(Level.INFO, String.format("Flush-count=%s, Row-count=%s, Rows/sec=%.2f, Avg-flush-millis=%.2f, "
+					+ "Max-flush-millis=%s, Submit-stall-count=%s, Submit-stall-millis=%s",
+					flushCount, rowCount,
+					flushSeconds == 0 ? 0.0 : rowCount / flushSeconds,
+					flushCount == 0 ? 0.0 : (flushNanos / 1000000.0) / flushCount,
+					TimeUnit.NANOSECONDS.toMillis(maxFlushNanos),
+					submitStallCount, TimeUnit.NANOSECONDS.toMillis(submitStallNanos)));
+		}
+	}
+}
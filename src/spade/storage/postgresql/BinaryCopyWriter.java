@@ -0,0 +1,182 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.storage.postgresql;
+
+import java.sql.SQLException;
+
+import org.postgresql.copy.CopyIn;
+
+/**
+ * Writes rows in the PostgreSQL binary COPY format directly to a COPY operation.
+ *
+ * Hashes are sent as 16 byte UUIDs and other values as UTF-8 bytes without any escaping. The database must use the
+ * UTF8 server encoding because binary text values are not converted by the server.
+ *
+ * Format: 'Binary Format' section in the PostgreSQL documentation of COPY.
+ */
+public class BinaryCopyWriter implements CopyWriter{
+
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte)0xFF, '\r', '\n', 0};
+	private static final int UUID_BYTES = 16;
+
+	private final CopyIn copyIn;
+	private final byte[] buffer;
+	private int position = 0;
+
+	public BinaryCopyWriter(final CopyIn copyIn) throws SQLException{
+		this(copyIn, DEFAULT_BUFFER_SIZE);
+	}
+
+	public BinaryCopyWriter(final CopyIn copyIn, final int bufferSize) throws SQLException{
+		if(bufferSize < SIGNATURE.length + 8){
+			throw new IllegalArgumentException("Buffer size must be at least " + (SIGNATURE.length + 8) + ": " + bufferSize);
+		}
+		this.copyIn = copyIn;
+		this.buffer = new byte[bufferSize];
+		for(final byte b : SIGNATURE){
+			writeByte(b);
+		}
+		writeInt(0); // Flags
+		writeInt(0); // Header extension length
+	}
+
+	@Override
+	public final void startRow(final int valueCount) throws SQLException{
+		writeShort(valueCount);
+	}
+
+	@Override
+	public final void writeValue(final String value) throws SQLException{
+		if(value == null){
+			writeInt(-1);
+			return;
+		}
+		final int length = value.length();
+		int byteCount = 0;
+		for(int i = 0; i < length; i++){
+			final char c = value.charAt(i);
+			if(c < 0x80){
+				byteCount += 1;
+			}else if(c < 0x800){
+				byteCount += 2;
+			}else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))){
+				byteCount += 4;
+				i++;
+			}else if(Character.isSurrogate(c)){
+				byteCount += 1;
+			}else{
+				byteCount += 3;
+			}
+		}
+		writeInt(byteCount);
+		for(int i = 0; i < length; i++){
+			final char c = value.charAt(i);
+			if(c < 0x80){
+				writeByte(c);
+			}else if(c < 0x800){
+				writeByte(0xC0 | (c >> 6));
+				writeByte(0x80 | (c & 0x3F));
+			}else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))){
+				final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				writeByte(0xF0 | (codePoint >> 18));
+				writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+				writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+				writeByte(0x80 | (codePoint & 0x3F));
+			}else if(Character.isSurrogate(c)){
+				writeByte('?'); // Same as String.getBytes for an unpaired surrogate
+			}else{
+				writeByte(0xE0 | (c >> 12));
+				writeByte(0x80 | ((c >> 6) & 0x3F));
+				writeByte(0x80 | (c & 0x3F));
+			}
+		}
+	}
+
+	@Override
+	public final void writeHash(final String hashHexString) throws SQLException{
+		if(hashHexString == null){
+			writeInt(-1);
+			return;
+		}
+		if(hashHexString.length() != UUID_BYTES * 2){
+			throw new SQLException("Hash must be " + (UUID_BYTES * 2) + " hex characters for a UUID column: '" + hashHexString + "'");
+		}
+		writeInt(UUID_BYTES);
+		for(int i = 0; i < UUID_BYTES * 2; i += 2){
+			final int high = Character.digit(hashHexString.charAt(i), 16);
+			final int low = Character.digit(hashHexString.charAt(i + 1), 16);
+			if(high < 0 || low < 0){
+				throw new SQLException("Hash must be hex characters for a UUID column: '" + hashHexString + "'");
+			}
+			writeByte((high << 4) | low);
+		}
+	}
+
+	@Override
+	public final void endRow(){
+		// Not needed for binary
+	}
+
+	@Override
+	public final long finish() throws SQLException{
+		writeShort(-1); // File trailer
+		flushBuffer();
+		return copyIn.endCopy();
+	}
+
+	@Override
+	public final void cancel(){
+		try{
+			if(copyIn.isActive()){
+				copyIn.cancelCopy();
+			}
+		}catch(SQLException e){
+			// Connection is in an unusable state anyway. Reported by the caller.
+		}
+	}
+
+	private void writeByte(final int b) throws SQLException{
+		if(position == buffer.length){
+			flushBuffer();
+		}
+		buffer[position++] = (byte)b;
+	}
+
+	private void writeShort(final int s) throws SQLException{
+		writeByte(s >>> 8);
+		writeByte(s);
+	}
+
+	private void writeInt(final int i) throws SQLException{
+		writeByte(i >>> 24);
+		writeByte(i >>> 16);
+		writeByte(i >>> 8);
+		writeByte(i);
+	}
+
+	private void flushBuffer() throws SQLException{
+		if(position > 0){
+			copyIn.writeToCopy(buffer, 0, position);
+			position = 0;
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.storage.postgresql;
+
+import java.sql.SQLException;
+
+import org.postgresql.copy.CopyIn;
+
+/**
+ * Writes rows in the PostgreSQL CSV format directly to a COPY operation.
+ *
+ * Values are escaped and UTF-8 encoded into a fixed-size byte buffer which is sent to the server whenever it is full.
+ * The memory used does not depend on the number of rows.
+ *
+ * A NULL value is written as an empty unquoted value and every other value is quoted (quotes are doubled).
+ */
+public class CSVCopyWriter implements CopyWriter{
+
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	// Max bytes needed for one char (or a surrogate pair)
+	private static final int MAX_BYTES_PER_CHAR = 4;
+
+	private final CopyIn copyIn;
+	private final byte[] buffer;
+	private int position = 0;
+	private boolean rowStarted = false;
+
+	public CSVCopyWriter(final CopyIn copyIn){
+		this(copyIn, DEFAULT_BUFFER_SIZE);
+	}
+
+	public CSVCopyWriter(final CopyIn copyIn, final int bufferSize){
+		if(bufferSize < MAX_BYTES_PER_CHAR){
+			throw new IllegalArgumentException("Buffer size must be at least " + MAX_BYTES_PER_CHAR + ": " + bufferSize);
+		}
+		this.copyIn = copyIn;
+		this.buffer = new byte[bufferSize];
+	}
+
+	@Override
+	public final void startRow(final int valueCount){
+		// Not needed for CSV
+	}
+
+	@Override
+	public final void writeHash(final String hashHexString) throws SQLException{
+		writeValue(hashHexString);
+	}
+
+	@Override
+	public final void writeValue(final String value) throws SQLException{
+		if(rowStarted){
+			writeAscii(',');
+		}
+		rowStarted = true;
+		if(value == null){
+			return; // NULL
+		}
+		writeAscii('"');
+		final int length = value.length();
+		for(int i = 0; i < length; i++){
+			final char c = value.charAt(i);
+			if(c == '"'){
+				writeAscii('"');
+				writeAscii('"');
+			}else if(c < 0x80){
+				writeAscii(c);
+			}else{
+				ensureCapacity(MAX_BYTES_PER_CHAR);
+				if(c < 0x800){
+					buffer[position++] = (byte)(0xC0 | (c >> 6));
+					buffer[position++] = (byte)(0x80 | (c & 0x3F));
+				}else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))){
+					final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+					buffer[position++] = (byte)(0xF0 | (codePoint >> 18));
+					buffer[position++] = (byte)(0x80 | ((codePoint >> 12) & 0x3F));
+					buffer[position++] = (byte)(0x80 | ((codePoint >> 6) & 0x3F));
+					buffer[position++] = (byte)(0x80 | (codePoint & 0x3F));
+				}else if(Character.isSurrogate(c)){
+					buffer[position++] = '?'; // Same as String.getBytes for an unpaired surrogate
+				}else{
+					buffer[position++] = (byte)(0xE0 | (c >> 12));
+					buffer[position++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+					buffer[position++] = (byte)(0x80 | (c & 0x3F));
+				}
+			}
+		}
+		writeAscii('"');
+	}
+
+	public final void writeRow(final Iterable<String> values) throws SQLException{
+		for(final String value : values){
+			writeValue(value);
+		}
+		endRow();
+	}
+
+	@Override
+	public final void endRow() throws SQLException{
+		writeAscii('\n');
+		rowStarted = false;
+	}
+
+	@Override
+	public final long finish() throws SQLException{
+		flushBuffer();
+		return copyIn.endCopy();
+	}
+
+	@Override
+	public final void cancel(){
+		try{
+			if(copyIn.isActive()){
+				copyIn.cancelCopy();
+			}
+		}catch(SQLException e){
+			// Connection is in an unusable state anyway. Reported by the caller.
+		}
+	}
+
+	private void writeAscii(final char c) throws SQLException{
+		if(position == buffer.length){
+			flushBuffer();
+		}
+		buffer[position++] = (byte)c;
+	}
+
+	private void ensureCapacity(final int bytes) throws SQLException{
+		if(buffer.length - position < bytes){
+			flushBuffer();
+		}
+	}
+
+	private void flushBuffer() throws SQLException{
+		if(position > 0){
+			copyIn.writeToCopy(buffer, 0, position);
+			position = 0;
+		}
+	}
+}
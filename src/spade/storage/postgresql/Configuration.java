@@ -24,6 +24,7 @@ import java.util.Map;
 import spade.utility.ArgumentFunctions;
 import spade.utility.FileUtility;
 import spade.utility.HelperFunctions;
+import spade.utility.Result;
 
 public class Configuration{
 
@@ -38,7 +39,12 @@ public class Configuration{
 		, keyBufferSize = "buffer"
 		, keyReset = "reset"
 		, keySecondaryIndexes = "secondaryIndexes"
-		, keyFetchSize = "fetch";
+		, keyFetchSize = "fetch"
+		, keyAsyncFlush = "asyncFlush"
+		, keyMaxInFlightFlushes = "maxInFlightFlushes"
+		, keyFlushReportingIntervalSeconds = "flushReportingIntervalSeconds"
+		, keyCopyFormat = "copyFormat"
+		, keyWriterConnections = "writerConnections";
 
 	private String driverClassName;
 	private String jdbcProtocol;
@@ -51,6 +57,11 @@ public class Configuration{
 	private boolean reset;
 	private boolean secondaryIndexes;
 	private int fetchSize;
+	private boolean asyncFlush;
+	private int maxInFlightFlushes;
+	private int flushReportingIntervalSeconds;
+	private CopyWriter.Format copyFormat;
+	private int writerConnections;
 
 	public final void load(final String arguments, final String path) throws Exception{
 		try{
@@ -66,6 +77,40 @@ public class Configuration{
 			reset = ArgumentFunctions.mustParseBoolean(keyReset, map);
 			secondaryIndexes = ArgumentFunctions.mustParseBoolean(keySecondaryIndexes, map);
 			fetchSize = ArgumentFunctions.mustParseInteger(keyFetchSize, map);
+			// The keys below are optional for backwards compatibility with older configuration files. The defaults are
+			// the behavior from before the keys were added
+			asyncFlush = map.containsKey(keyAsyncFlush) ? ArgumentFunctions.mustParseBoolean(keyAsyncFlush, map) : false;
+			if(map.containsKey(keyMaxInFlightFlushes)){
+				final long maxInFlightFlushesLong = ArgumentFunctions.mustBeGreaterThanZero(keyMaxInFlightFlushes, map);
+				if(maxInFlightFlushesLong > Short.MAX_VALUE){
+					throw new Exception("Value for key '" + keyMaxInFlightFlushes + "' must not be greater than " + Short.MAX_VALUE);
+				}
+				maxInFlightFlushes = (int)maxInFlightFlushesLong;
+			}else{
+				maxInFlightFlushes = 1;
+			}
+			flushReportingIntervalSeconds = map.containsKey(keyFlushReportingIntervalSeconds) 
+					? ArgumentFunctions.mustParseInteger(keyFlushReportingIntervalSeconds, map) : 0;
+			if(map.containsKey(keyCopyFormat)){
+				final Result<CopyWriter.Format> copyFormatResult = HelperFunctions.parseEnumValue(
+						CopyWriter.Format.class, map.get(keyCopyFormat), true);
+				if(copyFormatResult.error){
+					throw new Exception("Failed to parse value for key '" + keyCopyFormat + "'. Error: " + copyFormatResult.toErrorString());
+				}
+				copyFormat = copyFormatResult.result;
+			}else{
+				// Text COPY format
+				copyFormat = CopyWriter.Format.CSV;
+			}
+			if(map.containsKey(keyWriterConnections)){
+				final long writerConnectionsLong = ArgumentFunctions.mustBeGreaterThanZero(keyWriterConnections, map);
+				if(writerConnectionsLong > Short.MAX_VALUE){
+					throw new Exception("Value for key '" + keyWriterConnections + "' must not be greater than " + Short.MAX_VALUE);
+				}
+				writerConnections = (int)writerConnectionsLong;
+			}else{
+				writerConnections = 1;
+			}
 		}catch(Exception e){
 			throw new Exception("Failed to read/parse configuration: '" + path + "'", e);
 		}
@@ -123,11 +168,36 @@ public class Configuration{
 		return fetchSize > 0;
 	}
 
+	public boolean isAsyncFlush(){
+		return asyncFlush;
+	}
+
+	public int getMaxInFlightFlushes(){
+		return maxInFlightFlushes;
+	}
+
+	public int getFlushReportingIntervalSeconds(){
+		return flushReportingIntervalSeconds;
+	}
+
+	public CopyWriter.Format getCopyFormat(){
+		return copyFormat;
+	}
+
+	/**
+	 * @return Number of connections used for writing. If 1 then the query connection is used for writing as well
+	 */
+	public int getWriterConnections(){
+		return writerConnections;
+	}
+
 	@Override
 	public String toString(){
 		return "Configuration [driverClassName=" + driverClassName + ", jdbcProtocol=" + jdbcProtocol + ", host=" + host
 				+ ", port=" + port + ", dbName=" + dbName + ", dbUser=" + dbUser + ", dbPassword=" + dbPassword
 				+ ", bufferSize=" + bufferSize + ", reset=" + reset + ", secondaryIndexes=" + secondaryIndexes
-				+ ", fetchSize=" + fetchSize + "]";
+				+ ", fetchSize=" + fetchSize + ", asyncFlush=" + asyncFlush + ", maxInFlightFlushes=" + maxInFlightFlushes
+				+ ", flushReportingIntervalSeconds=" + flushReportingIntervalSeconds + ", copyFormat=" + copyFormat
+				+ ", writerConnections=" + writerConnections + "]";
 	}
 }
@@ -0,0 +1,60 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.storage.postgresql;
+
+import java.sql.SQLException;
+
+/**
+ * Writes rows to an active COPY ... FROM STDIN operation.
+ *
+ * Each row must be started with startRow followed by exactly the given number of values and then endRow.
+ */
+public interface CopyWriter{
+
+	public static enum Format{ CSV, BINARY }
+
+	public void startRow(final int valueCount) throws SQLException;
+
+	/**
+	 * @param value Value for a varchar column. NULL allowed
+	 */
+	public void writeValue(final String value) throws SQLException;
+
+	/**
+	 * @param hashHexString Value for a UUID column as 32 hex characters
+	 */
+	public void writeHash(final String hashHexString) throws SQLException;
+
+	public void endRow() throws SQLException;
+
+	/**
+	 * Sends the remaining data and completes the COPY operation.
+	 *
+	 * @return Number of rows copied as reported by the server
+	 * @throws SQLException
+	 */
+	public long finish() throws SQLException;
+
+	/**
+	 * Cancels the COPY operation if it is still active. Nothing written is persisted.
+	 */
+	public void cancel();
+
+}
@@ -29,6 +29,7 @@ import java.util.SortedMap;
 import java.util.TreeMap;
 
 import spade.core.AbstractStorage;
+import spade.query.quickgrail.core.BatchIterator;
 import spade.query.quickgrail.core.GraphDescription;
 import spade.query.quickgrail.core.GraphStatistic;
 import spade.query.quickgrail.core.GraphStatistic.Interval;
@@ -39,6 +40,7 @@ import spade.query.quickgrail.entities.Graph;
 import spade.query.quickgrail.entities.GraphMetadata;
 import spade.query.quickgrail.instruction.DescribeGraph;
 import spade.query.quickgrail.instruction.DescribeGraph.ElementType;
+import spade.query.quickgrail.instruction.FilterGraph;
 import spade.query.quickgrail.instruction.GetEdgeEndpoint;
 import spade.query.quickgrail.instruction.GetLineage;
 import spade.query.quickgrail.instruction.GetLineage.Direction;
@@ -64,6 +66,8 @@ public class PostgreSQLInstructionExecutor extends QueryInstructionExecutor{
 	private final String vertexAnnotationTableName;
 	private final String edgeAnnotationTableName;
 
+	private boolean traversalFunctionsInstalled = false;
+
 	public PostgreSQLInstructionExecutor(PostgreSQL storage, PostgreSQLQueryEnvironment queryEnvironment,
 			String idColumnName, String idChildVertexColumnName, String idParentVertexColumnName,
 			String vertexAnnotationTableName, String edgeAnnotationTableName){
@@ -623,6 +627,58 @@ public class PostgreSQLInstructionExecutor extends QueryInstructionExecutor{
 		}
 	}
 
+	/**
+	 * All the comparisons are matched in one query instead of a query (and an intermediate table) for each.
+	 *
+	 * Same handling of '*' and of missing annotations as getVertex and getEdge.
+	 */
+	@Override
+	public void filterGraph(final Graph targetGraph, final Graph subjectGraph, final Graph.Component component,
+			final List<FilterGraph.Comparison> comparisons){
+		final boolean vertex = component == Graph.Component.kVertex;
+		final String targetTable = vertex ? getVertexTableName(targetGraph) : getEdgeTableName(targetGraph);
+		final String subjectTable = vertex ? getVertexTableName(subjectGraph) : getEdgeTableName(subjectGraph);
+		if(comparisons.isEmpty()){
+			executeQueryForResult("insert into " + targetTable + " select " + getIdColumnName() + " from "
+					+ subjectTable + " group by " + getIdColumnName(), false);
+			return;
+		}
+
+		final Set<String> existingColumnNames = vertex
+				? getColumnNamesOfVertexAnnotationTable() : getColumnNamesOfEdgeAnnotationTable();
+		final List<String> conditions = new ArrayList<String>();
+		for(final FilterGraph.Comparison comparison : comparisons){
+			final Set<String> columnNames = new HashSet<String>();
+			if("*".equals(comparison.annotationKey)){
+				columnNames.addAll(existingColumnNames);
+			}else if(existingColumnNames.contains(comparison.annotationKey)){
+				columnNames.add(comparison.annotationKey);
+			}else if(comparison.operator.equals(PredicateOperator.NOT_EQUAL)){
+				continue; // the column is null so it would never equal the value passed
+			}
+			if(columnNames.isEmpty()){
+				return; // Don't insert anything since the value is null and it cannot match anything
+			}
+			final List<String> columnComparisons = new ArrayList<String>();
+			for(final String columnName : columnNames){
+				columnComparisons.add(buildComparison(columnName, comparison.operator, comparison.annotationValue));
+			}
+			conditions.add("(" + String.join(" or ", columnComparisons) + ")");
+		}
+
+		if(!queryEnvironment.isBaseGraph(subjectGraph)){
+			conditions.add(getIdColumnName() + " in (select " + getIdColumnName() + " from " + subjectTable + ")");
+		}
+
+		String sqlQuery = "insert into " + targetTable + " select " + getIdColumnName() + " from "
+				+ (vertex ? getVertexAnnotationTableName() : getEdgeAnnotationTableName());
+		if(!conditions.isEmpty()){
+			sqlQuery += " where " + String.join(" and ", conditions);
+		}
+		sqlQuery += " group by " + getIdColumnName() + ";";
+		executeQueryForResult(sqlQuery, false);
+	}
+
 	@Override
 	public void getEdgeEndpoint(Graph targetGraph, Graph subjectGraph, GetEdgeEndpoint.Component component){
 		String targetVertexTable = getVertexTableName(targetGraph);
@@ -974,72 +1030,7 @@ public class PostgreSQLInstructionExecutor extends QueryInstructionExecutor{
 
 	@Override
 	public void getAdjacentVertex(Graph targetGraph, Graph subjectGraph, Graph sourceGraph, GetLineage.Direction directionArg){
-		final List<Direction> directions = new ArrayList<Direction>();
-		if(directionArg == Direction.kBoth){
-			directions.add(Direction.kAncestor);
-			directions.add(Direction.kDescendant);
-		}else{
-			directions.add(directionArg);
-		}
-
-		final String targetVertexTable = getVertexTableName(targetGraph);
-		final String targetEdgeTable = getEdgeTableName(targetGraph);
-		final String subjectEdgeTable = getEdgeTableName(subjectGraph);
-		final String cursorTable = "m_cur";
-		final String nextTable = "m_next";
-		final String answerTable = "m_answer";
-		final String answerEdgeTable = "m_answer_edge";
-		
-		final String filter = queryEnvironment.isBaseGraph(subjectGraph) ? ""
-				: " and " + getEdgeAnnotationTableName() + "." + getIdColumnName() 
-				+ " in (select "+getIdColumnName()+" from "+subjectEdgeTable+")";
-
-		for(final Direction direction : directions){
-			if(direction != Direction.kAncestor && direction != Direction.kDescendant){
-				throw new RuntimeException("Unexpected direction: " + direction);
-			}
-			final String startVertexTable = getVertexTableName(sourceGraph);
-			final String src = direction == Direction.kAncestor ? getIdColumnNameChildVertex() : getIdColumnNameParentVertex();
-			final String dst = direction == Direction.kAncestor ? getIdColumnNameParentVertex() : getIdColumnNameChildVertex();
-			
-			createUUIDTable(cursorTable, true);
-			createUUIDTable(nextTable, true);
-			createUUIDTable(answerTable, true);
-			createUUIDTable(answerEdgeTable, true);
-
-			executeQueryForResult("insert into "+cursorTable+" select "+getIdColumnName()+" from " + startVertexTable + ";", false);
-			executeQueryForResult("insert into " + answerTable + " select " + getIdColumnName() + " from " + cursorTable + ";", false);
-
-			for(int i = 0; i < 1; ++i){
-				createUUIDTable(nextTable, true);
-				executeQueryForResult("insert into " + nextTable + " select \"" + dst + "\" from " + getEdgeAnnotationTableName()
-					+ " where \"" + src + "\" in (select "+getIdColumnName()+" from "+cursorTable+")"
-					+ " " + filter + " group by \"" + dst + "\";", false);
-				executeQueryForResult("insert into " + answerEdgeTable + " select " + getIdColumnName() + " from " + getEdgeAnnotationTableName()
-					+ " where \"" + src + "\" in (select "+getIdColumnName()+" from "+cursorTable+") " + filter + ";", false);
-				createUUIDTable(cursorTable, true);
-				executeQueryForResult("insert into " + cursorTable + " select " + getIdColumnName() + " from " + nextTable
-						+ " where " + getIdColumnName() + " not in (select "+getIdColumnName()+" from "+answerTable+");", false);
-				executeQueryForResult("insert into " + answerTable + " select " + getIdColumnName() + " from " + cursorTable + ";", 
-						false);
-
-				List<List<String>> countResult = executeQueryForResult("select count(*) from "+cursorTable+";", false);
-				long cursorTableCount = Long.parseLong(countResult.get(0).get(0));
-				if(cursorTableCount == 0){
-					break;
-				}
-			}
-
-			executeQueryForResult("insert into " + targetVertexTable 
-					+ " select " + getIdColumnName() + " from " + answerTable + ";", false);
-			executeQueryForResult("insert into " + targetEdgeTable 
-					+ " select " + getIdColumnName() + " from " + answerEdgeTable + " group by " + getIdColumnName() + ";", false);
-		}
-
-		dropTable(cursorTable);
-		dropTable(nextTable);
-		dropTable(answerEdgeTable);
-		dropTable(answerTable);
+		getLineage(targetGraph, subjectGraph, sourceGraph, 1, directionArg);
 	}
 
 	@Override
@@ -1139,8 +1130,114 @@ public class PostgreSQLInstructionExecutor extends QueryInstructionExecutor{
 		final String idColumnName = getIdColumnName();
 		executeQueryForResult("insert into " + targetTable + " select " + idColumnName + " from " + "(select distinct "
 				+ idColumnName + ", dense_rank() over (order by " + idColumnName + ") as rn from " + sourceTable + ") "
-				+ "as temp_table where "
-				+ "temp_table.rn >= " + fromInclusive + " and temp_table.rn < " + toExclusive, false);
+				+ "as temp_table where " // rank starts from 1 and the offsets from 0
+				+ "temp_table.rn > " + fromInclusive + " and temp_table.rn <= " + toExclusive, false);
+	}
+
+	/**
+	 * Pages by id (keyset) so that each page reads only the ids after the last one of the previous page instead of
+	 * ranking the whole table for every page.
+	 */
+	@Override
+	public BatchIterator getGraphPageIterator(final Graph targetGraph, final int pageSize){
+		return new KeysetGraphPageIterator(targetGraph, pageSize);
+	}
+
+	/**
+	 * Same order of pages as GraphPageIterator i.e. all the vertex pages and then all the edge pages.
+	 * The graph must not be modified while iterating.
+	 * 
+	 * After the last page the number of ids paged is checked against the number of distinct ids in the graph (i.e.
+	 * what exportGraph would have exported) so that a missed id is reported instead of silently dropped.
+	 */
+	private final class KeysetGraphPageIterator extends BatchIterator{
+		private final Graph targetGraph;
+		private Graph pageGraph = null;
+		private String lastVertexId = null, lastEdgeId = null;
+		private long pagedVertexCount = 0, pagedEdgeCount = 0;
+		private boolean verticesDone = false, edgesDone = false;
+		private spade.core.Graph nextPage = null;
+
+		private KeysetGraphPageIterator(final Graph targetGraph, final int batchSize){
+			super(batchSize);
+			if(batchSize < 1){
+				throw new RuntimeException("Page size must be greater than zero: " + batchSize);
+			}
+			this.targetGraph = targetGraph;
+		}
+
+		/**
+		 * @return the last id in the page table or null if the page is empty
+		 */
+		private String fillPage(final String sourceTable, final String pageTable, final String lastId){
+			final String idColumnName = getIdColumnName();
+			executeQueryForResult("insert into " + pageTable + " select " + idColumnName + " from " + sourceTable
+					+ (lastId == null ? "" : " where " + idColumnName + " > '" + lastId + "'")
+					+ " group by " + idColumnName + " order by " + idColumnName + " limit " + batchSize + ";", false);
+			final List<List<String>> result = executeQueryForResult("select " + idColumnName + "::text from "
+					+ pageTable + " order by " + idColumnName + " desc limit 1;", false);
+			return result.isEmpty() ? null : result.get(0).get(0);
+		}
+
+		private long getPageSize(final String pageTable){
+			return Long.parseLong(executeQueryForResult("select count(*) from " + pageTable + ";", false).get(0).get(0));
+		}
+
+		private void checkPagedCount(final String sourceTable, final long pagedCount){
+			final long distinctCount = Long.parseLong(executeQueryForResult(
+					"select count(distinct " + getIdColumnName() + ") from " + sourceTable + ";", false).get(0).get(0));
+			if(distinctCount != pagedCount){
+				throw new RuntimeException("Incomplete export of '" + sourceTable + "'. Paged " + pagedCount
+						+ " ids instead of " + distinctCount);
+			}
+		}
+
+		private spade.core.Graph readNextPage(){
+			if(pageGraph == null){
+				pageGraph = createNewGraph();
+			}else{
+				clearGraph(pageGraph);
+			}
+			if(!verticesDone){
+				final String lastId = fillPage(getVertexTableName(targetGraph), getVertexTableName(pageGraph), lastVertexId);
+				if(lastId != null){
+					lastVertexId = lastId;
+					pagedVertexCount += getPageSize(getVertexTableName(pageGraph));
+					return createGraph(exportVertices(pageGraph), null);
+				}
+				verticesDone = true;
+				checkPagedCount(getVertexTableName(targetGraph), pagedVertexCount);
+			}
+			if(!edgesDone){
+				final String lastId = fillPage(getEdgeTableName(targetGraph), getEdgeTableName(pageGraph), lastEdgeId);
+				if(lastId != null){
+					lastEdgeId = lastId;
+					pagedEdgeCount += getPageSize(getEdgeTableName(pageGraph));
+					return createGraph(null, exportEdges(pageGraph));
+				}
+				edgesDone = true;
+				checkPagedCount(getEdgeTableName(targetGraph), pagedEdgeCount);
+			}
+			return null;
+		}
+
+		@Override
+		public spade.core.Graph nextBatch(){
+			if(!hasNextBatch()){
+				throw new RuntimeException("No more pages in graph: " + targetGraph.name);
+			}
+			final spade.core.Graph page = nextPage;
+			nextPage = null;
+			return page;
+		}
+
+		@Override
+		public boolean hasNextBatch(){
+			if(nextPage == null){
+				nextPage = readNextPage();
+			}
+			return nextPage != null;
+		}
 	}
 
 	@Override
@@ -1194,106 +1291,37 @@ public class PostgreSQLInstructionExecutor extends QueryInstructionExecutor{
 		dropTable(answerTable);
 	}
 	
-	private void noResultExecuteQuery(String query){
-		executeQueryForResult(query, false);
+	private String formatColumnName(final String columnName){
+		return "\"" + columnName + "\"";
 	}
-	
-	@Override
-	public void getShortestPath(Graph targetGraph, Graph subjectGraph, Graph srcGraph, Graph dstGraph, int maxDepth){
-		String filter;
-		dropTable("m_conn");
-		noResultExecuteQuery("create table m_conn ("+getIdColumnNameChildVertex()+" uuid, "+getIdColumnNameParentVertex()+" uuid)");
-		if(queryEnvironment.isBaseGraph(subjectGraph)){
-			filter = "";
-			noResultExecuteQuery("insert into m_conn select \"" + getIdColumnNameChildVertex() + "\", \"" + getIdColumnNameParentVertex() + "\" "
-					+ "from " + getEdgeAnnotationTableName() + " group by \"" + getIdColumnNameChildVertex() + "\", \"" + getIdColumnNameParentVertex() + "\"");
-		}else{
-			String subjectEdgeTable = getEdgeTableName(subjectGraph);
-			filter = " and "+getEdgeAnnotationTableName()+".\""+getIdColumnName()+"\" in (select "+getIdColumnName()+" from " + subjectEdgeTable + ")";
-			dropTable("m_sgedge");
-			noResultExecuteQuery("create table m_sgedge ("+getIdColumnNameChildVertex()+" uuid, "+getIdColumnNameParentVertex()+" uuid)");
-			noResultExecuteQuery("insert into m_sgedge select \"" + getIdColumnNameChildVertex() + "\", \"" + getIdColumnNameParentVertex() + "\" "
-					+ "from " + getEdgeAnnotationTableName() + " where " + getIdColumnName() + " in (select "+getIdColumnName()+" from "
-					+ subjectEdgeTable + ")");
-			noResultExecuteQuery("insert into m_conn select "+getIdColumnNameChildVertex()+", "+getIdColumnNameParentVertex()+" from "
-					+ "m_sgedge group by " + getIdColumnNameChildVertex() + ", " + getIdColumnNameParentVertex());
-			dropTable("m_sgedge");
-		}
-		// Create subgraph edges table.
-		dropTable("m_sgconn");
-		noResultExecuteQuery("create table m_sgconn ("+getIdColumnNameChildVertex()+" uuid, "+getIdColumnNameParentVertex()+" uuid,"
-				+ "reaching uuid, depth int)");
-		
-		dropTable("m_cur"); dropTable("m_next"); dropTable("m_answer");
-		noResultExecuteQuery("create table m_cur ("+getIdColumnName()+" uuid, reaching uuid)");
-		noResultExecuteQuery("create table m_next ("+getIdColumnName()+" uuid, reaching uuid)");
-		noResultExecuteQuery("create table m_answer ("+getIdColumnName()+" uuid)");
-
-		noResultExecuteQuery("insert into m_cur select "+getIdColumnName()+", " + getIdColumnName() + " from " 
-				+ getVertexTableName(dstGraph));
-		noResultExecuteQuery("insert into m_answer select " + getIdColumnName() + " from m_cur group by " + getIdColumnName());
-		
-		for(int i = 0; i < maxDepth; ++i){
-			noResultExecuteQuery(
-					"insert into m_sgconn select " + getIdColumnNameChildVertex() + ", " + getIdColumnNameParentVertex() + ", reaching, "+String.valueOf(i + 1)+" "
-					+ "from m_cur, m_conn where " + getIdColumnName() + " = " + getIdColumnNameParentVertex());
-			dropTable("m_next");
-			noResultExecuteQuery("create table m_next ("+getIdColumnName()+" uuid, reaching uuid)");
-			noResultExecuteQuery("insert into m_next select " + getIdColumnNameChildVertex() + ", reaching from "
-				+ "m_cur, m_conn where "+getIdColumnName()+" = " + getIdColumnNameParentVertex());
-			dropTable("m_cur");
-			noResultExecuteQuery("create table m_cur ("+getIdColumnName()+" uuid, reaching uuid)");
-			noResultExecuteQuery("insert into m_cur select " + getIdColumnName() + ", reaching from m_next where "
-				+ getIdColumnName() + " not in (select "+getIdColumnName()+" from m_answer) group by " + getIdColumnName() + ", reaching");
-			noResultExecuteQuery("insert into m_answer select " + getIdColumnName() + " from m_cur group by " + getIdColumnName());
-
-			List<List<String>> countResult = executeQueryForResult("select count(*) from m_cur", false);
-			long cursorTableCount = Long.parseLong(countResult.get(0).get(0));
-			if(cursorTableCount == 0){
-				break;
-			}
-		}
 
-		dropTable("m_cur"); dropTable("m_next");
-		noResultExecuteQuery("create table m_cur ("+getIdColumnName()+" uuid)");
-		noResultExecuteQuery("create table m_next ("+getIdColumnName()+" uuid)");
-
-		noResultExecuteQuery("insert into m_cur select " + getIdColumnName() + " from " + getVertexTableName(srcGraph)
-				+ " where " + getIdColumnName() + " in (select "+getIdColumnName()+" from m_answer)");
-
-		dropTable("m_answer");
-		noResultExecuteQuery("create table m_answer ("+getIdColumnName()+" uuid)");
-		noResultExecuteQuery("insert into m_answer select " + getIdColumnName() + " from m_cur");
-
-		for(int i = 0; i < maxDepth; ++i){
-			dropTable("m_next");
-			noResultExecuteQuery("create table m_next ("+getIdColumnName()+" uuid)");
-			noResultExecuteQuery("insert into m_next select min(" + getIdColumnNameParentVertex() + "::text)::uuid" // TODO as?
-					+ " from m_cur, m_sgconn where " + getIdColumnName() + " = " + getIdColumnNameChildVertex() + " and depth + " + String.valueOf(i) 
-					+ " <= " + String.valueOf(maxDepth) + " group by " + getIdColumnNameChildVertex() + ", reaching");
-			dropTable("m_cur");
-			noResultExecuteQuery("create table m_cur ("+getIdColumnName()+" uuid)");
-			noResultExecuteQuery("insert into m_cur select "+getIdColumnName()+" from m_next where "
-					+getIdColumnName()+" not in (select "+getIdColumnName()+" from m_answer)");
-			noResultExecuteQuery("insert into m_answer select "+getIdColumnName()+" from m_cur");
-			
-			List<List<String>> countResult = executeQueryForResult("select count(*) from m_cur", false);
-			long cursorTableCount = Long.parseLong(countResult.get(0).get(0));
-			if(cursorTableCount == 0){
-				break;
-			}
+	/**
+	 * Creates (or replaces) the server-side traversal functions once
+	 */
+	private synchronized void installTraversalFunctions(){
+		if(!traversalFunctionsInstalled){
+			executeQueryForResult(TraversalFunctions.getCreateQuery(), false);
+			traversalFunctionsInstalled = true;
 		}
+	}
 
-		String targetVertexTable = getVertexTableName(targetGraph);
-		String targetEdgeTable = getEdgeTableName(targetGraph);
+	/**
+	 * @return NULL for the base graph to follow all the edges
+	 */
+	private String getSubjectEdgeTableName(final Graph subjectGraph){
+		return queryEnvironment.isBaseGraph(subjectGraph) ? null : getEdgeTableName(subjectGraph);
+	}
 
-		noResultExecuteQuery("insert into " + targetVertexTable + " select " + getIdColumnName() + " from m_answer");
-		noResultExecuteQuery("insert into " + targetEdgeTable + " select \"" + getIdColumnName() + "\" from " + getEdgeAnnotationTableName()
-			+ " where \"" + getIdColumnNameChildVertex() + "\" in (select "+getIdColumnName()+" from m_answer)"
-			+ " and \"" + getIdColumnNameParentVertex() + "\" in (select "+getIdColumnName()+" from m_answer) " + filter);
-		dropTable("m_cur");dropTable("m_next");dropTable("m_answer");dropTable("m_conn");dropTable("m_sgconn");
+	@Override
+	public void getShortestPath(Graph targetGraph, Graph subjectGraph, Graph srcGraph, Graph dstGraph, int maxDepth){
+		installTraversalFunctions();
+		executeQueryForResult(TraversalFunctions.getCallQuery(TraversalFunctions.functionShortestPath,
+				getEdgeAnnotationTableName(), formatColumnName(getIdColumnName()),
+				formatColumnName(getIdColumnNameChildVertex()), formatColumnName(getIdColumnNameParentVertex()),
+				getSubjectEdgeTableName(subjectGraph), getVertexTableName(srcGraph), getVertexTableName(dstGraph), maxDepth,
+				getVertexTableName(targetGraph), getEdgeTableName(targetGraph)), false);
 	}
-	
+
 	@Override
 	public void getLineage(Graph targetGraph, Graph subjectGraph, Graph startGraph, int depth, Direction directionArg){
 		final List<Direction> directions = new ArrayList<Direction>();
@@ -1304,299 +1332,51 @@ public class PostgreSQLInstructionExecutor extends QueryInstructionExecutor{
 			directions.add(directionArg);
 		}
 
-		final String targetVertexTable = getVertexTableName(targetGraph);
-		final String targetEdgeTable = getEdgeTableName(targetGraph);
-		final String subjectEdgeTable = getEdgeTableName(subjectGraph);
-		final String currentTable = "m_cur";
-		final String nextTable = "m_next";
-		final String answerTable = "m_answer";
-		final String answerEdgeTable = "m_answer_edge";
-		
-		final String filter = queryEnvironment.isBaseGraph(subjectGraph) ? ""
-				: " and " + getEdgeAnnotationTableName() + "." + getIdColumnName() 
-				+ " in (select "+getIdColumnName()+" from "+subjectEdgeTable+")";
+		installTraversalFunctions();
 
+		// One round trip for all the directions
+		String query = "";
 		for(final Direction direction : directions){
 			if(direction != Direction.kAncestor && direction != Direction.kDescendant){
 				throw new RuntimeException("Unexpected direction: " + direction);
 			}
-			final String startVertexTable = getVertexTableName(startGraph);
 			final String src = direction == Direction.kAncestor ? getIdColumnNameChildVertex() : getIdColumnNameParentVertex();
 			final String dst = direction == Direction.kAncestor ? getIdColumnNameParentVertex() : getIdColumnNameChildVertex();
-			
-			createUUIDTable(currentTable, true);
-			createUUIDTable(nextTable, true);
-			createUUIDTable(answerTable, true);
-			createUUIDTable(answerEdgeTable, true);
-
-			executeQueryForResult("insert into "+currentTable+" select "+getIdColumnName()+" from " + startVertexTable + ";", false);
-			executeQueryForResult("insert into " + answerTable + " select " + getIdColumnName() + " from " + currentTable + ";", false);
-
-			for(int i = 0; i < depth; ++i){
-				createUUIDTable(nextTable, true);
-				executeQueryForResult("insert into " + nextTable + " select \"" + dst + "\" from " + getEdgeAnnotationTableName()
-					+ " where \"" + src + "\" in (select "+getIdColumnName()+" from "+currentTable+")"
-					+ " " + filter + " group by \"" + dst + "\";", false);
-				executeQueryForResult("insert into " + answerEdgeTable + " select " + getIdColumnName() + " from " + getEdgeAnnotationTableName()
-					+ " where \"" + src + "\" in (select "+getIdColumnName()+" from "+currentTable+") " + filter + ";", false);
-				createUUIDTable(currentTable, true);
-				executeQueryForResult("insert into " + currentTable + " select " + getIdColumnName() + " from " + nextTable
-						+ " where " + getIdColumnName() + " not in (select "+getIdColumnName()+" from "+answerTable+");", false);
-				executeQueryForResult("insert into " + answerTable + " select " + getIdColumnName() + " from " + currentTable + ";", 
-						false);
-
-				List<List<String>> countResult = executeQueryForResult("select count(*) from "+currentTable+";", false);
-				long cursorTableCount = Long.parseLong(countResult.get(0).get(0));
-				if(cursorTableCount == 0){
-					break;
-				}
-			}
-
-			executeQueryForResult("insert into " + targetVertexTable 
-					+ " select " + getIdColumnName() + " from " + answerTable + ";", false);
-			executeQueryForResult("insert into " + targetEdgeTable 
-					+ " select " + getIdColumnName() + " from " + answerEdgeTable + " group by " + getIdColumnName() + ";", false);
+			query += TraversalFunctions.getCallQuery(TraversalFunctions.functionLineage,
+					getEdgeAnnotationTableName(), formatColumnName(getIdColumnName()),
+					formatColumnName(src), formatColumnName(dst),
+					getSubjectEdgeTableName(subjectGraph), getVertexTableName(startGraph), depth,
+					getVertexTableName(targetGraph), getEdgeTableName(targetGraph));
 		}
-
-		dropTable(currentTable);
-		dropTable(nextTable);
-		dropTable(answerEdgeTable);
-		dropTable(answerTable);
+		executeQueryForResult(query, false);
 	}
-	
+
 	@Override
 	public void getSimplePath(Graph targetGraph, Graph subjectGraph, Graph srcGraph, Graph dstGraph, int maxDepth){
-		
-		final String depthColumnName = "depth";
-		final String currentTable = "m_cur";
-		final String nextTable = "m_next";
-		final String answerTable = "m_answer";
-		final String currentSubgraphTable = "m_sgconn";
-		
-		final String targetVertexTable = getVertexTableName(targetGraph);
-		final String targetEdgeTable = getEdgeTableName(targetGraph);
-		final String subjectEdgeTable = getEdgeTableName(subjectGraph);
-		final String dstVertexTable = getVertexTableName(dstGraph);
-		final String srcVertexTable = getVertexTableName(srcGraph);
-		
-		createUUIDTable(currentTable, true);
-		createUUIDTable(nextTable, true);
-		createUUIDTable(answerTable, true);
-		
-		dropTable(currentSubgraphTable);
-		executeQueryForResult("create table " + currentSubgraphTable + "("
-				+ "\""+getIdColumnNameChildVertex()+"\" uuid, "
-				+ "\""+getIdColumnNameParentVertex()+"\" uuid, "
-				+ depthColumnName + " int);", false);
-
-		executeQueryForResult("insert into "+currentTable+" select "+getIdColumnName()+" from " + dstVertexTable, false);
-		executeQueryForResult("insert into "+answerTable+" select "+getIdColumnName()+" from " + currentTable, false);
-		
-		final String filter = queryEnvironment.isBaseGraph(subjectGraph) 
-				? "" : " and "+getEdgeAnnotationTableName()+"."+getIdColumnName()+" in (select "+getIdColumnName()+" from " + subjectEdgeTable + ")";
-		
-		final String q0 = "insert into " + currentSubgraphTable + " select \"" + getIdColumnNameChildVertex() + "\", \""
-				+ getIdColumnNameParentVertex() + "\", %s from " + getEdgeAnnotationTableName() + " where \""
-				+ getIdColumnNameParentVertex() + "\" in (select " + getIdColumnName() + " from " + currentTable + ")"
-				+ " " + filter + ";";
-		final String q1 = ""; // createUUIDTable(nextTable, true);
-		final String q2 = "insert into " + nextTable + " select \"" + getIdColumnNameChildVertex() + "\" from "
-				+ getEdgeAnnotationTableName() + " where \"" + getIdColumnNameParentVertex() + "\" in (select "
-				+ getIdColumnName() + " from " + currentTable + ")" + " " + filter + " group by \""
-				+ getIdColumnNameChildVertex() + "\";";
-		final String q3 = ""; // createUUIDTable(cursorTable, true);
-		final String q4 = "insert into " + currentTable + " select " + getIdColumnName() + " from " + nextTable
-				+ " where " + getIdColumnName() + " not in (select " + getIdColumnName() + " from " + answerTable
-				+ ");";
-		final String q5 = "insert into " + answerTable + " select " + getIdColumnName() + " from " + currentTable + ";";
-		
-		for(int i = 0; i < maxDepth; ++i){
-			final String formattedQ0 = String.format(q0, i+1);
-			
-			executeQueryForResult(formattedQ0, false);
-			createUUIDTable(nextTable, true);
-			executeQueryForResult(q2, false);
-			createUUIDTable(currentTable, true);
-			executeQueryForResult(q4, false);
-			executeQueryForResult(q5, false);
-
-			List<List<String>> countResult = executeQueryForResult("select count(*) from "+currentTable+";", false);
-			long cursorTableCount = Long.parseLong(countResult.get(0).get(0));
-			if(cursorTableCount == 0){
-				break;
-			}
-		}
-
-		createUUIDTable(currentTable, true);
-		createUUIDTable(nextTable, true);
-		
-		executeQueryForResult("insert into " + currentTable + " select " + getIdColumnName() + " from " + srcVertexTable
-				+ " where " + getIdColumnName() + " in (select "+getIdColumnName()+" from "+answerTable+");", false);
-
-		createUUIDTable(answerTable, true);
-		
-		executeQueryForResult("insert into " + answerTable + " select " + getIdColumnName() + " from " + currentTable, false);
-
-		final String qq0 = ""; // createUUIDTable(nextTable, true);
-		final String qq1 = "insert into " + nextTable + " select \"" + getIdColumnNameParentVertex() + "\" from " + currentSubgraphTable
-				+ " where \"" + getIdColumnNameChildVertex() + "\" in (select "+getIdColumnName()+" from "+currentTable+")"
-				+ " and " + depthColumnName + " + %s <= " + maxDepth + " group by \""+getIdColumnNameParentVertex()+"\";";
-		final String qq2 = "insert into " + targetEdgeTable + " select " + getIdColumnName() + " from " + getEdgeAnnotationTableName()
-				+ " where \""+getIdColumnNameChildVertex()+"\" in (select " + getIdColumnName() + " from " + currentTable + ")"
-				+ " and \""+getIdColumnNameParentVertex()+"\" in (select "+getIdColumnName()+" from "+nextTable+") " + filter + ";";
-		final String qq3 = ""; // createUUIDTable(cursorTable, true);
-		final String qq4 = "insert into " + currentTable + " select " + getIdColumnName() + " from " + nextTable 
-				+ " where " + getIdColumnName() + " not in (select "+getIdColumnName()+" from "+answerTable+");";
-		final String qq5 = "insert into " + answerTable + " select " + getIdColumnName() + " from " + currentTable + ";";
-
-		for(int i = 0; i < maxDepth; ++i){
-			createUUIDTable(nextTable, true);
-			final String formattedQq1 = String.format(qq1, i);
-			executeQueryForResult(formattedQq1, false);
-			executeQueryForResult(qq2, false);
-			createUUIDTable(currentTable, true);
-			executeQueryForResult(qq4, false);
-			executeQueryForResult(qq5, false);
-			
-			List<List<String>> countResult = executeQueryForResult("select count(*) from "+currentTable+";", false);
-			long cursorTableCount = Long.parseLong(countResult.get(0).get(0));
-			if(cursorTableCount == 0){
-				break;
-			}
-		}
-
-		executeQueryForResult("insert into " + targetVertexTable + " select " + getIdColumnName() + " from " + answerTable, false);
-		dropTable(currentSubgraphTable);
-		dropTable(currentTable);
-		dropTable(nextTable);
-		dropTable(answerTable);
+		installTraversalFunctions();
+		executeQueryForResult(TraversalFunctions.getCallQuery(TraversalFunctions.functionPaths,
+				getEdgeAnnotationTableName(), formatColumnName(getIdColumnName()),
+				formatColumnName(getIdColumnNameChildVertex()), formatColumnName(getIdColumnNameParentVertex()),
+				getSubjectEdgeTableName(subjectGraph), getVertexTableName(srcGraph), getVertexTableName(dstGraph), maxDepth,
+				false, getVertexTableName(targetGraph), getEdgeTableName(targetGraph)), false);
 	}
-	
+
 	@Override
 	public void getLink(Graph targetGraph, Graph subjectGraph, Graph srcGraph, Graph dstGraph, int maxDepth){
 		if(maxDepth <= 0){
 			return;
 		}
-		
+
 		maxDepth = maxDepth - 1;
-		
-		final String depthColumnName = "depth";
-		final String currentTable = "m_cur";
-		final String nextTable = "m_next";
-		final String answerTable = "m_answer";
-		final String currentSubgraphTable = "m_sgconn";
-		
-		final String dstVertexTable = getVertexTableName(dstGraph);
-		final String srcVertexTable = getVertexTableName(srcGraph);
-		final String subjectEdgeTable = getEdgeTableName(subjectGraph);
-		final String targetVertexTable = getVertexTableName(targetGraph);
-		final String targetEdgeTable = getEdgeTableName(targetGraph);
-		
-		createUUIDTable(currentTable, true);
-		createUUIDTable(nextTable, true);
-		createUUIDTable(answerTable, true);
-		
-		dropTable(currentSubgraphTable);
-		executeQueryForResult("create table " + currentSubgraphTable + "("
-				+ "\""+getIdColumnNameChildVertex()+"\" uuid, "
-				+ "\""+getIdColumnNameParentVertex()+"\" uuid, "
-				+ depthColumnName + " int);", false);
-		
-		executeQueryForResult("insert into "+currentTable+" select "+getIdColumnName()+" from " + dstVertexTable, false);
-		executeQueryForResult("insert into "+answerTable+" select "+getIdColumnName()+" from " + currentTable, false);
-		
-		
-		final String filter = queryEnvironment.isBaseGraph(subjectGraph) 
-				? "" : " and "+getEdgeAnnotationTableName()+"."+getIdColumnName()+" in (select "+getIdColumnName()+" from " + subjectEdgeTable + ")";
-		final String q0 = "insert into "+currentSubgraphTable+" select \""+getIdColumnNameChildVertex()+"\", \""+getIdColumnNameParentVertex()+"\", %s from " + getEdgeAnnotationTableName()
-				+ " where \""+getIdColumnNameParentVertex()+"\" in (select "+getIdColumnName()+" from " + currentTable + ")"
-				+ " " + filter + ";";
-		final String q1 = "insert into " + currentSubgraphTable + " select \"" + getIdColumnNameChildVertex() + "\", \"" +getIdColumnNameParentVertex() + "\", %s from " + getEdgeAnnotationTableName()
-				+ " where \"" + getIdColumnNameChildVertex() + "\" in (select "+getIdColumnName()+" from "+currentTable+")"
-				+ " " + filter + ";";
-		final String q2 = ""; // createUUIDTable(nextTable, true);
-		final String q3 = "insert into " + nextTable + " select \"" + getIdColumnNameChildVertex() + "\" from " + getEdgeAnnotationTableName()
-				+ " where \"" + getIdColumnNameParentVertex() + "\" in (select "+getIdColumnName()+" from "+currentTable+")"
-				+ " " + filter + " group by \""+getIdColumnNameChildVertex()+"\";";
-		final String q4 = "insert into " +nextTable + " select \"" + getIdColumnNameParentVertex() + "\" from " + getEdgeAnnotationTableName()
-				+ " where \""+getIdColumnNameChildVertex()+"\" in (select "+getIdColumnName()+" from "+currentTable+")"
-				+ " " + filter + " group by \""+getIdColumnNameParentVertex()+"\";";
-		final String q5 = ""; // createUUIDTable(cursorTable, true);
-		final String q6 = "insert into " + currentTable + " select " + getIdColumnName() + " from " +nextTable
-				+ " where " + getIdColumnName() + " not in (select "+getIdColumnName()+" from "+answerTable+");";
-		final String q7 = "insert into " + answerTable + " select " + getIdColumnName() + " from " + currentTable + ";";
-		
-		for(int i = 0; i < maxDepth; ++i){
-			final String formattedQ0 = String.format(q0, i+1);
-			final String formattedQ1 = String.format(q1, i+1);
-			
-			executeQueryForResult(formattedQ0, false);
-			executeQueryForResult(formattedQ1, false);
-			createUUIDTable(nextTable, true);
-			executeQueryForResult(q3, false);
-			executeQueryForResult(q4, false);
-			createUUIDTable(currentTable, true);
-			executeQueryForResult(q6, false);
-			executeQueryForResult(q7, false);
-
-			List<List<String>> countResult = executeQueryForResult("select count(*) from "+currentTable+";", false);
-			long cursorTableCount = Long.parseLong(countResult.get(0).get(0));
-			if(cursorTableCount == 0){
-				break;
-			}
-		}
-		
-		createUUIDTable(currentTable, true);
-		createUUIDTable(nextTable, true);
-		
-		executeQueryForResult("insert into " + currentTable + " select " + getIdColumnName() + " from " + srcVertexTable
-				+ " where " + getIdColumnName() + " in (select "+getIdColumnName()+" from "+answerTable+");", false);
 
-		createUUIDTable(answerTable, true);
-		
-		executeQueryForResult("insert into " + answerTable + " select " + getIdColumnName() + " from " + currentTable, false);
-
-		final String qq0 = ""; // createUUIDTable(nextTable, true);
-		final String qq1 = "insert into " + nextTable + " select \"" + getIdColumnNameParentVertex() + "\" from " + currentSubgraphTable
-				+ " where \"" + getIdColumnNameChildVertex() + "\" in (select "+getIdColumnName()+" from "+currentTable+")"
-				+ " and " + depthColumnName + " + %s <= " + maxDepth + " group by \""+getIdColumnNameParentVertex()+"\";";
-		final String qq2 = "insert into " + nextTable + " select \"" + getIdColumnNameChildVertex() + "\" from " + currentSubgraphTable
-				+ " where \"" + getIdColumnNameParentVertex() + "\" in (select "+getIdColumnName()+" from "+currentTable+")"
-				+ " and " + depthColumnName + " + %s <= " + maxDepth + " group by \""+getIdColumnNameChildVertex()+"\";";
-		final String qq3 = ""; // createUUIDTable(cursorTable, true);
-		final String qq4 = "insert into " + currentTable + " select " + getIdColumnName() + " from " + nextTable 
-				+ " where " + getIdColumnName() + " not in (select "+getIdColumnName()+" from "+answerTable+");";
-		final String qq5 = "insert into " + answerTable + " select " + getIdColumnName() + " from " + currentTable + ";";
-		
-		for(int i = 0; i < maxDepth; ++i){
-			createUUIDTable(nextTable, true);
-			final String formattedQq1 = String.format(qq1, i);
-			final String formattedQq2 = String.format(qq2, i);
-			executeQueryForResult(formattedQq1, false);
-			executeQueryForResult(formattedQq2, false);
-			createUUIDTable(currentTable, true);
-			executeQueryForResult(qq4, false);
-			executeQueryForResult(qq5, false);
-			
-			List<List<String>> countResult = executeQueryForResult("select count(*) from "+currentTable+";", false);
-			long cursorTableCount = Long.parseLong(countResult.get(0).get(0));
-			if(cursorTableCount == 0){
-				break;
-			}
-		}
-		
-		executeQueryForResult("insert into " + targetVertexTable + " select "+getIdColumnName()+" from "+answerTable+";", false);
-		executeQueryForResult("insert into " + targetEdgeTable + " select " +getIdColumnName() + " from " + getEdgeAnnotationTableName()
-				+ " where \""+getIdColumnNameChildVertex()+"\" in (select "+getIdColumnName()+" from "+answerTable+")"
-				+ " and \""+getIdColumnNameParentVertex()+"\" in (select "+getIdColumnName()+" from "+answerTable+")"
-				+ " " + filter + ";", false);
-
-		dropTable(currentSubgraphTable);
-		dropTable(currentTable);
-		dropTable(nextTable);
-		dropTable(answerTable);
+		installTraversalFunctions();
+		executeQueryForResult(TraversalFunctions.getCallQuery(TraversalFunctions.functionPaths,
+				getEdgeAnnotationTableName(), formatColumnName(getIdColumnName()),
+				formatColumnName(getIdColumnNameChildVertex()), formatColumnName(getIdColumnNameParentVertex()),
+				getSubjectEdgeTableName(subjectGraph), getVertexTableName(srcGraph), getVertexTableName(dstGraph), maxDepth,
+				true, getVertexTableName(targetGraph), getEdgeTableName(targetGraph)), false);
 	}
-	
+
 	@Override
 	public void createEmptyGraphMetadata(GraphMetadata metadata){
 		String vertexTable = getMetadataVertexTableName(metadata);
@@ -0,0 +1,260 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.storage.postgresql;
+
+/**
+ * PL/pgSQL functions which run the multi-level QuickGrail traversals on the server in a single call.
+ *
+ * Each level of a traversal is a join of the frontier with the edge table. The frontier, answer and path tables are
+ * temporary (so, not WAL-logged) and are analyzed at each level so that the planner can pick hash joins.
+ * Anti-joins with 'not exists' are used instead of 'not in'.
+ *
+ * The table and column names are passed as they are used in the SQL (column names quoted). The subject edge table
+ * is NULL for the base graph.
+ * The results are added to the target tables.
+ */
+final class TraversalFunctions{
+
+	static final String
+		functionLineage = "spade_get_lineage",
+		functionPaths = "spade_get_paths",
+		functionShortestPath = "spade_get_shortest_path";
+
+	private static final String functionFilter = "spade_traversal_filter";
+
+	private static final String createFilterFunction =
+			"create or replace function " + functionFilter + "(id_column text, subject_edge_table text) returns text as $$\n"
+			+ "begin\n"
+			+ "	if subject_edge_table is null then\n"
+			+ "		return '';\n"
+			+ "	end if;\n"
+			+ "	return format(' and e.%s in (select %s from %s)', id_column, id_column, subject_edge_table);\n"
+			+ "end;\n"
+			+ "$$ language plpgsql immutable;\n";
+
+	/*
+	 * Breadth-first from the start vertices following 'src_column' to 'dst_column'. Vertices and edges within
+	 * 'max_depth' levels.
+	 */
+	private static final String createLineageFunction =
+			"create or replace function " + functionLineage + "(edge_table text, id_column text, src_column text, dst_column text,\n"
+			+ "		subject_edge_table text, start_vertex_table text, max_depth int,\n"
+			+ "		target_vertex_table text, target_edge_table text) returns void as $$\n"
+			+ "declare\n"
+			+ "	filter text := " + functionFilter + "(id_column, subject_edge_table);\n"
+			+ "	frontier_size bigint;\n"
+			+ "begin\n"
+			+ "	drop table if exists pg_temp.m_trv_answer, pg_temp.m_trv_cur, pg_temp.m_trv_next, pg_temp.m_trv_edge;\n"
+			+ "	create temporary table m_trv_answer (v uuid);\n"
+			+ "	create temporary table m_trv_cur (v uuid);\n"
+			+ "	create temporary table m_trv_next (v uuid);\n"
+			+ "	create temporary table m_trv_edge (v uuid);\n"
+			+ "	execute format('insert into m_trv_cur select %s from %s group by %s', id_column, start_vertex_table, id_column);\n"
+			+ "	insert into m_trv_answer select v from m_trv_cur;\n"
+			+ "	for i in 1..max_depth loop\n"
+			+ "		analyze m_trv_cur;\n"
+			+ "		execute format('insert into m_trv_edge select e.%s from %s e join m_trv_cur c on e.%s = c.v where true%s',\n"
+			+ "				id_column, edge_table, src_column, filter);\n"
+			+ "		truncate m_trv_next;\n"
+			+ "		execute format('insert into m_trv_next select e.%s from %s e join m_trv_cur c on e.%s = c.v where true%s group by e.%s',\n"
+			+ "				dst_column, edge_table, src_column, filter, dst_column);\n"
+			+ "		truncate m_trv_cur;\n"
+			+ "		insert into m_trv_cur select n.v from m_trv_next n\n"
+			+ "			where not exists (select 1 from m_trv_answer a where a.v = n.v);\n"
+			+ "		get diagnostics frontier_size = row_count;\n"
+			+ "		exit when frontier_size = 0;\n"
+			+ "		insert into m_trv_answer select v from m_trv_cur;\n"
+			+ "	end loop;\n"
+			+ "	execute format('insert into %s select v from m_trv_answer', target_vertex_table);\n"
+			+ "	execute format('insert into %s select v from m_trv_edge group by v', target_edge_table);\n"
+			+ "	drop table m_trv_answer, m_trv_cur, m_trv_next, m_trv_edge;\n"
+			+ "end;\n"
+			+ "$$ language plpgsql;\n";
+
+	/*
+	 * First, breadth-first back from the destination vertices to find the distance of the edges to them. Then,
+	 * breadth-first from the source vertices along the edges which still reach a destination within 'max_depth'.
+	 * If 'undirected' then edges are followed in both directions and all the edges between the answer vertices are
+	 * returned. Otherwise, only the edges followed from the source vertices are returned.
+	 */
+	private static final String createPathsFunction =
+			"create or replace function " + functionPaths + "(edge_table text, id_column text, child_column text, parent_column text,\n"
+			+ "		subject_edge_table text, src_vertex_table text, dst_vertex_table text, max_depth int, undirected boolean,\n"
+			+ "		target_vertex_table text, target_edge_table text) returns void as $$\n"
+			+ "declare\n"
+			+ "	filter text := " + functionFilter + "(id_column, subject_edge_table);\n"
+			+ "	frontier_size bigint;\n"
+			+ "begin\n"
+			+ "	drop table if exists pg_temp.m_trv_answer, pg_temp.m_trv_cur, pg_temp.m_trv_next, pg_temp.m_trv_sg;\n"
+			+ "	create temporary table m_trv_answer (v uuid);\n"
+			+ "	create temporary table m_trv_cur (v uuid);\n"
+			+ "	create temporary table m_trv_next (v uuid);\n"
+			+ "	create temporary table m_trv_sg (child uuid, parent uuid, depth int);\n"
+			+ "	execute format('insert into m_trv_cur select %s from %s group by %s', id_column, dst_vertex_table, id_column);\n"
+			+ "	insert into m_trv_answer select v from m_trv_cur;\n"
+			+ "	for i in 1..max_depth loop\n"
+			+ "		analyze m_trv_cur;\n"
+			+ "		execute format('insert into m_trv_sg select e.%s, e.%s, %s from %s e join m_trv_cur c on e.%s = c.v where true%s',\n"
+			+ "				child_column, parent_column, i, edge_table, parent_column, filter);\n"
+			+ "		if undirected then\n"
+			+ "			execute format('insert into m_trv_sg select e.%s, e.%s, %s from %s e join m_trv_cur c on e.%s = c.v where true%s',\n"
+			+ "					child_column, parent_column, i, edge_table, child_column, filter);\n"
+			+ "		end if;\n"
+			+ "		truncate m_trv_next;\n"
+			+ "		insert into m_trv_next select child from m_trv_sg where depth = i;\n"
+			+ "		if undirected then\n"
+			+ "			insert into m_trv_next select parent from m_trv_sg where depth = i;\n"
+			+ "		end if;\n"
+			+ "		truncate m_trv_cur;\n"
+			+ "		insert into m_trv_cur select n.v from m_trv_next n\n"
+			+ "			where not exists (select 1 from m_trv_answer a where a.v = n.v) group by n.v;\n"
+			+ "		get diagnostics frontier_size = row_count;\n"
+			+ "		exit when frontier_size = 0;\n"
+			+ "		insert into m_trv_answer select v from m_trv_cur;\n"
+			+ "	end loop;\n"
+			+ "	truncate m_trv_cur;\n"
+			+ "	execute format('insert into m_trv_cur select s.%s from %s s where exists (select 1 from m_trv_answer a where a.v = s.%s) group by s.%s',\n"
+			+ "			id_column, src_vertex_table, id_column, id_column);\n"
+			+ "	truncate m_trv_answer;\n"
+			+ "	insert into m_trv_answer select v from m_trv_cur;\n"
+			+ "	analyze m_trv_sg;\n"
+			+ "	for i in 0..max_depth - 1 loop\n"
+			+ "		analyze m_trv_cur;\n"
+			+ "		truncate m_trv_next;\n"
+			+ "		insert into m_trv_next select g.parent from m_trv_sg g join m_trv_cur c on g.child = c.v\n"
+			+ "			where g.depth + i <= max_depth;\n"
+			+ "		if undirected then\n"
+			+ "			insert into m_trv_next select g.child from m_trv_sg g join m_trv_cur c on g.parent = c.v\n"
+			+ "				where g.depth + i <= max_depth;\n"
+			+ "		else\n"
+			+ "			execute format('insert into %s select e.%s from %s e join m_trv_cur c on e.%s = c.v where e.%s in (select v from m_trv_next)%s',\n"
+			+ "					target_edge_table, id_column, edge_table, child_column, parent_column, filter);\n"
+			+ "		end if;\n"
+			+ "		truncate m_trv_cur;\n"
+			+ "		insert into m_trv_cur select n.v from m_trv_next n\n"
+			+ "			where not exists (select 1 from m_trv_answer a where a.v = n.v) group by n.v;\n"
+			+ "		get diagnostics frontier_size = row_count;\n"
+			+ "		exit when frontier_size = 0;\n"
+			+ "		insert into m_trv_answer select v from m_trv_cur;\n"
+			+ "	end loop;\n"
+			+ "	execute format('insert into %s select v from m_trv_answer', target_vertex_table);\n"
+			+ "	if undirected then\n"
+			+ "		execute format('insert into %s select e.%s from %s e where e.%s in (select v from m_trv_answer)'\n"
+			+ "				' and e.%s in (select v from m_trv_answer)%s',\n"
+			+ "				target_edge_table, id_column, edge_table, child_column, parent_column, filter);\n"
+			+ "	end if;\n"
+			+ "	drop table m_trv_answer, m_trv_cur, m_trv_next, m_trv_sg;\n"
+			+ "end;\n"
+			+ "$$ language plpgsql;\n";
+
+	/*
+	 * First, breadth-first back from the destination vertices keeping the destination that each edge reaches and its
+	 * distance. Then, from the source vertices, one parent (the minimum) is picked for each vertex and destination
+	 * pair at each level. All the edges between the answer vertices are returned.
+	 */
+	private static final String createShortestPathFunction =
+			"create or replace function " + functionShortestPath + "(edge_table text, id_column text, child_column text, parent_column text,\n"
+			+ "		subject_edge_table text, src_vertex_table text, dst_vertex_table text, max_depth int,\n"
+			+ "		target_vertex_table text, target_edge_table text) returns void as $$\n"
+			+ "declare\n"
+			+ "	filter text := " + functionFilter + "(id_column, subject_edge_table);\n"
+			+ "	frontier_size bigint;\n"
+			+ "begin\n"
+			+ "	drop table if exists pg_temp.m_trv_answer, pg_temp.m_trv_rcur, pg_temp.m_trv_rnext, pg_temp.m_trv_sg,\n"
+			+ "		pg_temp.m_trv_cur, pg_temp.m_trv_next;\n"
+			+ "	create temporary table m_trv_answer (v uuid);\n"
+			+ "	create temporary table m_trv_rcur (v uuid, reaching uuid);\n"
+			+ "	create temporary table m_trv_rnext (v uuid, reaching uuid);\n"
+			+ "	create temporary table m_trv_sg (child uuid, parent uuid, reaching uuid, depth int);\n"
+			+ "	create temporary table m_trv_cur (v uuid);\n"
+			+ "	create temporary table m_trv_next (v uuid);\n"
+			+ "	execute format('insert into m_trv_rcur select %s, %s from %s group by %s', id_column, id_column, dst_vertex_table, id_column);\n"
+			+ "	insert into m_trv_answer select v from m_trv_rcur;\n"
+			+ "	for i in 1..max_depth loop\n"
+			+ "		analyze m_trv_rcur;\n"
+			+ "		execute format('insert into m_trv_sg select e.%s, e.%s, c.reaching, %s from %s e join m_trv_rcur c on e.%s = c.v where true%s',\n"
+			+ "				child_column, parent_column, i, edge_table, parent_column, filter);\n"
+			+ "		truncate m_trv_rnext;\n"
+			+ "		insert into m_trv_rnext select child, reaching from m_trv_sg where depth = i;\n"
+			+ "		truncate m_trv_rcur;\n"
+			+ "		insert into m_trv_rcur select n.v, n.reaching from m_trv_rnext n\n"
+			+ "			where not exists (select 1 from m_trv_answer a where a.v = n.v) group by n.v, n.reaching;\n"
+			+ "		get diagnostics frontier_size = row_count;\n"
+			+ "		exit when frontier_size = 0;\n"
+			+ "		insert into m_trv_answer select v from m_trv_rcur group by v;\n"
+			+ "	end loop;\n"
+			+ "	execute format('insert into m_trv_cur select s.%s from %s s where exists (select 1 from m_trv_answer a where a.v = s.%s) group by s.%s',\n"
+			+ "			id_column, src_vertex_table, id_column, id_column);\n"
+			+ "	truncate m_trv_answer;\n"
+			+ "	insert into m_trv_answer select v from m_trv_cur;\n"
+			+ "	analyze m_trv_sg;\n"
+			+ "	for i in 0..max_depth - 1 loop\n"
+			+ "		analyze m_trv_cur;\n"
+			+ "		truncate m_trv_next;\n"
+			+ "		insert into m_trv_next select min(g.parent::text)::uuid from m_trv_sg g join m_trv_cur c on g.child = c.v\n"
+			+ "			where g.depth + i <= max_depth group by g.child, g.reaching;\n"
+			+ "		truncate m_trv_cur;\n"
+			+ "		insert into m_trv_cur select n.v from m_trv_next n\n"
+			+ "			where not exists (select 1 from m_trv_answer a where a.v = n.v) group by n.v;\n"
+			+ "		get diagnostics frontier_size = row_count;\n"
+			+ "		exit when frontier_size = 0;\n"
+			+ "		insert into m_trv_answer select v from m_trv_cur;\n"
+			+ "	end loop;\n"
+			+ "	execute format('insert into %s select v from m_trv_answer', target_vertex_table);\n"
+			+ "	execute format('insert into %s select e.%s from %s e where e.%s in (select v from m_trv_answer)'\n"
+			+ "			' and e.%s in (select v from m_trv_answer)%s',\n"
+			+ "			target_edge_table, id_column, edge_table, child_column, parent_column, filter);\n"
+			+ "	drop table m_trv_answer, m_trv_rcur, m_trv_rnext, m_trv_sg, m_trv_cur, m_trv_next;\n"
+			+ "end;\n"
+			+ "$$ language plpgsql;\n";
+
+	private TraversalFunctions(){}
+
+	/**
+	 * @return Query to create (or replace) all the functions
+	 */
+	static String getCreateQuery(){
+		return createFilterFunction + createLineageFunction + createPathsFunction + createShortestPathFunction;
+	}
+
+	/**
+	 * @param functionName Name of one of the functions
+	 * @param arguments Strings, numbers, booleans or NULL
+	 * @return Query to call the function
+	 */
+	static String getCallQuery(final String functionName, final Object... arguments){
+		final StringBuilder query = new StringBuilder("select " + functionName + "(");
+		for(int i = 0; i < arguments.length; i++){
+			if(i > 0){
+				query.append(", ");
+			}
+			final Object argument = arguments[i];
+			if(argument == null){
+				query.append("null");
+			}else if(argument instanceof String){
+				query.append("'").append(((String)argument).replace("'", "''")).append("'");
+			}else{
+				query.append(argument);
+			}
+		}
+		query.append(");");
+		return query.toString();
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.storage.quickstep;
+
+import java.util.Arrays;
+
+/**
+ * Reusable buffer holding the data for a bulk-load (COPY ... FROM stdin) as UTF-8 bytes.
+ *
+ * Text is encoded as it is appended so the data does not have to be built as a String and then copied to bytes
+ * again before being sent to Quickstep. The backing array is kept across batches.
+ */
+public class LoadBuffer {
+  private byte[] bytes;
+  private int length = 0;
+
+  public LoadBuffer() {
+    this(64 * 1024);
+  }
+
+  public LoadBuffer(final int initialCapacity) {
+    bytes = new byte[Math.max(16, initialCapacity)];
+  }
+
+  /**
+   * Clear contents but keep the backing array.
+   */
+  public void reset() {
+    length = 0;
+  }
+
+  public int length() {
+    return length;
+  }
+
+  public boolean isEmpty() {
+    return length == 0;
+  }
+
+  /**
+   * @return The backing array. Only the first length() bytes are valid.
+   */
+  public byte[] array() {
+    return bytes;
+  }
+
+  public LoadBuffer append(final char c) {
+    ensureCapacity(3);
+    if (c < 0x80) {
+      bytes[length++] = (byte) c;
+    } else if (c < 0x800) {
+      bytes[length++] = (byte) (0xC0 | (c >> 6));
+      bytes[length++] = (byte) (0x80 | (c & 0x3F));
+    } else if (Character.isSurrogate(c)) {
+      bytes[length++] = '?'; // Unpaired. Pairs are handled by appendEscaped.
+    } else {
+      bytes[length++] = (byte) (0xE0 | (c >> 12));
+      bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+      bytes[length++] = (byte) (0x80 | (c & 0x3F));
+    }
+    return this;
+  }
+
+  public LoadBuffer append(long value) {
+    if (value == Long.MIN_VALUE) {
+      return appendAscii(String.valueOf(value));
+    }
+    ensureCapacity(20);
+    if (value < 0) {
+      bytes[length++] = '-';
+      value = -value;
+    }
+    final int start = length;
+    do {
+      bytes[length++] = (byte) ('0' + (value % 10));
+      value /= 10;
+    } while (value > 0);
+    // Digits were written in reverse
+    for (int i = start, j = length - 1; i < j; ++i, --j) {
+      final byte tmp = bytes[i];
+      bytes[i] = bytes[j];
+      bytes[j] = tmp;
+    }
+    return this;
+  }
+
+  /**
+   * Append string which is known to contain only ASCII characters (e.g. a hex hash).
+   */
+  public LoadBuffer appendAscii(final String str) {
+    final int n = str.length();
+    ensureCapacity(n);
+    for (int i = 0; i < n; ++i) {
+      bytes[length++] = (byte) str.charAt(i);
+    }
+    return this;
+  }
+
+  /**
+   * Append at most maxLength characters of the string, escaping the backslash and the given delimiter.
+   */
+  public LoadBuffer appendEscaped(final String str, final int maxLength, final char delimiter) {
+    final int n = Math.min(str.length(), maxLength);
+    for (int i = 0; i < n; ++i) {
+      final char c = str.charAt(i);
+      if (c == '\\' || c == delimiter) {
+        ensureCapacity(2);
+        bytes[length++] = '\\';
+        bytes[length++] = (byte) c;
+      } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(str.charAt(i + 1))) {
+        final int codePoint = Character.toCodePoint(c, str.charAt(++i));
+        ensureCapacity(4);
+        bytes[length++] = (byte) (0xF0 | (codePoint >> 18));
+        bytes[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+        bytes[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        bytes[length++] = (byte) (0x80 | (codePoint & 0x3F));
+      } else {
+        append(c);
+      }
+    }
+    return this;
+  }
+
+  private void ensureCapacity(final int extra) {
+    if (length + extra > bytes.length) {
+      bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+    }
+  }
+}
@@ -18,6 +18,7 @@
  --------------------------------------------------------------------------------
  */
 package spade.storage.quickstep;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -74,7 +75,30 @@ public class QuickstepClient {
    */
   public QuickstepResponse requestForResponse(String query)
       throws UnknownHostException, IOException {
-    return requestForResponse(query, null);
+    return requestForResponse(query, (String) null);
+  }
+
+  /**
+   * Submit a bulk-load query to Quickstep server and wait for result.
+   *
+   * The data is sent as is from the buffer (UTF-8 bytes) without being converted to a String.
+   *
+   * @param query A SQL query of the form COPY ... FROM stdin.
+   * @param data The data to load.
+   * @return The response from Quickstep server.
+   * @throws UnknownHostException
+   * @throws IOException
+   */
+  public QuickstepResponse requestForResponse(String query, LoadBuffer data)
+      throws UnknownHostException, IOException {
+    final byte[][] keys = new byte[][] { "query".getBytes(), "data".getBytes() };
+    final byte[][] values = new byte[][] { query.getBytes(), data.array() };
+    final int[] valueSizes = new int[] { values[0].length, data.length() };
+    Map<String, String> response = requestForResponse(keys, values, valueSizes);
+    if (!response.containsKey("stdout") || !response.containsKey("stderr")) {
+      throw new RuntimeException("Invalid response");
+    }
+    return new QuickstepResponse(response.get("stdout"), response.get("stderr"));
   }
 
   /**
@@ -85,8 +109,25 @@ public class QuickstepClient {
    */
   private Map<String, String> requestForResponse(final Map<String, String> request)
       throws UnknownHostException, IOException {
+    final int numFields = request.size();
+    final byte[][] keys = new byte[numFields][];
+    final byte[][] values = new byte[numFields][];
+    final int[] valueSizes = new int[numFields];
+    int idx = 0;
+    for (Map.Entry<String, String> entry : request.entrySet()) {
+      keys[idx] = entry.getKey().getBytes();
+      values[idx] = entry.getValue().getBytes();
+      valueSizes[idx] = values[idx].length;
+      ++idx;
+    }
+    return requestForResponse(keys, values, valueSizes);
+  }
+
+  private Map<String, String> requestForResponse(final byte[][] keys, final byte[][] values,
+                                                 final int[] valueSizes)
+      throws UnknownHostException, IOException {
     Socket socket = new Socket(serverIp, serverPort);
-    Write(new DataOutputStream(socket.getOutputStream()), request);
+    Write(new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())), keys, values, valueSizes);
     Map<String, String> response = Read(new DataInputStream(socket.getInputStream()));
     socket.close();
     return response;
@@ -95,23 +136,13 @@ public class QuickstepClient {
   /**
    * Send request via socket.
    */
-  private static void Write(DataOutputStream dos,
-                            final Map<String, String> fields) throws IOException {
-    final int numFields = fields.size();
-    byte[][][] fieldData = new byte[numFields][2][];
-    long[][] fieldSizes = new long[numFields][2];
+  private static void Write(DataOutputStream dos, final byte[][] keys, final byte[][] values,
+                            final int[] valueSizes) throws IOException {
+    final int numFields = keys.length;
 
     long totalSize = 0;
-    int idx = 0;
-    for (Map.Entry<String, String> entry : fields.entrySet()) {
-      final byte[] key = entry.getKey().getBytes();
-      final byte[] value = entry.getValue().getBytes();
-      fieldData[idx][0] = key;
-      fieldData[idx][1] = value;
-      fieldSizes[idx][0] = key.length;
-      fieldSizes[idx][1] = value.length;
-      totalSize += key.length + value.length;
-      ++idx;
+    for (int i = 0; i < numFields; ++i) {
+      totalSize += keys[i].length + valueSizes[i];
     }
     totalSize += Long.BYTES * (1 + 2 * numFields);
 
@@ -121,13 +152,13 @@ public class QuickstepClient {
     dos.writeLong(numFields);
     // 8 * 2 * numFields bytes: individual key/value payload sizes
     for (int i = 0; i < numFields; ++i) {
-      dos.writeLong(fieldSizes[i][0]);
-      dos.writeLong(fieldSizes[i][1]);
+      dos.writeLong(keys[i].length);
+      dos.writeLong(valueSizes[i]);
     }
     // Actual payloads
     for (int i = 0; i < numFields; ++i) {
-      dos.write(fieldData[i][0]);
-      dos.write(fieldData[i][1]);
+      dos.write(keys[i]);
+      dos.write(values[i], 0, valueSizes[i]);
     }
     dos.flush();
   }
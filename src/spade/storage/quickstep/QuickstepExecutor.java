@@ -48,12 +48,18 @@ public class QuickstepExecutor {
   private class QueryInstance implements Callable<String> {
     private String query;
     private String data;
+    private LoadBuffer loadData;
 
     public QueryInstance(String query, String data) {
       this.query = query;
       this.data = data;
     }
 
+    public QueryInstance(String query, LoadBuffer loadData) {
+      this.query = query;
+      this.loadData = loadData;
+    }
+
     @Override
     public String call() {
 		logInfo("[Quickstep query]\n" + query);
@@ -67,7 +73,9 @@ public class QuickstepExecutor {
         }
         try {
           final long queryStartTime = System.currentTimeMillis();
-          QuickstepResponse response = client.requestForResponse(query, data);
+          QuickstepResponse response = loadData != null
+              ? client.requestForResponse(query, loadData)
+              : client.requestForResponse(query, data);
           final String stdout = response.getStdout();
           final String stderr = response.getStderr();
           logOutput(response.getStdout(), "output");
@@ -140,11 +148,20 @@ public class QuickstepExecutor {
     queryFuture = queryExecutor.submit(new QueryInstance(query, data));
   }
 
+  /**
+   * Submit a bulk-load query and return immediately (if possible).
+   * The data must not be modified until the query is finalized.
+   */
+  public void submitQuery(String query, LoadBuffer data) {
+    finalizeQuery();
+    queryFuture = queryExecutor.submit(new QueryInstance(query, data));
+  }
+
   /**
    * Submit a query and return immediately (if possible).
    */
   public void submitQuery(String query) {
-    submitQuery(query, null);
+    submitQuery(query, (String) null);
   }
 
   /**
@@ -0,0 +1,475 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.utility;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Base class for converters which write the fields of an object in a compact binary format instead of using Java
+ * serialization.
+ *
+ * Strings are written as (in order of preference):
+ * 1) An index in the dictionary of the converter for the strings known to repeat (e.g. subtypes, annotation keys)
+ * 2) A varint if the string is a decimal number without leading zeros (e.g. pids, fds, inodes)
+ * 3) Two varints if the string is a decimal number with a fraction (e.g. audit event times)
+ * 4) Bytes if the string is a lowercase hex string (e.g. hashes, addresses)
+ * 5) UTF-8 bytes
+ *
+ * Equal strings are always written as equal bytes, so keys written field by field can be compared as bytes.
+ *
+ * The buffer to write to is reused per thread. A subclass must not call serialize of any BinaryConverter from write.
+ *
+ * The dictionary is part of the format. Only append to the dictionary of an existing converter.
+ */
+public abstract class BinaryConverter<X> implements Converter<X, byte[]>{
+
+	private static final int
+			STRING_NULL = 0,
+			STRING_DICTIONARY = 1,
+			STRING_DECIMAL = 2,
+			STRING_HEX = 3,
+			STRING_UTF8 = 4,
+			STRING_DECIMAL_FRACTION = 5;
+
+	private static final int MIN_HEX_LENGTH = 8, MAX_DECIMAL_LENGTH = 18, MAX_FRACTION_LENGTH = 18;
+
+	private static final ThreadLocal<Output> outputs = ThreadLocal.withInitial(() -> new Output());
+
+	private final String[] dictionary;
+	private final Map<String, Integer> dictionaryIndexes = new HashMap<String, Integer>();
+
+	protected BinaryConverter(final String... dictionary){
+		this.dictionary = dictionary.clone();
+		for(int i = 0; i < this.dictionary.length; i++){
+			if(dictionaryIndexes.put(this.dictionary[i], i) != null){
+				throw new IllegalArgumentException("Duplicate value in dictionary: '" + this.dictionary[i] + "'");
+			}
+		}
+	}
+
+	/**
+	 * @param x Not null
+	 * @param out To write the fields of x to
+	 */
+	protected abstract void write(X x, Output out) throws Exception;
+
+	/**
+	 * @param in To read the fields written by write from
+	 * @return The object
+	 */
+	protected abstract X read(Input in) throws Exception;
+
+	@Override
+	public byte[] serialize(final X i) throws Exception{
+		if(i == null){
+			return null;
+		}else{
+			final Output out = outputs.get();
+			out.reset();
+			write(i, out);
+			return out.toByteArray();
+		}
+	}
+
+	@Override
+	public X deserialize(final byte[] j) throws Exception{
+		if(j == null){
+			return null;
+		}else{
+			final Input in = new Input(j);
+			final X x = read(in);
+			if(in.remaining() != 0){
+				throw new Exception("Unexpected " + in.remaining() + " byte(s) after the value in " + getClass().getSimpleName());
+			}
+			return x;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public byte[] serializeObject(final Object o) throws Exception{
+		return serialize((X)o);
+	}
+
+	@Override
+	public X deserializeObject(final Object o) throws Exception{
+		return deserialize((byte[])o);
+	}
+
+	protected final void writeString(final Output out, final String str){
+		if(str == null){
+			out.writeByte(STRING_NULL);
+			return;
+		}
+		final Integer index = dictionaryIndexes.get(str);
+		if(index != null){
+			out.writeByte(STRING_DICTIONARY);
+			out.writeVarLong(index);
+		}else if(isDecimal(str)){
+			out.writeByte(STRING_DECIMAL);
+			out.writeVarLong(zigZag(Long.parseLong(str)));
+		}else if(isDecimalFraction(str)){
+			final int dot = str.indexOf('.');
+			out.writeByte(STRING_DECIMAL_FRACTION);
+			out.writeVarLong(zigZag(Long.parseLong(str.substring(0, dot))));
+			out.writeByte(str.length() - dot - 1); // Fraction digits including the leading zeros
+			out.writeVarLong(Long.parseLong(str.substring(dot + 1)));
+		}else if(isHex(str)){
+			out.writeByte(STRING_HEX);
+			out.writeHex(str);
+		}else{
+			out.writeByte(STRING_UTF8);
+			out.writeUtf8(str);
+		}
+	}
+
+	protected final String readString(final Input in) throws Exception{
+		final int tag = in.readByte();
+		switch(tag){
+			case STRING_NULL: return null;
+			case STRING_DICTIONARY:{
+				final long index = in.readVarLong();
+				if(index < 0 || index >= dictionary.length){
+					throw new Exception("Invalid dictionary index " + index + " in " + getClass().getSimpleName());
+				}
+				return dictionary[(int)index];
+			}
+			case STRING_DECIMAL: return String.valueOf(unZigZag(in.readVarLong()));
+			case STRING_DECIMAL_FRACTION:{
+				final long integer = unZigZag(in.readVarLong());
+				final int fractionLength = in.readByte();
+				final String fraction = String.valueOf(in.readVarLong());
+				if(fractionLength < fraction.length() || fractionLength > MAX_FRACTION_LENGTH){
+					throw new Exception("Invalid fraction length " + fractionLength + " in " + getClass().getSimpleName());
+				}
+				final StringBuilder str = new StringBuilder(24).append(integer).append('.');
+				for(int i = fraction.length(); i < fractionLength; i++){
+					str.append('0');
+				}
+				return str.append(fraction).toString();
+			}
+			case STRING_HEX: return in.readHex();
+			case STRING_UTF8: return in.readUtf8();
+			default: throw new Exception("Invalid string tag " + tag + " in " + getClass().getSimpleName());
+		}
+	}
+
+	/*
+	 * Null, a long, or the bytes of the BigInteger
+	 */
+	protected static final void writeBigInteger(final Output out, final BigInteger value){
+		if(value == null){
+			out.writeByte(0);
+		}else if(value.bitLength() < 64){
+			out.writeByte(1);
+			out.writeVarLong(zigZag(value.longValue()));
+		}else{
+			out.writeByte(2);
+			out.writeBytes(value.toByteArray());
+		}
+	}
+
+	protected static final BigInteger readBigInteger(final Input in) throws Exception{
+		final int tag = in.readByte();
+		switch(tag){
+			case 0: return null;
+			case 1: return BigInteger.valueOf(unZigZag(in.readVarLong()));
+			case 2: return new BigInteger(in.readBytes());
+			default: throw new Exception("Invalid big integer tag " + tag);
+		}
+	}
+
+	private static boolean isDecimal(final String str){
+		final int length = str.length();
+		final int start = (length > 1 && str.charAt(0) == '-') ? 1 : 0;
+		if(length == start || length - start > MAX_DECIMAL_LENGTH){
+			return false;
+		}
+		if(str.charAt(start) == '0'){
+			return length == 1; // Only "0". No leading zeros or "-0"
+		}
+		for(int i = start; i < length; i++){
+			final char c = str.charAt(i);
+			if(c < '0' || c > '9'){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isDecimalFraction(final String str){
+		final int dot = str.indexOf('.');
+		if(dot < 1 || dot == str.length() - 1 || str.length() - dot - 1 > MAX_FRACTION_LENGTH
+				|| !isDecimal(str.substring(0, dot))){
+			return false;
+		}
+		for(int i = dot + 1; i < str.length(); i++){
+			final char c = str.charAt(i);
+			if(c < '0' || c > '9'){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isHex(final String str){
+		final int length = str.length();
+		if(length < MIN_HEX_LENGTH || length % 2 != 0){
+			return false;
+		}
+		for(int i = 0; i < length; i++){
+			final char c = str.charAt(i);
+			if(!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static long zigZag(final long value){
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unZigZag(final long value){
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	public static final class Output{
+		private byte[] bytes = new byte[256];
+		private int length = 0;
+
+		private void reset(){
+			length = 0;
+		}
+
+		private byte[] toByteArray(){
+			return Arrays.copyOf(bytes, length);
+		}
+
+		private void ensureCapacity(final int extra){
+			if(length + extra > bytes.length){
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+			}
+		}
+
+		public void writeByte(final int b){
+			ensureCapacity(1);
+			bytes[length++] = (byte)b;
+		}
+
+		public void writeBoolean(final boolean b){
+			writeByte(b ? 1 : 0);
+		}
+
+		/**
+		 * Unsigned LEB128. Negative values take 10 bytes
+		 */
+		public void writeVarLong(long value){
+			ensureCapacity(10);
+			while((value & ~0x7FL) != 0){
+				bytes[length++] = (byte)((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			bytes[length++] = (byte)value;
+		}
+
+		public void writeDouble(final double value){
+			final long bits = Double.doubleToRawLongBits(value);
+			ensureCapacity(8);
+			for(int shift = 56; shift >= 0; shift -= 8){
+				bytes[length++] = (byte)(bits >>> shift);
+			}
+		}
+
+		public void writeBytes(final byte[] value){
+			writeVarLong(value.length);
+			ensureCapacity(value.length);
+			System.arraycopy(value, 0, bytes, length, value.length);
+			length += value.length;
+		}
+
+		private void writeHex(final String str){
+			final int count = str.length() / 2;
+			writeVarLong(count);
+			ensureCapacity(count);
+			for(int i = 0; i < str.length(); i += 2){
+				bytes[length++] = (byte)((Character.digit(str.charAt(i), 16) << 4) | Character.digit(str.charAt(i + 1), 16));
+			}
+		}
+
+		private void writeUtf8(final String str){
+			final int n = str.length();
+			boolean ascii = true;
+			for(int i = 0; i < n && ascii; i++){
+				ascii = str.charAt(i) < 0x80;
+			}
+			if(!ascii){
+				writeBytes(str.getBytes(StandardCharsets.UTF_8));
+				return;
+			}
+			writeVarLong(n);
+			ensureCapacity(n);
+			for(int i = 0; i < n; i++){
+				bytes[length++] = (byte)str.charAt(i);
+			}
+		}
+	}
+
+	public static final class Input{
+		private final byte[] bytes;
+		private int position = 0;
+
+		private Input(final byte[] bytes){
+			this.bytes = bytes;
+		}
+
+		private int remaining(){
+			return bytes.length - position;
+		}
+
+		private void require(final long count) throws Exception{
+			if(count < 0 || count > remaining()){
+				throw new Exception("Unexpected end of bytes. Needed: " + count + ", remaining: " + remaining());
+			}
+		}
+
+		public int readByte() throws Exception{
+			require(1);
+			return bytes[position++] & 0xFF;
+		}
+
+		public boolean readBoolean() throws Exception{
+			return readByte() != 0;
+		}
+
+		public long readVarLong() throws Exception{
+			long value = 0;
+			for(int shift = 0; shift < 64; shift += 7){
+				final int b = readByte();
+				value |= (long)(b & 0x7F) << shift;
+				if((b & 0x80) == 0){
+					return value;
+				}
+			}
+			throw new Exception("Malformed varint");
+		}
+
+		public double readDouble() throws Exception{
+			require(8);
+			long bits = 0;
+			for(int i = 0; i < 8; i++){
+				bits = (bits << 8) | (bytes[position++] & 0xFF);
+			}
+			return Double.longBitsToDouble(bits);
+		}
+
+		public byte[] readBytes() throws Exception{
+			final long count = readVarLong();
+			require(count);
+			final byte[] value = Arrays.copyOfRange(bytes, position, position + (int)count);
+			position += (int)count;
+			return value;
+		}
+
+		public int readCount() throws Exception{
+			final long count = readVarLong();
+			require(count); // Every element takes at least one byte
+			return (int)count;
+		}
+
+		private String readHex() throws Exception{
+			final long count = readVarLong();
+			require(count);
+			final char[] chars = new char[(int)count * 2];
+			for(int i = 0; i < chars.length; i += 2){
+				final int b = bytes[position++] & 0xFF;
+				chars[i] = Character.forDigit(b >>> 4, 16);
+				chars[i + 1] = Character.forDigit(b & 0xF, 16);
+			}
+			return new String(chars);
+		}
+
+		private String readUtf8() throws Exception{
+			final long count = readVarLong();
+			require(count);
+			final String str = new String(bytes, position, (int)count, StandardCharsets.UTF_8);
+			position += (int)count;
+			return str;
+		}
+	}
+
+	public static class StringConverter extends BinaryConverter<String>{
+		public StringConverter(final String... dictionary){
+			super(dictionary);
+		}
+
+		@Override
+		protected void write(final String x, final Output out){
+			writeString(out, x);
+		}
+
+		@Override
+		protected String read(final Input in) throws Exception{
+			return readString(in);
+		}
+	}
+
+	public static class IntegerConverter extends BinaryConverter<Integer>{
+		@Override
+		protected void write(final Integer x, final Output out){
+			out.writeVarLong(zigZag(x));
+		}
+
+		@Override
+		protected Integer read(final Input in) throws Exception{
+			return (int)unZigZag(in.readVarLong());
+		}
+	}
+
+	public static class StringMapConverter extends BinaryConverter<HashMap<String, String>>{
+		public StringMapConverter(final String... dictionary){
+			super(dictionary);
+		}
+
+		@Override
+		protected void write(final HashMap<String, String> x, final Output out){
+			out.writeVarLong(x.size());
+			for(final Map.Entry<String, String> entry : x.entrySet()){
+				writeString(out, entry.getKey());
+				writeString(out, entry.getValue());
+			}
+		}
+
+		@Override
+		protected HashMap<String, String> read(final Input in) throws Exception{
+			final int count = in.readCount();
+			final HashMap<String, String> map = new HashMap<String, String>(Math.max(16, count * 2));
+			for(int i = 0; i < count; i++){
+				final String key = readString(in);
+				map.put(key, readString(in));
+			}
+			return map;
+		}
+	}
+}
@@ -19,6 +19,7 @@
  */
 package spade.utility;
 
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
@@ -49,6 +50,18 @@ public class GraphBuffer{
 		}
 	}
 
+	public void addVertices(final Collection<AbstractVertex> vertices){
+		synchronized(this.vertices){
+			this.vertices.addAll(vertices);
+		}
+	}
+
+	public void addEdges(final Collection<AbstractEdge> edges){
+		synchronized(this.edges){
+			this.edges.addAll(edges);
+		}
+	}
+
 	public int size(){
 		int size = 0;
 		synchronized(vertices){
@@ -83,6 +96,31 @@ public class GraphBuffer{
 		return result;
 	}
 
+	/**
+	 * Moves all the buffered elements into the given (empty) snapshot so that the snapshot can be reused.
+	 * 
+	 * @param result The snapshot to move the elements to
+	 * @return True if any element was moved
+	 */
+	public boolean flushTo(final GraphSnapshot result){
+		boolean moved = false;
+		synchronized(vertices){
+			if(!vertices.isEmpty()){
+				result.vertices.addAll(vertices);
+				vertices.clear();
+				moved = true;
+			}
+		}
+		synchronized(edges){
+			if(!edges.isEmpty()){
+				result.edges.addAll(edges);
+				edges.clear();
+				moved = true;
+			}
+		}
+		return moved;
+	}
+
 	public static class GraphSnapshot{
 		private final Set<AbstractVertex> vertices = new HashSet<AbstractVertex>();
 		private final Set<AbstractEdge> edges = new HashSet<AbstractEdge>();
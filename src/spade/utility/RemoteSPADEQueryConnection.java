@@ -57,6 +57,9 @@ public final class RemoteSPADEQueryConnection implements Closeable{
 	
 	private final int symbolId;
 	private final Set<String> generatedSymbols = new HashSet<String>();
+
+	// Number of responses read from the server. Used to tell if the server replied after a point
+	private long responsesRead = 0;
 	
 	public RemoteSPADEQueryConnection(String localHostName, String serverAddress, int queryPort) throws Exception{
 		this.localHostName = localHostName; // can be null
@@ -159,8 +162,10 @@ public final class RemoteSPADEQueryConnection implements Closeable{
 		}
 	}
 	
-	@Override
-	public synchronized void close() throws IOException{
+	/**
+	 * Erase the symbols generated on the server by this connection so far. Used when the connection is reused.
+	 */
+	public synchronized void eraseGeneratedSymbols(){
 		mustBeConnected();
 		
 		if(!generatedSymbols.isEmpty()){
@@ -168,12 +173,19 @@ public final class RemoteSPADEQueryConnection implements Closeable{
 			for(String symbol : generatedSymbols){
 				str += " " + symbol;
 			}
-			try{
-				_executeQuery("erase " + str, false);
-			}catch(Throwable t){
-				logger.log(Level.WARNING, "Failed to execute 'erase' query", t);
-			}
 			generatedSymbols.clear();
+			_executeQuery("erase " + str, false);
+		}
+	}
+	
+	@Override
+	public synchronized void close() throws IOException{
+		mustBeConnected();
+		
+		try{
+			eraseGeneratedSymbols();
+		}catch(Throwable t){
+			logger.log(Level.WARNING, "Failed to execute 'erase' query", t);
 		}
 		
 		try{
@@ -207,6 +219,10 @@ public final class RemoteSPADEQueryConnection implements Closeable{
 	
 	//////////////////////////////
 	
+	public synchronized long getResponsesRead(){
+		return responsesRead;
+	}
+
 	public synchronized boolean isStorageSet(){
 		return storageName != null;
 	}
@@ -361,6 +377,7 @@ public final class RemoteSPADEQueryConnection implements Closeable{
 			
 			try{
 				Object resultObject = queryResponseReader.readObject();
+				responsesRead++;
 				query = (Query)resultObject; // overwrite
 			}catch(Throwable t){
 				throw new RuntimeException("Failed to read query response from server", t);
@@ -0,0 +1,207 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.utility;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.SocketFactory;
+
+/**
+ * Connections to remote SPADE servers, kept open after use so that the next query to the same server does not need
+ * a new (TLS) handshake.
+ * 
+ * A connection is used by one caller at a time. It is either released back (after erasing the symbols generated on
+ * it) or discarded (closed) if it might be broken. Idle connections are closed after the idle timeout by a
+ * background thread.
+ * 
+ * Connections are never closed while holding the pool lock because closing does network I/O.
+ */
+public final class RemoteSPADEQueryConnectionPool{
+
+	private static final Logger logger = Logger.getLogger(RemoteSPADEQueryConnectionPool.class.getName());
+
+	private final String localHostName;
+	private final SocketFactory socketFactory;
+	private final int connectTimeoutMillis;
+	private final int maxIdlePerServer;
+	private final long idleTimeoutMillis;
+
+	private final Map<String, Deque<IdleConnection>> idleConnections = new HashMap<String, Deque<IdleConnection>>();
+	private final ScheduledExecutorService idleConnectionReaper;
+
+	public RemoteSPADEQueryConnectionPool(final String localHostName, final SocketFactory socketFactory,
+			final int connectTimeoutMillis, final int maxIdlePerServer, final long idleTimeoutMillis){
+		this.localHostName = localHostName;
+		this.socketFactory = socketFactory;
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.maxIdlePerServer = maxIdlePerServer;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		final long reapIntervalMillis = Math.max(1, idleTimeoutMillis);
+		this.idleConnectionReaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "Remote-Query-Connection-Reaper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.idleConnectionReaper.scheduleWithFixedDelay(this::closeExpired, reapIntervalMillis, reapIntervalMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	private static String getKey(final String serverAddress, final int queryPort){
+		return serverAddress + ":" + queryPort;
+	}
+
+	/**
+	 * The returned connection might have been closed by the remote server while it was idle.
+	 * 
+	 * @param serverAddress address of the remote SPADE server
+	 * @param queryPort query port of the remote SPADE server
+	 * @return the most recently used idle connection or null if none
+	 */
+	public RemoteSPADEQueryConnection acquireIdle(final String serverAddress, final int queryPort){
+		closeExpired();
+		synchronized(this){
+			final Deque<IdleConnection> deque = idleConnections.get(getKey(serverAddress, queryPort));
+			if(deque == null || deque.isEmpty()){
+				return null;
+			}
+			return deque.pollFirst().connection;
+		}
+	}
+
+	/**
+	 * @param serverAddress address of the remote SPADE server
+	 * @param queryPort query port of the remote SPADE server
+	 * @return new connected connection
+	 * @throws Exception if failed to connect
+	 */
+	public RemoteSPADEQueryConnection connect(final String serverAddress, final int queryPort) throws Exception{
+		final RemoteSPADEQueryConnection connection = new RemoteSPADEQueryConnection(localHostName, serverAddress,
+				queryPort);
+		connection.connect(socketFactory, connectTimeoutMillis);
+		return connection;
+	}
+
+	/**
+	 * Return the connection for reuse. Closed instead if there are already enough idle connections to the server.
+	 */
+	public void release(final RemoteSPADEQueryConnection connection){
+		if(connection == null){
+			return;
+		}
+		try{
+			connection.eraseGeneratedSymbols();
+		}catch(Exception e){
+			discard(connection);
+			return;
+		}
+		closeExpired();
+		final boolean pooled;
+		synchronized(this){
+			final String key = getKey(connection.serverAddress, connection.queryPort);
+			Deque<IdleConnection> deque = idleConnections.get(key);
+			if(deque == null){
+				deque = new ArrayDeque<IdleConnection>();
+				idleConnections.put(key, deque);
+			}
+			pooled = deque.size() < maxIdlePerServer;
+			if(pooled){
+				deque.addFirst(new IdleConnection(connection, System.currentTimeMillis()));
+			}
+		}
+		if(!pooled){
+			discard(connection);
+		}
+	}
+
+	/**
+	 * Close the connection without reusing it.
+	 */
+	public void discard(final RemoteSPADEQueryConnection connection){
+		if(connection == null){
+			return;
+		}
+		try{
+			connection.close();
+		}catch(Exception e){
+			logger.log(Level.FINE, "Failed to close connection to " + getKey(connection.serverAddress, connection.queryPort), e);
+		}
+	}
+
+	// Must not hold the pool lock
+	private void closeExpired(){
+		final List<RemoteSPADEQueryConnection> expired = new ArrayList<RemoteSPADEQueryConnection>();
+		synchronized(this){
+			final long now = System.currentTimeMillis();
+			final Iterator<Map.Entry<String, Deque<IdleConnection>>> iterator = idleConnections.entrySet().iterator();
+			while(iterator.hasNext()){
+				final Deque<IdleConnection> deque = iterator.next().getValue();
+				// Only the oldest (last) connections can be expired
+				while(!deque.isEmpty() && now - deque.peekLast().idleSinceMillis > idleTimeoutMillis){
+					expired.add(deque.pollLast().connection);
+				}
+				if(deque.isEmpty()){
+					iterator.remove();
+				}
+			}
+		}
+		for(final RemoteSPADEQueryConnection connection : expired){
+			discard(connection);
+		}
+	}
+
+	/**
+	 * Stop the reaper and close all the idle connections
+	 */
+	public void close(){
+		idleConnectionReaper.shutdownNow();
+		final List<RemoteSPADEQueryConnection> idle = new ArrayList<RemoteSPADEQueryConnection>();
+		synchronized(this){
+			for(final Deque<IdleConnection> deque : idleConnections.values()){
+				for(final IdleConnection idleConnection : deque){
+					idle.add(idleConnection.connection);
+				}
+			}
+			idleConnections.clear();
+		}
+		for(final RemoteSPADEQueryConnection connection : idle){
+			discard(connection);
+		}
+	}
+
+	private static final class IdleConnection{
+		private final RemoteSPADEQueryConnection connection;
+		private final long idleSinceMillis;
+		private IdleConnection(final RemoteSPADEQueryConnection connection, final long idleSinceMillis){
+			this.connection = connection;
+			this.idleSinceMillis = idleSinceMillis;
+		}
+	}
+}
@@ -50,6 +50,13 @@ public class Series<T extends Serializable & Comparable<T>, V extends Serializab
 		}
 	}
 	
+	/**
+	 * @return Unmodifiable view of the entries in the order in which they are kept
+	 */
+	public List<SimpleEntry<T, V>> getEntries(){
+		return Collections.unmodifiableList(series);
+	}
+	
 	public Set<V> getValues(){
 		final Set<V> values = new HashSet<V>();
 		series.forEach(v -> values.add(v.getValue()));
@@ -20,6 +20,8 @@
 package spade.utility.map.external;
 
 import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -40,6 +42,11 @@ public class ExternalMap<K, V>{
 
 	private static final Logger logger = Logger.getLogger(ExternalMap.class.getName());
 	
+	/**
+	 * Number of cache entries written to the store together on flush
+	 */
+	private static final int flushBatchSize = 1000;
+	
 	private BigInteger totalEvictions = BigInteger.ZERO,
 			totalFalsePositives = BigInteger.ZERO,
 			cacheHits = BigInteger.ZERO,
@@ -257,13 +264,26 @@ public class ExternalMap<K, V>{
 	}
 	
 	/**
-	 * Flush the cache to the store
+	 * Flush the cache to the store in batches
 	 * 
 	 * @throws Exception exception thrown by store
 	 */
 	private void flushToStore() throws Exception{
+		final Map<K, V> batch = new HashMap<K, V>();
 		while(cache.getCurrentSize() > 0){
-			_evict();
+			CacheEntry<K, V> cacheEntry = cache.evict();
+			if(cacheEntry == null){
+				break;
+			}
+			totalEvictions = totalEvictions.add(BigInteger.ONE);
+			batch.put(cacheEntry.key, cacheEntry.getValue());
+			if(batch.size() >= flushBatchSize){
+				store.multiPut(batch);
+				batch.clear();
+			}
+		}
+		if(!batch.isEmpty()){
+			store.multiPut(batch);
 		}
 	}
 	
@@ -332,11 +352,62 @@ public class ExternalMap<K, V>{
 		return store.getSizeOnDiskInBytes();
 	}
 	
-	private void printStats(){
+	/**
+	 * Flush (if flushCacheOnClose) and close only the cache.
+	 * Used by ShardedExternalMap which closes the shared screen and store itself.
+	 */
+	void closeShard(){
+		if(flushCacheOnClose){
+			try{
+				flushToStore();
+			}catch(Exception e){
+				logger.log(Level.SEVERE, mapId + ": Failed to flush cache to store", e);
+			}
+		}
+		try{
+			cache.close();
+		}catch(Exception e){
+			logger.log(Level.SEVERE, mapId + ": Failed to close cache", e);
+		}
+	}
+	
+	/**
+	 * Clear only the cache.
+	 * Used by ShardedExternalMap which clears the shared screen and store itself.
+	 */
+	void clearShard(){
+		try{
+			cache.clear();
+		}catch(Exception e){
+			logger.log(Level.SEVERE, mapId + ": Failed to clear cache", e);
+		}
+	}
+	
+	BigInteger getTotalEvictions(){
+		return totalEvictions;
+	}
+	
+	BigInteger getTotalFalsePositives(){
+		return totalFalsePositives;
+	}
+	
+	BigInteger getCacheHits(){
+		return cacheHits;
+	}
+	
+	BigInteger getCacheMisses(){
+		return cacheMisses;
+	}
+	
+	long getCacheCount(){
+		return cache.getCurrentSize();
+	}
+	
+	void printStats(){
 		printStats("");
 	}
 	
-	private void printStats(String msg){
+	void printStats(String msg){
 		BigInteger sizeBytes = null;
 		try{
 			sizeBytes = store.getSizeOnDiskInBytes();
@@ -354,13 +425,13 @@ public class ExternalMap<K, V>{
 		
 		String str = String.format("%s%s: evictions=%s, falsePositives=%s, cacheHits=%s, cacheMisses=%s, "
 				+ "screenCount=%s, cacheCount=%s, storeSize=(%s)", 
-				mapId, msg, totalEvictions, totalFalsePositives, cacheHits, cacheMisses,
-				screen.size(), cache.getCurrentSize(), FileUtility.formatBytesSizeToDisplaySize(sizeBytes));
+				mapId, msg, getTotalEvictions(), getTotalFalsePositives(), getCacheHits(), getCacheMisses(),
+				screen.size(), getCacheCount(), FileUtility.formatBytesSizeToDisplaySize(sizeBytes));
 		
 		logger.log(Level.INFO, str);
 	}
 	
-	private void checkInterval(){
+	void checkInterval(){
 		if(intervaler != null){
 			if(intervaler.check()){
 				printStats();
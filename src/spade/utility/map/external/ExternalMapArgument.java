@@ -28,6 +28,7 @@ public class ExternalMapArgument{
 	public static final String keyMapArgument = "argument",
 								keyMapReportingSeconds = "reportingSeconds",
 								keyMapFlushOnClose = "flushOnClose",
+								keyMapShards = "shards",
 								keyScreenName = "screenName",
 								keyScreenArgument = "screenArgument",
 								keyCacheName = "cacheName",
@@ -43,16 +44,21 @@ public class ExternalMapArgument{
 	
 	public final Long reportingIntervalMillis;
 	public final boolean flushCacheOnClose;
+	/**
+	 * Number of shards. 1 means a single-threaded map
+	 */
+	public final int shards;
 	
 	protected ExternalMapArgument(String mapId, 
 			ScreenArgument screenArgument, CacheArgument cacheArgument, StoreArgument storeArgument,
-			Long reportingIntervalMillis, boolean flushCacheOnClose){
+			Long reportingIntervalMillis, boolean flushCacheOnClose, int shards){
 		this.mapId = mapId;
 		this.screenArgument = screenArgument;
 		this.cacheArgument = cacheArgument;
 		this.storeArgument = storeArgument;
 		this.reportingIntervalMillis = reportingIntervalMillis;
 		this.flushCacheOnClose = flushCacheOnClose;
+		this.shards = shards;
 	}
 
 	@Override
@@ -64,6 +70,7 @@ public class ExternalMapArgument{
 		result = prime * result + ((mapId == null) ? 0 : mapId.hashCode());
 		result = prime * result + ((reportingIntervalMillis == null) ? 0 : reportingIntervalMillis.hashCode());
 		result = prime * result + ((screenArgument == null) ? 0 : screenArgument.hashCode());
+		result = prime * result + shards;
 		result = prime * result + ((storeArgument == null) ? 0 : storeArgument.hashCode());
 		return result;
 	}
@@ -99,6 +106,8 @@ public class ExternalMapArgument{
 				return false;
 		}else if(!screenArgument.equals(other.screenArgument))
 			return false;
+		if(shards != other.shards)
+			return false;
 		if(storeArgument == null){
 			if(other.storeArgument != null)
 				return false;
@@ -111,6 +120,6 @@ public class ExternalMapArgument{
 	public String toString(){
 		return "ExternalMapArgument [mapId=" + mapId + ", screenArgument=" + screenArgument + ", cacheArgument="
 				+ cacheArgument + ", storeArgument=" + storeArgument + ", reportingIntervalMillis="
-				+ reportingIntervalMillis + ", flushCacheOnClose=" + flushCacheOnClose + "]";
+				+ reportingIntervalMillis + ", flushCacheOnClose=" + flushCacheOnClose + ", shards=" + shards + "]";
 	}
 }
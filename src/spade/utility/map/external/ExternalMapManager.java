@@ -21,6 +21,7 @@ package spade.utility.map.external;
 
 import java.io.Serializable;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import spade.utility.HelperFunctions;
@@ -72,7 +73,7 @@ public class ExternalMapManager{
 	/**
 	 * Expected key value:
 	 * 
-	 * <mapid>.argument=reportingSeconds= flushOnClose=
+	 * <mapid>.argument=reportingSeconds= flushOnClose= shards=
 	 * <mapid>.screenName=
 	 * <mapid>.screenArgument=
 	 * <mapid>.cacheName=
@@ -162,6 +163,16 @@ public class ExternalMapManager{
 						reportingIntervalMillis = reportingResult.result * 1000;
 					}
 				}
+				int shards = 1;
+				String shardsString = mapArgumentMap.get(ExternalMapArgument.keyMapShards);
+				if(shardsString != null){
+					Result<Long> shardsResult = HelperFunctions.parseLong(shardsString, 10, 1, 1024);
+					if(shardsResult.error){
+						return Result.failed("Invalid map shards", shardsResult);
+					}else{
+						shards = shardsResult.result.intValue();
+					}
+				}
 				Result<Boolean> flushResult = HelperFunctions.parseBoolean(mapArgumentMap.get(ExternalMapArgument.keyMapFlushOnClose));
 				if(flushResult.error){
 					return Result.failed("Failed to parse flush on close value", flushResult);
@@ -181,7 +192,7 @@ public class ExternalMapManager{
 							}else{
 								return Result.successful(new ExternalMapArgument(mapId, 
 										screenResult.result, cacheResult.result, storeResult.result,
-										reportingIntervalMillis, flushOnClose));
+										reportingIntervalMillis, flushOnClose, shards));
 							}
 						}
 					}
@@ -203,6 +214,8 @@ public class ExternalMapManager{
 				return Result.failed("NULL cache argument");
 			}else if(argument.storeArgument == null){
 				return Result.failed("NULL store argument");
+			}else if(argument.shards < 1){
+				return Result.failed("Shards must be positive: " + argument.shards);
 			}else{
 				return Result.successful(true);
 			}
@@ -229,7 +242,10 @@ public class ExternalMapManager{
 					return Result.failed("Failed to create screen", screenResult);
 				}else{
 					Screen<K> screen = screenResult.result;
-					Result<? extends Cache<K, V>> cacheResult = CacheManager.createCache(argument.cacheArgument);
+					if(argument.shards > 1){
+						return createSharded(argument, screen, keyConverter, valueConverter);
+					}
+					Result<? extends Cache<K, V>> cacheResult = CacheManager.createCache(argument.cacheArgument, keyConverter, valueConverter);
 					if(cacheResult.error){
 						return Result.failed("Failed to create cache", cacheResult);
 					}else{
@@ -248,4 +264,24 @@ public class ExternalMapManager{
 			}
 		}
 	}
+	
+	private static <K, V> Result<ExternalMap<K, V>> createSharded(ExternalMapArgument argument, Screen<K> screen,
+			Converter<K, byte[]> keyConverter, Converter<V, byte[]> valueConverter){
+		Result<List<Cache<K, V>>> cachesResult = CacheManager.createShardCaches(argument.cacheArgument, argument.shards,
+				keyConverter, valueConverter);
+		if(cachesResult.error){
+			return Result.failed("Failed to create caches", cachesResult);
+		}else{
+			List<Cache<K, V>> caches = cachesResult.result;
+			Result<? extends Store<K, V>> storeResult = 
+					StoreManager.createStore(argument.storeArgument, keyConverter, valueConverter);
+			if(storeResult.error){
+				return Result.failed("Failed to create store", storeResult);
+			}else{
+				Store<K, V> store = storeResult.result;
+				return Result.successful(new ShardedExternalMap<K, V>(argument.mapId, screen, caches, store, 
+						argument.reportingIntervalMillis, argument.flushCacheOnClose));
+			}
+		}
+	}
 }
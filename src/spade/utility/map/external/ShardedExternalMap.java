@@ -0,0 +1,270 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.utility.map.external;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import spade.utility.map.external.cache.Cache;
+import spade.utility.map.external.screen.ConcurrentScreen;
+import spade.utility.map.external.screen.Screen;
+import spade.utility.map.external.store.Store;
+
+/**
+ * A thread-safe external map split into shards by the hash of the key.
+ *
+ * Each shard is an external map with its own cache and lock. All the shards share a concurrent screen and the
+ * store which must be thread-safe (LevelDB and BerkeleyDB handles are).
+ * Operations on keys in different shards do not block each other.
+ *
+ * @param <K> key 	Must have a hash code consistent with equals
+ * @param <V> value
+ */
+public class ShardedExternalMap<K, V> extends ExternalMap<K, V>{
+
+	private static final Logger logger = Logger.getLogger(ShardedExternalMap.class.getName());
+
+	private final Screen<K> screen;
+	private final Store<K, V> store;
+
+	private final ExternalMap<K, V>[] shards;
+	private final ReentrantLock[] locks;
+
+	/**
+	 * Use ExternalMapArgument for correct initialization
+	 *
+	 * @param mapId		id of the map
+	 * @param screen	screen shared by all the shards
+	 * @param caches	one cache for each shard
+	 * @param store		thread-safe store shared by all the shards
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	protected ShardedExternalMap(String mapId, Screen<K> screen, List<Cache<K, V>> caches, Store<K, V> store,
+			Long reportingIntervalMillis, boolean flushCacheOnClose){
+		this(mapId, new ConcurrentScreen<K>(screen), caches.toArray(new Cache[caches.size()]), store,
+				reportingIntervalMillis, flushCacheOnClose);
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private ShardedExternalMap(String mapId, ConcurrentScreen<K> screen, Cache<K, V>[] caches, Store<K, V> store,
+			Long reportingIntervalMillis, boolean flushCacheOnClose){
+		super(mapId, screen, null, store, reportingIntervalMillis, flushCacheOnClose);
+		this.screen = screen;
+		this.store = store;
+		this.shards = new ExternalMap[caches.length];
+		this.locks = new ReentrantLock[caches.length];
+		for(int i = 0; i < caches.length; i++){
+			shards[i] = new ExternalMap<K, V>(mapId + "-" + i, screen, caches[i], store, null, flushCacheOnClose);
+			locks[i] = new ReentrantLock();
+		}
+	}
+
+	public int getShardCount(){
+		return shards.length;
+	}
+
+	private int shardIndex(K key){
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		return (hash & 0x7fffffff) % shards.length;
+	}
+
+	@Override
+	public void put(K key, V value){
+		checkInterval();
+		if(key == null || value == null){
+			return;
+		}
+		final int i = shardIndex(key);
+		locks[i].lock();
+		try{
+			shards[i].put(key, value);
+		}finally{
+			locks[i].unlock();
+		}
+	}
+
+	@Override
+	public V get(K key){
+		checkInterval();
+		if(key == null){
+			return null;
+		}
+		final int i = shardIndex(key);
+		locks[i].lock();
+		try{
+			return shards[i].get(key);
+		}finally{
+			locks[i].unlock();
+		}
+	}
+
+	@Override
+	public boolean contains(K key){
+		checkInterval();
+		if(key == null){
+			return false;
+		}
+		final int i = shardIndex(key);
+		locks[i].lock();
+		try{
+			return shards[i].contains(key);
+		}finally{
+			locks[i].unlock();
+		}
+	}
+
+	@Override
+	public void remove(K key){
+		checkInterval();
+		if(key == null){
+			return;
+		}
+		final int i = shardIndex(key);
+		locks[i].lock();
+		try{
+			shards[i].remove(key);
+		}finally{
+			locks[i].unlock();
+		}
+	}
+
+	private void lockAll(){
+		for(final ReentrantLock lock : locks){
+			lock.lock();
+		}
+	}
+
+	private void unlockAll(){
+		for(int i = locks.length - 1; i > -1; i--){
+			locks[i].unlock();
+		}
+	}
+
+	/**
+	 * Clear the caches of all the shards, the screen and the store
+	 */
+	@Override
+	public void clear(){
+		lockAll();
+		try{
+			printStats();
+			for(final ExternalMap<K, V> shard : shards){
+				shard.clearShard();
+			}
+			try{
+				screen.clear();
+			}catch(Exception e){
+				logger.log(Level.SEVERE, mapId + ": Failed to clear screen", e);
+			}
+			try{
+				store.clear();
+			}catch(Exception e){
+				logger.log(Level.SEVERE, mapId + ": Failed to clear store", e);
+			}
+		}finally{
+			unlockAll();
+		}
+	}
+
+	/**
+	 * Close (and flush if set) the caches of all the shards, and then close the screen and the store
+	 */
+	@Override
+	public void close(){
+		lockAll();
+		try{
+			printStats(flushCacheOnClose ? "PRE-FLUSH" : "");
+			for(final ExternalMap<K, V> shard : shards){
+				shard.closeShard();
+			}
+			if(flushCacheOnClose){
+				printStats("POST-FLUSH");
+			}
+			try{
+				screen.close();
+			}catch(Exception e){
+				logger.log(Level.SEVERE, mapId + ": Failed to close screen", e);
+			}
+			try{
+				store.close();
+			}catch(Exception e){
+				logger.log(Level.SEVERE, mapId + ": Failed to close store", e);
+			}
+		}finally{
+			unlockAll();
+		}
+	}
+
+	@Override
+	synchronized void checkInterval(){
+		super.checkInterval();
+	}
+
+	// Stats are read without the shard locks and are only approximate while the map is in use
+
+	@Override
+	BigInteger getTotalEvictions(){
+		BigInteger total = BigInteger.ZERO;
+		for(final ExternalMap<K, V> shard : shards){
+			total = total.add(shard.getTotalEvictions());
+		}
+		return total;
+	}
+
+	@Override
+	BigInteger getTotalFalsePositives(){
+		BigInteger total = BigInteger.ZERO;
+		for(final ExternalMap<K, V> shard : shards){
+			total = total.add(shard.getTotalFalsePositives());
+		}
+		return total;
+	}
+
+	@Override
+	BigInteger getCacheHits(){
+		BigInteger total = BigInteger.ZERO;
+		for(final ExternalMap<K, V> shard : shards){
+			total = total.add(shard.getCacheHits());
+		}
+		return total;
+	}
+
+	@Override
+	BigInteger getCacheMisses(){
+		BigInteger total = BigInteger.ZERO;
+		for(final ExternalMap<K, V> shard : shards){
+			total = total.add(shard.getCacheMisses());
+		}
+		return total;
+	}
+
+	@Override
+	long getCacheCount(){
+		long total = 0;
+		for(final ExternalMap<K, V> shard : shards){
+			total += shard.getCacheCount();
+		}
+		return total;
+	}
+}
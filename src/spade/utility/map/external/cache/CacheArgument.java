@@ -41,6 +41,14 @@ public abstract class CacheArgument{
 	protected ReportingArgument getReportingArgument(){
 		return reportingArgument;
 	}
+	
+	/**
+	 * Argument for one of the 'shards' caches which together hold as many elements as this one
+	 * 
+	 * @param shards number of caches. Positive
+	 * @return CacheArgument without the reporting argument
+	 */
+	protected abstract CacheArgument createShardArgument(int shards);
 
 	@Override
 	public int hashCode(){
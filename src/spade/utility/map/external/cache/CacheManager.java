@@ -19,8 +19,11 @@
  */
 package spade.utility.map.external.cache;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
+import spade.utility.Converter;
 import spade.utility.HelperFunctions;
 import spade.utility.Result;
 import spade.utility.profile.ReportingArgument;
@@ -34,6 +37,19 @@ public abstract class CacheManager{
 	public abstract Result<CacheArgument> parseArgument(Map<String, String> arguments);
 	public abstract <K, V> Result<Cache<K, V>> createFromArgument(CacheArgument genericArgument);
 	
+	/**
+	 * Create cache with the converters of the external map. Only needed by caches which serialize entries.
+	 * 
+	 * @param genericArgument argument of the cache
+	 * @param keyConverter converter for key
+	 * @param valueConverter converter for value
+	 * @return Cache object or error
+	 */
+	public <K, V> Result<Cache<K, V>> createFromArgument(CacheArgument genericArgument,
+			Converter<K, byte[]> keyConverter, Converter<V, byte[]> valueConverter){
+		return createFromArgument(genericArgument);
+	}
+	
 	/**
 	 * Parse Cache arguments
 	 * 
@@ -79,6 +95,19 @@ public abstract class CacheManager{
 	 * @return Cache object or error
 	 */
 	public static <K, V> Result<? extends Cache<K, V>> createCache(CacheArgument cacheArgument){
+		return createCache(cacheArgument, null, null);
+	}
+	
+	/**
+	 * Create cache for the external map
+	 * 
+	 * @param cacheArgument argument of the cache
+	 * @param keyConverter converter for key. Can be null if the cache doesn't serialize entries
+	 * @param valueConverter converter for value. Can be null if the cache doesn't serialize entries
+	 * @return Cache object or error
+	 */
+	public static <K, V> Result<? extends Cache<K, V>> createCache(CacheArgument cacheArgument,
+			Converter<K, byte[]> keyConverter, Converter<V, byte[]> valueConverter){
 		if(cacheArgument == null){
 			return Result.failed("NULL cache argument");
 		}else{
@@ -90,7 +119,7 @@ public abstract class CacheManager{
 				if(cacheManager == null){
 					return Result.failed("Unhandled cache name: " + cacheName);
 				}else{
-					Result<Cache<K, V>> cacheResult = cacheManager.createFromArgument(cacheArgument);
+					Result<Cache<K, V>> cacheResult = cacheManager.createFromArgument(cacheArgument, keyConverter, valueConverter);
 					if(cacheResult.error){
 						return cacheResult;
 					}else{
@@ -106,4 +135,41 @@ public abstract class CacheManager{
 			}
 		}
 	}
+	
+	/**
+	 * Create 'shards' caches for the shards of the external map which together hold as many elements as the cache
+	 * created from the argument would.
+	 * The reporting id (if any) of each cache is suffixed with the index of the cache
+	 * 
+	 * @param cacheArgument argument of the cache
+	 * @param shards number of caches to create. Positive
+	 * @param keyConverter converter for key. Can be null if the cache doesn't serialize entries
+	 * @param valueConverter converter for value. Can be null if the cache doesn't serialize entries
+	 * @return List of caches or error
+	 */
+	public static <K, V> Result<List<Cache<K, V>>> createShardCaches(CacheArgument cacheArgument, int shards,
+			Converter<K, byte[]> keyConverter, Converter<V, byte[]> valueConverter){
+		if(cacheArgument == null){
+			return Result.failed("NULL cache argument");
+		}else if(shards < 1){
+			return Result.failed("Shards must be positive: " + shards);
+		}else{
+			final List<Cache<K, V>> caches = new ArrayList<Cache<K, V>>();
+			for(int i = 0; i < shards; i++){
+				CacheArgument shardArgument = cacheArgument.createShardArgument(shards);
+				ReportingArgument reportingArgument = cacheArgument.getReportingArgument();
+				if(reportingArgument != null){
+					shardArgument.setReportingArgument(
+							new ReportingArgument(reportingArgument.id + "-" + i, reportingArgument.intervalMillis));
+				}
+				Result<? extends Cache<K, V>> cacheResult = createCache(shardArgument, keyConverter, valueConverter);
+				if(cacheResult.error){
+					return Result.failed("Failed to create cache for shard: " + i, cacheResult);
+				}else{
+					caches.add(cacheResult.result);
+				}
+			}
+			return Result.successful(caches);
+		}
+	}
 }
@@ -19,6 +19,7 @@
  */
 package spade.utility.map.external.cache;
 
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -28,6 +29,8 @@ import spade.utility.profile.TimeProfile;
 /**
  * Profile of the cache.
  * Tracks time taken by different operations: get, put, contains, remove.
+ * Tracks the number of hits and misses of get.
+ * Reports the memory usage of the cache if the cache can tell it.
  * Reports the profile at interval according to the reporting argument.
  */
 public class CacheProfile{
@@ -36,12 +39,24 @@ public class CacheProfile{
 	
 	private final TimeProfile putProfile, getProfile, containsProfile, removeProfile;
 	
+	private long hits = 0, misses = 0;
+	
 	private final Intervaler intervaler;
 	
 	private final String id;
 	
+	private final Supplier<String> usage;
+	
 	protected CacheProfile(String id, long reportingInterval){
+		this(id, reportingInterval, null);
+	}
+	
+	/**
+	 * @param usage description of the memory used by the cache. Can be null
+	 */
+	protected CacheProfile(String id, long reportingInterval, Supplier<String> usage){
 		this.id = id;
+		this.usage = usage;
 		
 		intervaler = new Intervaler(reportingInterval);
 		
@@ -51,6 +66,20 @@ public class CacheProfile{
 		removeProfile = new TimeProfile();
 	}
 	
+	/**
+	 * Call after get found the key
+	 */
+	protected void hit(){
+		hits++;
+	}
+	
+	/**
+	 * Call after get did not find the key
+	 */
+	protected void miss(){
+		misses++;
+	}
+	
 	/**
 	 * Call before put
 	 */
@@ -137,8 +166,10 @@ public class CacheProfile{
 	private void printStats(boolean force){
 		if(force || intervaler.check()){
 			logger.log(Level.INFO, 
-					String.format("%s: GET[%s], PUT[%s], CONTAINS[%s], REMOVE[%s]",
-							id, getProfile, putProfile, containsProfile, removeProfile)
+					String.format("%s: GET[%s], PUT[%s], CONTAINS[%s], REMOVE[%s], HITS[%s], MISSES[%s], HIT_RATIO[%.3f]",
+							id, getProfile, putProfile, containsProfile, removeProfile,
+							hits, misses, hits + misses == 0 ? 0.0 : (double)hits / (hits + misses))
+					+ (usage == null ? "" : String.format(", USAGE[%s]", usage.get()))
 					);
 		}
 	}
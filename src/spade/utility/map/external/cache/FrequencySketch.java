@@ -0,0 +1,102 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.utility.map.external.cache;
+
+import java.util.Arrays;
+
+/**
+ * Count-min sketch with 4 rows of counters saturating at 15 to estimate the access frequency of keys.
+ *
+ * All counters are halved after (10 x width) increments so that the old popularity fades.
+ */
+class FrequencySketch{
+
+	private static final int ROWS = 4;
+	private static final int MAXIMUM_COUNT = 15;
+	private static final long[] SEEDS = {
+			0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+	private final int width;
+	private final byte[] counters;
+	private final int sampleSize;
+	private int additions = 0;
+
+	/**
+	 * @param maximumSize maximum number of elements in the cache. Non-negative
+	 */
+	FrequencySketch(int maximumSize){
+		int width = 16;
+		while(width < maximumSize && width < (1 << 28)){
+			width <<= 1;
+		}
+		this.width = width;
+		this.counters = new byte[ROWS * width];
+		this.sampleSize = 10 * width;
+	}
+
+	private int indexOf(int hash, int row){
+		long h = (hash + SEEDS[row]) * SEEDS[row];
+		h += (h >>> 32);
+		return row * width + ((int)h & (width - 1));
+	}
+
+	private static int spread(int hash){
+		hash ^= (hash >>> 17);
+		hash *= 0xed5ad4bb;
+		hash ^= (hash >>> 11);
+		return hash;
+	}
+
+	void increment(Object key){
+		final int hash = spread(key.hashCode());
+		boolean added = false;
+		for(int row = 0; row < ROWS; row++){
+			final int index = indexOf(hash, row);
+			if(counters[index] < MAXIMUM_COUNT){
+				counters[index]++;
+				added = true;
+			}
+		}
+		if(added && ++additions >= sampleSize){
+			reset();
+		}
+	}
+
+	int frequency(Object key){
+		final int hash = spread(key.hashCode());
+		int frequency = MAXIMUM_COUNT;
+		for(int row = 0; row < ROWS; row++){
+			frequency = Math.min(frequency, counters[indexOf(hash, row)]);
+		}
+		return frequency;
+	}
+
+	private void reset(){
+		for(int i = 0; i < counters.length; i++){
+			counters[i] = (byte)(counters[i] >>> 1);
+		}
+		additions >>>= 1;
+	}
+
+	void clear(){
+		Arrays.fill(counters, (byte)0);
+		additions = 0;
+	}
+}
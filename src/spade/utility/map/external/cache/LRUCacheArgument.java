@@ -30,6 +30,11 @@ public class LRUCacheArgument extends CacheArgument{
 		this.size = size;
 	}
 
+	@Override
+	protected CacheArgument createShardArgument(int shards){
+		return new LRUCacheArgument((int)((size + (long)shards - 1) / shards));
+	}
+
 	@Override
 	public int hashCode(){
 		final int prime = 31;
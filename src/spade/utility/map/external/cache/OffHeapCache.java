@@ -0,0 +1,575 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.utility.map.external.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import spade.utility.Converter;
+
+/**
+ * Cache which keeps most of the entries serialized in direct (off-heap) memory.
+ *
+ * The most recently used entries are kept as objects in an on-heap LRU cache of 'heapSize' because the callers of
+ * the external map modify the values returned by 'get' in place. The least recently used entry of the on-heap cache
+ * is serialized into the off-heap memory. An off-heap entry read by 'get' is deserialized back into the on-heap
+ * cache.
+ *
+ * Off-heap memory is allocated in slabs (of at most 1 GB) split into blocks of 'blockSize' bytes. An entry (key and
+ * value bytes) is stored in a chain of blocks where the first 4 bytes of a block point to the next block. The hash
+ * index and the entry metadata are primitive arrays.
+ *
+ * Off-heap entries are evicted with the clock algorithm. An entry which was read back from the off-heap memory is
+ * given a second chance on its next eviction.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class OffHeapCache<K, V> implements Cache<K, V>{
+
+	private static final int NONE = -1;
+	private static final int POINTER_BYTES = 4;
+	private static final int MAXIMUM_SLAB_BYTES = 1 << 30;
+
+	private final Converter<K, byte[]> keyConverter;
+	private final Converter<V, byte[]> valueConverter;
+
+	private final int heapSize, offHeapSize, blockSize, blockDataSize;
+	private final long memoryBytes;
+
+	private final LRUCache<K, V> heap;
+	/**
+	 * Keys in the on-heap cache which were read back from the off-heap memory
+	 */
+	private final Set<K> promotedKeys = new HashSet<K>();
+	/**
+	 * Entries removed from the off-heap memory to make space. Returned by 'evict'
+	 */
+	private final ArrayDeque<CacheEntry<K, V>> evicted = new ArrayDeque<CacheEntry<K, V>>();
+
+	private final ByteBuffer[] slabs;
+	private final int blocksPerSlab, totalBlocks;
+	private int nextUnusedBlock = 0, freeBlocksHead = NONE, usedBlocks = 0;
+
+	private final int[] slotHash, slotFirstBlock, slotKeyLength, slotValueLength;
+	private final BitSet slotReferenced;
+	private final int[] freeSlots;
+	private int freeSlotCount;
+	private int clockHand = 0;
+
+	private final int[] table;
+	private final int tableMask;
+
+	private long usedBytes = 0;
+
+	/**
+	 * @param heapSize number of entries to keep as objects
+	 * @param offHeapSize maximum number of entries in the off-heap memory
+	 * @param memoryBytes bytes of off-heap memory
+	 * @param blockSize bytes in a block of off-heap memory
+	 * @param keyConverter converter for key
+	 * @param valueConverter converter for value
+	 */
+	public OffHeapCache(int heapSize, int offHeapSize, long memoryBytes, int blockSize,
+			Converter<K, byte[]> keyConverter, Converter<V, byte[]> valueConverter){
+		this.heapSize = heapSize;
+		this.offHeapSize = offHeapSize;
+		this.memoryBytes = memoryBytes;
+		this.blockSize = blockSize;
+		this.blockDataSize = blockSize - POINTER_BYTES;
+		this.keyConverter = keyConverter;
+		this.valueConverter = valueConverter;
+
+		this.heap = new LRUCache<K, V>(heapSize);
+
+		this.blocksPerSlab = MAXIMUM_SLAB_BYTES / blockSize;
+		this.totalBlocks = (int)Math.min(Integer.MAX_VALUE - 1, memoryBytes / blockSize);
+		this.slabs = new ByteBuffer[(int)((totalBlocks + (long)blocksPerSlab - 1) / blocksPerSlab)];
+
+		this.slotHash = new int[offHeapSize];
+		this.slotFirstBlock = new int[offHeapSize];
+		this.slotKeyLength = new int[offHeapSize];
+		this.slotValueLength = new int[offHeapSize];
+		this.slotReferenced = new BitSet(offHeapSize);
+		this.freeSlots = new int[offHeapSize];
+
+		int tableSize = 2;
+		while(tableSize < 2L * offHeapSize && tableSize < (1 << 30)){
+			tableSize <<= 1;
+		}
+		this.table = new int[tableSize];
+		this.tableMask = tableSize - 1;
+
+		resetOffHeap();
+	}
+
+	private void resetOffHeap(){
+		Arrays.fill(slotFirstBlock, NONE);
+		for(int i = 0; i < offHeapSize; i++){
+			freeSlots[i] = offHeapSize - 1 - i;
+		}
+		freeSlotCount = offHeapSize;
+		slotReferenced.clear();
+		Arrays.fill(table, 0);
+		nextUnusedBlock = 0;
+		freeBlocksHead = NONE;
+		usedBlocks = 0;
+		usedBytes = 0;
+		clockHand = 0;
+	}
+
+	////////////////////////////////////////////////// Blocks
+
+	private ByteBuffer slabOf(final int block){
+		final int slabIndex = block / blocksPerSlab;
+		ByteBuffer slab = slabs[slabIndex];
+		if(slab == null){
+			final int blocks = Math.min(blocksPerSlab, totalBlocks - slabIndex * blocksPerSlab);
+			slab = ByteBuffer.allocateDirect(blocks * blockSize);
+			slabs[slabIndex] = slab;
+		}
+		return slab;
+	}
+
+	private int offsetOf(final int block){
+		return (block % blocksPerSlab) * blockSize;
+	}
+
+	private int blocksNeeded(final int bytes){
+		return Math.max(1, (bytes + blockDataSize - 1) / blockDataSize);
+	}
+
+	private int allocateBlock(){
+		final int block;
+		if(freeBlocksHead != NONE){
+			block = freeBlocksHead;
+			freeBlocksHead = slabOf(block).getInt(offsetOf(block));
+		}else{
+			block = nextUnusedBlock++;
+		}
+		usedBlocks++;
+		return block;
+	}
+
+	private void freeBlocks(int block){
+		while(block != NONE){
+			final ByteBuffer slab = slabOf(block);
+			final int offset = offsetOf(block);
+			final int next = slab.getInt(offset);
+			slab.putInt(offset, freeBlocksHead);
+			freeBlocksHead = block;
+			usedBlocks--;
+			block = next;
+		}
+	}
+
+	/**
+	 * @return first block of the chain with key and value bytes one after the other
+	 */
+	private int writeBlocks(final byte[] key, final byte[] value){
+		final int total = key.length + value.length;
+		final int first = allocateBlock();
+		int block = first;
+		int written = 0;
+		while(true){
+			final ByteBuffer slab = slabOf(block);
+			final int offset = offsetOf(block);
+			final int length = Math.min(blockDataSize, total - written);
+			slab.position(offset + POINTER_BYTES);
+			int copied = 0;
+			if(written < key.length){
+				final int keyPart = Math.min(length, key.length - written);
+				slab.put(key, written, keyPart);
+				copied = keyPart;
+			}
+			if(copied < length){
+				slab.put(value, written + copied - key.length, length - copied);
+			}
+			written += length;
+			if(written >= total){
+				slab.putInt(offset, NONE);
+				return first;
+			}
+			final int next = allocateBlock();
+			slab.putInt(offset, next);
+			block = next;
+		}
+	}
+
+	private byte[] readBlocks(int block, final int skip, final int length){
+		final byte[] bytes = new byte[length];
+		int position = 0; // Position in the chain
+		int read = 0;
+		while(read < length){
+			final ByteBuffer slab = slabOf(block);
+			final int offset = offsetOf(block);
+			if(position + blockDataSize > skip){
+				final int start = Math.max(0, skip - position);
+				final int count = Math.min(blockDataSize - start, length - read);
+				slab.position(offset + POINTER_BYTES + start);
+				slab.get(bytes, read, count);
+				read += count;
+			}
+			position += blockDataSize;
+			block = slab.getInt(offset);
+		}
+		return bytes;
+	}
+
+	////////////////////////////////////////////////// Index
+
+	private static int hash(final byte[] key){
+		int h = Arrays.hashCode(key);
+		h ^= (h >>> 16);
+		h *= 0x85ebca6b;
+		h ^= (h >>> 13);
+		return h;
+	}
+
+	private int home(final int hash){
+		return hash & tableMask;
+	}
+
+	/**
+	 * @return position in the table or NONE
+	 */
+	private int find(final byte[] key, final int hash){
+		int position = home(hash);
+		while(true){
+			final int value = table[position];
+			if(value == 0){
+				return NONE;
+			}
+			final int slot = value - 1;
+			if(slotHash[slot] == hash && slotKeyLength[slot] == key.length
+					&& Arrays.equals(key, readBlocks(slotFirstBlock[slot], 0, key.length))){
+				return position;
+			}
+			position = (position + 1) & tableMask;
+		}
+	}
+
+	private int positionOfSlot(final int slot){
+		int position = home(slotHash[slot]);
+		while(table[position] != slot + 1){
+			position = (position + 1) & tableMask;
+		}
+		return position;
+	}
+
+	/**
+	 * Linear probing deletion which shifts the following entries back instead of leaving a marker
+	 */
+	private void deletePosition(int position){
+		table[position] = 0;
+		int next = position;
+		while(true){
+			next = (next + 1) & tableMask;
+			final int value = table[next];
+			if(value == 0){
+				return;
+			}
+			final int home = home(slotHash[value - 1]);
+			final boolean movable = (next > position) ? (home <= position || home > next) : (home <= position && home > next);
+			if(movable){
+				table[position] = value;
+				table[next] = 0;
+				position = next;
+			}
+		}
+	}
+
+	////////////////////////////////////////////////// Off-heap entries
+
+	private boolean hasRoomFor(final int bytes){
+		return freeSlotCount > 0 && totalBlocks - usedBlocks >= blocksNeeded(bytes);
+	}
+
+	private int offHeapCount(){
+		return offHeapSize - freeSlotCount;
+	}
+
+	/**
+	 * Evicts entries from the off-heap memory until there is room.
+	 * If the entry can never fit then it is added to the evicted entries instead.
+	 */
+	private void putOffHeap(final K key, final V value, final boolean referenced){
+		final byte[] keyBytes, valueBytes;
+		try{
+			keyBytes = keyConverter.serialize(key);
+			valueBytes = valueConverter.serialize(value);
+		}catch(Exception e){
+			throw new RuntimeException("Failed to serialize cache entry for key: " + key, e);
+		}
+		final int bytes = keyBytes.length + valueBytes.length;
+		if(offHeapSize == 0 || blocksNeeded(bytes) > totalBlocks){
+			evicted.add(new CacheEntry<K, V>(key, value));
+			return;
+		}
+		while(!hasRoomFor(bytes)){
+			evicted.add(evictOffHeap());
+		}
+		final int hash = hash(keyBytes);
+		final int slot = freeSlots[--freeSlotCount];
+		slotHash[slot] = hash;
+		slotKeyLength[slot] = keyBytes.length;
+		slotValueLength[slot] = valueBytes.length;
+		slotFirstBlock[slot] = writeBlocks(keyBytes, valueBytes);
+		slotReferenced.set(slot, referenced);
+		int position = home(hash);
+		while(table[position] != 0){
+			position = (position + 1) & tableMask;
+		}
+		table[position] = slot + 1;
+		usedBytes += bytes;
+	}
+
+	private V readValue(final int slot){
+		try{
+			return valueConverter.deserialize(readBlocks(slotFirstBlock[slot], slotKeyLength[slot], slotValueLength[slot]));
+		}catch(Exception e){
+			throw new RuntimeException("Failed to deserialize cache value", e);
+		}
+	}
+
+	private K readKey(final int slot){
+		try{
+			return keyConverter.deserialize(readBlocks(slotFirstBlock[slot], 0, slotKeyLength[slot]));
+		}catch(Exception e){
+			throw new RuntimeException("Failed to deserialize cache key", e);
+		}
+	}
+
+	private void removeSlot(final int slot, final int position){
+		deletePosition(position);
+		freeBlocks(slotFirstBlock[slot]);
+		usedBytes -= slotKeyLength[slot] + slotValueLength[slot];
+		slotFirstBlock[slot] = NONE;
+		slotReferenced.clear(slot);
+		freeSlots[freeSlotCount++] = slot;
+	}
+
+	private CacheEntry<K, V> evictOffHeap(){
+		while(true){
+			final int slot = clockHand;
+			clockHand = (clockHand + 1) % offHeapSize;
+			if(slotFirstBlock[slot] == NONE){
+				continue;
+			}
+			if(slotReferenced.get(slot)){
+				slotReferenced.clear(slot);
+				continue;
+			}
+			final CacheEntry<K, V> entry = new CacheEntry<K, V>(readKey(slot), readValue(slot));
+			removeSlot(slot, positionOfSlot(slot));
+			return entry;
+		}
+	}
+
+	private byte[] serializeKey(final K key){
+		try{
+			return keyConverter.serialize(key);
+		}catch(Exception e){
+			throw new RuntimeException("Failed to serialize cache key: " + key, e);
+		}
+	}
+
+	private CacheEntry<K, V> removeEvicted(final K key){
+		final Iterator<CacheEntry<K, V>> iterator = evicted.iterator();
+		while(iterator.hasNext()){
+			final CacheEntry<K, V> entry = iterator.next();
+			if(entry.key.equals(key)){
+				iterator.remove();
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Move the least recently used objects over the heap size to the off-heap memory
+	 */
+	private void demote(){
+		while(heap.getCurrentSize() > heapSize){
+			final CacheEntry<K, V> entry = heap.evict();
+			putOffHeap(entry.key, entry.getValue(), promotedKeys.remove(entry.key));
+		}
+	}
+
+	////////////////////////////////////////////////// Cache
+
+	@Override
+	public void put(K key, V value){
+		if(!heap.contains(key)){
+			if(offHeapCount() > 0){
+				final byte[] keyBytes = serializeKey(key);
+				final int position = find(keyBytes, hash(keyBytes));
+				if(position != NONE){
+					removeSlot(table[position] - 1, position);
+				}
+			}
+			if(!evicted.isEmpty()){
+				removeEvicted(key);
+			}
+		}
+		heap.put(key, value);
+		demote();
+	}
+
+	@Override
+	public V get(K key){
+		V value = heap.get(key);
+		if(value != null){
+			return value;
+		}
+		if(offHeapCount() > 0){
+			final byte[] keyBytes = serializeKey(key);
+			final int position = find(keyBytes, hash(keyBytes));
+			if(position != NONE){
+				final int slot = table[position] - 1;
+				value = readValue(slot);
+				removeSlot(slot, position);
+				heap.put(key, value);
+				promotedKeys.add(key);
+				demote();
+				return value;
+			}
+		}
+		if(!evicted.isEmpty()){
+			final CacheEntry<K, V> entry = removeEvicted(key);
+			if(entry != null){
+				heap.put(key, entry.getValue());
+				demote();
+				return entry.getValue();
+			}
+		}
+		return null;
+	}
+
+	// Doesn't modify access list
+	@Override
+	public boolean contains(K key){
+		if(heap.contains(key)){
+			return true;
+		}
+		if(offHeapCount() > 0){
+			final byte[] keyBytes = serializeKey(key);
+			if(find(keyBytes, hash(keyBytes)) != NONE){
+				return true;
+			}
+		}
+		for(final CacheEntry<K, V> entry : evicted){
+			if(entry.key.equals(key)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public V remove(K key){
+		promotedKeys.remove(key);
+		V value = heap.remove(key);
+		if(value != null){
+			return value;
+		}
+		if(offHeapCount() > 0){
+			final byte[] keyBytes = serializeKey(key);
+			final int position = find(keyBytes, hash(keyBytes));
+			if(position != NONE){
+				final int slot = table[position] - 1;
+				value = readValue(slot);
+				removeSlot(slot, position);
+				return value;
+			}
+		}
+		if(!evicted.isEmpty()){
+			final CacheEntry<K, V> entry = removeEvicted(key);
+			if(entry != null){
+				return entry.getValue();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Entries already evicted from the off-heap memory first, then off-heap entries by the clock, and then objects
+	 */
+	@Override
+	public CacheEntry<K, V> evict(){
+		if(!evicted.isEmpty()){
+			return evicted.poll();
+		}
+		if(offHeapCount() > 0){
+			return evictOffHeap();
+		}
+		final CacheEntry<K, V> entry = heap.evict();
+		if(entry != null){
+			promotedKeys.remove(entry.key);
+		}
+		return entry;
+	}
+
+	@Override
+	public int getCurrentSize(){
+		return heap.getCurrentSize() + offHeapCount() + evicted.size();
+	}
+
+	@Override
+	public int getMaximumSize(){
+		return heapSize + offHeapSize;
+	}
+
+	/**
+	 * True if any entries had to be removed from the off-heap memory to make space
+	 */
+	@Override
+	public boolean hasExceededMaximumSize(){
+		return !evicted.isEmpty();
+	}
+
+	@Override
+	public void clear(){
+		heap.clear();
+		promotedKeys.clear();
+		evicted.clear();
+		resetOffHeap();
+	}
+
+	@Override
+	public void close(){
+		clear();
+		Arrays.fill(slabs, null);
+	}
+
+	/**
+	 * @return Usage of the off-heap memory to report
+	 */
+	public String getOffHeapUsage(){
+		return String.format("entries=%s/%s, dataBytes=%s, blockBytes=%s/%s, objects=%s/%s",
+				offHeapCount(), offHeapSize, usedBytes, (long)usedBlocks * blockSize, memoryBytes,
+				heap.getCurrentSize(), heapSize);
+	}
+}
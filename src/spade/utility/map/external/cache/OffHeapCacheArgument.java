@@ -0,0 +1,99 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.utility.map.external.cache;
+
+public class OffHeapCacheArgument extends CacheArgument{
+	
+	public final static String keySize = "size",
+			keyHeapSize = "heapSize",
+			keyMemoryMegabytes = "memoryMegabytes",
+			keyBlockSize = "blockSize";
+	
+	public final static int defaultBlockSize = 64;
+	
+	/**
+	 * Maximum number of entries in off-heap memory
+	 */
+	public final int size;
+	
+	/**
+	 * Number of most recently used entries to keep as objects on the heap
+	 */
+	public final int heapSize;
+	
+	public final long memoryMegabytes;
+	
+	/**
+	 * Bytes in a unit of off-heap memory allocation
+	 */
+	public final int blockSize;
+	
+	protected OffHeapCacheArgument(int size, int heapSize, long memoryMegabytes, int blockSize){
+		super(CacheName.OffHeap);
+		this.size = size;
+		this.heapSize = heapSize;
+		this.memoryMegabytes = memoryMegabytes;
+		this.blockSize = blockSize;
+	}
+
+	@Override
+	protected CacheArgument createShardArgument(int shards){
+		return new OffHeapCacheArgument((int)((size + (long)shards - 1) / shards),
+				(int)((heapSize + (long)shards - 1) / shards),
+				(memoryMegabytes + shards - 1) / shards, blockSize);
+	}
+
+	@Override
+	public int hashCode(){
+		final int prime = 31;
+		int result = super.hashCode();
+		result = prime * result + size;
+		result = prime * result + heapSize;
+		result = prime * result + (int)(memoryMegabytes ^ (memoryMegabytes >>> 32));
+		result = prime * result + blockSize;
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj){
+		if(this == obj)
+			return true;
+		if(!super.equals(obj))
+			return false;
+		if(getClass() != obj.getClass())
+			return false;
+		OffHeapCacheArgument other = (OffHeapCacheArgument)obj;
+		if(size != other.size)
+			return false;
+		if(heapSize != other.heapSize)
+			return false;
+		if(memoryMegabytes != other.memoryMegabytes)
+			return false;
+		if(blockSize != other.blockSize)
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString(){
+		return "OffHeapCacheArgument [size=" + size + ", heapSize=" + heapSize + ", memoryMegabytes=" + memoryMegabytes
+				+ ", blockSize=" + blockSize + ", name=" + name + "]";
+	}
+}
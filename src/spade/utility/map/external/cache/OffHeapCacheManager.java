@@ -0,0 +1,147 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.utility.map.external.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import spade.utility.Converter;
+import spade.utility.HelperFunctions;
+import spade.utility.Result;
+
+/**
+ * Off-heap cache manager for external map
+ */
+public class OffHeapCacheManager extends CacheManager{
+
+	public static final OffHeapCacheManager instance = new OffHeapCacheManager();
+	private OffHeapCacheManager(){}
+	
+	/**
+	 * Create OffHeapCache.
+	 * Sample: "size=[0-n] heapSize=[1-n] memoryMegabytes=[1-n] blockSize=[16-4096]"
+	 * 
+	 * @param arguments See above sample
+	 */
+	@Override
+	public Result<CacheArgument> parseArgument(String arguments){
+		if(HelperFunctions.isNullOrEmpty(arguments)){
+			return Result.failed("NULL/Empty arguments");
+		}else{
+			Result<HashMap<String, String>> mapResult = HelperFunctions.parseKeysValuesInString(arguments);
+			if(mapResult.error){
+				return Result.failed("Failed to parse arguments to map", mapResult);
+			}else{
+				return parseArgument(mapResult.result);
+			}
+		}
+	}
+
+	/**
+	 * Create OffHeapCache.
+	 * Must contains valid values for keys: 'size', 'heapSize', and 'memoryMegabytes'.
+	 * Optional key: 'blockSize'. Default: 64.
+	 * All values must be non-null and non-empty.
+	 * 
+	 */
+	@Override
+	public Result<CacheArgument> parseArgument(Map<String, String> arguments){
+		if(arguments == null){
+			return Result.failed("NULL arguments");
+		}else if(arguments.isEmpty()){
+			return Result.failed("Empty arguments");
+		}else{
+			Result<Long> sizeResult = HelperFunctions.parseLong(
+					arguments.get(OffHeapCacheArgument.keySize), 10, 0, Integer.MAX_VALUE);
+			if(sizeResult.error){
+				return Result.failed("Failed to parse '"+OffHeapCacheArgument.keySize+"'", sizeResult);
+			}
+			Result<Long> heapSizeResult = HelperFunctions.parseLong(
+					arguments.get(OffHeapCacheArgument.keyHeapSize), 10, 1, Integer.MAX_VALUE);
+			if(heapSizeResult.error){
+				return Result.failed("Failed to parse '"+OffHeapCacheArgument.keyHeapSize+"'", heapSizeResult);
+			}
+			Result<Long> memoryResult = HelperFunctions.parseLong(
+					arguments.get(OffHeapCacheArgument.keyMemoryMegabytes), 10, 1, Long.MAX_VALUE / (1024 * 1024));
+			if(memoryResult.error){
+				return Result.failed("Failed to parse '"+OffHeapCacheArgument.keyMemoryMegabytes+"'", memoryResult);
+			}
+			int blockSize = OffHeapCacheArgument.defaultBlockSize;
+			final String blockSizeString = arguments.get(OffHeapCacheArgument.keyBlockSize);
+			if(blockSizeString != null){
+				Result<Long> blockSizeResult = HelperFunctions.parseLong(blockSizeString, 10, 16, 4096);
+				if(blockSizeResult.error){
+					return Result.failed("Failed to parse '"+OffHeapCacheArgument.keyBlockSize+"'", blockSizeResult);
+				}else{
+					blockSize = blockSizeResult.result.intValue();
+				}
+			}
+			return Result.successful(new OffHeapCacheArgument(sizeResult.result.intValue(),
+					heapSizeResult.result.intValue(), memoryResult.result, blockSize));
+		}
+	}
+	
+	/**
+	 * Validates the passed argument as the correct argument for this cache manager
+	 * 
+	 * @param genericArgument CacheArgument must be OffHeapCacheArgument
+	 * @return OffHeapCacheArgument object otherwise error
+	 */
+	private Result<OffHeapCacheArgument> validateArgument(final CacheArgument genericArgument){
+		if(genericArgument == null){
+			return Result.failed("NULL argument");
+		}else if(!genericArgument.getClass().equals(OffHeapCacheArgument.class)){
+			return Result.failed("Cache argument class must be OffHeapCacheArgument but is '"+genericArgument.getClass()+"'");
+		}else{
+			OffHeapCacheArgument argument = (OffHeapCacheArgument)genericArgument;
+			return Result.successful(argument);
+		}
+	}
+
+	/**
+	 * Always fails because the entries can only be moved off the heap with the converters of the external map
+	 */
+	@Override
+	public <K, V> Result<Cache<K, V>> createFromArgument(CacheArgument genericArgument){
+		return Result.failed("Off-heap cache requires key and value converters");
+	}
+
+	/**
+	 * @param CacheArgument must be OffHeapCacheArgument
+	 * @param keyConverter converter for key
+	 * @param valueConverter converter for value
+	 * @return Cache object or error
+	 */
+	@Override
+	public <K, V> Result<Cache<K, V>> createFromArgument(CacheArgument genericArgument,
+			Converter<K, byte[]> keyConverter, Converter<V, byte[]> valueConverter){
+		Result<OffHeapCacheArgument> validResult = validateArgument(genericArgument);
+		if(validResult.error){
+			return Result.failed("Invalid cache argument", validResult);
+		}else if(keyConverter == null || valueConverter == null){
+			return Result.failed("NULL key/value converter");
+		}else{
+			OffHeapCacheArgument argument = validResult.result;
+			return Result.successful(new OffHeapCache<K, V>(argument.heapSize, argument.size,
+					argument.memoryMegabytes * 1024 * 1024, argument.blockSize, keyConverter, valueConverter));
+		}
+	}
+
+}
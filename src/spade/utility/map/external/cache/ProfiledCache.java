@@ -33,7 +33,11 @@ public class ProfiledCache<K, V> implements Cache<K, V>{
 		final String id = reportingArgument.id;
 		final long millis = reportingArgument.intervalMillis;
 		
-		profile = new CacheProfile(id, millis);
+		if(cache instanceof OffHeapCache){
+			profile = new CacheProfile(id, millis, ((OffHeapCache<K, V>)cache)::getOffHeapUsage);
+		}else{
+			profile = new CacheProfile(id, millis);
+		}
 	}
 	
 	@Override
@@ -52,7 +56,13 @@ public class ProfiledCache<K, V> implements Cache<K, V>{
 	public V get(K key){
 		try{
 			profile.getStart();
-			return cache.get(key);
+			final V value = cache.get(key);
+			if(value == null){
+				profile.miss();
+			}else{
+				profile.hit();
+			}
+			return value;
 		}catch(Exception e){
 			throw e;
 		}finally{
@@ -0,0 +1,215 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.utility.map.external.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import spade.utility.DoublyLinkedList;
+
+/**
+ * W-TinyLFU cache implementation.
+ *
+ * New keys enter a small LRU window. Keys leaving the window are admitted to the main (segmented LRU) area only if
+ * they have been accessed more often than the key that would be evicted from the main area for them. Access
+ * frequencies are estimated with a count-min sketch. A long scan of keys seen once only churns the window.
+ *
+ * The main area is split into probation (keys accessed once since admission) and protected (keys accessed again).
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class TinyLFUCache<K, V> implements Cache<K, V>{
+
+	private static final int WINDOW = 0, PROBATION = 1, PROTECTED = 2;
+
+	private final int maximumSize, windowMaximumSize, protectedMaximumSize;
+
+	private final Map<K, Entry<K, V>> map = new HashMap<K, Entry<K, V>>();
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private final DoublyLinkedList<Entry<K, V>>[] lists = new DoublyLinkedList[]{
+			new DoublyLinkedList<Entry<K, V>>(), new DoublyLinkedList<Entry<K, V>>(), new DoublyLinkedList<Entry<K, V>>()};
+
+	private final FrequencySketch sketch;
+
+	/**
+	 * @param maximumSize maximum number of elements
+	 * @param windowPercentage percentage of the maximum size for the window. In the range [1-99]
+	 */
+	public TinyLFUCache(int maximumSize, int windowPercentage){
+		this.maximumSize = maximumSize;
+		this.windowMaximumSize = maximumSize == 0 ? 0 : Math.max(1, (int)((long)maximumSize * windowPercentage / 100));
+		this.protectedMaximumSize = (int)((maximumSize - windowMaximumSize) * 80L / 100);
+		this.sketch = new FrequencySketch(maximumSize);
+	}
+
+	private void moveTo(final Entry<K, V> entry, final int queue){
+		lists[entry.queue].removeNode(entry.node);
+		entry.queue = queue;
+		entry.node = lists[queue].addFirst(entry);
+	}
+
+	private Entry<K, V> getLast(final int queue){
+		final DoublyLinkedList<Entry<K, V>>.DoublyLinkedListNode<Entry<K, V>> node = lists[queue].getLast();
+		return node == null ? null : node.getValue();
+	}
+
+	private void onAccess(final Entry<K, V> entry){
+		switch(entry.queue){
+			case WINDOW:
+			case PROTECTED:
+				lists[entry.queue].makeFirst(entry.node);
+				break;
+			case PROBATION:
+				moveTo(entry, PROTECTED);
+				if(lists[PROTECTED].size() > protectedMaximumSize){
+					moveTo(getLast(PROTECTED), PROBATION);
+				}
+				break;
+			default: break;
+		}
+	}
+
+	/**
+	 * Counts as an access for the frequency of the key
+	 */
+	@Override
+	public void put(K key, V value){
+		sketch.increment(key);
+		Entry<K, V> entry = map.get(key);
+		if(entry == null){
+			entry = new Entry<K, V>(key, value);
+			entry.queue = WINDOW;
+			entry.node = lists[WINDOW].addFirst(entry);
+			map.put(key, entry);
+		}else{
+			entry.setValue(value); // Update value in case different
+			onAccess(entry);
+		}
+	}
+
+	/**
+	 * Counts as an access for the frequency of the key only if found. A miss is counted by the 'put' which follows it.
+	 */
+	@Override
+	public V get(K key){
+		final Entry<K, V> entry = map.get(key);
+		if(entry == null){
+			return null;
+		}else{
+			sketch.increment(key);
+			onAccess(entry);
+			return entry.getValue();
+		}
+	}
+
+	// Doesn't modify access lists or frequencies
+	@Override
+	public boolean contains(K key){
+		return map.containsKey(key);
+	}
+
+	@Override
+	public V remove(K key){
+		final Entry<K, V> entry = map.remove(key);
+		if(entry == null){
+			return null;
+		}else{
+			lists[entry.queue].removeNode(entry.node);
+			return entry.getValue();
+		}
+	}
+
+	private Entry<K, V> evictEntry(final Entry<K, V> entry){
+		map.remove(entry.key);
+		lists[entry.queue].removeNode(entry.node);
+		return entry;
+	}
+
+	/**
+	 * Keys over the window size move to the main area while it has space. After that the least recently used key of
+	 * the window (the candidate) and of the main area (the victim) are compared and the less frequent one is evicted.
+	 */
+	@Override
+	public CacheEntry<K, V> evict(){
+		final int mainMaximumSize = maximumSize - windowMaximumSize;
+		while(lists[WINDOW].size() > windowMaximumSize
+				&& lists[PROBATION].size() + lists[PROTECTED].size() < mainMaximumSize){
+			moveTo(getLast(WINDOW), PROBATION);
+		}
+
+		final Entry<K, V> candidate = lists[WINDOW].size() > windowMaximumSize ? getLast(WINDOW) : null;
+		Entry<K, V> victim = getLast(PROBATION);
+		if(victim == null){
+			victim = getLast(PROTECTED);
+		}
+
+		if(candidate == null){
+			if(victim == null){
+				victim = getLast(WINDOW);
+			}
+			return victim == null ? null : evictEntry(victim);
+		}else if(victim == null){
+			return evictEntry(candidate);
+		}else if(sketch.frequency(candidate.key) > sketch.frequency(victim.key)){
+			evictEntry(victim);
+			moveTo(candidate, PROBATION);
+			return victim;
+		}else{
+			return evictEntry(candidate);
+		}
+	}
+
+	@Override
+	public int getCurrentSize(){
+		return map.size();
+	}
+
+	@Override
+	public int getMaximumSize(){
+		return maximumSize;
+	}
+
+	@Override
+	public boolean hasExceededMaximumSize(){
+		return map.size() > maximumSize;
+	}
+
+	@Override
+	public void clear(){
+		map.clear();
+		for(final DoublyLinkedList<Entry<K, V>> list : lists){
+			list.clear();
+		}
+		sketch.clear();
+	}
+
+	@Override
+	public void close(){}
+
+	private static final class Entry<K, V> extends CacheEntry<K, V>{
+		private int queue;
+		private DoublyLinkedList<Entry<K, V>>.DoublyLinkedListNode<Entry<K, V>> node;
+		private Entry(K key, V value){
+			super(key, value);
+		}
+	}
+}
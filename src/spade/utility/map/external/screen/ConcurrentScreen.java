@@ -0,0 +1,99 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.utility.map.external.screen;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Thread-safe screen which allows concurrent 'contains' calls and exclusive modifications
+ *
+ * @param <K> key type
+ */
+public class ConcurrentScreen<K> implements Screen<K>{
+
+	private final Screen<K> screen;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	public ConcurrentScreen(Screen<K> screen){
+		this.screen = screen;
+	}
+
+	@Override
+	public void add(K key){
+		lock.writeLock().lock();
+		try{
+			screen.add(key);
+		}finally{
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean contains(K key){
+		lock.readLock().lock();
+		try{
+			return screen.contains(key);
+		}finally{
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean remove(K key){
+		lock.writeLock().lock();
+		try{
+			return screen.remove(key);
+		}finally{
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void clear(){
+		lock.writeLock().lock();
+		try{
+			screen.clear();
+		}finally{
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void close() throws Exception{
+		lock.writeLock().lock();
+		try{
+			screen.close();
+		}finally{
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public long size(){
+		lock.readLock().lock();
+		try{
+			return screen.size();
+		}finally{
+			lock.readLock().unlock();
+		}
+	}
+}
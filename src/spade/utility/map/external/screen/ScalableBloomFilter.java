@@ -0,0 +1,413 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.utility.map.external.screen;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Scalable Bloom filter (Almeida et al., 2007) which grows instead of losing accuracy when more elements are added
+ * than expected.
+ *
+ * The filter is a chain of slices. Only the last slice is added to. When it has as many elements as its capacity a
+ * new slice is added with 'growthFactor' times the capacity and half the false positive probability, which keeps the
+ * overall false positive probability under the one asked for.
+ *
+ * Each slice is a partitioned Bloom filter: one partition of bits for each hash function. Bits are set with
+ * compare-and-set, so add and contains need no lock. Only adding a slice is synchronized.
+ *
+ * Elements are hashed by their 'toString' with a 64-bit non-cryptographic hash.
+ *
+ * Each slice has a dirty flag which is set when a bit in it is set. A save to the same file as last time only rewrites
+ * the dirty slices (in place, since the size of a slice never changes) and appends the new ones. A slice which
+ * was added to after it stopped being the last one (by an add racing with a grow) is dirty again and rewritten by the
+ * next save.
+ *
+ * @param <E> element type
+ */
+public class ScalableBloomFilter<E>{
+
+	private static final int MAGIC = 0x53424631; // SBF1
+	private static final int HEADER_BYTES = 4 + 8 + 4;
+	private static final int SLICE_HEADER_BYTES = 8 + 4 + 4 + 8;
+	private static final double TIGHTENING_RATIO = 0.5;
+	private static final int MAXIMUM_WORDS = Integer.MAX_VALUE - 8;
+
+	public final long initialCapacity;
+	public final double falsePositiveProbability;
+	public final int growthFactor;
+
+	private volatile Slice[] slices;
+
+	/**
+	 * The file last saved to or loaded from. The slices before 'persistedSlices' are in the file before offset
+	 * 'persistedLength', and are up to date in the file unless dirty.
+	 */
+	private String persistedPath;
+	private int persistedSlices;
+	private long persistedLength;
+
+	/**
+	 * @param initialCapacity elements in the first slice. Positive
+	 * @param falsePositiveProbability overall false positive probability. In the range (0-1)
+	 * @param growthFactor capacity of a slice relative to the one before. At least 2
+	 */
+	public ScalableBloomFilter(long initialCapacity, double falsePositiveProbability, int growthFactor){
+		this.initialCapacity = initialCapacity;
+		this.falsePositiveProbability = falsePositiveProbability;
+		this.growthFactor = growthFactor;
+		this.slices = new Slice[]{createSlice(0)};
+	}
+
+	private Slice createSlice(final int index){
+		long capacity = initialCapacity;
+		for(int i = 0; i < index && capacity < Long.MAX_VALUE / growthFactor; i++){
+			capacity *= growthFactor;
+		}
+		final double probability = falsePositiveProbability * (1 - TIGHTENING_RATIO) * Math.pow(TIGHTENING_RATIO, index);
+		final int hashes = Math.max(1, (int)Math.ceil(-Math.log(probability) / Math.log(2)));
+		final double bits = capacity * -Math.log(probability) / (Math.log(2) * Math.log(2));
+		final long wordsPerPartition = Math.max(1, (long)Math.ceil(bits / hashes / 64));
+		return new Slice(capacity, hashes, (int)Math.min(wordsPerPartition, MAXIMUM_WORDS / hashes), 0);
+	}
+
+	public void add(final E element){
+		final long hash = hash(String.valueOf(element));
+		final Slice[] slices = this.slices;
+		for(int i = slices.length - 2; i > -1; i--){
+			if(slices[i].contains(hash)){
+				return;
+			}
+		}
+		final Slice last = slices[slices.length - 1];
+		if(last.add(hash)){
+			final long count = last.count.incrementAndGet();
+			// After the bits and the count so that a save which missed them sees the flag
+			last.dirty = true;
+			if(count >= last.capacity){
+				grow(slices.length);
+			}
+		}
+	}
+
+	public boolean contains(final E element){
+		final long hash = hash(String.valueOf(element));
+		final Slice[] slices = this.slices;
+		for(int i = slices.length - 1; i > -1; i--){
+			if(slices[i].contains(hash)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private synchronized void grow(final int expectedSlices){
+		final Slice[] slices = this.slices;
+		if(slices.length == expectedSlices){
+			final Slice[] grown = Arrays.copyOf(slices, slices.length + 1);
+			grown[slices.length] = createSlice(slices.length);
+			this.slices = grown;
+		}
+	}
+
+	/**
+	 * @return Number of elements added. Approximate because an element is not counted if it was found already
+	 */
+	public long count(){
+		long count = 0;
+		for(final Slice slice : slices){
+			count += slice.count.get();
+		}
+		return count;
+	}
+
+	public int getSliceCount(){
+		return slices.length;
+	}
+
+	/**
+	 * @return Bytes used by the bits of all slices
+	 */
+	public long getSizeBytes(){
+		long bytes = 0;
+		for(final Slice slice : slices){
+			bytes += slice.words.length() * 8L;
+		}
+		return bytes;
+	}
+
+	public synchronized void clear(){
+		slices = new Slice[]{createSlice(0)};
+		persistedPath = null;
+	}
+
+	////////////////////////////////////////////////// Hash
+
+	private static long mix(long h){
+		h ^= (h >>> 33);
+		h *= 0xff51afd7ed558ccdL;
+		h ^= (h >>> 33);
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= (h >>> 33);
+		return h;
+	}
+
+	/**
+	 * 64-bit hash of the characters read four at a time
+	 */
+	static long hash(final String string){
+		final int length = string.length();
+		long h = 0x9e3779b97f4a7c15L ^ length;
+		int i = 0;
+		for(; i + 4 <= length; i += 4){
+			final long word = string.charAt(i) | ((long)string.charAt(i + 1) << 16)
+					| ((long)string.charAt(i + 2) << 32) | ((long)string.charAt(i + 3) << 48);
+			h ^= mix(word);
+			h = Long.rotateLeft(h, 27) * 0x9e3779b97f4a7c15L + 0x52dce729L;
+		}
+		long tail = 0;
+		for(int shift = 0; i < length; i++, shift += 16){
+			tail |= ((long)string.charAt(i) << shift);
+		}
+		h ^= mix(tail);
+		return mix(h);
+	}
+
+	////////////////////////////////////////////////// Persistence
+
+	/**
+	 * Writes the filter to the file. Only the slices which changed are written if the filter was last saved to or
+	 * loaded from the same file. Elements added while saving might not be in the file but are in the next save.
+	 *
+	 * @param path file path
+	 * @throws Exception on IO error
+	 */
+	public synchronized void save(final String path) throws Exception{
+		final Slice[] slices = this.slices;
+		final boolean incremental = path.equals(persistedPath) && new File(path).length() >= persistedLength;
+		try(final RandomAccessFile file = new RandomAccessFile(path, "rw");
+				final FileChannel channel = file.getChannel()){
+			if(!incremental){
+				final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+				header.putInt(MAGIC).putDouble(falsePositiveProbability).putInt(growthFactor).flip();
+				writeFully(channel, header, 0);
+			}
+			long offset = HEADER_BYTES;
+			for(int i = 0; i < slices.length; i++){
+				final Slice slice = slices[i];
+				if(!incremental || i >= persistedSlices || slice.dirty){
+					// Cleared before reading the bits so that a bit set after it is read marks the slice again
+					slice.dirty = false;
+					slice.write(channel, offset);
+				}
+				offset += slice.getSizeBytes();
+			}
+			channel.truncate(offset);
+			channel.force(true);
+			persistedPath = path;
+			persistedSlices = slices.length;
+			persistedLength = offset;
+		}catch(Exception e){
+			persistedPath = null;
+			throw e;
+		}
+	}
+
+	/**
+	 * @param path file written by 'save'
+	 * @return the filter
+	 * @throws Exception if the file is not valid or on IO error
+	 */
+	public static <E> ScalableBloomFilter<E> load(final String path) throws Exception{
+		try(final RandomAccessFile file = new RandomAccessFile(path, "r");
+				final FileChannel channel = file.getChannel()){
+			final long length = channel.size();
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			readFully(channel, header, 0);
+			if(header.getInt() != MAGIC){
+				throw new Exception("Not a scalable bloom filter file: '" + path + "'");
+			}
+			final double falsePositiveProbability = header.getDouble();
+			final int growthFactor = header.getInt();
+			long offset = HEADER_BYTES;
+			Slice[] slices = new Slice[0];
+			while(offset < length){
+				if(length - offset < SLICE_HEADER_BYTES){
+					throw new Exception("Truncated scalable bloom filter file: '" + path + "'");
+				}
+				final ByteBuffer sliceHeader = ByteBuffer.allocate(SLICE_HEADER_BYTES);
+				readFully(channel, sliceHeader, offset);
+				final long capacity = sliceHeader.getLong();
+				final int hashes = sliceHeader.getInt();
+				final int wordsPerPartition = sliceHeader.getInt();
+				final long count = sliceHeader.getLong();
+				if(capacity < 1 || hashes < 1 || wordsPerPartition < 1
+						|| (long)hashes * wordsPerPartition > MAXIMUM_WORDS
+						|| length - offset - SLICE_HEADER_BYTES < (long)hashes * wordsPerPartition * 8){
+					throw new Exception("Invalid or truncated slice at offset " + offset + " in file: '" + path + "'");
+				}
+				final Slice slice = new Slice(capacity, hashes, wordsPerPartition, count);
+				offset = slice.read(channel, offset + SLICE_HEADER_BYTES);
+				slices = Arrays.copyOf(slices, slices.length + 1);
+				slices[slices.length - 1] = slice;
+			}
+			if(slices.length == 0){
+				throw new Exception("No slices in scalable bloom filter file: '" + path + "'");
+			}
+			final ScalableBloomFilter<E> filter = new ScalableBloomFilter<E>(slices[0].capacity, falsePositiveProbability,
+					growthFactor);
+			filter.slices = slices;
+			filter.persistedPath = path;
+			filter.persistedSlices = slices.length;
+			filter.persistedLength = offset;
+			return filter;
+		}
+	}
+
+	private static void writeFully(final FileChannel channel, final ByteBuffer buffer, long offset) throws IOException{
+		while(buffer.hasRemaining()){
+			offset += channel.write(buffer, offset);
+		}
+	}
+
+	private static void readFully(final FileChannel channel, final ByteBuffer buffer, long offset) throws IOException{
+		while(buffer.hasRemaining()){
+			final int read = channel.read(buffer, offset);
+			if(read < 0){
+				throw new IOException("Unexpected end of file");
+			}
+			offset += read;
+		}
+		buffer.flip();
+	}
+
+	private static final class Slice{
+		private static final int WORDS_PER_BUFFER = 8192;
+
+		private final long capacity;
+		private final int hashes;
+		private final int wordsPerPartition;
+		private final long bitsPerPartition;
+		private final AtomicLongArray words;
+		private final AtomicLong count;
+		/**
+		 * True if changed since last written
+		 */
+		private volatile boolean dirty = false;
+
+		private Slice(long capacity, int hashes, int wordsPerPartition, long count){
+			this.capacity = capacity;
+			this.hashes = hashes;
+			this.wordsPerPartition = wordsPerPartition;
+			this.bitsPerPartition = wordsPerPartition * 64L;
+			this.words = new AtomicLongArray(hashes * wordsPerPartition);
+			this.count = new AtomicLong(count);
+		}
+
+		/**
+		 * Double hashing: the bit in a partition is derived from the hash and a second hash of it
+		 */
+		private long bitOf(final long hash, final long second, final int partition){
+			return Math.floorMod(hash + partition * second, bitsPerPartition);
+		}
+
+		private static long second(final long hash){
+			return mix(hash + 0x9e3779b97f4a7c15L) | 1;
+		}
+
+		/**
+		 * @return true if any bit was not already set
+		 */
+		private boolean add(final long hash){
+			final long second = second(hash);
+			boolean changed = false;
+			for(int partition = 0; partition < hashes; partition++){
+				final long bit = bitOf(hash, second, partition);
+				final int index = partition * wordsPerPartition + (int)(bit >>> 6);
+				final long mask = 1L << bit;
+				long word = words.get(index);
+				while((word & mask) == 0){
+					if(words.compareAndSet(index, word, word | mask)){
+						changed = true;
+						break;
+					}
+					word = words.get(index);
+				}
+			}
+			return changed;
+		}
+
+		private boolean contains(final long hash){
+			final long second = second(hash);
+			for(int partition = 0; partition < hashes; partition++){
+				final long bit = bitOf(hash, second, partition);
+				if((words.get(partition * wordsPerPartition + (int)(bit >>> 6)) & (1L << bit)) == 0){
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private long getSizeBytes(){
+			return SLICE_HEADER_BYTES + words.length() * 8L;
+		}
+
+		private long write(final FileChannel channel, long offset) throws IOException{
+			final ByteBuffer header = ByteBuffer.allocate(SLICE_HEADER_BYTES);
+			header.putLong(capacity).putInt(hashes).putInt(wordsPerPartition).putLong(count.get()).flip();
+			writeFully(channel, header, offset);
+			offset += SLICE_HEADER_BYTES;
+			final int length = words.length();
+			final ByteBuffer buffer = ByteBuffer.allocate(Math.min(length, WORDS_PER_BUFFER) * 8);
+			for(int i = 0; i < length; ){
+				buffer.clear();
+				for(; i < length && buffer.hasRemaining(); i++){
+					buffer.putLong(words.get(i));
+				}
+				buffer.flip();
+				final int bytes = buffer.remaining();
+				writeFully(channel, buffer, offset);
+				offset += bytes;
+			}
+			return offset;
+		}
+
+		private long read(final FileChannel channel, long offset) throws IOException{
+			final int length = words.length();
+			final ByteBuffer buffer = ByteBuffer.allocate(Math.min(length, WORDS_PER_BUFFER) * 8);
+			for(int i = 0; i < length; ){
+				buffer.clear();
+				buffer.limit(Math.min(length - i, WORDS_PER_BUFFER) * 8);
+				readFully(channel, buffer, offset);
+				offset += buffer.remaining();
+				while(buffer.hasRemaining()){
+					words.set(i++, buffer.getLong());
+				}
+			}
+			return offset;
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.utility.map.external.screen;
+
+/**
+ * Scalable bloom filter screen argument
+ */
+public class ScalableBloomFilterArgument extends ScreenArgument{
+	
+	public final static String keyExpectedElements = "expectedElements",
+			keyFalsePositiveProbability = "falsePositiveProbability",
+			keyGrowthFactor = "growthFactor",
+			keySavePath = "savePath",
+			keyLoadPath = "loadPath",
+			keySaveIntervalSeconds = "saveIntervalSeconds";
+	
+	public final static int defaultGrowthFactor = 2;
+	
+	/**
+	 * Capacity of the first slice. Ignored if loaded from file
+	 */
+	public final long expectedElements;
+	/**
+	 * Ignored if loaded from file
+	 */
+	public final double falsePositiveProbability;
+	/**
+	 * Ignored if loaded from file
+	 */
+	public final int growthFactor;
+	/**
+	 * Path to read the bloom filter from. Null if to be created from arguments
+	 */
+	public final String loadPath;
+	/**
+	 * Path to write the bloom filter to at close and at every save interval
+	 */
+	public final String savePath;
+	/**
+	 * Disabled if less than 1
+	 */
+	public final long saveIntervalSeconds;
+	
+	protected ScalableBloomFilterArgument(long expectedElements, double falsePositiveProbability, int growthFactor,
+			String loadPath, String savePath, long saveIntervalSeconds){
+		super(ScreenName.ScalableBloomFilter);
+		this.expectedElements = expectedElements;
+		this.falsePositiveProbability = falsePositiveProbability;
+		this.growthFactor = growthFactor;
+		this.loadPath = loadPath;
+		this.savePath = savePath;
+		this.saveIntervalSeconds = saveIntervalSeconds;
+	}
+
+	@Override
+	public int hashCode(){
+		final int prime = 31;
+		int result = super.hashCode();
+		result = prime * result + (int)(expectedElements ^ (expectedElements >>> 32));
+		long temp;
+		temp = Double.doubleToLongBits(falsePositiveProbability);
+		result = prime * result + (int)(temp ^ (temp >>> 32));
+		result = prime * result + growthFactor;
+		result = prime * result + ((loadPath == null) ? 0 : loadPath.hashCode());
+		result = prime * result + ((savePath == null) ? 0 : savePath.hashCode());
+		result = prime * result + (int)(saveIntervalSeconds ^ (saveIntervalSeconds >>> 32));
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj){
+		if(this == obj)
+			return true;
+		if(!super.equals(obj))
+			return false;
+		if(getClass() != obj.getClass())
+			return false;
+		ScalableBloomFilterArgument other = (ScalableBloomFilterArgument)obj;
+		if(expectedElements != other.expectedElements)
+			return false;
+		if(Double.doubleToLongBits(falsePositiveProbability) != Double
+				.doubleToLongBits(other.falsePositiveProbability))
+			return false;
+		if(growthFactor != other.growthFactor)
+			return false;
+		if(loadPath == null){
+			if(other.loadPath != null)
+				return false;
+		}else if(!loadPath.equals(other.loadPath))
+			return false;
+		if(savePath == null){
+			if(other.savePath != null)
+				return false;
+		}else if(!savePath.equals(other.savePath))
+			return false;
+		if(saveIntervalSeconds != other.saveIntervalSeconds)
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString(){
+		return "ScalableBloomFilterArgument [expectedElements=" + expectedElements + ", falsePositiveProbability="
+				+ falsePositiveProbability + ", growthFactor=" + growthFactor + ", loadPath=" + loadPath
+				+ ", savePath=" + savePath + ", saveIntervalSeconds=" + saveIntervalSeconds + ", name=" + name + "]";
+	}
+}
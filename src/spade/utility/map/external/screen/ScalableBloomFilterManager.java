@@ -0,0 +1,232 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.utility.map.external.screen;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import spade.utility.HelperFunctions;
+import spade.utility.Result;
+
+/**
+ * Scalable bloom filter screen manager for external map
+ */
+public class ScalableBloomFilterManager extends ScreenManager{
+
+	public static final ScalableBloomFilterManager instance = new ScalableBloomFilterManager();
+	private ScalableBloomFilterManager(){}
+	
+	/**
+	 * Create ScalableBloomFilterArgument.
+	 * Sample: "expectedElements=[1-n] falsePositiveProbability=[0-1] [growthFactor=[2-16]] 
+	 * [savePath=<writable-filepath> loadPath=<existing-filepath> saveIntervalSeconds=[0-n]]"
+	 * 
+	 * 'growthFactor', 'savePath', 'loadPath' and 'saveIntervalSeconds' are optional.
+	 * 
+	 * @param arguments See above sample
+	 */
+	@Override
+	public Result<ScreenArgument> parseArgument(String arguments){
+		if(HelperFunctions.isNullOrEmpty(arguments)){
+			return Result.failed("NULL/Empty arguments");
+		}else{
+			Result<HashMap<String, String>> mapResult = HelperFunctions.parseKeysValuesInString(arguments);
+			if(mapResult.error){
+				return Result.failed("Failed to parse arguments to map", mapResult);
+			}else{
+				return parseArgument(mapResult.result);
+			}
+		}
+	}
+	
+	/**
+	 * Create ScalableBloomFilterArgument.
+	 * Must contains valid values for keys: 'expectedElements', 'falsePositiveProbability' unless loaded from an
+	 * existing 'loadPath'.
+	 * All values must be non-null and non-empty.
+	 * 
+	 * Optional keys: 'growthFactor', 'loadPath', 'savePath', 'saveIntervalSeconds'
+	 */
+	@Override
+	public Result<ScreenArgument> parseArgument(Map<String, String> arguments){
+		if(arguments == null){
+			return Result.failed("NULL arguments");
+		}else if(arguments.isEmpty()){
+			return Result.failed("Empty arguments");
+		}else{
+			final String savePath = arguments.get(ScalableBloomFilterArgument.keySavePath);
+			if(savePath != null){
+				Result<Boolean> savePathResult = validateSavePath(savePath);
+				if(savePathResult.error){
+					return Result.failed("Invalid '"+ScalableBloomFilterArgument.keySavePath+"'", savePathResult);
+				}
+			}
+			
+			long saveIntervalSeconds = 0;
+			final String saveIntervalString = arguments.get(ScalableBloomFilterArgument.keySaveIntervalSeconds);
+			if(saveIntervalString != null){
+				if(savePath == null){
+					return Result.failed("Must specify '"+ScalableBloomFilterArgument.keySavePath+"' with "
+							+ "'"+ScalableBloomFilterArgument.keySaveIntervalSeconds+"'");
+				}
+				Result<Long> saveIntervalResult = HelperFunctions.parseLong(saveIntervalString, 10, 0, Integer.MAX_VALUE);
+				if(saveIntervalResult.error){
+					return Result.failed("Failed to parse '"+ScalableBloomFilterArgument.keySaveIntervalSeconds+"'", saveIntervalResult);
+				}
+				saveIntervalSeconds = saveIntervalResult.result;
+			}
+			
+			int growthFactor = ScalableBloomFilterArgument.defaultGrowthFactor;
+			final String growthFactorString = arguments.get(ScalableBloomFilterArgument.keyGrowthFactor);
+			if(growthFactorString != null){
+				Result<Long> growthFactorResult = HelperFunctions.parseLong(growthFactorString, 10, 2, 16);
+				if(growthFactorResult.error){
+					return Result.failed("Failed to parse '"+ScalableBloomFilterArgument.keyGrowthFactor+"'", growthFactorResult);
+				}
+				growthFactor = growthFactorResult.result.intValue();
+			}
+			
+			final String expectedElementsString = arguments.get(ScalableBloomFilterArgument.keyExpectedElements);
+			final String falsePositiveString = arguments.get(ScalableBloomFilterArgument.keyFalsePositiveProbability);
+			final String loadPathString = arguments.get(ScalableBloomFilterArgument.keyLoadPath);
+			
+			// If anything is specified then it must be valid even if it is not going to be used
+			if((expectedElementsString == null) != (falsePositiveString == null)){
+				return Result.failed("Must specify '"+ScalableBloomFilterArgument.keyExpectedElements+"' and "
+						+ "'"+ScalableBloomFilterArgument.keyFalsePositiveProbability+"' together");
+			}
+			final boolean createFromArguments = expectedElementsString != null;
+			
+			long expectedElements = 0;
+			double falsePositiveProbability = 0;
+			if(createFromArguments){
+				Result<Long> expectedElementsResult = HelperFunctions.parseLong(expectedElementsString, 10, 1, Long.MAX_VALUE);
+				if(expectedElementsResult.error){
+					return Result.failed("Failed to parse '"+ScalableBloomFilterArgument.keyExpectedElements+"'", expectedElementsResult);
+				}
+				expectedElements = expectedElementsResult.result;
+				Result<Double> falsePositiveProbResult = HelperFunctions.parseDouble(falsePositiveString, 0, 1);
+				if(falsePositiveProbResult.error){
+					return Result.failed("Failed to parse '"+ScalableBloomFilterArgument.keyFalsePositiveProbability+"'", falsePositiveProbResult);
+				}
+				falsePositiveProbability = falsePositiveProbResult.result;
+				if(falsePositiveProbability <= 0 || falsePositiveProbability >= 1){
+					return Result.failed("'"+ScalableBloomFilterArgument.keyFalsePositiveProbability+"' must be greater than 0 and less than 1");
+				}
+			}
+			
+			// Preference given to loading from file. If the file doesn't exist then created from arguments (if any)
+			String loadPath = null;
+			if(loadPathString != null){
+				try{
+					File f = new File(loadPathString);
+					if(!f.exists()){
+						if(!createFromArguments){
+							return Result.failed("'"+ScalableBloomFilterArgument.keyLoadPath+"'='"+loadPathString+"' does not exist");
+						}
+					}else if(!f.isFile()){
+						return Result.failed("'"+ScalableBloomFilterArgument.keyLoadPath+"'='"+loadPathString+"' is not a regular file");
+					}else{
+						loadPath = loadPathString;
+					}
+				}catch(Exception e){
+					return Result.failed("Failed to check '"+ScalableBloomFilterArgument.keyLoadPath+"'='"+loadPathString+"'", e, null);
+				}
+			}else if(!createFromArguments){
+				return Result.failed("Must specify ('"+ScalableBloomFilterArgument.keyExpectedElements+"' and "
+						+ "'"+ScalableBloomFilterArgument.keyFalsePositiveProbability+"') and/or "
+								+ "('"+ScalableBloomFilterArgument.keyLoadPath+"')");
+			}
+			
+			return Result.successful(new ScalableBloomFilterArgument(expectedElements, falsePositiveProbability,
+					growthFactor, loadPath, savePath, saveIntervalSeconds));
+		}
+	}
+	
+	private Result<Boolean> validateSavePath(final String savePath){
+		if(savePath.trim().isEmpty()){
+			return Result.failed("Empty path");
+		}
+		try{
+			File f = new File(savePath);
+			if(f.exists()){
+				if(!f.isFile()){
+					return Result.failed("'"+savePath+"' is not a regular file");
+				}
+			}else{
+				File parentF = f.getAbsoluteFile().getParentFile();
+				if(parentF == null || !parentF.exists()){
+					return Result.failed("'"+savePath+"'. Parent directory doesn't exist");
+				}
+			}
+			return Result.successful(true);
+		}catch(Exception e){
+			return Result.failed("Failed to check '"+savePath+"'", e, null);
+		}
+	}
+
+	/**
+	 * Validates the passed argument as the correct argument for this screen manager
+	 * 
+	 * @param genericArgument ScreenArgument must be ScalableBloomFilterArgument
+	 * @return ScalableBloomFilterArgument object otherwise error
+	 */
+	private Result<ScalableBloomFilterArgument> validateArgument(final ScreenArgument genericArgument){
+		if(genericArgument == null){
+			return Result.failed("NULL argument");
+		}else if(!genericArgument.getClass().equals(ScalableBloomFilterArgument.class)){
+			return Result.failed("Screen argument class must be ScalableBloomFilterArgument but is '"+genericArgument.getClass()+"'");
+		}else{
+			ScalableBloomFilterArgument argument = (ScalableBloomFilterArgument)genericArgument;
+			return Result.successful(argument);
+		}
+	}
+	
+	/**
+	 * Loads the bloom filter from 'loadPath' if set otherwise creates a fresh one
+	 * 
+	 * @param ScreenArgument must be ScalableBloomFilterArgument
+	 * @return Screen object or error
+	 */
+	@Override
+	public <K> Result<Screen<K>> createFromArgument(ScreenArgument genericArgument){
+		Result<ScalableBloomFilterArgument> validResult = validateArgument(genericArgument);
+		if(validResult.error){
+			return Result.failed("Invalid screen argument", validResult);
+		}else{
+			ScalableBloomFilterArgument argument = validResult.result;
+			ScalableBloomFilter<K> bloomFilter;
+			if(argument.loadPath != null){
+				try{
+					bloomFilter = ScalableBloomFilter.load(argument.loadPath);
+				}catch(Exception e){
+					return Result.failed("Failed to load scalable bloom filter from path: '"+argument.loadPath+"'", e, null);
+				}
+			}else{
+				bloomFilter = new ScalableBloomFilter<K>(argument.expectedElements, argument.falsePositiveProbability,
+						argument.growthFactor);
+			}
+			return Result.successful(new ScalableBloomFilterScreen<K>(argument.savePath,
+					argument.saveIntervalSeconds * 1000, bloomFilter));
+		}
+	}
+
+}
@@ -0,0 +1,116 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.utility.map.external.screen;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import spade.utility.HelperFunctions;
+
+/**
+ * Scalable bloom filter screen. Thread-safe.
+ * 
+ * @param <K> key type
+ */
+public class ScalableBloomFilterScreen<K> implements Screen<K>{
+	
+	private static final Logger logger = Logger.getLogger(ScalableBloomFilterScreen.class.getName());
+	
+	/**
+	 * Path to save the bloomfilter to on close and at every save interval
+	 */
+	public final String savePath;
+	/**
+	 * Save interval. Disabled if less than 1
+	 */
+	public final long saveIntervalMillis;
+	/**
+	 * Saves the bloomfilter at every save interval so that add is not blocked by it. Null if disabled
+	 */
+	private final ScheduledExecutorService snapshotExecutor;
+	/**
+	 * Bloomfilter object
+	 */
+	private final ScalableBloomFilter<K> bloomFilter;
+	
+	protected ScalableBloomFilterScreen(String savePath, long saveIntervalMillis, ScalableBloomFilter<K> bloomFilter){
+		this.savePath = savePath;
+		this.saveIntervalMillis = saveIntervalMillis;
+		this.bloomFilter = bloomFilter;
+		if(saveIntervalMillis > 0 && !HelperFunctions.isNullOrEmpty(savePath)){
+			this.snapshotExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				final Thread thread = new Thread(runnable, "ScalableBloomFilter-Snapshot-Thread");
+				thread.setDaemon(true);
+				return thread;
+			});
+			this.snapshotExecutor.scheduleWithFixedDelay(this::saveSnapshot, saveIntervalMillis, saveIntervalMillis,
+					TimeUnit.MILLISECONDS);
+		}else{
+			this.snapshotExecutor = null;
+		}
+	}
+	
+	private void saveSnapshot(){
+		try{
+			bloomFilter.save(savePath);
+		}catch(Exception e){
+			logger.log(Level.WARNING, "Failed to save bloomfilter snapshot to path: '"+savePath+"'", e);
+		}
+	}
+	
+	@Override
+	public void add(K key){
+		bloomFilter.add(key);
+	}
+	
+	@Override
+	public boolean contains(K key){
+		return bloomFilter.contains(key);
+	}
+
+	@Override
+	public boolean remove(K key){
+		return false;
+	}
+
+	@Override
+	public void clear(){
+		bloomFilter.clear();
+	}
+
+	@Override
+	public void close() throws Exception{
+		if(snapshotExecutor != null){
+			snapshotExecutor.shutdown();
+			snapshotExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+		if(!HelperFunctions.isNullOrEmpty(savePath)){
+			bloomFilter.save(savePath);
+		}
+	}
+
+	@Override
+	public long size(){
+		return bloomFilter.count();
+	}
+}
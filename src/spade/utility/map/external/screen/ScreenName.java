@@ -23,7 +23,8 @@ package spade.utility.map.external.screen;
  * Available screens
  */
 public enum ScreenName{
-	BloomFilter(BloomFilterManager.instance);
+	BloomFilter(BloomFilterManager.instance),
+	ScalableBloomFilter(ScalableBloomFilterManager.instance);
 	
 	protected final ScreenManager screenManager;
 	private ScreenName(ScreenManager screenManager){
@@ -20,6 +20,12 @@
 package spade.utility.map.external.store;
 
 import java.math.BigInteger;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import spade.utility.Converter;
 import spade.utility.map.external.store.db.DatabaseHandle;
@@ -67,6 +73,43 @@ public class DBStore<K, V> extends Store<K, V>{
 	    dbHandle.remove(keyBytes);
 	}
 	
+	@Override
+	public Map<K, V> multiGet(Collection<K> keys) throws Exception{
+		final List<K> keyList = new ArrayList<K>(keys);
+		final List<byte[]> keysBytes = new ArrayList<byte[]>(keyList.size());
+		for(final K key : keyList){
+			keysBytes.add(keyConverter.serialize(key));
+		}
+		final List<byte[]> valuesBytes = dbHandle.multiGet(keysBytes);
+		final Map<K, V> values = new HashMap<K, V>();
+		for(int i = 0; i < keyList.size(); i++){
+			final byte[] valueBytes = valuesBytes.get(i);
+			if(valueBytes != null){
+				values.put(keyList.get(i), valueConverter.deserialize(valueBytes));
+			}
+		}
+		return values;
+	}
+	
+	@Override
+	public void multiPut(Map<K, V> entries) throws Exception{
+		final List<SimpleEntry<byte[], byte[]>> entriesBytes = new ArrayList<SimpleEntry<byte[], byte[]>>(entries.size());
+		for(final Map.Entry<K, V> entry : entries.entrySet()){
+			entriesBytes.add(new SimpleEntry<byte[], byte[]>(
+					keyConverter.serialize(entry.getKey()), valueConverter.serialize(entry.getValue())));
+		}
+		dbHandle.multiPut(entriesBytes);
+	}
+	
+	@Override
+	public void multiRemove(Collection<K> keys) throws Exception{
+		final List<byte[]> keysBytes = new ArrayList<byte[]>(keys.size());
+		for(final K key : keys){
+			keysBytes.add(keyConverter.serialize(key));
+		}
+		dbHandle.multiRemove(keysBytes);
+	}
+	
 	@Override
 	public void close() throws Exception{
 		dbHandle.close();
@@ -20,11 +20,14 @@
 package spade.utility.map.external.store;
 
 import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Map;
 
 import spade.utility.profile.ReportingArgument;
 
 /**
  * Profiled store with instrumentation for measuring time for get, put, contains, and remove.
+ * The time of multiGet, multiPut and multiRemove is counted as one get, put and remove respectively.
  *
  * @param <K>
  * @param <V>
@@ -93,6 +96,42 @@ public class ProfiledStore<K, V> extends Store<K, V>{
 		}
 	}
 
+	@Override
+	public Map<K, V> multiGet(Collection<K> keys) throws Exception{
+		try{
+			profile.getStart();
+			return store.multiGet(keys);
+		}catch(Exception e){
+			throw e;
+		}finally{
+			profile.getStop();
+		}
+	}
+
+	@Override
+	public void multiPut(Map<K, V> entries) throws Exception{
+		try{
+			profile.putStart();
+			store.multiPut(entries);
+		}catch(Exception e){
+			throw e;
+		}finally{
+			profile.putStop();
+		}
+	}
+
+	@Override
+	public void multiRemove(Collection<K> keys) throws Exception{
+		try{
+			profile.removeStart();
+			store.multiRemove(keys);
+		}catch(Exception e){
+			throw e;
+		}finally{
+			profile.removeStop();
+		}
+	}
+
 	@Override
 	public void close() throws Exception{
 		try{
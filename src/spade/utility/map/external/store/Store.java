@@ -20,6 +20,8 @@
 package spade.utility.map.external.store;
 
 import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Map;
 
 import spade.utility.Converter;
 
@@ -75,6 +77,31 @@ public abstract class Store<K, V>{
 	 */
 	public abstract void remove(K key) throws Exception;
 	
+	/**
+	 * Get the values of all the keys from store together
+	 * 
+	 * @param keys
+	 * @return Map of only the keys found to their values
+	 * @throws Exception any underlying store and database exception
+	 */
+	public abstract Map<K, V> multiGet(Collection<K> keys) throws Exception;
+	
+	/**
+	 * Put all the entries into store together
+	 * 
+	 * @param entries
+	 * @throws Exception any underlying store and database exception
+	 */
+	public abstract void multiPut(Map<K, V> entries) throws Exception;
+	
+	/**
+	 * Remove all the keys from store together
+	 * 
+	 * @param keys
+	 * @throws Exception any underlying store and database exception
+	 */
+	public abstract void multiRemove(Collection<K> keys) throws Exception;
+	
 	/**
 	 * Close the store and all other associated resources
 	 * 
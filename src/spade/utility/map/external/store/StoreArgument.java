@@ -20,6 +20,7 @@
 package spade.utility.map.external.store;
 
 import spade.utility.map.external.store.db.DatabaseArgument;
+import spade.utility.map.external.store.db.WriteBehindArgument;
 import spade.utility.profile.ReportingArgument;
 
 /**
@@ -38,6 +39,10 @@ public class StoreArgument{
 	 * Reporting argument
 	 */
 	private ReportingArgument reportingArgument;
+	/**
+	 * Write-behind argument. NULL if puts and removes are written to the database by the caller
+	 */
+	private WriteBehindArgument writeBehindArgument;
 	
 	protected StoreArgument(StoreName name, DatabaseArgument argument){
 		this.name = name;
@@ -52,6 +57,14 @@ public class StoreArgument{
 		return reportingArgument;
 	}
 
+	protected void setWriteBehindArgument(WriteBehindArgument writeBehindArgument){
+		this.writeBehindArgument = writeBehindArgument;
+	}
+
+	protected WriteBehindArgument getWriteBehindArgument(){
+		return writeBehindArgument;
+	}
+
 	@Override
 	public int hashCode(){
 		final int prime = 31;
@@ -59,6 +72,7 @@ public class StoreArgument{
 		result = prime * result + ((argument == null) ? 0 : argument.hashCode());
 		result = prime * result + ((name == null) ? 0 : name.hashCode());
 		result = prime * result + ((reportingArgument == null) ? 0 : reportingArgument.hashCode());
+		result = prime * result + ((writeBehindArgument == null) ? 0 : writeBehindArgument.hashCode());
 		return result;
 	}
 
@@ -83,12 +97,17 @@ public class StoreArgument{
 				return false;
 		}else if(!reportingArgument.equals(other.reportingArgument))
 			return false;
+		if(writeBehindArgument == null){
+			if(other.writeBehindArgument != null)
+				return false;
+		}else if(!writeBehindArgument.equals(other.writeBehindArgument))
+			return false;
 		return true;
 	}
 
 	@Override
 	public String toString(){
 		return "StoreArgument [name=" + name + ", argument=" + argument + ", reportingArgument=" + reportingArgument
-				+ "]";
+				+ ", writeBehindArgument=" + writeBehindArgument + "]";
 	}
 }
\ No newline at end of file
@@ -25,6 +25,8 @@ import spade.utility.Result;
 import spade.utility.map.external.store.db.DatabaseArgument;
 import spade.utility.map.external.store.db.DatabaseHandle;
 import spade.utility.map.external.store.db.DatabaseManager;
+import spade.utility.map.external.store.db.WriteBehindArgument;
+import spade.utility.map.external.store.db.WriteBehindDatabaseHandle;
 import spade.utility.profile.ReportingArgument;
 
 /**
@@ -62,9 +64,15 @@ public class StoreManager{
 						if(dbArgumentResult.error){
 							return Result.failed("Failed argument parsing for store: " + storeName, dbArgumentResult);
 						}else{
-							storeArgument = new StoreArgument(storeName, dbArgumentResult.result);
-							storeArgument.setReportingArgument(reportingArgument);
-							return Result.successful(storeArgument);
+							Result<WriteBehindArgument> writeBehindResult = WriteBehindArgument.parseWriteBehindArgument(storeArgumentString);
+							if(writeBehindResult.error){
+								return Result.failed("Failed to parse write-behind argument", writeBehindResult);
+							}else{
+								storeArgument = new StoreArgument(storeName, dbArgumentResult.result);
+								storeArgument.setReportingArgument(reportingArgument);
+								storeArgument.setWriteBehindArgument(writeBehindResult.result);
+								return Result.successful(storeArgument);
+							}
 						}
 					}
 				}
@@ -104,6 +112,9 @@ public class StoreManager{
 							return Result.failed("Database open failed", dbHandleResult);
 						}else{
 							DatabaseHandle dbHandle = dbHandleResult.result;
+							if(storeArgument.getWriteBehindArgument() != null){
+								dbHandle = new WriteBehindDatabaseHandle(dbHandle, storeArgument.getWriteBehindArgument());
+							}
 							Store<K, V> store = new DBStore<K, V>(dbHandle, keyConverter, valueConverter);
 							if(storeArgument.getReportingArgument() != null){
 								store = new ProfiledStore<K, V>(store, storeArgument.getReportingArgument());
@@ -25,12 +25,14 @@ import java.util.logging.Logger;
 import spade.utility.map.external.store.db.DatabaseManager;
 import spade.utility.map.external.store.db.berkeleydb.BerkeleyDBManager;
 import spade.utility.map.external.store.db.leveldb.LevelDBManager;
+import spade.utility.map.external.store.db.leveldb.SharedLevelDBManager;
 
 /**
  * Available stores
  */
 public enum StoreName{
-	BerkeleyDB(BerkeleyDBManager.instance), LevelDB(LevelDBManager.instance);
+	BerkeleyDB(BerkeleyDBManager.instance), LevelDB(LevelDBManager.instance),
+	SharedLevelDB(SharedLevelDBManager.instance);
 	
 	protected final DatabaseManager dbManager;
 	private StoreName(DatabaseManager dbManager){
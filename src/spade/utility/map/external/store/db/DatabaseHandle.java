@@ -20,6 +20,8 @@
 package spade.utility.map.external.store.db;
 
 import java.math.BigInteger;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.List;
 
 /**
  * A key value based database handle to be used by the external map
@@ -49,6 +51,37 @@ public interface DatabaseHandle{
 	 * @throws Exception any exception by the underlying database
 	 */
 	public void remove(byte[] key) throws Exception;
+	/**
+	 * Put or remove all the keys in the order given. A NULL value means remove the key.
+	 * Written together if supported by the underlying database
+	 * 
+	 * @param batch list of key value pairs
+	 * @throws Exception any exception by the underlying database
+	 */
+	public void writeBatch(List<SimpleEntry<byte[], byte[]>> batch) throws Exception;
+	/**
+	 * Returns the values for 'keys' in the order of 'keys'. NULL for a key not found.
+	 * The keys are read in sorted order
+	 * 
+	 * @param keys list of keys
+	 * @return list of values/NULLs
+	 * @throws Exception any exception by the underlying database
+	 */
+	public List<byte[]> multiGet(List<byte[]> keys) throws Exception;
+	/**
+	 * Put all the key value pairs. Written in sorted order of keys and together if supported by the underlying database
+	 * 
+	 * @param entries list of key value pairs. Values must be NON-NULL
+	 * @throws Exception any exception by the underlying database
+	 */
+	public void multiPut(List<SimpleEntry<byte[], byte[]>> entries) throws Exception;
+	/**
+	 * Remove all the keys. Removed in sorted order and together if supported by the underlying database
+	 * 
+	 * @param keys list of keys
+	 * @throws Exception any exception by the underlying database
+	 */
+	public void multiRemove(List<byte[]> keys) throws Exception;
 	/**
 	 * Returns the size in bytes of the database on disk
 	 * @return size in bytes on disk
@@ -0,0 +1,95 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.utility.map.external.store.db;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Sorting of key batches in the order used by LevelDB and BerkeleyDB (unsigned lexicographic) so that a batch is
+ * read and written in the order of the keys on disk
+ */
+public class KeyOrder{
+
+	public static final Comparator<byte[]> comparator = new Comparator<byte[]>(){
+		@Override
+		public int compare(final byte[] a, final byte[] b){
+			final int length = Math.min(a.length, b.length);
+			for(int i = 0; i < length; i++){
+				final int difference = (a[i] & 0xff) - (b[i] & 0xff);
+				if(difference != 0){
+					return difference;
+				}
+			}
+			return a.length - b.length;
+		}
+	};
+
+	/**
+	 * @param keys list of keys
+	 * @return Indices of the keys in the sorted order of the keys
+	 */
+	public static Integer[] sortedIndices(final List<byte[]> keys){
+		final Integer[] indices = new Integer[keys.size()];
+		for(int i = 0; i < indices.length; i++){
+			indices[i] = i;
+		}
+		Arrays.sort(indices, new Comparator<Integer>(){
+			@Override
+			public int compare(final Integer a, final Integer b){
+				return comparator.compare(keys.get(a), keys.get(b));
+			}
+		});
+		return indices;
+	}
+
+	/**
+	 * The sort is stable so the last of the duplicate keys is still written last
+	 * 
+	 * @param entries list of key value pairs
+	 * @return Copy of the list sorted by key
+	 */
+	public static List<SimpleEntry<byte[], byte[]>> sortedEntries(final List<SimpleEntry<byte[], byte[]>> entries){
+		final List<SimpleEntry<byte[], byte[]>> sorted = new ArrayList<SimpleEntry<byte[], byte[]>>(entries);
+		Collections.sort(sorted, new Comparator<SimpleEntry<byte[], byte[]>>(){
+			@Override
+			public int compare(final SimpleEntry<byte[], byte[]> a, final SimpleEntry<byte[], byte[]> b){
+				return comparator.compare(a.getKey(), b.getKey());
+			}
+		});
+		return sorted;
+	}
+
+	/**
+	 * @param keys list of keys
+	 * @return Sorted list of key value pairs with NULL values which means remove in 'writeBatch'
+	 */
+	public static List<SimpleEntry<byte[], byte[]>> sortedRemoves(final List<byte[]> keys){
+		final List<SimpleEntry<byte[], byte[]>> entries = new ArrayList<SimpleEntry<byte[], byte[]>>(keys.size());
+		for(final byte[] key : keys){
+			entries.add(new SimpleEntry<byte[], byte[]>(key, null));
+		}
+		return sortedEntries(entries);
+	}
+}
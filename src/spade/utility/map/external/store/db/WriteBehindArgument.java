@@ -0,0 +1,131 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.utility.map.external.store.db;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import spade.utility.HelperFunctions;
+import spade.utility.Result;
+
+/**
+ * Used to define arguments for writing to the database in batches on a background thread
+ */
+public class WriteBehindArgument{
+
+	public static final String keyWriteBehindBatchSize = "writeBehindBatchSize",
+						keyWriteBehindBatches = "writeBehindBatches";
+
+	public static final int defaultWriteBehindBatches = 4;
+
+	/**
+	 * Number of puts and removes to write to the database together
+	 */
+	public final int batchSize;
+	/**
+	 * Maximum number of full batches waiting to be written before the caller is blocked
+	 */
+	public final int batches;
+
+	/**
+	 * @param batchSize number of puts and removes in a batch
+	 * @param batches maximum number of batches waiting to be written
+	 */
+	public WriteBehindArgument(int batchSize, int batches){
+		this.batchSize = batchSize;
+		this.batches = batches;
+	}
+
+	@Override
+	public int hashCode(){
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + batchSize;
+		result = prime * result + batches;
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj){
+		if(this == obj)
+			return true;
+		if(obj == null)
+			return false;
+		if(getClass() != obj.getClass())
+			return false;
+		WriteBehindArgument other = (WriteBehindArgument)obj;
+		if(batchSize != other.batchSize)
+			return false;
+		if(batches != other.batches)
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString(){
+		return "WriteBehindArgument [batchSize=" + batchSize + ", batches=" + batches + "]";
+	}
+
+	public static Result<WriteBehindArgument> parseWriteBehindArgument(final String argumentString){
+		if(HelperFunctions.isNullOrEmpty(argumentString)){
+			return Result.successful(null);
+		}else{
+			Result<HashMap<String, String>> mapResult = HelperFunctions.parseKeysValuesInString(argumentString);
+			if(mapResult.error){
+				return Result.failed("Failed to parse map from argument string", mapResult);
+			}else{
+				return parseWriteBehindArgument(mapResult.result);
+			}
+		}
+	}
+
+	/**
+	 * Returns NULL if 'writeBehindBatchSize' is not specified i.e. write-behind is disabled
+	 *
+	 * @param map arguments
+	 * @return NULL, WriteBehindArgument or error
+	 */
+	public static Result<WriteBehindArgument> parseWriteBehindArgument(final Map<String, String> map){
+		if(map == null){
+			return Result.successful(null);
+		}
+		final String batchSizeString = map.get(keyWriteBehindBatchSize);
+		final String batchesString = map.get(keyWriteBehindBatches);
+		if(batchSizeString == null){
+			if(batchesString != null){
+				return Result.failed("Must specify '"+keyWriteBehindBatchSize+"' with '"+keyWriteBehindBatches+"'");
+			}
+			return Result.successful(null);
+		}
+		final Result<Long> batchSizeResult = HelperFunctions.parseLong(batchSizeString, 10, 1, Integer.MAX_VALUE);
+		if(batchSizeResult.error){
+			return Result.failed("Invalid '"+keyWriteBehindBatchSize+"'", batchSizeResult);
+		}
+		int batches = defaultWriteBehindBatches;
+		if(batchesString != null){
+			final Result<Long> batchesResult = HelperFunctions.parseLong(batchesString, 10, 1, Integer.MAX_VALUE);
+			if(batchesResult.error){
+				return Result.failed("Invalid '"+keyWriteBehindBatches+"'", batchesResult);
+			}
+			batches = batchesResult.result.intValue();
+		}
+		return Result.successful(new WriteBehindArgument(batchSizeResult.result.intValue(), batches));
+	}
+}
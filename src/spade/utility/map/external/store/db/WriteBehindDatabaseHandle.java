@@ -0,0 +1,310 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.utility.map.external.store.db;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Database handle which collects puts and removes into batches and writes the batches to the wrapped database
+ * handle on a background thread.
+ *
+ * Puts and removes which have not been written yet are returned by 'get' and 'contains'.
+ * The caller is blocked on put/remove if the maximum number of batches are already waiting to be written.
+ * A failure to write a batch is logged and thrown from the next put/remove/flush/close. The entries of the failed
+ * batch remain readable and are written again with the next batch (or flush) until written. An entry which was put
+ * or removed again since is not written again because the newer one is.
+ */
+public class WriteBehindDatabaseHandle implements DatabaseHandle{
+
+	private static final Logger logger = Logger.getLogger(WriteBehindDatabaseHandle.class.getName());
+
+	public final WriteBehindArgument argument;
+
+	private final DatabaseHandle dbHandle;
+
+	/**
+	 * The latest put or remove for a key not written to the database yet
+	 */
+	private final ConcurrentHashMap<ByteBuffer, Pending> pending = new ConcurrentHashMap<ByteBuffer, Pending>();
+
+	private final BlockingQueue<List<Pending>> batches;
+	private final List<Pending> endOfBatches = new ArrayList<Pending>();
+	private List<Pending> batch;
+
+	private final Object batchesLock = new Object();
+	private int unwrittenBatches = 0;
+
+	private volatile Exception writeException = null;
+
+	/**
+	 * Entries of the batches which failed to be written. Only used by the writer thread
+	 */
+	private List<Pending> failedEntries = new ArrayList<Pending>();
+	private volatile boolean hasFailedEntries = false;
+
+	private final Thread writerThread;
+
+	/**
+	 * @param dbHandle database handle to write to. NON-NULL
+	 * @param argument batch size and the number of batches. NON-NULL
+	 */
+	public WriteBehindDatabaseHandle(final DatabaseHandle dbHandle, final WriteBehindArgument argument){
+		this.dbHandle = dbHandle;
+		this.argument = argument;
+		this.batches = new ArrayBlockingQueue<List<Pending>>(argument.batches);
+		this.batch = new ArrayList<Pending>(argument.batchSize);
+		this.writerThread = new Thread(new Runnable(){
+			@Override
+			public void run(){
+				writeBatches();
+			}
+		}, "WriteBehind-" + dbHandle);
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+
+	private void writeBatches(){
+		while(true){
+			final List<Pending> batch;
+			try{
+				batch = batches.take();
+			}catch(InterruptedException e){
+				logger.log(Level.WARNING, "Write-behind thread interrupted. Unwritten batches: " + unwrittenBatches);
+				break;
+			}
+			if(batch == endOfBatches){
+				break;
+			}
+			final List<Pending> toWrite = new ArrayList<Pending>(failedEntries.size() + batch.size());
+			for(final Pending entry : failedEntries){
+				// Only if not put or removed again after the failed batch
+				if(pending.get(entry.wrappedKey) == entry){
+					toWrite.add(entry);
+				}
+			}
+			toWrite.addAll(batch);
+			try{
+				final List<SimpleEntry<byte[], byte[]>> entries = new ArrayList<SimpleEntry<byte[], byte[]>>(toWrite.size());
+				for(final Pending entry : toWrite){
+					entries.add(new SimpleEntry<byte[], byte[]>(entry.key, entry.value));
+				}
+				dbHandle.writeBatch(entries);
+				for(final Pending entry : toWrite){
+					// Only if not put or removed again after this batch
+					pending.remove(entry.wrappedKey, entry);
+				}
+				failedEntries = new ArrayList<Pending>();
+				hasFailedEntries = false;
+			}catch(Exception e){
+				logger.log(Level.SEVERE, "Failed to write batch of size " + toWrite.size() + " to database: " + dbHandle
+						+ ". Retried with the next batch", e);
+				failedEntries = toWrite;
+				hasFailedEntries = true;
+				writeException = e;
+			}finally{
+				synchronized(batchesLock){
+					unwrittenBatches--;
+					batchesLock.notifyAll();
+				}
+			}
+		}
+	}
+
+	private void throwWriteException() throws Exception{
+		final Exception exception = writeException;
+		if(exception != null){
+			writeException = null;
+			throw new Exception("Failed to write batch to database", exception);
+		}
+	}
+
+	private void add(final byte[] key, final byte[] value) throws Exception{
+		final Pending entry = new Pending(key, value);
+		pending.put(entry.wrappedKey, entry);
+		batch.add(entry);
+		if(batch.size() >= argument.batchSize){
+			submitBatch(false);
+		}
+		throwWriteException();
+	}
+
+	/**
+	 * @param retry submit even if empty so that the failed entries are written again
+	 */
+	private void submitBatch(final boolean retry) throws Exception{
+		if(batch.isEmpty() && !(retry && hasFailedEntries)){
+			return;
+		}
+		synchronized(batchesLock){
+			unwrittenBatches++;
+		}
+		batches.put(batch);
+		batch = new ArrayList<Pending>(argument.batchSize);
+	}
+
+	/**
+	 * Submit the current (incomplete) batch, and the failed entries, and wait for all the batches to be written to the
+	 * database
+	 *
+	 * @throws Exception failure in writing any batch since the last check
+	 */
+	public synchronized void flush() throws Exception{
+		submitBatch(true);
+		synchronized(batchesLock){
+			while(unwrittenBatches > 0){
+				batchesLock.wait();
+			}
+		}
+		throwWriteException();
+	}
+
+	@Override
+	public synchronized void put(byte[] key, byte[] value) throws Exception{
+		add(key, value);
+	}
+
+	@Override
+	public synchronized void remove(byte[] key) throws Exception{
+		add(key, null);
+	}
+
+	@Override
+	public synchronized void writeBatch(List<SimpleEntry<byte[], byte[]>> batch) throws Exception{
+		for(final SimpleEntry<byte[], byte[]> entry : batch){
+			add(entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	public byte[] get(byte[] key) throws Exception{
+		final Pending entry = pending.get(ByteBuffer.wrap(key));
+		if(entry != null){
+			return entry.value;
+		}
+		return dbHandle.get(key);
+	}
+
+	@Override
+	public boolean contains(byte[] key) throws Exception{
+		final Pending entry = pending.get(ByteBuffer.wrap(key));
+		if(entry != null){
+			return entry.value != null;
+		}
+		return dbHandle.contains(key);
+	}
+
+	/**
+	 * Keys not waiting to be written are read from the wrapped database handle together
+	 */
+	@Override
+	public List<byte[]> multiGet(List<byte[]> keys) throws Exception{
+		final List<byte[]> values = new ArrayList<byte[]>(keys.size());
+		final List<Integer> missingIndices = new ArrayList<Integer>();
+		final List<byte[]> missingKeys = new ArrayList<byte[]>();
+		for(final byte[] key : keys){
+			final Pending entry = pending.get(ByteBuffer.wrap(key));
+			if(entry != null){
+				values.add(entry.value);
+			}else{
+				missingIndices.add(values.size());
+				missingKeys.add(key);
+				values.add(null);
+			}
+		}
+		if(!missingKeys.isEmpty()){
+			final List<byte[]> missingValues = dbHandle.multiGet(missingKeys);
+			for(int i = 0; i < missingKeys.size(); i++){
+				values.set(missingIndices.get(i), missingValues.get(i));
+			}
+		}
+		return values;
+	}
+
+	@Override
+	public synchronized void multiPut(List<SimpleEntry<byte[], byte[]>> entries) throws Exception{
+		writeBatch(KeyOrder.sortedEntries(entries));
+	}
+
+	@Override
+	public synchronized void multiRemove(List<byte[]> keys) throws Exception{
+		writeBatch(KeyOrder.sortedRemoves(keys));
+	}
+
+	@Override
+	public BigInteger sizeOnDiskInBytes() throws Exception{
+		return dbHandle.sizeOnDiskInBytes();
+	}
+
+	@Override
+	public synchronized void clear() throws Exception{
+		try{
+			flush();
+		}finally{
+			pending.clear();
+			dbHandle.clear();
+		}
+	}
+
+	/**
+	 * Writes all the batches, stops the background thread and then closes the wrapped database handle
+	 */
+	@Override
+	public synchronized void close() throws Exception{
+		try{
+			flush();
+		}finally{
+			try{
+				batches.put(endOfBatches);
+				writerThread.join();
+			}finally{
+				pending.clear();
+				dbHandle.close();
+			}
+		}
+	}
+
+	@Override
+	public String toString(){
+		return "WriteBehindDatabaseHandle [argument=" + argument + ", dbHandle=" + dbHandle + "]";
+	}
+
+	/**
+	 * Put or remove (NULL value) waiting to be written
+	 */
+	private static final class Pending{
+		private final ByteBuffer wrappedKey;
+		private final byte[] key;
+		private final byte[] value;
+		private Pending(final byte[] key, final byte[] value){
+			this.key = key;
+			this.value = value;
+			this.wrappedKey = ByteBuffer.wrap(key);
+		}
+	}
+}
@@ -21,6 +21,9 @@ package spade.utility.map.external.store.db.berkeleydb;
 
 import java.io.File;
 import java.math.BigInteger;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.Arrays;
+import java.util.List;
 
 import org.apache.commons.io.FileUtils;
 
@@ -33,6 +36,7 @@ import com.sleepycat.je.OperationStatus;
 
 import spade.utility.HelperFunctions;
 import spade.utility.map.external.store.db.DatabaseHandle;
+import spade.utility.map.external.store.db.KeyOrder;
 
 /**
  * BerkeleyDB database handle managed by the BerkeleyDBManager
@@ -118,6 +122,39 @@ public class BerkeleyDBHandle implements DatabaseHandle{
 		database.delete(null, keyEntry);
 	}
 
+	/**
+	 * The environment is not transactional. The entries are written one after the other.
+	 */
+	@Override
+	public void writeBatch(List<SimpleEntry<byte[], byte[]>> batch) throws Exception{
+		for(final SimpleEntry<byte[], byte[]> entry : batch){
+			if(entry.getValue() == null){
+				remove(entry.getKey());
+			}else{
+				put(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	@Override
+	public List<byte[]> multiGet(List<byte[]> keys) throws Exception{
+		final byte[][] values = new byte[keys.size()][];
+		for(final int i : KeyOrder.sortedIndices(keys)){
+			values[i] = get(keys.get(i));
+		}
+		return Arrays.asList(values);
+	}
+
+	@Override
+	public void multiPut(List<SimpleEntry<byte[], byte[]>> entries) throws Exception{
+		writeBatch(KeyOrder.sortedEntries(entries));
+	}
+
+	@Override
+	public void multiRemove(List<byte[]> keys) throws Exception{
+		writeBatch(KeyOrder.sortedRemoves(keys));
+	}
+
 	@Override
 	public BigInteger sizeOnDiskInBytes() throws Exception{
 		if(environmentHandle == null){
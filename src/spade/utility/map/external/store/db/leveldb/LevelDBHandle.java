@@ -23,13 +23,20 @@ import static org.fusesource.leveldbjni.JniDBFactory.factory;
 
 import java.io.File;
 import java.math.BigInteger;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.Arrays;
+import java.util.List;
 
 import org.apache.commons.io.FileUtils;
 import org.iq80.leveldb.DB;
 import org.iq80.leveldb.Options;
+import org.iq80.leveldb.ReadOptions;
+import org.iq80.leveldb.Snapshot;
+import org.iq80.leveldb.WriteBatch;
 
 import spade.utility.HelperFunctions;
 import spade.utility.map.external.store.db.DatabaseHandle;
+import spade.utility.map.external.store.db.KeyOrder;
 
 /**
  * LevelDB handle created by LevelDBManager
@@ -75,6 +82,51 @@ public class LevelDBHandle implements DatabaseHandle{
 		db.delete(key);
 	}
 
+	@Override
+	public void writeBatch(List<SimpleEntry<byte[], byte[]>> batch) throws Exception{
+		final WriteBatch writeBatch = db.createWriteBatch();
+		try{
+			for(final SimpleEntry<byte[], byte[]> entry : batch){
+				if(entry.getValue() == null){
+					writeBatch.delete(entry.getKey());
+				}else{
+					writeBatch.put(entry.getKey(), entry.getValue());
+				}
+			}
+			db.write(writeBatch);
+		}finally{
+			writeBatch.close();
+		}
+	}
+
+	/**
+	 * All the keys are read from the same snapshot
+	 */
+	@Override
+	public List<byte[]> multiGet(List<byte[]> keys) throws Exception{
+		final byte[][] values = new byte[keys.size()][];
+		final Snapshot snapshot = db.getSnapshot();
+		try{
+			final ReadOptions readOptions = new ReadOptions().snapshot(snapshot);
+			for(final int i : KeyOrder.sortedIndices(keys)){
+				values[i] = db.get(keys.get(i), readOptions);
+			}
+		}finally{
+			snapshot.close();
+		}
+		return Arrays.asList(values);
+	}
+
+	@Override
+	public void multiPut(List<SimpleEntry<byte[], byte[]>> entries) throws Exception{
+		writeBatch(KeyOrder.sortedEntries(entries));
+	}
+
+	@Override
+	public void multiRemove(List<byte[]> keys) throws Exception{
+		writeBatch(KeyOrder.sortedRemoves(keys));
+	}
+
 	@Override
 	public BigInteger sizeOnDiskInBytes() throws Exception{
 		if(HelperFunctions.isNullOrEmpty(dbPath)){
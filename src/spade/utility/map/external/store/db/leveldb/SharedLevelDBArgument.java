@@ -0,0 +1,109 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.utility.map.external.store.db.leveldb;
+
+import spade.utility.map.external.store.db.DatabaseArgument;
+
+/**
+ *	Arguments necessary to create a keyspace handle in a LevelDB shared by many external maps using SharedLevelDBManager
+ */
+public class SharedLevelDBArgument extends DatabaseArgument{
+	
+	public static final String keyDatabasePath = "databasePath",
+			keyKeyspace = "keyspace",
+			keyBlockCacheMegabytes = "blockCacheMegabytes",
+			keyWriteBufferMegabytes = "writeBufferMegabytes";
+	
+	public static final int defaultBlockCacheMegabytes = 8,
+			defaultWriteBufferMegabytes = 4;
+	
+	/**
+	 * Directory path of the database
+	 */
+	public final String databasePath;
+	/**
+	 * Name of the keyspace in the database
+	 */
+	public final String keyspace;
+	/**
+	 * Used only by the first keyspace which opens the database
+	 */
+	public final int blockCacheMegabytes, writeBufferMegabytes;
+	
+	/**
+	 * @param databasePath directory path
+	 * @param keyspace name of the keyspace
+	 * @param deleteOnClose delete the keyspace on close or not
+	 * @param blockCacheMegabytes size of the block cache shared by all keyspaces
+	 * @param writeBufferMegabytes size of the write buffer shared by all keyspaces
+	 */
+	protected SharedLevelDBArgument(String databasePath, String keyspace, boolean deleteOnClose,
+			int blockCacheMegabytes, int writeBufferMegabytes){
+		super(deleteOnClose);
+		this.databasePath = databasePath;
+		this.keyspace = keyspace;
+		this.blockCacheMegabytes = blockCacheMegabytes;
+		this.writeBufferMegabytes = writeBufferMegabytes;
+	}
+	
+	@Override
+	public int hashCode(){
+		final int prime = 31;
+		int result = super.hashCode();
+		result = prime * result + ((databasePath == null) ? 0 : databasePath.hashCode());
+		result = prime * result + ((keyspace == null) ? 0 : keyspace.hashCode());
+		result = prime * result + blockCacheMegabytes;
+		result = prime * result + writeBufferMegabytes;
+		return result;
+	}
+	
+	@Override
+	public boolean equals(Object obj){
+		if(this == obj)
+			return true;
+		if(!super.equals(obj))
+			return false;
+		if(getClass() != obj.getClass())
+			return false;
+		SharedLevelDBArgument other = (SharedLevelDBArgument)obj;
+		if(databasePath == null){
+			if(other.databasePath != null)
+				return false;
+		}else if(!databasePath.equals(other.databasePath))
+			return false;
+		if(keyspace == null){
+			if(other.keyspace != null)
+				return false;
+		}else if(!keyspace.equals(other.keyspace))
+			return false;
+		if(blockCacheMegabytes != other.blockCacheMegabytes)
+			return false;
+		if(writeBufferMegabytes != other.writeBufferMegabytes)
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString(){
+		return "SharedLevelDBArgument [databasePath=" + databasePath + ", keyspace=" + keyspace 
+				+ ", blockCacheMegabytes=" + blockCacheMegabytes + ", writeBufferMegabytes=" + writeBufferMegabytes
+				+ ", deleteOnClose=" + deleteOnClose + "]";
+	}
+}
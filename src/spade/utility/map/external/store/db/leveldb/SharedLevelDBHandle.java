@@ -0,0 +1,240 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.utility.map.external.store.db.leveldb;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.DBIterator;
+import org.iq80.leveldb.Range;
+import org.iq80.leveldb.ReadOptions;
+import org.iq80.leveldb.Snapshot;
+import org.iq80.leveldb.WriteBatch;
+
+import spade.utility.map.external.store.db.DatabaseHandle;
+import spade.utility.map.external.store.db.KeyOrder;
+
+/**
+ * Handle of a keyspace in a LevelDB shared by many external maps. Created by SharedLevelDBManager.
+ * 
+ * All keys of the keyspace are prefixed with the name of the keyspace followed by a 0 byte.
+ */
+public class SharedLevelDBHandle implements DatabaseHandle{
+	
+	private static final int deleteBatchSize = 10000;
+	
+	public final String dbPath;
+	public final String keyspace;
+	public final boolean deleteOnClose;
+	private final DB db;
+	
+	/**
+	 * Prefix of the keys in the keyspace
+	 */
+	private final byte[] prefix;
+	/**
+	 * The first key after all the keys of the keyspace
+	 */
+	private final byte[] limit;
+	
+	/**
+	 * @param dbPath directory path
+	 * @param keyspace name of the keyspace. Must not contain the character 0
+	 * @param deleteOnClose delete the keyspace on close or not
+	 * @param db LevelDB database object shared by all keyspaces
+	 */
+	protected SharedLevelDBHandle(String dbPath, String keyspace, boolean deleteOnClose, DB db){
+		this.dbPath = dbPath;
+		this.keyspace = keyspace;
+		this.deleteOnClose = deleteOnClose;
+		this.db = db;
+		final byte[] name = keyspace.getBytes(StandardCharsets.UTF_8);
+		this.prefix = Arrays.copyOf(name, name.length + 1);
+		this.limit = Arrays.copyOf(name, name.length + 1);
+		this.limit[name.length] = 1;
+	}
+	
+	private byte[] prefixed(final byte[] key){
+		final byte[] prefixedKey = Arrays.copyOf(prefix, prefix.length + key.length);
+		System.arraycopy(key, 0, prefixedKey, prefix.length, key.length);
+		return prefixedKey;
+	}
+
+	@Override
+	public void put(byte[] key, byte[] value) throws Exception{
+		db.put(prefixed(key), value);
+	}
+
+	@Override
+	public byte[] get(byte[] key) throws Exception{
+		return db.get(prefixed(key));
+	}
+
+	@Override
+	public void remove(byte[] key) throws Exception{
+		db.delete(prefixed(key));
+	}
+
+	@Override
+	public boolean contains(byte[] key) throws Exception{
+		return get(key) != null;
+	}
+
+	@Override
+	public void writeBatch(List<SimpleEntry<byte[], byte[]>> batch) throws Exception{
+		final WriteBatch writeBatch = db.createWriteBatch();
+		try{
+			for(final SimpleEntry<byte[], byte[]> entry : batch){
+				if(entry.getValue() == null){
+					writeBatch.delete(prefixed(entry.getKey()));
+				}else{
+					writeBatch.put(prefixed(entry.getKey()), entry.getValue());
+				}
+			}
+			db.write(writeBatch);
+		}finally{
+			writeBatch.close();
+		}
+	}
+
+	/**
+	 * All the keys are read from the same snapshot
+	 */
+	@Override
+	public List<byte[]> multiGet(List<byte[]> keys) throws Exception{
+		final byte[][] values = new byte[keys.size()][];
+		final Snapshot snapshot = db.getSnapshot();
+		try{
+			final ReadOptions readOptions = new ReadOptions().snapshot(snapshot);
+			for(final int i : KeyOrder.sortedIndices(keys)){
+				values[i] = db.get(prefixed(keys.get(i)), readOptions);
+			}
+		}finally{
+			snapshot.close();
+		}
+		return Arrays.asList(values);
+	}
+
+	@Override
+	public void multiPut(List<SimpleEntry<byte[], byte[]>> entries) throws Exception{
+		writeBatch(KeyOrder.sortedEntries(entries));
+	}
+
+	@Override
+	public void multiRemove(List<byte[]> keys) throws Exception{
+		writeBatch(KeyOrder.sortedRemoves(keys));
+	}
+
+	/**
+	 * Approximate size of the keyspace in the table files. Does not include the recent writes still in memory
+	 */
+	@Override
+	public BigInteger sizeOnDiskInBytes() throws Exception{
+		final long[] sizes = db.getApproximateSizes(new Range(prefix, limit));
+		return BigInteger.valueOf(sizes[0]);
+	}
+
+	@Override
+	public void close() throws Exception{
+		SharedLevelDBManager.instance.closeHandle(this);
+	}
+	
+	/**
+	 * Removes all the keys of the keyspace. Other keyspaces are not affected
+	 */
+	@Override
+	public void clear() throws Exception{
+		final List<byte[]> keys = new ArrayList<byte[]>();
+		final DBIterator iterator = db.iterator();
+		try{
+			iterator.seek(prefix);
+			while(iterator.hasNext()){
+				final byte[] key = iterator.next().getKey();
+				if(KeyOrder.comparator.compare(key, limit) >= 0){
+					break;
+				}
+				keys.add(key);
+				if(keys.size() >= deleteBatchSize){
+					deleteAll(keys);
+				}
+			}
+			deleteAll(keys);
+		}finally{
+			iterator.close();
+		}
+	}
+	
+	private void deleteAll(final List<byte[]> keys) throws Exception{
+		if(keys.isEmpty()){
+			return;
+		}
+		final WriteBatch writeBatch = db.createWriteBatch();
+		try{
+			for(final byte[] key : keys){
+				writeBatch.delete(key);
+			}
+			db.write(writeBatch);
+		}finally{
+			writeBatch.close();
+		}
+		keys.clear();
+	}
+
+	@Override
+	public int hashCode(){
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((dbPath == null) ? 0 : dbPath.hashCode());
+		result = prime * result + ((keyspace == null) ? 0 : keyspace.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj){
+		if(this == obj)
+			return true;
+		if(obj == null)
+			return false;
+		if(getClass() != obj.getClass())
+			return false;
+		SharedLevelDBHandle other = (SharedLevelDBHandle)obj;
+		if(dbPath == null){
+			if(other.dbPath != null)
+				return false;
+		}else if(!dbPath.equals(other.dbPath))
+			return false;
+		if(keyspace == null){
+			if(other.keyspace != null)
+				return false;
+		}else if(!keyspace.equals(other.keyspace))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString(){
+		return "SharedLevelDBHandle [deleteOnClose=" + deleteOnClose + ", dbPath=" + dbPath + ", keyspace=" + keyspace + "]";
+	}
+}
@@ -0,0 +1,341 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package spade.utility.map.external.store.db.leveldb;
+
+import static org.fusesource.leveldbjni.JniDBFactory.factory;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.DBIterator;
+import org.iq80.leveldb.Options;
+
+import spade.utility.FileUtility;
+import spade.utility.HelperFunctions;
+import spade.utility.Result;
+import spade.utility.map.external.store.db.DatabaseArgument;
+import spade.utility.map.external.store.db.DatabaseHandle;
+import spade.utility.map.external.store.db.DatabaseManager;
+
+/**
+ * DatabaseManager for keyspaces in LevelDB databases shared by many external maps.
+ * 
+ * A database is opened once with one block cache, write buffer, log and compaction thread for all of its keyspaces.
+ * It is closed when the last of its keyspaces is closed, and deleted too if no keys are left in it.
+ * Singleton
+ */
+public class SharedLevelDBManager extends DatabaseManager{
+
+	private static final Logger logger = Logger.getLogger(SharedLevelDBManager.class.getName());
+	
+	public static final SharedLevelDBManager instance = new SharedLevelDBManager();
+	private SharedLevelDBManager(){}
+	
+	/**
+	 * Map from directory path to the opened database
+	 */
+	private final Map<String, SharedDatabase> databases = new HashMap<String, SharedDatabase>();
+	
+	/**
+	 * Create SharedLevelDBArgument.
+	 * Sample: "databasePath=<dirPath> keyspace=<name> deleteOnClose=<true/false> [blockCacheMegabytes=<1-n> writeBufferMegabytes=<1-n>]"
+	 * 
+	 * If 'databasePath' directory does not exist then it must be creatable.
+	 * 'deleteOnClose' would delete the keyspace on handle close if true.
+	 * 
+	 * @param arguments See above sample
+	 */
+	@Override
+	public synchronized Result<DatabaseArgument> parseArgument(String arguments){
+		if(HelperFunctions.isNullOrEmpty(arguments)){
+			return Result.failed("NULL/Empty arguments");
+		}else{
+			Result<HashMap<String, String>> mapResult = HelperFunctions.parseKeysValuesInString(arguments);
+			if(mapResult.error){
+				return Result.failed("Failed to parse arguments to map", mapResult);
+			}else{
+				return parseArgument(mapResult.result);
+			}
+		}
+	}
+	
+	/**
+	 * Create SharedLevelDBArgument.
+	 * Must contains valid values for keys: 'databasePath', 'keyspace', 'deleteOnClose'.
+	 * Optional keys: 'blockCacheMegabytes' (default: 8), 'writeBufferMegabytes' (default: 4).
+	 * All values must be non-null and non-empty.
+	 */
+	@Override
+	public synchronized Result<DatabaseArgument> parseArgument(Map<String, String> arguments){
+		if(arguments == null){
+			return Result.failed("NULL arguments map");
+		}else if(arguments.isEmpty()){
+			return Result.failed("Empty arguments map");
+		}else{
+			final String dbPathUser = arguments.get(SharedLevelDBArgument.keyDatabasePath);
+			if(HelperFunctions.isNullOrEmpty(dbPathUser)){
+				return Result.failed("NULL/Empty '"+SharedLevelDBArgument.keyDatabasePath+"'");
+			}
+			final String keyspace = arguments.get(SharedLevelDBArgument.keyKeyspace);
+			if(HelperFunctions.isNullOrEmpty(keyspace)){
+				return Result.failed("NULL/Empty '"+SharedLevelDBArgument.keyKeyspace+"'");
+			}else if(keyspace.indexOf('\0') > -1){
+				return Result.failed("'"+SharedLevelDBArgument.keyKeyspace+"' must not contain the character 0");
+			}
+			Result<Boolean> deleteDbOnCloseResult = HelperFunctions.parseBoolean(
+					arguments.get(SharedLevelDBArgument.keyDeleteDbOnClose)
+					);
+			if(deleteDbOnCloseResult.error){
+				return Result.failed("Failed to parse '"+SharedLevelDBArgument.keyDeleteDbOnClose+"'", deleteDbOnCloseResult);
+			}
+			int blockCacheMegabytes = SharedLevelDBArgument.defaultBlockCacheMegabytes;
+			final String blockCacheString = arguments.get(SharedLevelDBArgument.keyBlockCacheMegabytes);
+			if(blockCacheString != null){
+				Result<Long> blockCacheResult = HelperFunctions.parseLong(blockCacheString, 10, 1, 1024 * 1024);
+				if(blockCacheResult.error){
+					return Result.failed("Failed to parse '"+SharedLevelDBArgument.keyBlockCacheMegabytes+"'", blockCacheResult);
+				}
+				blockCacheMegabytes = blockCacheResult.result.intValue();
+			}
+			int writeBufferMegabytes = SharedLevelDBArgument.defaultWriteBufferMegabytes;
+			final String writeBufferString = arguments.get(SharedLevelDBArgument.keyWriteBufferMegabytes);
+			if(writeBufferString != null){
+				Result<Long> writeBufferResult = HelperFunctions.parseLong(writeBufferString, 10, 1, 1024);
+				if(writeBufferResult.error){
+					return Result.failed("Failed to parse '"+SharedLevelDBArgument.keyWriteBufferMegabytes+"'", writeBufferResult);
+				}
+				writeBufferMegabytes = writeBufferResult.result.intValue();
+			}
+			return Result.successful(new SharedLevelDBArgument(dbPathUser, keyspace, deleteDbOnCloseResult.result,
+					blockCacheMegabytes, writeBufferMegabytes));
+		}
+	}
+	
+	/**
+	 * Validates the passed argument as the correct argument for this database manager
+	 * 
+	 * @param genericArgument DatabaseArgument must be SharedLevelDBArgument
+	 * @return SharedLevelDBArgument object otherwise error
+	 */
+	private synchronized Result<SharedLevelDBArgument> validateArguments(final DatabaseArgument genericArgument){
+		if(genericArgument == null){
+			return Result.failed("NULL");
+		}else if(!genericArgument.getClass().equals(SharedLevelDBArgument.class)){
+			return Result.failed("Database argument class must be SharedLevelDBArgument but is '"+genericArgument.getClass()+"'");
+		}else{
+			SharedLevelDBArgument argument = (SharedLevelDBArgument)genericArgument;
+			if(HelperFunctions.isNullOrEmpty(argument.databasePath)){
+				return Result.failed("Must specify database path");
+			}else if(HelperFunctions.isNullOrEmpty(argument.keyspace)){
+				return Result.failed("Must specify keyspace");
+			}else{
+				return Result.successful(argument);
+			}
+		}
+	}
+	
+	/**
+	 * Opens the database at 'databasePath' if not opened already. If the directory does not exist then it is created.
+	 * The options of the first opener are used. A warning is logged if the options of a later opener differ.
+	 * 
+	 * @param argument valid argument
+	 * @return The opened database or error
+	 */
+	private Result<SharedDatabase> openDatabase(final SharedLevelDBArgument argument){
+		Result<String> canonicalResult = FileUtility.getCanonicalPathResult(argument.databasePath);
+		if(canonicalResult.error){
+			return Result.failed("Failed to get canonical path for '"+argument.databasePath+"'", canonicalResult);
+		}
+		final String dbPathCanonical = canonicalResult.result;
+		SharedDatabase database = databases.get(dbPathCanonical);
+		if(database != null){
+			if(database.blockCacheMegabytes != argument.blockCacheMegabytes
+					|| database.writeBufferMegabytes != argument.writeBufferMegabytes){
+				logger.log(Level.WARNING, "Ignored options for keyspace '" + argument.keyspace + "' because LevelDB at path '"
+						+ dbPathCanonical + "' already opened with different options. "
+						+ "Requested: " + SharedLevelDBArgument.keyBlockCacheMegabytes + "=" + argument.blockCacheMegabytes
+						+ ", " + SharedLevelDBArgument.keyWriteBufferMegabytes + "=" + argument.writeBufferMegabytes + ". "
+						+ "In use: " + SharedLevelDBArgument.keyBlockCacheMegabytes + "=" + database.blockCacheMegabytes
+						+ ", " + SharedLevelDBArgument.keyWriteBufferMegabytes + "=" + database.writeBufferMegabytes);
+			}
+			return Result.successful(database);
+		}
+		Result<Boolean> existsResult = FileUtility.doesPathExistResult(dbPathCanonical);
+		if(existsResult.error){
+			return Result.failed("Failed to check if database path exists", existsResult);
+		}
+		if(!existsResult.result){
+			Result<Boolean> createDirResult = FileUtility.createDirectoriesResult(dbPathCanonical);
+			if(createDirResult.error){
+				return Result.failed("Failed to create database path", createDirResult);
+			}else if(!createDirResult.result){
+				return Result.failed("Silently failed to create database path");
+			}
+		}else{
+			Result<Boolean> isDirectoryResult = FileUtility.isDirectoryResult(dbPathCanonical);
+			if(isDirectoryResult.error){
+				return Result.failed("Failed to check if database path is a directory", isDirectoryResult);
+			}else if(!isDirectoryResult.result){
+				return Result.failed("Database path is not a directory");
+			}
+		}
+		try{
+			Options options = new Options().createIfMissing(true)
+					.cacheSize(argument.blockCacheMegabytes * 1024L * 1024L)
+					.writeBufferSize(argument.writeBufferMegabytes * 1024 * 1024);
+			DB db = factory.open(new File(dbPathCanonical), options);
+			if(db == null){
+				return Result.failed("Silently failed to open database at path: '"+dbPathCanonical+"'");
+			}
+			database = new SharedDatabase(dbPathCanonical, db, argument.blockCacheMegabytes, argument.writeBufferMegabytes);
+			databases.put(dbPathCanonical, database);
+			return Result.successful(database);
+		}catch(Exception e){
+			return Result.failed("Failed to open database at path: '"+dbPathCanonical+"'", e, null);
+		}
+	}
+
+	/**
+	 * The keyspace must not be in use already.
+	 * 
+	 * @param genericArgument DatabaseArgument must be SharedLevelDBArgument
+	 * @return The SharedLevelDBHandle created from DatabaseArgument or error
+	 */
+	@Override
+	public synchronized Result<DatabaseHandle> createHandleFromArgument(final DatabaseArgument genericArgument){
+		Result<SharedLevelDBArgument> valid = validateArguments(genericArgument);
+		if(valid.error){
+			return Result.failed("Failed database handle open", valid);
+		}
+		SharedLevelDBArgument argument = valid.result;
+		Result<SharedDatabase> databaseResult = openDatabase(argument);
+		if(databaseResult.error){
+			return Result.failed("Failed database handle open", databaseResult);
+		}
+		SharedDatabase database = databaseResult.result;
+		if(database.keyspaces.get(argument.keyspace) != null){
+			return Result.failed("Keyspace '"+argument.keyspace+"' already opened and in use in database: '"+database.dbPath+"'");
+		}
+		SharedLevelDBHandle dbHandle = new SharedLevelDBHandle(database.dbPath, argument.keyspace, argument.deleteOnClose, database.db);
+		database.keyspaces.put(argument.keyspace, dbHandle);
+		return Result.successful(dbHandle);
+	}
+
+	/**
+	 * Optimistic. Cleans whatever it can while ignoring errors.
+	 * 
+	 * Delete the keyspace if deleteOnClose set to 'true'.
+	 * Close the database if no other keyspace in use, and delete it if it is empty.
+	 * 
+	 * @param genericDbHandle Must be SharedLevelDBHandle
+	 * @return true/false on successful. Error on unrecoverable error.
+	 */
+	@Override
+	public synchronized Result<Boolean> closeHandle(final DatabaseHandle genericDbHandle){
+		if(genericDbHandle == null){
+			return Result.failed("NULL database handle");
+		}else if(!genericDbHandle.getClass().equals(SharedLevelDBHandle.class)){
+			return Result.failed("Database handle class mismatch for SharedLevelDBHandle: '"+genericDbHandle.getClass()+"'");
+		}
+		SharedLevelDBHandle dbHandle = (SharedLevelDBHandle)genericDbHandle;
+		SharedDatabase database = databases.get(dbHandle.dbPath);
+		if(database == null || database.keyspaces.get(dbHandle.keyspace) != dbHandle){
+			return Result.failed("Database handle not open: " + dbHandle);
+		}
+		
+		boolean succeeded = true;
+		
+		if(dbHandle.deleteOnClose){
+			try{
+				dbHandle.clear();
+			}catch(Exception e){
+				succeeded = false;
+				logger.log(Level.WARNING, "Failed to delete keyspace '"+dbHandle.keyspace+"' in LevelDB at path: '"+dbHandle.dbPath+"'", e);
+			}
+		}
+		database.keyspaces.remove(dbHandle.keyspace);
+		
+		if(database.keyspaces.isEmpty()){
+			databases.remove(database.dbPath);
+			boolean empty = false;
+			try{
+				final DBIterator iterator = database.db.iterator();
+				try{
+					iterator.seekToFirst();
+					empty = !iterator.hasNext();
+				}finally{
+					iterator.close();
+				}
+			}catch(Exception e){
+				logger.log(Level.WARNING, "Failed to check if LevelDB is empty at path: '"+database.dbPath+"'", e);
+			}
+			try{
+				database.db.close();
+			}catch(Exception e){
+				succeeded = false;
+				logger.log(Level.WARNING, "Failed to close LevelDB at path: '"+database.dbPath+"'", e);
+			}
+			if(empty){
+				try{
+					factory.destroy(new File(database.dbPath), new Options());
+				}catch(Exception e){
+					succeeded = false;
+					logger.log(Level.WARNING, "Failed to delete LevelDB at path: '"+database.dbPath+"'", e);
+				}
+			}
+		}
+		return Result.successful(succeeded);
+	}
+
+	/**
+	 * Closes all keyspaces one by one.
+	 */
+	@Override
+	public synchronized void shutdown(){
+		Map<String, SharedDatabase> copy = new HashMap<String, SharedDatabase>(databases);
+		for(SharedDatabase database : copy.values()){
+			for(SharedLevelDBHandle dbHandle : new HashMap<String, SharedLevelDBHandle>(database.keyspaces).values()){
+				closeHandle(dbHandle);
+			}
+		}
+		databases.clear();
+	}
+	
+	/**
+	 * An opened database and the handles of its keyspaces in use
+	 */
+	private static final class SharedDatabase{
+		private final String dbPath;
+		private final DB db;
+		private final int blockCacheMegabytes;
+		private final int writeBufferMegabytes;
+		private final Map<String, SharedLevelDBHandle> keyspaces = new HashMap<String, SharedLevelDBHandle>();
+		private SharedDatabase(String dbPath, DB db, int blockCacheMegabytes, int writeBufferMegabytes){
+			this.dbPath = dbPath;
+			this.db = db;
+			this.blockCacheMegabytes = blockCacheMegabytes;
+			this.writeBufferMegabytes = writeBufferMegabytes;
+		}
+	}
+}
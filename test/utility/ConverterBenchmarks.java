@@ -0,0 +1,240 @@
+/*
+ --------------------------------------------------------------------------------
+ SPADE - Support for Provenance Auditing in Distributed Environments.
+ Copyright (C) 2021 SRI International
+
+ This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation, either version 3 of the
+ License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program. If not, see <http://www.gnu.org/licenses/>.
+ --------------------------------------------------------------------------------
+ */
+package utility;
+
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+import spade.core.AbstractVertex;
+import spade.core.AbstractVertexConverter;
+import spade.reporter.audit.artifact.ArtifactIdentifier;
+import spade.reporter.audit.artifact.ArtifactIdentifierConverter;
+import spade.reporter.audit.artifact.ArtifactState;
+import spade.reporter.audit.artifact.ArtifactStateConverter;
+import spade.reporter.audit.artifact.FileIdentifier;
+import spade.reporter.audit.artifact.MemoryIdentifier;
+import spade.reporter.audit.artifact.NetworkSocketIdentifier;
+import spade.reporter.audit.artifact.UnnamedPipeIdentifier;
+import spade.reporter.audit.process.AgentIdentifier;
+import spade.reporter.audit.process.NamespaceIdentifier;
+import spade.reporter.audit.process.ProcessIdentifier;
+import spade.utility.Converter;
+import spade.utility.Serializable2ByteArrayConverter;
+import spade.vertex.opm.Process;
+
+/**
+ * Compares the binary converters of the external map keys and values against Java serialization.
+ *
+ * For every type: checks that the objects are the same after a round trip, and then prints the average size and the
+ * time per serialize and per deserialize after a warm up.
+ *
+ * Usage: java -cp 'build:lib/*' utility.ConverterBenchmarks [objects] [rounds]
+ */
+public class ConverterBenchmarks{
+
+	private static final Random random = new Random(42);
+
+	public static void main(String[] args) throws Exception{
+		final int objects = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+		benchmark("ArtifactIdentifier", objects, rounds, ConverterBenchmarks::artifactIdentifier,
+				new ArtifactIdentifierConverter());
+		benchmark("ArtifactState", objects, rounds, ConverterBenchmarks::artifactState,
+				new ArtifactStateConverter());
+		benchmark("ProcessKey", objects, rounds, ConverterBenchmarks::processKey,
+				newPackagePrivate("spade.reporter.audit.process.ProcessKeyConverter"));
+		benchmark("ProcessUnitState", objects, rounds, ConverterBenchmarks::processUnitState,
+				newPackagePrivate("spade.reporter.audit.process.ProcessUnitStateConverter"));
+		benchmark("AbstractVertex", objects, rounds, ConverterBenchmarks::vertex,
+				new AbstractVertexConverter());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <X> void benchmark(final String name, final int objects, final int rounds,
+			final IntFunction<X> generator, final Converter<?, byte[]> binaryConverter) throws Exception{
+		final List<X> values = new ArrayList<X>();
+		for(int i = 0; i < objects; i++){
+			values.add(generator.apply(i));
+		}
+		final Converter<X, byte[]> serializable = (Converter<X, byte[]>)(Converter<?, byte[]>)new Serializable2ByteArrayConverter<Serializable>();
+		final Converter<X, byte[]> binary = (Converter<X, byte[]>)binaryConverter;
+
+		for(final X value : values){
+			final Object copy = binary.deserialize(binary.serialize(value));
+			if(!sameState(value, copy)){
+				throw new RuntimeException(name + ": round trip mismatch. Expected: " + value + ", actual: " + copy);
+			}
+		}
+
+		System.out.println(name + " (" + objects + " objects, " + rounds + " rounds)");
+		run("  java serialization", values, rounds, serializable);
+		run("  binary            ", values, rounds, binary);
+	}
+
+	private static <X> void run(final String label, final List<X> values, final int rounds,
+			final Converter<X, byte[]> converter) throws Exception{
+		final List<byte[]> serialized = new ArrayList<byte[]>(values.size());
+		long bytes = 0;
+		for(final X value : values){
+			final byte[] b = converter.serialize(value);
+			serialized.add(b);
+			bytes += b.length;
+		}
+		// Warm up
+		for(int round = 0; round < rounds; round++){
+			for(int i = 0; i < values.size(); i++){
+				converter.deserialize(converter.serialize(values.get(i)));
+			}
+		}
+		long serializeNanos = 0, deserializeNanos = 0;
+		long blackhole = 0;
+		for(int round = 0; round < rounds; round++){
+			final long start = System.nanoTime();
+			for(final X value : values){
+				blackhole += converter.serialize(value).length;
+			}
+			final long middle = System.nanoTime();
+			for(final byte[] b : serialized){
+				blackhole += converter.deserialize(b) == null ? 0 : 1;
+			}
+			final long end = System.nanoTime();
+			serializeNanos += middle - start;
+			deserializeNanos += end - middle;
+		}
+		final long operations = (long)values.size() * rounds;
+		System.out.println(String.format("%s: avg bytes = %6.1f, serialize = %7.1f ns/op, deserialize = %7.1f ns/op (%d)",
+				label, (double)bytes / values.size(), (double)serializeNanos / operations,
+				(double)deserializeNanos / operations, blackhole % 10));
+	}
+
+	/*
+	 * Uses equals if the class overrides it, otherwise compares the fields one by one
+	 */
+	private static boolean sameState(final Object expected, final Object actual) throws Exception{
+		if(expected == null || actual == null){
+			return expected == actual;
+		}
+		if(!expected.getClass().equals(actual.getClass())){
+			return false;
+		}
+		if(expected instanceof AbstractVertex){
+			return expected.toString().equals(actual.toString());
+		}
+		if(expected.getClass().getMethod("equals", Object.class).getDeclaringClass() != Object.class){
+			return expected.equals(actual);
+		}
+		for(Class<?> c = expected.getClass(); c != Object.class; c = c.getSuperclass()){
+			for(final Field field : c.getDeclaredFields()){
+				if(Modifier.isStatic(field.getModifiers())){
+					continue;
+				}
+				field.setAccessible(true);
+				if(!sameState(field.get(expected), field.get(actual))){
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Converter<?, byte[]> newPackagePrivate(final String className) throws Exception{
+		final Constructor<?> constructor = Class.forName(className).getDeclaredConstructor();
+		constructor.setAccessible(true);
+		return (Converter<?, byte[]>)constructor.newInstance();
+	}
+
+	private static String pid(){
+		return String.valueOf(1 + random.nextInt(32768));
+	}
+
+	private static String time(final int i){
+		return (1601572509 + i) + "." + String.format("%03d", random.nextInt(1000));
+	}
+
+	private static ArtifactIdentifier artifactIdentifier(final int i){
+		switch(i % 4){
+			case 0: return new FileIdentifier("/home/user/project/file" + (i % 1000) + ".txt", "/", String.valueOf(1000000 + i));
+			case 1: return new MemoryIdentifier(pid(), Long.toHexString(0x7f0000000000L + random.nextInt()), "4096");
+			case 2: return new NetworkSocketIdentifier("10.0.0." + (i % 255), pid(), "93.184.216.34", "443", "tcp", "4026531992");
+			default: return new UnnamedPipeIdentifier(pid(), String.valueOf(3 + i % 10), String.valueOf(4 + i % 10));
+		}
+	}
+
+	private static ArtifactState artifactState(final int i){
+		final ArtifactState state = new ArtifactState(i % 2 == 0, BigInteger.valueOf(i % 3), BigInteger.valueOf(i % 100),
+				BigInteger.valueOf(i % 3), BigInteger.valueOf(i % 99), "0644", "0600", new HashSet<String>());
+		state.getPreviousPutPermissions().add("0644");
+		if(i % 3 == 0){
+			state.getPreviousPutPermissions().add("0755");
+		}
+		return state;
+	}
+
+	private static Object processKey(final int i){
+		try{
+			final Constructor<?> constructor = Class.forName("spade.reporter.audit.process.ProcessKey")
+					.getDeclaredConstructor(String.class, String.class);
+			constructor.setAccessible(true);
+			return constructor.newInstance(pid(), i % 5 == 0 ? null : time(i));
+		}catch(Exception e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static Object processUnitState(final int i){
+		try{
+			final Class<?> stateClass = Class.forName("spade.reporter.audit.process.ProcessUnitState");
+			final Constructor<?> constructor = stateClass.getDeclaredConstructor(
+					ProcessIdentifier.class, AgentIdentifier.class, NamespaceIdentifier.class);
+			constructor.setAccessible(true);
+			final ProcessIdentifier process = new ProcessIdentifier(pid(), pid(), "bash", "/home/user", "bash -c ls",
+					time(i), null, "0", "syscall", pid(), "/usr/bin/bash");
+			final AgentIdentifier agent = new AgentIdentifier("1000", "1000", "1000", "1000", "1000", "1000", "1000", "1000");
+			final NamespaceIdentifier namespace = new NamespaceIdentifier("4026531840", "4026531837", "4026531992",
+					"4026531836", "4026531836", "4026531839");
+			return constructor.newInstance(process, agent, namespace);
+		}catch(Exception e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static AbstractVertex vertex(final int i){
+		final Process vertex = new Process();
+		vertex.addAnnotation("pid", pid());
+		vertex.addAnnotation("ppid", pid());
+		vertex.addAnnotation("name", "bash");
+		vertex.addAnnotation("cwd", "/home/user");
+		vertex.addAnnotation("command line", "bash -c ls -la /tmp/dir" + (i % 100));
+		vertex.addAnnotation("start time", time(i));
+		vertex.addAnnotation("source", "syscall");
+		vertex.addAnnotation("exe", "/usr/bin/bash");
+		return vertex;
+	}
+}